@@ -0,0 +1,137 @@
+# -*- coding: utf-8 -*-
+# Callback для MAS: дублирует ключевые события плейбука в stdout одной JSON-строкой
+# с префиксом "MASJSON\t". AnsibleRunner разбирает эти строки потоково и строит
+# по ним результат по каждому хосту и длительности задач. Обычный вывод не меняется.
+# Исход задачи с delegate_to относится к хосту, на котором она выполнялась: в 06/07 задачи
+# play на central_manager в цикле делегируются воркерам, и упавшим должен считаться воркер.
+from __future__ import absolute_import, division, print_function
+
+__metaclass__ = type
+
+DOCUMENTATION = '''
+    name: mas_jsonl
+    type: aggregate
+    short_description: JSON-lines события для MAS
+    description:
+      - Пишет события play/task/host/stats в stdout в формате JSON lines с префиксом MASJSON.
+    requirements:
+      - включается через ANSIBLE_CALLBACKS_ENABLED=mas_jsonl
+'''
+
+import json
+import sys
+import time
+
+from ansible.plugins.callback import CallbackBase
+
+PREFIX = 'MASJSON\t'
+MAX_MSG = 512
+
+
+class CallbackModule(CallbackBase):
+    CALLBACK_VERSION = 2.0
+    CALLBACK_TYPE = 'aggregate'
+    CALLBACK_NAME = 'mas_jsonl'
+    CALLBACK_NEEDS_ENABLED = True
+
+    def __init__(self):
+        super(CallbackModule, self).__init__()
+        self._play = None
+        self._task_start = {}
+        self._host_start = {}
+        # (хост play, uuid задачи), у которых элементы цикла уже сообщены от имени делегатов
+        self._delegated_items = set()
+
+    def _emit(self, event, **fields):
+        fields['event'] = event
+        fields['ts'] = round(time.time(), 3)
+        sys.stdout.write(PREFIX + json.dumps(fields, separators=(',', ':'), default=str) + '\n')
+        sys.stdout.flush()
+
+    @staticmethod
+    def _delegated_host(result):
+        """Имя хоста-делегата из inventory (ansible_host — для старых ansible без ansible_delegated_host)."""
+        delegated = result._result.get('_ansible_delegated_vars') or {}
+        return delegated.get('ansible_delegated_host') or delegated.get('ansible_host')
+
+    def _host_event(self, event, result, **extra):
+        host = result._host.get_name()
+        task = result._task
+        uuid = task._uuid
+        now = time.time()
+        started = self._host_start.pop((host, uuid), self._task_start.get(uuid, now))
+        if (host, uuid) in self._delegated_items:
+            # Итог цикла на хосте play: исходы элементов уже отправлены от имени делегатов.
+            self._delegated_items.discard((host, uuid))
+            return
+        self._emit_host(event, task, self._delegated_host(result) or host, result._result,
+                        int((now - started) * 1000), **extra)
+
+    def _item_event(self, event, result, **extra):
+        delegated = self._delegated_host(result)
+        host = result._host.get_name()
+        if not delegated or delegated == host:
+            return
+        task = result._task
+        key = (host, task._uuid)
+        now = time.time()
+        started = self._host_start.get(key, self._task_start.get(task._uuid, now))
+        self._host_start[key] = now
+        self._delegated_items.add(key)
+        if result._result.get('unreachable'):
+            event = 'host_unreachable'
+        self._emit_host(event, task, delegated, result._result, int((now - started) * 1000), **extra)
+
+    def _emit_host(self, event, task, host, payload, duration_ms, **extra):
+        msg = payload.get('msg') or payload.get('stderr') or ''
+        self._emit(event,
+                   play=self._play,
+                   task=task.get_name(),
+                   task_id=task._uuid,
+                   host=host,
+                   duration_ms=duration_ms,
+                   msg=str(msg)[:MAX_MSG],
+                   **extra)
+
+    def v2_playbook_on_play_start(self, play):
+        self._play = play.get_name()
+        self._emit('play_start', play=self._play)
+
+    def v2_playbook_on_task_start(self, task, is_conditional):
+        self._task_start[task._uuid] = time.time()
+        self._emit('task_start', play=self._play, task=task.get_name(), task_id=task._uuid)
+
+    def v2_playbook_on_handler_task_start(self, task):
+        self.v2_playbook_on_task_start(task, False)
+
+    def v2_runner_on_start(self, host, task):
+        self._host_start[(host.get_name(), task._uuid)] = time.time()
+
+    def v2_runner_on_ok(self, result):
+        changed = bool(result._result.get('changed', False))
+        self._host_event('host_changed' if changed else 'host_ok', result)
+
+    def v2_runner_on_failed(self, result, ignore_errors=False):
+        self._host_event('host_failed', result, ignored=bool(ignore_errors))
+
+    def v2_runner_on_unreachable(self, result):
+        self._host_event('host_unreachable', result)
+
+    def v2_runner_on_skipped(self, result):
+        self._host_event('host_skipped', result)
+
+    def v2_runner_item_on_ok(self, result):
+        changed = bool(result._result.get('changed', False))
+        self._item_event('host_changed' if changed else 'host_ok', result)
+
+    def v2_runner_item_on_failed(self, result):
+        self._item_event('host_failed', result, ignored=bool(result._task.ignore_errors))
+
+    def v2_runner_item_on_skipped(self, result):
+        self._item_event('host_skipped', result)
+
+    def v2_playbook_on_stats(self, stats):
+        hosts = {}
+        for host in sorted(stats.processed.keys()):
+            hosts[host] = stats.summarize(host)
+        self._emit('stats', hosts=hosts)
@@ -0,0 +1,277 @@
+#!/usr/bin/env python3
+# -*- coding: utf-8 -*-
+# Relay артефактов MAS на воркере: узел дерева раздачи (FanoutDistributor). По команде MAS скачивает артефакт
+# у родителя (другого relay или кэша MAS) с докачкой по Range, сверяет sha256 и дальше сам отдаёт его своим
+# детям: GET /blobs/<sha256> с Range. Недокачанный или не прошедший проверку файл не отдаётся.
+#
+#   POST /fetch  {"url": "...", "sha256": "<hex>", "size": N} -> 200 {"sha256", "size", "resumedFrom", "millis"}
+#                ответ приходит, когда файл скачан и проверен; 422 — sha256 не совпал, 502 — родитель недоступен.
+#                Только с заголовком X-MAS-Token = содержимое --token-file (401 иначе) и только http(s) url:
+#                без токена relay не качает ничего, то есть не работает открытым прокси.
+#   GET  /blobs/<sha256>   HEAD тоже; Range: bytes=a-b | a- | -n
+#   GET  /health           {"blobs": [...]}
+#
+# Слушает --bind — адрес узла в управляющей сети, по которому к нему ходят MAS и соседние relay.
+# Только стандартная библиотека Python 3.6+: на воркере есть python3 (его использует ansible).
+import argparse
+import hashlib
+import hmac
+import json
+import os
+import re
+import shutil
+import socket
+import sys
+import threading
+import time
+import urllib.error
+import urllib.parse
+import urllib.request
+from http.server import BaseHTTPRequestHandler, HTTPServer
+from socketserver import ThreadingMixIn
+
+CHUNK = 1 << 20
+MAX_REQUEST = 64 * 1024
+SHA256 = re.compile(r'^[0-9a-f]{64}$')
+RANGE = re.compile(r'^bytes=(\d*)-(\d*)$')
+
+
+class Throttle:
+    """Общий лимит отдачи (token bucket), чтобы на loopback моделировать NIC узла. rate=0 — без лимита."""
+
+    def __init__(self, rate):
+        self.rate = rate
+        self.lock = threading.Lock()
+        self.available = 0.0
+        self.stamp = time.monotonic()
+
+    def take(self, n):
+        if self.rate <= 0:
+            return
+        with self.lock:
+            now = time.monotonic()
+            self.available = min(CHUNK, self.available + (now - self.stamp) * self.rate)
+            self.stamp = now
+            self.available -= n
+            wait = -self.available / self.rate if self.available < 0 else 0
+        if wait > 0:
+            time.sleep(wait)
+
+
+class ChecksumError(Exception):
+    pass
+
+
+class Relay:
+    def __init__(self, directory, timeout):
+        self.dir = directory
+        self.timeout = timeout
+        self.locks = {}
+        self.guard = threading.Lock()
+        os.makedirs(directory, exist_ok=True)
+
+    def path(self, sha256):
+        return os.path.join(self.dir, sha256)
+
+    def has(self, sha256):
+        return SHA256.match(sha256) is not None and os.path.isfile(self.path(sha256))
+
+    def blobs(self):
+        return sorted(name for name in os.listdir(self.dir) if SHA256.match(name))
+
+    def seed(self, source):
+        digest = hashlib.sha256()
+        with open(source, 'rb') as f:
+            for chunk in iter(lambda: f.read(CHUNK), b''):
+                digest.update(chunk)
+        sha256 = digest.hexdigest()
+        if not self.has(sha256):
+            shutil.copyfile(source, self.path(sha256) + '.part')
+            os.replace(self.path(sha256) + '.part', self.path(sha256))
+        return sha256
+
+    def lock(self, sha256):
+        with self.guard:
+            return self.locks.setdefault(sha256, threading.Lock())
+
+    def fetch(self, url, sha256, size):
+        """Скачивает url в <sha256>.part, продолжая с уже полученного места, и переносит в <sha256> после проверки."""
+        started = time.monotonic()
+        with self.lock(sha256):
+            final = self.path(sha256)
+            if os.path.isfile(final):
+                return {'sha256': sha256, 'size': os.path.getsize(final), 'resumedFrom': None, 'millis': 0}
+            part = final + '.part'
+            offset = os.path.getsize(part) if os.path.isfile(part) else 0
+            if size is not None and offset > size:
+                offset = 0
+            request = urllib.request.Request(url)
+            if offset:
+                request.add_header('Range', 'bytes=%d-' % offset)
+            try:
+                response = urllib.request.urlopen(request, timeout=self.timeout)
+            except urllib.error.HTTPError as e:
+                if e.code != 416 or size is None or offset != size:
+                    raise
+                response = None  # .part уже целиком скачан, осталось проверить
+            if response is not None:
+                with response:
+                    if offset and response.status != 206:
+                        offset = 0  # источник не умеет Range: качаем заново
+                    with open(part, 'ab' if offset else 'wb') as out:
+                        shutil.copyfileobj(response, out, CHUNK)
+            digest = hashlib.sha256()
+            with open(part, 'rb') as f:
+                for chunk in iter(lambda: f.read(CHUNK), b''):
+                    digest.update(chunk)
+            actual = digest.hexdigest()
+            if actual != sha256 or (size is not None and os.path.getsize(part) != size):
+                os.remove(part)
+                raise ChecksumError('sha256 mismatch: expected %s, got %s' % (sha256, actual))
+            os.replace(part, final)
+            return {'sha256': sha256, 'size': os.path.getsize(final), 'resumedFrom': offset or None,
+                    'millis': int((time.monotonic() - started) * 1000)}
+
+
+class Handler(BaseHTTPRequestHandler):
+    protocol_version = 'HTTP/1.1'
+    relay = None
+    throttle = None
+    token = None
+
+    def log_message(self, fmt, *args):
+        if self.server.verbose:
+            BaseHTTPRequestHandler.log_message(self, fmt, *args)
+
+    def do_GET(self):
+        self.serve(body=True)
+
+    def do_HEAD(self):
+        self.serve(body=False)
+
+    def do_POST(self):
+        if self.path != '/fetch':
+            return self.reply(404, {'error': 'not found'})
+        try:
+            length = int(self.headers.get('Content-Length', '0'))
+            if length < 0 or length > MAX_REQUEST:
+                self.close_connection = True
+                return self.reply(413, {'error': 'request too large'})
+            data = self.rfile.read(length)
+            presented = self.headers.get('X-MAS-Token', '')
+            if not hmac.compare_digest(presented.encode('utf-8'), self.token.encode('utf-8')):
+                return self.reply(401, {'error': 'unauthorized'})
+            request = json.loads(data.decode('utf-8'))
+            sha256 = str(request['sha256']).lower()
+            if not SHA256.match(sha256):
+                return self.reply(400, {'error': 'invalid sha256'})
+            if urllib.parse.urlsplit(str(request['url'])).scheme not in ('http', 'https'):
+                return self.reply(400, {'error': 'url must be http or https'})
+            size = request.get('size')
+            result = self.relay.fetch(request['url'], sha256, int(size) if size is not None else None)
+            self.reply(200, result)
+        except ChecksumError as e:
+            self.reply(422, {'error': str(e)})
+        except (KeyError, ValueError) as e:
+            self.reply(400, {'error': 'bad request: %s' % e})
+        except (urllib.error.URLError, OSError) as e:
+            self.reply(502, {'error': str(e)})
+
+    def serve(self, body):
+        if self.path == '/health':
+            return self.reply(200, {'blobs': self.relay.blobs()}, body)
+        match = re.match(r'^/blobs/([0-9a-f]{64})$', self.path)
+        if not match or not self.relay.has(match.group(1)):
+            return self.reply(404, {'error': 'not found'}, body)
+        sha256 = match.group(1)
+        path = self.relay.path(sha256)
+        size = os.path.getsize(path)
+        start, end = 0, size
+        spec = RANGE.match(self.headers.get('Range', '') or '')
+        status = 200
+        if spec and (spec.group(1) or spec.group(2)):
+            if spec.group(1):
+                start = int(spec.group(1))
+                end = min(int(spec.group(2)) + 1, size) if spec.group(2) else size
+            else:
+                start = max(0, size - int(spec.group(2)))
+            if start >= size or end <= start:
+                self.send_response(416)
+                self.send_header('Content-Range', 'bytes */%d' % size)
+                self.send_header('Content-Length', '0')
+                self.end_headers()
+                return
+            status = 206
+        self.send_response(status)
+        self.send_header('Content-Type', 'application/octet-stream')
+        self.send_header('Content-Length', str(end - start))
+        self.send_header('Accept-Ranges', 'bytes')
+        self.send_header('ETag', '"%s"' % sha256)
+        self.send_header('X-Checksum-Sha256', sha256)
+        if status == 206:
+            self.send_header('Content-Range', 'bytes %d-%d/%d' % (start, end - 1, size))
+        self.end_headers()
+        if not body:
+            return
+        self.wfile.flush()
+        with open(path, 'rb') as f:
+            position = start
+            while position < end:
+                count = min(CHUNK, end - position)
+                self.throttle.take(count)
+                # socket.sendfile — os.sendfile без копирования через userspace, где ОС это умеет.
+                sent = self.connection.sendfile(f, position, count)
+                if not sent:
+                    break
+                position += sent
+
+    def reply(self, status, payload, body=True):
+        data = json.dumps(payload).encode('utf-8')
+        self.send_response(status)
+        self.send_header('Content-Type', 'application/json')
+        self.send_header('Content-Length', str(len(data)))
+        self.end_headers()
+        if body:
+            self.wfile.write(data)
+
+
+class Server(ThreadingMixIn, HTTPServer):
+    daemon_threads = True
+    allow_reuse_address = True
+    verbose = False
+
+
+def main():
+    parser = argparse.ArgumentParser(description='MAS artifact relay')
+    parser.add_argument('--bind', default='127.0.0.1', help='адрес узла в управляющей сети')
+    parser.add_argument('--port', type=int, default=8765)
+    parser.add_argument('--dir', default='/var/lib/mas-relay')
+    parser.add_argument('--rate-mbps', type=float, default=0, help='лимит отдачи, Мбит/с (0 — без лимита)')
+    parser.add_argument('--timeout', type=float, default=60, help='таймаут чтения у родителя, с')
+    parser.add_argument('--token-file', required=True, help='файл с токеном MAS для POST /fetch')
+    parser.add_argument('--seed', action='append', default=[], help='файл, который relay отдаёт сразу')
+    parser.add_argument('--verbose', action='store_true')
+    args = parser.parse_args()
+
+    relay = Relay(args.dir, args.timeout)
+    for source in args.seed:
+        print('seeded %s %s' % (relay.seed(source), source), flush=True)
+    with open(args.token_file, encoding='utf-8') as f:
+        Handler.token = f.read().strip()
+    if not Handler.token:
+        parser.error('empty token file: %s' % args.token_file)
+    Handler.relay = relay
+    Handler.throttle = Throttle(args.rate_mbps * 1000 * 1000 / 8)
+    server = Server((args.bind, args.port), Handler)
+    server.verbose = args.verbose
+    server.socket.setsockopt(socket.SOL_SOCKET, socket.SO_KEEPALIVE, 1)
+    print('mas-relay listening on %s:%d, dir %s' % (args.bind, server.server_address[1], args.dir), flush=True)
+    try:
+        server.serve_forever()
+    except KeyboardInterrupt:
+        pass
+    return 0
+
+
+if __name__ == '__main__':
+    sys.exit(main())
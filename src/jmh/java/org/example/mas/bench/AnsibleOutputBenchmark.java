@@ -0,0 +1,95 @@
+package org.example.mas.bench;
+
+import org.example.mas.utils.AnsibleEvent;
+import org.example.mas.utils.AnsibleEventParser;
+import org.example.mas.utils.AnsibleRunner;
+import org.example.mas.utils.OutputRingBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Обработка вывода ansible-playbook. runPlaybook — AnsibleRunner целиком против синтетического процесса,
+ * который печатает tasks × hosts строк (чтение пайпа, спул в файл, хвост, разбор событий, отчёт).
+ * parseEvents — только разбор строк и кольцевой буфер, без процесса.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AnsibleOutputBenchmark {
+
+    @Param({"1000", "10000"})
+    public int hosts;
+
+    @Param({"20"})
+    public int tasks;
+
+    private Path dir;
+    private Path script;
+    private List<String> lines;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("mas-bench-ansible");
+        Path output = dir.resolve("output.txt");
+        BenchFixtures.writeAnsibleOutput(output, tasks, hosts);
+        script = BenchFixtures.writeCatScript(dir.resolve("ansible-playbook"), output);
+        Files.writeString(dir.resolve("vars.yml"), "---\n", StandardCharsets.UTF_8);
+        Files.writeString(dir.resolve("inventory.ini"), "", StandardCharsets.UTF_8);
+        lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public int runPlaybook() {
+        AnsibleRunner.AnsibleResult result = AnsibleRunner.run(
+                new AnsibleRunner.Options("bench.yml", dir.resolve("inventory.ini").toString(), dir.toString())
+                        .executable(script.toString())
+                        .logDir(dir.resolve("logs"))
+                        .tailLines(200));
+        if (!result.success) {
+            throw new IllegalStateException("Synthetic playbook failed: " + result.details);
+        }
+        return result.report.getTaskTimings().size();
+    }
+
+    @Benchmark
+    public void parseEvents(Blackhole bh) {
+        OutputRingBuffer tail = new OutputRingBuffer(200, 8192);
+        for (String line : lines) {
+            tail.add(line);
+            AnsibleEvent event = AnsibleEventParser.parse(line);
+            if (event != null) bh.consume(event);
+        }
+        bh.consume(tail.totalLines());
+    }
+}
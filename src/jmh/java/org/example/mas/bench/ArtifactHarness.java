@@ -0,0 +1,197 @@
+package org.example.mas.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.mas.Main;
+import org.example.mas.Service.ArtifactService;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пропускная способность кэша артефактов против внешнего зеркала: поднимает приложение, кладёт в кэш синтетический
+ * артефакт size-mb и скачивает его requests раз в clients потоков с GET /artifacts/...; с external=URL то же
+ * делается с внешним URL (например kubeadm .deb на mirror.yandex.ru), чтобы сравнить с путём через внешний канал.
+ * Отчёт: MB/s суммарно, p50/p95 запроса, CPU контроллера на отдачу (без потоков клиентов).
+ *
+ * <pre>
+ * mvn -Pbench test-compile exec:exec@artifacts -Dartifacts.args="size-mb=256 clients=16 requests=64"
+ * </pre>
+ * Ключи стенда: size-mb, clients, requests, external, external-requests, out.
+ */
+public final class ArtifactHarness {
+    private static final String NAME = "bench/blob.bin";
+
+    private ArtifactHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("size-mb", "256");
+        options.put("clients", "16");
+        options.put("requests", "64");
+        options.put("external", "");
+        options.put("external-requests", "4");
+        options.put("out", "target/artifact-result.json");
+        List<String> appArgs = new ArrayList<>();
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            if (kv.length == 2 && options.containsKey(kv[0])) {
+                options.put(kv[0], kv[1]);
+            } else {
+                appArgs.add(arg);
+            }
+        }
+
+        Path dir = Files.createTempDirectory("mas-artifacts");
+        appArgs.add("--server.port=0");
+        appArgs.add("--mas.autostart=false");
+        appArgs.add("--mas.health.enabled=false");
+        appArgs.add("--mas.artifacts.enabled=true");
+        appArgs.add("--mas.artifacts.dir=" + dir);
+
+        int clients = Integer.parseInt(options.get("clients"));
+        Map<String, Object> report = new LinkedHashMap<>();
+        try (ConfigurableApplicationContext context = SpringApplication.run(Main.class, appArgs.toArray(new String[0]))) {
+            ArtifactService artifacts = context.getBean(ArtifactService.class);
+            long size = Long.parseLong(options.get("size-mb")) * 1024 * 1024;
+            artifacts.upload(NAME, new SyntheticStream(size), null);
+            String port = context.getEnvironment().getProperty("local.server.port");
+            String local = "http://127.0.0.1:" + port + "/artifacts/" + NAME;
+
+            report.put("local", measure(local, Integer.parseInt(options.get("requests")), clients, true));
+            String external = options.get("external");
+            if (!external.isBlank()) {
+                Map<String, Object> remote = measure(external, Integer.parseInt(options.get("external-requests")), clients, false);
+                report.put("external", remote);
+                Map<?, ?> localResult = (Map<?, ?>) report.get("local");
+                double remoteRate = ((Number) remote.get("throughputMbPerSecond")).doubleValue();
+                if (remoteRate > 0) {
+                    report.put("speedup", round(((Number) localResult.get("throughputMbPerSecond")).doubleValue() / remoteRate));
+                }
+            }
+            report.put("options", options);
+        }
+        ObjectMapper mapper = new ObjectMapper();
+        Path out = Paths.get(options.get("out")).toAbsolutePath();
+        Files.createDirectories(out.getParent());
+        mapper.writerWithDefaultPrettyPrinter().writeValue(out.toFile(), report);
+        System.out.println(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        System.out.println("Written to " + out);
+        System.exit(0);
+    }
+
+    /** requests скачиваний url в clients потоков; тело читается и выбрасывается. served — отдаёт этот же процесс. */
+    private static Map<String, Object> measure(String url, int requests, int clients, boolean served) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        AtomicInteger next = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        AtomicLong clientCpu = new AtomicLong();
+        long[] latencies = new long[requests];
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        long cpuBefore = os.getProcessCpuTime();
+        long started = System.nanoTime();
+        List<Future<?>> workers = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            workers.add(pool.submit(() -> {
+                long cpuStart = threads.getCurrentThreadCpuTime();
+                try {
+                    for (int i; (i = next.getAndIncrement()) < requests; ) {
+                        long begin = System.nanoTime();
+                        // HttpURLConnection читает тело в этом же потоке: его CPU целиком на стороне клиента.
+                        HttpURLConnection connection = (HttpURLConnection) URI.create(url).toURL().openConnection();
+                        connection.setInstanceFollowRedirects(true);
+                        try (InputStream body = connection.getInputStream()) {
+                            if (connection.getResponseCode() != 200) {
+                                throw new IOException(url + " returned " + connection.getResponseCode());
+                            }
+                            bytes.addAndGet(body.transferTo(OutputStream.nullOutputStream()));
+                        }
+                        latencies[i] = System.nanoTime() - begin;
+                    }
+                } finally {
+                    clientCpu.addAndGet(threads.getCurrentThreadCpuTime() - cpuStart);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        long wall = System.nanoTime() - started;
+        long serverCpu = os.getProcessCpuTime() - cpuBefore - clientCpu.get();
+        pool.shutdown();
+
+        Arrays.sort(latencies);
+        double seconds = wall / 1e9;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("url", url);
+        result.put("requests", requests);
+        result.put("clients", clients);
+        result.put("bytes", bytes.get());
+        result.put("wallClockMs", TimeUnit.NANOSECONDS.toMillis(wall));
+        result.put("throughputMbPerSecond", round(bytes.get() / 1048576.0 / seconds));
+        result.put("p50Ms", TimeUnit.NANOSECONDS.toMillis(latencies[requests / 2]));
+        result.put("p95Ms", TimeUnit.NANOSECONDS.toMillis(latencies[Math.min(requests - 1, requests * 95 / 100)]));
+        if (served) {
+            result.put("serverCpuMsPerGb", round(TimeUnit.NANOSECONDS.toMillis(Math.max(0, serverCpu))
+                    / Math.max(1e-9, bytes.get() / 1073741824.0)));
+        }
+        return result;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    /** size псевдослучайных байт без буфера на весь артефакт. */
+    private static final class SyntheticStream extends InputStream {
+        private final Random random = new Random(42);
+        private long remaining;
+
+        SyntheticStream(long size) {
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() {
+            if (remaining <= 0) return -1;
+            remaining--;
+            return random.nextInt(256);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (remaining <= 0) return -1;
+            int n = (int) Math.min(length, remaining);
+            byte[] chunk = new byte[n];
+            random.nextBytes(chunk);
+            System.arraycopy(chunk, 0, buffer, offset, n);
+            remaining -= n;
+            return n;
+        }
+    }
+}
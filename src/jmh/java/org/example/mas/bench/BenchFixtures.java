@@ -0,0 +1,95 @@
+package org.example.mas.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * Сгенерированные входные данные для бенчмарков: inventory в INI и YAML с одинаковым содержимым
+ * и вывод ansible-playbook вперемешку с событиями mas_jsonl.
+ */
+final class BenchFixtures {
+
+    private BenchFixtures() {
+    }
+
+    /** Один central_manager на 1000 хостов, workers с ansible_host и rack, [all:vars], [execute_nodes:vars], htcondor:children. */
+    static void writeIniInventory(Path file, int hosts) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("[all:vars]\nansible_user=root\nansible_ssh_private_key_file=~/.ssh/id_ed25519\n\n[central_manager]\n");
+            for (int i = 0; i < managers(hosts); i++) {
+                w.write("cm" + i + " ansible_host=" + managerIp(i) + "\n");
+            }
+            w.write("\n[execute_nodes]\n");
+            for (int i = 0; i < hosts; i++) {
+                w.write("w" + i + " ansible_host=" + workerIp(i) + " rack=r" + (i % 40) + "\n");
+            }
+            w.write("\n[execute_nodes:vars]\ncondor_role=execute\n\n[htcondor:children]\ncentral_manager\nexecute_nodes\n");
+        }
+    }
+
+    static void writeYamlInventory(Path file, int hosts) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("all:\n  vars:\n    ansible_user: root\n    ansible_ssh_private_key_file: ~/.ssh/id_ed25519\n");
+            w.write("  children:\n    central_manager:\n      hosts:\n");
+            for (int i = 0; i < managers(hosts); i++) {
+                w.write("        cm" + i + ":\n          ansible_host: " + managerIp(i) + "\n");
+            }
+            w.write("    execute_nodes:\n      vars:\n        condor_role: execute\n      hosts:\n");
+            for (int i = 0; i < hosts; i++) {
+                w.write("        w" + i + ":\n          ansible_host: " + workerIp(i) + "\n          rack: r" + (i % 40) + "\n");
+            }
+            w.write("    htcondor:\n      children:\n        central_manager:\n        execute_nodes:\n");
+        }
+    }
+
+    private static int managers(int hosts) {
+        return Math.max(1, hosts / 1000);
+    }
+
+    private static String managerIp(int i) {
+        return "10.0." + (i / 250) + "." + (i % 250);
+    }
+
+    private static String workerIp(int i) {
+        return "10." + (1 + i / 62500) + "." + ((i / 250) % 250) + "." + (i % 250);
+    }
+
+    /**
+     * Вывод плейбука: на каждую задачу заголовок TASK, по строке "ok:" и событию host_ok на хост.
+     *
+     * @return число строк
+     */
+    static long writeAnsibleOutput(Path file, int tasks, int hosts) throws IOException {
+        long lines = 0;
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("MASJSON\t{\"play\":\"bench\",\"event\":\"play_start\",\"ts\":1.0}\n");
+            lines++;
+            for (int t = 0; t < tasks; t++) {
+                String task = "task " + t;
+                w.write("\nTASK [" + task + "] " + "*".repeat(60) + "\n");
+                w.write("MASJSON\t{\"play\":\"bench\",\"task\":\"" + task + "\",\"task_id\":\"" + t + "\",\"event\":\"task_start\",\"ts\":1.0}\n");
+                lines += 3;
+                for (int h = 0; h < hosts; h++) {
+                    w.write("ok: [w" + h + "]\n");
+                    w.write("MASJSON\t{\"play\":\"bench\",\"task\":\"" + task + "\",\"task_id\":\"" + t + "\",\"host\":\"w" + h
+                            + "\",\"duration_ms\":" + (h % 500) + ",\"msg\":\"\",\"event\":\"host_ok\",\"ts\":1.0}\n");
+                    lines += 2;
+                }
+            }
+            w.write("MASJSON\t{\"hosts\":{},\"event\":\"stats\",\"ts\":1.0}\n");
+            lines++;
+        }
+        return lines;
+    }
+
+    /** Исполняемый скрипт, который вместо ansible-playbook печатает готовый файл вывода. */
+    static Path writeCatScript(Path file, Path output) throws IOException {
+        Files.writeString(file, "#!/bin/sh\nexec cat '" + output.toAbsolutePath() + "'\n", StandardCharsets.UTF_8);
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rwxr-xr-x"));
+        return file;
+    }
+}
@@ -0,0 +1,265 @@
+package org.example.mas.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.mas.DTO.FanoutRequest;
+import org.example.mas.Main;
+import org.example.mas.Service.ArtifactService;
+import org.example.mas.Service.FanoutService;
+import org.example.mas.models.FanoutNode;
+import org.example.mas.utils.ArtifactStore;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Раздача деревом на одной машине: поднимает приложение, кладёт в кэш синтетический артефакт size-mb и запускает
+ * на loopback nodes relay (scripts/files/mas_relay.py) плюс relay-источник с тем же артефактом, который играет
+ * роль контроллера. Отдача каждого relay ограничена rate-mbps — так моделируется NIC узла. Для каждой степени
+ * ветвления из degrees (degrees &gt;= nodes — звезда, все качают у контроллера) раздача идёт через FanoutService.
+ * Отчёт: время до последнего узла, p50 готовности узлов, сколько копий отдал контроллер, ускорение против первой
+ * степени в списке. dead=N — первые N узлов (внутренние узлы дерева) не запущены: их дети переподключаются.
+ *
+ * <pre>
+ * mvn -Pbench test-compile exec:exec@fanout -Dfanout.args="nodes=16 degrees=16,4,2 size-mb=64 rate-mbps=400"
+ * </pre>
+ * Ключи стенда: nodes, degrees, size-mb, rate-mbps, dead, python, relay, out.
+ */
+public final class FanoutHarness {
+    private static final String NAME = "bench/fanout.tar";
+
+    private FanoutHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("nodes", "16");
+        options.put("degrees", "16,4,2");
+        options.put("size-mb", "64");
+        options.put("rate-mbps", "400");
+        options.put("dead", "0");
+        options.put("python", "python3");
+        options.put("relay", "scripts/files/mas_relay.py");
+        options.put("out", "target/fanout-result.json");
+        List<String> appArgs = new ArrayList<>();
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            if (kv.length == 2 && options.containsKey(kv[0])) {
+                options.put(kv[0], kv[1]);
+            } else {
+                appArgs.add(arg);
+            }
+        }
+
+        Path work = Files.createTempDirectory("mas-fanout");
+        // Недоступный узел на loopback не «оживёт»: долгие повторы только затянут прогон.
+        if (appArgs.stream().noneMatch(arg -> arg.startsWith("--mas.artifacts.fanout.retries="))) {
+            appArgs.add("--mas.artifacts.fanout.retries=1");
+        }
+        if (appArgs.stream().noneMatch(arg -> arg.startsWith("--mas.artifacts.fanout.backoff-seconds="))) {
+            appArgs.add("--mas.artifacts.fanout.backoff-seconds=0");
+        }
+        appArgs.add("--server.port=0");
+        appArgs.add("--mas.autostart=false");
+        appArgs.add("--mas.health.enabled=false");
+        appArgs.add("--mas.artifacts.enabled=true");
+        appArgs.add("--mas.artifacts.dir=" + work.resolve("cache"));
+        // Relay принимают команды только с токеном MAS; relay-источник не под public-url — разрешаем его явно.
+        String token = UUID.randomUUID().toString();
+        Path tokenFile = Files.writeString(work.resolve("relay.token"), token);
+        int rootPort = freePort();
+        appArgs.add("--mas.artifacts.token=" + token);
+        appArgs.add("--mas.artifacts.fanout.sources=http://127.0.0.1:" + rootPort + "/");
+
+        int nodeCount = Integer.parseInt(options.get("nodes"));
+        int dead = Integer.parseInt(options.get("dead"));
+        List<Process> relays = new ArrayList<>();
+        Map<String, Object> report = new LinkedHashMap<>();
+        try (ConfigurableApplicationContext context = SpringApplication.run(Main.class, appArgs.toArray(new String[0]))) {
+            ArtifactService artifacts = context.getBean(ArtifactService.class);
+            FanoutService fanout = context.getBean(FanoutService.class);
+            long size = Long.parseLong(options.get("size-mb")) * 1024 * 1024;
+            ArtifactStore.Entry entry = artifacts.upload(NAME, new SyntheticStream(size), null);
+
+            // Контроллер — relay с тем же лимитом отдачи, что и у узлов, иначе звезда на loopback не упрётся в «NIC».
+            relays.add(startRelay(options, work, tokenFile, "root", rootPort, artifacts.blob(entry).toString()));
+            List<FanoutNode> nodes = new ArrayList<>();
+            for (int i = 0; i < nodeCount; i++) {
+                int port = freePort();
+                if (i >= dead) {
+                    relays.add(startRelay(options, work, tokenFile, "node-" + i, port, null));
+                }
+                FanoutNode node = new FanoutNode();
+                node.setName("node-" + i);
+                node.setUrl("http://127.0.0.1:" + port);
+                nodes.add(node);
+            }
+            awaitHealthy(rootPort);
+            for (FanoutNode node : nodes.subList(Math.min(dead, nodeCount), nodeCount)) {
+                awaitHealthy(URI.create(node.getUrl()).getPort());
+            }
+
+            List<Map<String, Object>> runs = new ArrayList<>();
+            Double baseline = null;
+            for (String degree : options.get("degrees").split(",")) {
+                clearNodes(work);
+                FanoutRequest request = new FanoutRequest();
+                request.setArtifact(NAME);
+                request.setNodes(nodes);
+                request.setDegree(Integer.parseInt(degree.trim()));
+                request.setSource("http://127.0.0.1:" + rootPort + "/blobs/" + entry.sha256);
+                FanoutService.Distribution distribution = fanout.start(request);
+                while (!distribution.isFinished()) {
+                    Thread.sleep(20);
+                }
+                Map<String, Object> run = describe(distribution.summary(true), entry.size);
+                double wall = ((Number) run.get("durationMs")).doubleValue();
+                if (baseline == null) baseline = wall;
+                run.put("speedup", round(baseline / Math.max(1, wall)));
+                runs.add(run);
+            }
+            report.put("runs", runs);
+            report.put("options", options);
+        } finally {
+            relays.forEach(Process::destroy);
+        }
+        ObjectMapper mapper = new ObjectMapper();
+        Path out = Paths.get(options.get("out")).toAbsolutePath();
+        Files.createDirectories(out.getParent());
+        mapper.writerWithDefaultPrettyPrinter().writeValue(out.toFile(), report);
+        System.out.println(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        System.out.println("Written to " + out);
+        System.exit(0);
+    }
+
+    /** Сводка прогона без списка узлов: время, готовность узлов и нагрузка на контроллер. */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> describe(Map<String, Object> summary, long size) {
+        Map<String, Map<String, Object>> nodes = (Map<String, Map<String, Object>>) summary.get("nodes");
+        long[] completed = nodes.values().stream()
+                .filter(node -> "DONE".equals(node.get("state")))
+                .mapToLong(node -> ((Number) node.get("completedAtMs")).longValue())
+                .sorted()
+                .toArray();
+        long rootCopies = nodes.values().stream().filter(node -> node.get("parent") == null).count();
+        Map<String, Object> run = new LinkedHashMap<>();
+        run.put("degree", summary.get("degree"));
+        run.put("state", summary.get("state"));
+        run.put("done", summary.get("done"));
+        run.put("failed", summary.get("failed"));
+        run.put("durationMs", summary.get("durationMs"));
+        run.put("p50ReadyMs", completed.length == 0 ? 0 : completed[completed.length / 2]);
+        run.put("lastReadyMs", completed.length == 0 ? 0 : completed[completed.length - 1]);
+        run.put("controllerCopies", rootCopies);
+        run.put("controllerMb", round(rootCopies * size / 1048576.0));
+        Map<String, Object> failed = new LinkedHashMap<>();
+        nodes.forEach((name, node) -> {
+            if ("FAILED".equals(node.get("state"))) failed.put(name, node.get("error"));
+        });
+        if (!failed.isEmpty()) run.put("failedNodes", failed);
+        return run;
+    }
+
+    private static Process startRelay(Map<String, String> options, Path work, Path tokenFile, String name, int port,
+                                      String seed) throws IOException {
+        Path dir = work.resolve(name);
+        Files.createDirectories(dir);
+        List<String> command = new ArrayList<>(Arrays.asList(options.get("python"), options.get("relay"),
+                "--bind", "127.0.0.1", "--port", String.valueOf(port), "--dir", dir.toString(),
+                "--token-file", tokenFile.toString(), "--rate-mbps", options.get("rate-mbps")));
+        if (seed != null) {
+            command.add("--seed");
+            command.add(seed);
+        }
+        File log = work.resolve(name + ".log").toFile();
+        return new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+    }
+
+    private static void awaitHealthy(int port) throws Exception {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            try {
+                HttpURLConnection connection =
+                        (HttpURLConnection) URI.create("http://127.0.0.1:" + port + "/health").toURL().openConnection();
+                try (InputStream body = connection.getInputStream()) {
+                    body.transferTo(OutputStream.nullOutputStream());
+                }
+                if (connection.getResponseCode() == 200) return;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        throw new IOException("Relay on port " + port + " did not start");
+    }
+
+    /** Перед каждым прогоном узлы пустые, иначе relay ответит сразу, что файл уже есть. */
+    private static void clearNodes(Path work) throws IOException {
+        List<Path> nodeDirs;
+        try (Stream<Path> dirs = Files.list(work)) {
+            nodeDirs = dirs.filter(dir -> dir.getFileName().toString().startsWith("node-") && Files.isDirectory(dir))
+                    .collect(Collectors.toList());
+        }
+        for (Path dir : nodeDirs) {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : files.collect(Collectors.toList())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    /** size псевдослучайных байт без буфера на весь артефакт. */
+    private static final class SyntheticStream extends InputStream {
+        private final Random random = new Random(42);
+        private long remaining;
+
+        SyntheticStream(long size) {
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() {
+            if (remaining <= 0) return -1;
+            remaining--;
+            return random.nextInt(256);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (remaining <= 0) return -1;
+            int n = (int) Math.min(length, remaining);
+            byte[] chunk = new byte[n];
+            random.nextBytes(chunk);
+            System.arraycopy(chunk, 0, buffer, offset, n);
+            remaining -= n;
+            return n;
+        }
+    }
+}
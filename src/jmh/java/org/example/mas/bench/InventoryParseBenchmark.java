@@ -0,0 +1,76 @@
+package org.example.mas.bench;
+
+import org.example.mas.utils.InventoryParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор inventory на 1k/10k/50k хостов в INI и YAML.
+ * parse — полный разбор без кэша; cachedParse — повторный InventoryParser.parse неизменённого файла.
+ * Аллокации на операцию — с {@code -prof gc} (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class InventoryParseBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int hosts;
+
+    @Param({"ini", "yaml"})
+    public String format;
+
+    private Path dir;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("mas-bench-inventory");
+        file = dir.resolve("inventory." + ("yaml".equals(format) ? "yml" : "ini"));
+        if ("yaml".equals(format)) {
+            BenchFixtures.writeYamlInventory(file, hosts);
+        } else {
+            BenchFixtures.writeIniInventory(file, hosts);
+        }
+        InventoryParser.parse(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public InventoryParser.Inventory parse() throws IOException {
+        try (Reader reader = Files.newBufferedReader(file)) {
+            return InventoryParser.readerFor(file).read(reader);
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public InventoryParser.Inventory cachedParse() throws IOException {
+        return InventoryParser.parse(file);
+    }
+}
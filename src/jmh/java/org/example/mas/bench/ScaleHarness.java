@@ -0,0 +1,215 @@
+package org.example.mas.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.mas.Main;
+import org.example.mas.Service.DeploymentService;
+import org.example.mas.Service.StatusService;
+import org.example.mas.utils.AnsibleSimulator;
+import org.example.mas.utils.PlaybookExecutor;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.Disposable;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Сквозной прогон развёртывания на N виртуальных хостах: поднимает приложение с mas.ansible.executor=simulator,
+ * генерирует inventory, вызывает DeploymentService.startDeploymentFromInventory и ждёт итогового clusterStatus.
+ * Отчёт: время, CPU контроллера (без потоков симулятора), пик и остаток heap, GC, поток событий статуса,
+ * потоки и heap после создания агентов узлов (сравнение режимов: --mas.agents.group-size=0 и =250).
+ *
+ * <pre>
+ * mvn -Pbench test-compile exec:exec@scale -Dscale.args="--hosts=1000 --time-scale=0.01 --unreachable-rate=0.001"
+ * </pre>
+ * Ключи стенда: hosts, time-scale, latency-ms, forks, failure-rate, unreachable-rate, seed, timeout-minutes, out.
+ * Остальные аргументы (--mas.playbooks.max-parallel=4 и т.п.) передаются приложению.
+ */
+public final class ScaleHarness {
+    private static final List<String> TERMINAL = List.of("DEPLOY CLUSTER", "Ошибка");
+
+    private ScaleHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("hosts", "1000");
+        options.put("time-scale", "0.01");
+        options.put("latency-ms", "200");
+        options.put("forks", "50");
+        options.put("failure-rate", "0");
+        options.put("unreachable-rate", "0");
+        options.put("seed", "42");
+        options.put("timeout-minutes", "30");
+        options.put("out", "target/scale-result.json");
+        List<String> appArgs = new ArrayList<>();
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            if (kv.length == 2 && options.containsKey(kv[0])) {
+                options.put(kv[0], kv[1]);
+            } else {
+                appArgs.add(arg);
+            }
+        }
+
+        int hosts = Integer.parseInt(options.get("hosts"));
+        Path dir = Files.createTempDirectory("mas-scale");
+        Path inventory = dir.resolve("inventory.ini");
+        BenchFixtures.writeIniInventory(inventory, hosts);
+
+        appArgs.add("--server.port=0");
+        appArgs.add("--mas.autostart=false");
+        appArgs.add("--mas.ansible.executor=simulator");
+        appArgs.add("--mas.simulator.forks=" + options.get("forks"));
+        appArgs.add("--mas.simulator.task-latency-ms=" + options.get("latency-ms"));
+        appArgs.add("--mas.simulator.time-scale=" + options.get("time-scale"));
+        appArgs.add("--mas.simulator.failure-rate=" + options.get("failure-rate"));
+        appArgs.add("--mas.simulator.unreachable-rate=" + options.get("unreachable-rate"));
+        appArgs.add("--mas.simulator.seed=" + options.get("seed"));
+        appArgs.add("--mas.paths.inventory=" + inventory);
+        appArgs.add("--mas.paths.playbooks=" + Paths.get("scripts").toAbsolutePath());
+        appArgs.add("--mas.playbook.log-dir=" + dir.resolve("logs"));
+        appArgs.add("--mas.journal.path=" + dir.resolve("deployment.journal"));
+        appArgs.add("--mas.journal.fingerprints-path=" + dir.resolve("stage-fingerprints.json"));
+        appArgs.add("--mas.playbooks.skip-unchanged=false");
+        // Виртуальные хосты недоступны: проверки узлов после развёртывания только мешали бы замеру.
+        appArgs.add("--mas.health.enabled=false");
+
+        try (ConfigurableApplicationContext context = SpringApplication.run(Main.class, appArgs.toArray(new String[0]))) {
+            Map<String, Object> report = run(context, hosts, Long.parseLong(options.get("timeout-minutes")));
+            report.put("options", options);
+            ObjectMapper mapper = new ObjectMapper();
+            Path out = Paths.get(options.get("out")).toAbsolutePath();
+            Files.createDirectories(out.getParent());
+            mapper.writerWithDefaultPrettyPrinter().writeValue(out.toFile(), report);
+            System.out.println(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+            System.out.println("Written to " + out);
+        }
+        System.exit(0);
+    }
+
+    private static Map<String, Object> run(ConfigurableApplicationContext context, int hosts, long timeoutMinutes)
+            throws Exception {
+        DeploymentService deployment = context.getBean(DeploymentService.class);
+        StatusService status = context.getBean(StatusService.class);
+        PlaybookExecutor executor = context.getBean(PlaybookExecutor.class);
+        if (!(executor instanceof AnsibleSimulator)) {
+            throw new IllegalStateException("Simulator is not active: " + executor);
+        }
+        AnsibleSimulator simulator = (AnsibleSimulator) executor;
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+
+        AtomicLong peakHeap = new AtomicLong(heapBefore);
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "scale-heap-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+
+        long versionBefore = status.getVersion();
+        AtomicLong delivered = new AtomicLong();
+        Disposable subscription = status.deltasAfter(versionBefore).subscribe(d -> delivered.incrementAndGet());
+
+        long cpuBefore = os.getProcessCpuTime();
+        long simulatorCpuBefore = simulator.getCpuNanos();
+        long started = System.nanoTime();
+
+        String startMessage = deployment.startDeploymentFromInventory();
+        long deadline = started + TimeUnit.MINUTES.toNanos(timeoutMinutes);
+        String clusterStatus;
+        while (!TERMINAL.contains(clusterStatus = status.snapshot().getClusterStatus())) {
+            if (System.nanoTime() > deadline) {
+                clusterStatus = "TIMEOUT(" + clusterStatus + ")";
+                break;
+            }
+            Thread.sleep(50);
+        }
+
+        long wallNanos = System.nanoTime() - started;
+        long simulatorCpu = simulator.getCpuNanos() - simulatorCpuBefore;
+        long controllerCpu = os.getProcessCpuTime() - cpuBefore - simulatorCpu;
+        long events = status.getVersion() - versionBefore;
+        subscription.dispose();
+        sampler.interrupt();
+        System.gc();
+        long heapAfter = memory.getHeapMemoryUsage().getUsed();
+
+        // Агенты узлов создаются после DEPLOY CLUSTER; activeNodes публикуется, когда они созданы.
+        long agentsStarted = System.nanoTime();
+        long agentsDeadline = agentsStarted + TimeUnit.MINUTES.toNanos(2);
+        while ("DEPLOY CLUSTER".equals(clusterStatus) && status.snapshot().getActiveNodes().isEmpty()
+                && System.nanoTime() < agentsDeadline) {
+            Thread.sleep(50);
+        }
+        long agentsMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - agentsStarted);
+        System.gc();
+        long heapWithAgents = memory.getHeapMemoryUsage().getUsed();
+        int threadsWithAgents = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        double wallSeconds = wallNanos / 1e9;
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("hosts", hosts);
+        report.put("start", startMessage);
+        report.put("clusterStatus", clusterStatus);
+        report.put("stages", status.snapshot().getAnsibleStage());
+        report.put("wallClockMs", TimeUnit.NANOSECONDS.toMillis(wallNanos));
+        report.put("controllerCpuMs", TimeUnit.NANOSECONDS.toMillis(controllerCpu));
+        report.put("controllerCpuCores", round(controllerCpu / (double) wallNanos));
+        report.put("simulatorCpuMs", TimeUnit.NANOSECONDS.toMillis(simulatorCpu));
+        report.put("simulatorLines", simulator.getLinesWritten());
+        report.put("heapBeforeMb", mb(heapBefore));
+        report.put("heapPeakMb", mb(peakHeap.get()));
+        report.put("heapAfterGcMb", mb(heapAfter));
+        report.put("gcCount", gcCount() - gcCountBefore);
+        report.put("gcTimeMs", gcTime() - gcTimeBefore);
+        report.put("agentsCreateMs", agentsMillis);
+        report.put("threadsWithAgents", threadsWithAgents);
+        report.put("heapWithAgentsMb", mb(heapWithAgents));
+        report.put("statusEvents", events);
+        report.put("statusEventsDelivered", delivered.get());
+        report.put("statusEventsPerSecond", round(events / wallSeconds));
+        return report;
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount).filter(c -> c > 0).sum();
+    }
+
+    private static long gcTime() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime).filter(t -> t > 0).sum();
+    }
+
+    private static double mb(long bytes) {
+        return round(bytes / (1024.0 * 1024.0));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.mas.bench;
+
+import org.example.mas.Service.AlertService;
+import org.example.mas.Service.StatusEventBus;
+import org.example.mas.Service.StatusService;
+import org.example.mas.internal.InternalAgentController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * GET /api/status и POST /api/internal/status через весь стек Spring MVC (MockMvc, без сети):
+ * маршрутизация, конвертеры сообщений, ETag/304, разбор JSON тела.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatusEndpointBenchmark {
+
+    private StatusService statusService;
+    private MockMvc mvc;
+    private String etag;
+
+    @Setup
+    public void setUp() throws Exception {
+        statusService = new StatusService();
+        for (int i = 0; i < 200; i++) {
+            statusService.update("bootstrap:10.0.0." + i, "SUCCESS");
+        }
+        statusService.update("clusterStatus", "DEPLOYING");
+        AlertService alerts = new AlertService(new StatusEventBus(statusService, 4096), 5, 600, 20, 200, 20, 50);
+        mvc = MockMvcBuilders.standaloneSetup(new InternalAgentController(statusService, alerts)).build();
+        etag = statusService.snapshot().getETag();
+    }
+
+    @Benchmark
+    public int getStatus() throws Exception {
+        MvcResult result = mvc.perform(get("/api/status")).andReturn();
+        return result.getResponse().getContentAsByteArray().length;
+    }
+
+    @Benchmark
+    public int getStatusNotModified() throws Exception {
+        MvcResult result = mvc.perform(get("/api/status").header(HttpHeaders.IF_NONE_MATCH, etag)).andReturn();
+        return result.getResponse().getStatus();
+    }
+
+    @Benchmark
+    public int postInternalStatus() throws Exception {
+        MvcResult result = mvc.perform(post("/api/internal/status")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"key\":\"bootstrap:10.0.0.7\",\"value\":\"SUCCESS\"}")).andReturn();
+        return result.getResponse().getStatus();
+    }
+}
@@ -0,0 +1,92 @@
+package org.example.mas.bench;
+
+import org.example.mas.DTO.StatusSnapshot;
+import org.example.mas.Service.StatusService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StatusService.update и чтение снимка под конкурентными писателями.
+ * Ключи — как у агентов: bootstrap:&lt;ip&gt; (много разных), clusterStatus, ansibleStage.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatusServiceBenchmark {
+    private static final String STAGES =
+            "{\"01_system_preparation.yml\":\"SUCCESS\",\"02_containerd.yml\":\"RUNNING\",\"03_kubernetes_install.yml\":\"PENDING\"}";
+
+    private StatusService statusService;
+
+    @Setup
+    public void setUp() {
+        statusService = new StatusService();
+        for (int i = 0; i < 1000; i++) {
+            statusService.update("bootstrap:10.0." + (i / 250) + "." + (i % 250), "SUCCESS");
+        }
+    }
+
+    private void write() {
+        int n = ThreadLocalRandom.current().nextInt(1000);
+        switch (n % 3) {
+            case 0:
+                statusService.update("bootstrap:10.0." + (n / 250) + "." + (n % 250), n % 2 == 0 ? "SUCCESS" : "FAILED");
+                break;
+            case 1:
+                statusService.update("clusterStatus", "DEPLOYING");
+                break;
+            default:
+                statusService.update("ansibleStage", STAGES);
+        }
+    }
+
+    @Benchmark
+    @Group("single")
+    @GroupThreads(1)
+    public long updateSingleWriter() {
+        write();
+        return statusService.getVersion();
+    }
+
+    @Benchmark
+    @Group("writers4")
+    @GroupThreads(4)
+    public long update() {
+        write();
+        return statusService.getVersion();
+    }
+
+    /** Читатели /api/status: снимок и его JSON (сериализуется один раз на версию). */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public long mixedUpdate() {
+        write();
+        return statusService.getVersion();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(6)
+    public int mixedRead() throws IOException {
+        StatusSnapshot snapshot = statusService.snapshot();
+        return snapshot.toJson(statusService.getObjectMapper()).length;
+    }
+}
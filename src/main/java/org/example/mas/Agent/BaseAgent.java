@@ -1,37 +1,200 @@
 package org.example.mas.Agent;
 
 import jade.core.Agent;
-import org.example.mas.DTO.StatusUpdateDTO;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import org.example.mas.Service.Deployment;
+import org.example.mas.Service.DeploymentService;
+import org.example.mas.Service.MetricsService;
+import org.example.mas.Service.NodeHealthService;
+import org.example.mas.Service.StatusEventBus;
+import org.example.mas.SpringContextHelper;
+import org.example.mas.utils.InventoryParser;
+import org.example.mas.utils.IoThreads;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.BiConsumer;
 
 
 
 public abstract class BaseAgent extends Agent {
 
     private static final Logger logger = LoggerFactory.getLogger(BaseAgent.class);
+    /** conversation-id сообщения, которым поток ввода-вывода будит агента после завершения задачи. */
+    private static final String IO_DONE = "mas-io-done";
+    private static final MessageTemplate IO_COMPLETIONS = MessageTemplate.MatchConversationId(IO_DONE);
+
+    private StatusEventBus statusBus;
+    /** Развёртывание агента; null — развёртывание по умолчанию с глобальным статусом. */
+    private Deployment boundDeployment;
+    private final List<String> monitoredNodes = new ArrayList<>();
+    private final Queue<Runnable> completions = new ConcurrentLinkedQueue<>();
+    private final Set<Future<?>> running = ConcurrentHashMap.newKeySet();
+    private boolean completionsHandled;
+
+    /**
+     * Привязывает агента к развёртыванию id (аргумент агента от координатора): статус идёт в его шину,
+     * имена узлов в общих сервисах получают префикс id/. null или неизвестный id — развёртывание по умолчанию.
+     */
+    protected void bindDeployment(String id) {
+        if (id == null) return;
+        try {
+            boundDeployment = SpringContextHelper.getBean(DeploymentService.class).getDeployment(id);
+        } catch (Exception e) {
+            logger.warn("Deployment {} unavailable: {}", id, e.getMessage());
+        }
+        if (boundDeployment == null) {
+            logger.warn("Unknown deployment {}, agent {} uses the default one", id, getLocalName());
+        } else {
+            statusBus = boundDeployment.getStatusBus();
+        }
+    }
+
+    protected Deployment getDeployment() {
+        return boundDeployment;
+    }
 
-    private WebClient getWebClient() {
-        return WebClient.builder()
-                .baseUrl("http://localhost:8080")
-                .build();
+    /** Имя узла или стадии в общих для всех развёртываний сервисах, см. {@link Deployment#qualify}. */
+    protected String qualify(String name) {
+        return boundDeployment != null ? boundDeployment.qualify(name) : name;
     }
 
+    /** Имя агента JADE, см. {@link Deployment#agentName}. */
+    protected String agentName(String name) {
+        return boundDeployment != null ? boundDeployment.agentName(name) : name;
+    }
+
+    /**
+     * Публикует обновление статуса в {@link StatusEventBus} того же процесса, без HTTP.
+     * POST /api/internal/status остаётся только для агентов вне JVM.
+     */
     protected void sendStatusUpdate(String key, String value) {
-        logger.info(">>> Sending status update: {} = {}", key, value);
+        logger.debug(">>> Sending status update: {} = {}", key, value);
+        try {
+            if (statusBus == null) {
+                statusBus = SpringContextHelper.getBean(StatusEventBus.class);
+            }
+            statusBus.publish(key, value);
+        } catch (Exception e) {
+            logger.error("Failed to send status update: {}={}", key, value, e);
+        }
+    }
+
+    /**
+     * Ставит узел под периодическую проверку {@link NodeHealthService} (общий планировщик, а не таймер агента).
+     * Адрес, порт, пользователь и ключ берутся из переменных хоста в inventory; проверка снимается в takeDown().
+     * Узел регистрируется под именем {@link #qualify}.
+     */
+    protected void monitorNode(String nodeName, String inventoryPath, String command) {
+        String key = qualify(nodeName);
+        try {
+            NodeHealthService health = SpringContextHelper.getBean(NodeHealthService.class);
+            if (!health.isEnabled()) return;
+            InventoryParser.Host host = inventoryPath != null ? InventoryParser.parse(inventoryPath).getHost(nodeName) : null;
+            if (host == null) {
+                logger.warn("Node {} is not in inventory {}, health probes disabled", nodeName, inventoryPath);
+                return;
+            }
+            int port = Integer.parseInt(host.vars.getOrDefault("ansible_port", "22").trim());
+            health.register(key, host.getHost(), port, host.vars.get("ansible_user"),
+                    host.vars.get("ansible_ssh_private_key_file"), command);
+            monitoredNodes.add(key);
+        } catch (Exception e) {
+            logger.error("Failed to start health probes for {}", nodeName, e);
+        }
+    }
+
+    /**
+     * Выполняет блокирующую работу (процессы, SSH) в потоке {@link IoThreads}, а не в потоке агента: пока она идёт,
+     * агент обрабатывает сообщения. onDone вызывается в потоке агента поведением, которое будит сообщение
+     * IO_DONE от рабочего потока; error — исключение work или CancellationException после cancel(true).
+     * Незавершённые задачи отменяются в takeDown(). Вызывать из потока агента.
+     */
+    protected <T> Future<T> runBlocking(String name, Callable<T> work, BiConsumer<T, Throwable> onDone) {
+        if (!completionsHandled) {
+            completionsHandled = true;
+            addBehaviour(new CyclicBehaviour(this) {
+                @Override
+                public void action() {
+                    if (receive(IO_COMPLETIONS) == null) {
+                        block();
+                        return;
+                    }
+                    Runnable completion = completions.poll();
+                    if (completion != null) completion.run();
+                }
+            });
+        }
+        FutureTask<T> task = new FutureTask<>(work) {
+            @Override
+            protected void done() {
+                running.remove(this);
+                completions.add(() -> complete(name, this, onDone));
+                ACLMessage wake = new ACLMessage(ACLMessage.INFORM);
+                wake.setConversationId(IO_DONE);
+                postMessage(wake);
+            }
+        };
+        running.add(task);
+        IoThreads.start(name, task);
+        return task;
+    }
+
+    private static <T> void complete(String name, Future<T> task, BiConsumer<T, Throwable> onDone) {
+        T value = null;
+        Throwable error = null;
+        try {
+            value = task.get();
+        } catch (ExecutionException e) {
+            error = e.getCause();
+        } catch (CancellationException e) {
+            error = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = e;
+        }
         try {
-            getWebClient()
-                .post()
-                .uri("/api/internal/status")
-                .bodyValue(new StatusUpdateDTO(key, value))
-                .retrieve()
-                .toBodilessEntity()
-                .block();
+            onDone.accept(value, error);
         } catch (Exception e) {
-            System.err.println("Failed to send status update: " + key + "=" + value);
-            e.printStackTrace();
+            logger.error("Completion of {} failed", name, e);
+        }
+    }
+
+    /** Наследники вызывают super.setup() первым: агент учитывается в метрике mas.agents. */
+    @Override
+    protected void setup() {
+        try {
+            SpringContextHelper.getBean(MetricsService.class).agentStarted(getClass().getSimpleName());
+        } catch (Exception e) {
+            logger.debug("Agent metrics unavailable: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    protected void takeDown() {
+        running.forEach(task -> task.cancel(true));
+        try {
+            SpringContextHelper.getBean(MetricsService.class).agentStopped(getClass().getSimpleName());
+        } catch (Exception e) {
+            logger.debug("Agent metrics unavailable: {}", e.getMessage());
+        }
+        if (!monitoredNodes.isEmpty()) {
+            NodeHealthService health = SpringContextHelper.getBean(NodeHealthService.class);
+            monitoredNodes.forEach(health::unregister);
         }
     }
 }
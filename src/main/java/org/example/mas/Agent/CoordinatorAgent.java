@@ -2,46 +2,93 @@ package org.example.mas.Agent;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jade.core.AID;
-import jade.core.behaviours.OneShotBehaviour;
+import jade.core.behaviours.CyclicBehaviour;
 import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
 import jade.wrapper.AgentController;
 import lombok.RequiredArgsConstructor;
+import org.example.mas.DTO.Alert;
+import org.example.mas.Service.AlertService;
+import org.example.mas.Service.AnsibleProcessScheduler;
+import org.example.mas.Service.ArtifactService;
+import org.example.mas.Service.Deployment;
+import org.example.mas.Service.DeploymentService;
+import org.example.mas.Service.JournalService;
+import org.example.mas.Service.MetricsService;
+import org.example.mas.Service.ProfilingService;
 import org.example.mas.Service.StatusService;
 import org.example.mas.SpringContextHelper;
 import org.example.mas.utils.AnsibleRunner;
+import org.example.mas.utils.DiagnosticsCollector;
 import org.example.mas.utils.InventoryParser;
+import org.example.mas.utils.PlaybookExecutor;
+import org.example.mas.utils.PlaybookReport;
+import org.example.mas.utils.RetryPolicy;
+import org.example.mas.utils.ShardedPlaybookRunner;
+import org.example.mas.utils.StageFingerprint;
+import org.example.mas.utils.StageFingerprintStore;
+import org.example.mas.utils.StageGraph;
+import org.example.mas.utils.StageRetrier;
+import org.example.mas.utils.StageScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class CoordinatorAgent extends BaseAgent {
     private static final Logger logger = LoggerFactory.getLogger(CoordinatorAgent.class);
+    private static final MessageTemplate REQUESTS = MessageTemplate.MatchPerformative(ACLMessage.REQUEST);
     private String inventory;
     private String playbooksDir;
-    private final Map<String, AID> nodeAgents = new HashMap<>();
+    /** Узел → агент, который его обслуживает (свой агент или агент группы). */
+    private final Map<String, AID> nodeAgents = new ConcurrentHashMap<>();
+    /** Созданные агенты узлов и групп: останавливаются вместе с координатором, чтобы следующий запуск мог создать их заново. */
+    private final List<AgentController> nodeControllers = new ArrayList<>();
+    /** takeDown начался: агенты, созданные после него, сразу останавливаются. */
+    private boolean stopping;
+    /** deploy() вернулся и его итог обработан в потоке агента; после обоих событий сообщаем DeploymentService. */
+    private final AtomicInteger finishSignals = new AtomicInteger(2);
+    /** Стадии, завершённые до рестарта (из журнала): плейбук → отпечаток входных данных. */
+    private Map<String, String> completedStages = Map.of();
+    /** Запуск с force из запроса: все стадии выполняются, даже если входные данные не менялись. */
+    private boolean forceAll;
+    /** Воркеры, отправленные в карантин при развёртывании: для них не создаются агенты. */
+    private Set<String> quarantinedHosts = Set.of();
+    /** Развёртывание в потоке ввода-вывода; cancel(true) прерывает его. */
+    private volatile Future<Boolean> deployment;
+    private volatile StageScheduler stages;
+    /** DEPLOYING, CANCELLING, CANCELLED, FAILED или DEPLOYED — для запроса status. */
+    private volatile String phase = "DEPLOYING";
 
 
     @Override
     protected void setup() {
-        StatusService statusSvc = SpringContextHelper.getBean(StatusService.class);
+        super.setup();
         Object[] args = getArguments();
         if (args == null || args.length < 2) {
             logger.error("CoordinatorAgent requires: inventoryPath, playbooksDir");
@@ -51,47 +98,237 @@ public class CoordinatorAgent extends BaseAgent {
 
         this.inventory = (String) args[0];
         this.playbooksDir = (String) args[1];
+        if (args.length > 2 && args[2] instanceof Map) {
+            @SuppressWarnings("unchecked")
+            Map<String, String> completed = (Map<String, String>) args[2];
+            this.completedStages = completed;
+        }
+        if (args.length > 3 && args[3] instanceof Boolean) {
+            this.forceAll = (Boolean) args[3];
+        }
+        if (args.length > 4) bindDeployment((String) args[4]);
+        StatusService statusSvc = getDeployment() != null
+            ? getDeployment().getStatus() : SpringContextHelper.getBean(StatusService.class);
         logger.info("CoordinatorAgent initialized with inventory: {}, playbooksDir: {}", inventory, playbooksDir);
 
-        addBehaviour(new OneShotBehaviour() {
+        deployment = runBlocking("deploy-" + getLocalName(), () -> {
+            try {
+                return deploy(statusSvc);
+            } finally {
+                finishSignal();
+            }
+        }, (deployed, error) -> onDeploymentFinished(statusSvc, deployed, error));
+        addBehaviour(new CyclicBehaviour(this) {
             @Override
             public void action() {
-                logger.info("Starting initial cluster deployment...");
-
-                List<String> playbooks = resolvePlaybooks();
-
-                org.springframework.core.env.Environment env = SpringContextHelper.getBean(org.springframework.core.env.Environment.class);
-                int timeoutMinutes = 15;
-                try {
-                    String t = env.getProperty("mas.playbook.timeout-minutes");
-                    if (t != null && !t.isBlank()) timeoutMinutes = Integer.parseInt(t.trim());
-                } catch (Exception ignored) {}
-
-                for (String playbook : playbooks) {
-                    logger.info("Running playbook: {}", playbook);
-                    sendStatusUpdate("ansibleStage", playbook);
+                ACLMessage request = receive(REQUESTS);
+                if (request == null) {
+                    block();
+                    return;
+                }
+                send(handleRequest(request));
+            }
+        });
+    }
 
-                    AnsibleRunner.AnsibleResult result = AnsibleRunner.run(playbook, inventory, playbooksDir, timeoutMinutes);
+    /**
+     * Развёртывание целиком: выполняется в потоке {@link org.example.mas.utils.IoThreads}, а не в потоке агента,
+     * поэтому агент отвечает на status и cancel, пока идут плейбуки. true — все стадии успешны.
+     */
+    private boolean deploy(StatusService statusSvc) {
+        logger.info("Starting initial cluster deployment...");
 
-                    if (!result.success) {
-                        handlePlaybookFailure(playbook, result);
-                        statusSvc.update("ansibleStage", "Ошибка");
-                        statusSvc.update("clusterStatus","Ошибка");
-                        return;
-                    }
-                }
+        List<String> playbooks = resolvePlaybooks();
 
-                logger.info("Initial cluster deployment completed.");
-                statusSvc.update("ansibleStage", "Успешное разворачивание кластера");
-                statusSvc.update("clusterStatus","DEPLOY CLUSTER");
-                createNodeAgents();
+        Environment env = SpringContextHelper.getBean(Environment.class);
+        int timeoutMinutes = 15;
+        try {
+            String t = env.getProperty("mas.playbook.timeout-minutes");
+            if (t != null && !t.isBlank()) timeoutMinutes = Integer.parseInt(t.trim());
+        } catch (Exception ignored) {}
+        int maxParallel = intProperty(env, "mas.playbooks.max-parallel", 2);
+        int tailLines = intProperty(env, "mas.playbook.output-tail-lines", 200);
+        String logDir = env.getProperty("mas.playbook.log-dir");
+        // Плейбуки берут пакеты, манифест Calico и образы из кэша артефактов MAS (vars.yml: mas_artifact_url).
+        String artifactUrl = env.getProperty("mas.artifacts.public-url", "").trim().replaceAll("/+$", "");
+        Map<String, String> playbookEnv = new HashMap<>();
+        if (!artifactUrl.isEmpty()) {
+            playbookEnv.put("MAS_ARTIFACT_URL", artifactUrl);
+            playbookEnv.put("MAS_ARTIFACT_TOKEN", SpringContextHelper.getBean(ArtifactService.class).getToken());
+            // Образы воркерам — деревом relay через /api/artifacts/distributions (FanoutService).
+            if (Boolean.parseBoolean(env.getProperty("mas.artifacts.fanout.enabled", "false"))) {
+                playbookEnv.put("MAS_ARTIFACT_FANOUT", "true");
+                playbookEnv.put("MAS_RELAY_PORT", env.getProperty("mas.artifacts.fanout.relay-port", "8765"));
+                playbookEnv.put("MAS_DEPLOYMENT_ID", deploymentId());
+            }
+        }
+        ShardedPlaybookRunner.Settings sharding = new ShardedPlaybookRunner.Settings()
+            .shardSize(intProperty(env, "mas.playbooks.shard.size", 0))
+            .processes(intProperty(env, "mas.playbooks.shard.processes", 4))
+            .leaderGroup(env.getProperty("mas.playbooks.shard.leader-group", "central_manager"));
+        // 06 и 07 выполняются на central_manager и сами обходят воркеров через delegate_to: --limit по воркерам их сломает.
+        // В 04, 05 и 08 задачи run_once с when по central_manager: в шарде из одних воркеров они пропускаются.
+        Set<String> unshardable = parseCsv(env.getProperty("mas.playbooks.shard.unshardable",
+                "04_kubernetes_init.yml,05_calico_cni.yml,06_worker_preparation.yml,07_worker_join.yml,08_htcondor.yml")).stream()
+            .map(p -> p.endsWith(".yml") || p.endsWith(".yaml") ? p : p + ".yml")
+            .collect(Collectors.toSet());
+
+        StageGraph graph;
+        try {
+            graph = resolveStageGraph(playbooks);
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid playbook dependencies: {}", e.getMessage());
+            statusSvc.update("clusterStatus","Ошибка");
+            return false;
+        }
+        logger.info("Playbook stage graph: {} (max parallel: {})", graph, maxParallel);
+
+        final int stageTimeout = timeoutMinutes;
+        MetricsService metrics = SpringContextHelper.getBean(MetricsService.class);
+        // Слот общего лимита процессов берётся до таймера процесса: ожидание в очереди не входит в метрики.
+        PlaybookExecutor executor = SpringContextHelper.getBean(AnsibleProcessScheduler.class).admit(deploymentId(),
+            metrics.instrument(SpringContextHelper.getBean(PlaybookExecutor.class)));
+        JournalService journal = getDeployment() != null
+            ? getDeployment().getJournal() : SpringContextHelper.getBean(JournalService.class);
+        ProfilingService profiling = SpringContextHelper.getBean(ProfilingService.class);
+        String runId = Instant.now().toString();
+        Map<String, String> fingerprints = computeFingerprints(playbooks);
+        StageRetrier retrier = createRetrier(env);
+        DiagnosticsCollector diagnostics = createDiagnostics(env);
+        StageScheduler scheduler = new StageScheduler(graph, maxParallel);
+        stages = scheduler;
+        // Слушатель вызывается из setState планировщика: SSH-диагностика упавших стадий собирается после run.
+        Map<String, List<String>> diagnosticsHosts = Collections.synchronizedMap(new LinkedHashMap<>());
+        scheduler.setListener((stage, state, snapshot) -> {
+            publishStageStates(snapshot);
+            // Стадия, выполненная без части хостов, не должна пропускаться при следующем запуске.
+            String fingerprint = retrier.getQuarantined().isEmpty() ? fingerprints.get(stage) : null;
+            journalStage(journal, scheduler, stage, state, fingerprint);
+            if (state == StageScheduler.StageState.FAILED) {
+                diagnosticsHosts.put(stage, handlePlaybookFailure(stage, scheduler.getResult(stage)));
             }
         });
+        planStages(graph, fingerprints, journal, scheduler);
 
+        Map<String, StageScheduler.StageState> states;
+        try {
+            states = scheduler.run(playbook -> {
+                logger.info("Running playbook: {}", playbook);
+                AnsibleRunner.Options options = new AnsibleRunner.Options(playbook, inventory, playbooksDir)
+                    .executor(executor)
+                    .timeoutMinutes(stageTimeout)
+                    .tailLines(tailLines)
+                    .extraEnv(playbookEnv)
+                    .listener(CoordinatorAgent.this::onPlaybookOutput);
+                if (logDir != null && !logDir.isBlank()) {
+                    options.logDir(Paths.get(logDir).toAbsolutePath());
+                }
+                long startedAt = System.currentTimeMillis();
+                long started = System.nanoTime();
+                AnsibleRunner.AnsibleResult result = retrier.run(options, o -> unshardable.contains(playbook)
+                    ? AnsibleRunner.run(o)
+                    : ShardedPlaybookRunner.run(o, sharding));
+                long elapsed = System.nanoTime() - started;
+                metrics.recordStage(playbook, result, elapsed);
+                if (result.report != null) {
+                    profiling.record(qualify(playbook), runId, startedAt, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                        result.success, result.report.getTaskTimings());
+                }
+                return result;
+            });
+            diagnosticsHosts.forEach((stage, hosts) -> collectDiagnostics(diagnostics, stage, hosts));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Cluster deployment interrupted or cancelled");
+            statusSvc.update("clusterStatus", "CANCELLING".equals(phase) ? "CANCELLED" : "Ошибка");
+            return false;
+        } finally {
+            closeDiagnostics(diagnostics);
+        }
 
+        boolean allSucceeded = states.values().stream()
+            .allMatch(s -> s == StageScheduler.StageState.SUCCESS || s == StageScheduler.StageState.SKIPPED);
+        journal.deploymentFinished(allSucceeded ? "SUCCESS" : "FAILED");
+        if (!allSucceeded) {
+            logger.error("Cluster deployment failed, stage states: {}", states);
+            statusSvc.update("clusterStatus","Ошибка");
+            return false;
+        }
 
+        quarantinedHosts = retrier.getQuarantined().keySet();
+        if (quarantinedHosts.isEmpty()) {
+            logger.info("Initial cluster deployment completed.");
+        } else {
+            logger.warn("Initial cluster deployment completed without quarantined hosts {}", quarantinedHosts);
+        }
+        return true;
+    }
 
+    /** Вызывается в потоке агента после deploy: агенты узлов создаются тоже вне его потока. */
+    private void onDeploymentFinished(StatusService statusSvc, Boolean deployed, Throwable error) {
+        finishSignal();
+        if (error instanceof CancellationException) {
+            // deploy() ещё сворачивается: прерванные плейбуки убиваются, статус ставится им самим, а о завершении
+            // DeploymentService узнает, когда он вернётся (finishSignal).
+            phase = "CANCELLED";
+            logger.warn("Cluster deployment cancelled");
+            return;
+        }
+        if (error != null) {
+            phase = "FAILED";
+            logger.error("Cluster deployment failed", error);
+            statusSvc.update("clusterStatus","Ошибка");
+            return;
+        }
+        if (!Boolean.TRUE.equals(deployed)) {
+            phase = "FAILED";
+            return;
+        }
+        phase = "DEPLOYED";
+        statusSvc.update("clusterStatus","DEPLOY CLUSTER");
+        runBlocking("node-agents", () -> {
+            createNodeAgents();
+            return null;
+        }, (ignored, e) -> {
+            if (e != null) logger.error("Failed to create node agents", e);
+        });
     }
+
+    /**
+     * Запросы к координатору (REQUEST с content): status — фаза развёртывания и состояния стадий,
+     * cancel — отмена развёртывания (плейбуки прерываются, журнал остаётся незавершённым для возобновления).
+     */
+    private ACLMessage handleRequest(ACLMessage request) {
+        ACLMessage reply = request.createReply();
+        String command = request.getContent() == null ? "" : request.getContent().trim();
+        switch (command) {
+            case "status": {
+                Map<String, Object> status = new LinkedHashMap<>();
+                status.put("phase", phase);
+                StageScheduler scheduler = stages;
+                status.put("stages", scheduler != null ? scheduler.snapshot() : Map.of());
+                reply.setPerformative(ACLMessage.INFORM);
+                reply.setContent(toJson(new ObjectMapper(), status));
+                break;
+            }
+            case "cancel": {
+                Future<Boolean> running = deployment;
+                boolean cancelled = running != null && running.cancel(true);
+                if (cancelled) {
+                    phase = "CANCELLING";
+                    logger.warn("Cluster deployment cancel requested by {}", request.getSender());
+                }
+                reply.setPerformative(cancelled ? ACLMessage.AGREE : ACLMessage.REFUSE);
+                reply.setContent(phase);
+                break;
+            }
+            default:
+                reply.setPerformative(ACLMessage.NOT_UNDERSTOOD);
+                reply.setContent("Unknown request for coordinator: " + command);
+        }
+        return reply;
+    }
+
     private List<String> resolvePlaybooks() {
         List<String> defaults = List.of(
             "01_system_preparation.yml",
@@ -147,53 +384,437 @@ public class CoordinatorAgent extends BaseAgent {
         }
     }
 
+    /**
+     * Зависимости стадий по умолчанию. Все штатные плейбуки работают на пересекающихся группах хостов
+     * (apt/dnf, kubeadm reset, CNI-state), поэтому по умолчанию они образуют цепочку; параллелизм
+     * включается переопределением mas.playbooks.depends.&lt;имя плейбука без .yml&gt;=a.yml,b.yml.
+     */
+    private static final Map<String, List<String>> DEFAULT_DEPENDENCIES = Map.of(
+        "01_system_preparation.yml", List.of(),
+        "02_containerd.yml", List.of("01_system_preparation.yml"),
+        "03_kubernetes_install.yml", List.of("02_containerd.yml"),
+        "04_kubernetes_init.yml", List.of("03_kubernetes_install.yml"),
+        "05_calico_cni.yml", List.of("04_kubernetes_init.yml"),
+        "06_worker_preparation.yml", List.of("05_calico_cni.yml"),
+        "07_worker_join.yml", List.of("06_worker_preparation.yml"),
+        "08_htcondor.yml", List.of("07_worker_join.yml")
+    );
+
+    private StageGraph resolveStageGraph(List<String> playbooks) {
+        Map<String, List<String>> declared = new HashMap<>(DEFAULT_DEPENDENCIES);
+        Environment env = SpringContextHelper.getBean(Environment.class);
+        for (String playbook : playbooks) {
+            String key = "mas.playbooks.depends." + playbook.replaceFirst("\\.ya?ml$", "");
+            String value = env.getProperty(key);
+            if (value != null) {
+                declared.put(playbook, parseCsv(value).stream()
+                    .map(dep -> dep.endsWith(".yml") || dep.endsWith(".yaml") ? dep : dep + ".yml")
+                    .collect(Collectors.toList()));
+            }
+        }
+        return StageGraph.build(playbooks, declared);
+    }
+
+    /** Отпечатки входных данных стадий; стадия без отпечатка (файл не читается) всегда выполняется. */
+    private Map<String, String> computeFingerprints(List<String> playbooks) {
+        Map<String, String> fingerprints = new HashMap<>();
+        InventoryParser.Inventory inv;
+        try {
+            inv = InventoryParser.parse(inventory);
+        } catch (Exception e) {
+            logger.warn("Failed to read inventory for stage fingerprints: {}", e.getMessage());
+            return fingerprints;
+        }
+        for (String playbook : playbooks) {
+            try {
+                StageFingerprint fp = StageFingerprint.compute(Paths.get(playbooksDir), playbook, inv);
+                fingerprints.put(playbook, fp.value);
+                logger.debug("Fingerprint {} = {} over {} on {}", playbook, fp.value, fp.files, fp.hosts);
+            } catch (Exception e) {
+                logger.warn("Failed to fingerprint {}: {}", playbook, e.getMessage());
+            }
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Помечает SKIPPED стадии, входные данные которых не менялись с последнего успешного запуска
+     * (или с прерванного развёртывания, которое возобновляется). Стадия пропускается, только если
+     * пропускаются и все её зависимости: повторный запуск предыдущей стадии может изменить хосты.
+     * Решение и причина по каждой стадии публикуются в статус под ключом stagePlan.
+     */
+    private void planStages(StageGraph graph, Map<String, String> fingerprints, JournalService journal,
+                            StageScheduler scheduler) {
+        Environment env = SpringContextHelper.getBean(Environment.class);
+        boolean skipUnchanged = !"false".equalsIgnoreCase(env.getProperty("mas.playbooks.skip-unchanged", "true").trim());
+        String forceProp = env.getProperty("mas.playbooks.force", "false").trim();
+        boolean forceEverything = forceAll || "true".equalsIgnoreCase(forceProp);
+        Set<String> forced = "false".equalsIgnoreCase(forceProp) || "true".equalsIgnoreCase(forceProp)
+            ? Set.of()
+            : parseCsv(forceProp).stream()
+                .map(dep -> dep.endsWith(".yml") || dep.endsWith(".yaml") ? dep : dep + ".yml")
+                .collect(Collectors.toSet());
+
+        Map<String, String> reasons = new LinkedHashMap<>();
+        Set<String> unchanged = new LinkedHashSet<>();
+        for (String stage : graph.getStages()) {
+            String current = fingerprints.get(stage);
+            if (forceEverything || forced.contains(stage)) {
+                reasons.put(stage, "forced");
+                continue;
+            }
+            String resumed = completedStages.get(stage);
+            if (current != null && current.equals(resumed)) {
+                unchanged.add(stage);
+                reasons.put(stage, "completed before restart");
+                continue;
+            }
+            if (!skipUnchanged) {
+                reasons.put(stage, "skip-unchanged disabled");
+                continue;
+            }
+            StageFingerprintStore.Entry last = journal.lastSuccess(stage).orElse(null);
+            String change = StageFingerprint.describeChange(last == null ? null : last.fingerprint, current);
+            if (change == null) {
+                unchanged.add(stage);
+                reasons.put(stage, "unchanged since " + Instant.ofEpochMilli(last.succeededAt));
+            } else {
+                reasons.put(stage, change);
+            }
+        }
+
+        // Стадия с изменившейся зависимостью выполняется заново, даже если её собственные файлы те же.
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (String stage : new ArrayList<>(unchanged)) {
+                for (String dep : graph.getDependencies(stage)) {
+                    if (!unchanged.contains(dep)) {
+                        unchanged.remove(stage);
+                        reasons.put(stage, "dependency " + dep + " runs");
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        Map<String, Map<String, String>> plan = new LinkedHashMap<>();
+        for (String stage : graph.getStages()) {
+            boolean skip = unchanged.contains(stage);
+            if (skip) {
+                scheduler.markSkipped(stage);
+            }
+            logger.info("{} {}: {}", skip ? "Skipping" : "Running", stage, reasons.get(stage));
+            plan.put(stage, Map.of("action", skip ? "SKIP" : "RUN", "reason", reasons.get(stage)));
+        }
+        try {
+            sendStatusUpdate("stagePlan", new ObjectMapper().writeValueAsString(plan));
+        } catch (Exception e) {
+            logger.warn("Failed to publish stage plan: {}", e.getMessage());
+        }
+    }
+
+    private void journalStage(JournalService journal, StageScheduler scheduler, String stage,
+                              StageScheduler.StageState state, String fingerprint) {
+        switch (state) {
+            case RUNNING:
+                journal.stageStarted(stage, fingerprint);
+                break;
+            case SUCCESS:
+            case FAILED:
+            case SKIPPED: {
+                Map<String, String> hosts = new LinkedHashMap<>();
+                AnsibleRunner.AnsibleResult result = scheduler.getResult(stage);
+                if (result != null) {
+                    result.report.getHostOutcomes().forEach((host, outcome) -> hosts.put(host, outcome.name()));
+                }
+                journal.stageFinished(stage, state.name(), fingerprint, hosts);
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Повторы упавших стадий: mas.retry.&lt;класс ошибки&gt;.retries/backoff-seconds/multiplier/max-backoff-seconds
+     * (класс в нижнем регистре через дефис: connection-failure), общий mas.retry.budget и карантин
+     * mas.retry.quarantine.group/max-hosts. Попытки публикуются в статус под ключом retry:&lt;плейбук&gt;,
+     * карантин — под quarantinedHosts.
+     */
+    private StageRetrier createRetrier(Environment env) {
+        RetryPolicy defaults = RetryPolicy.defaults();
+        RetryPolicy policy = new RetryPolicy()
+            .budget(intProperty(env, "mas.retry.budget", 10))
+            .quarantineGroup(env.getProperty("mas.retry.quarantine.group", "execute_nodes"))
+            .maxQuarantined(intProperty(env, "mas.retry.quarantine.max-hosts", 0));
+        for (String errorCode : List.of("CONNECTION_FAILURE", "TIMEOUT", "EXECUTION_ERROR", "EXCEPTION")) {
+            String prefix = "mas.retry." + errorCode.toLowerCase().replace('_', '-') + ".";
+            RetryPolicy.Rule rule = defaults.ruleFor(errorCode);
+            policy.rule(errorCode, new RetryPolicy.Rule(
+                intProperty(env, prefix + "retries", rule.maxRetries),
+                intProperty(env, prefix + "backoff-seconds", (int) (rule.backoffMillis / 1000)) * 1000L,
+                env.getProperty(prefix + "multiplier", Double.class, rule.multiplier),
+                intProperty(env, prefix + "max-backoff-seconds", (int) (rule.maxBackoffMillis / 1000)) * 1000L));
+        }
+
+        InventoryParser.Inventory inv = null;
+        try {
+            inv = InventoryParser.parse(inventory);
+        } catch (Exception e) {
+            logger.warn("Failed to read inventory for quarantine, quarantine disabled: {}", e.getMessage());
+        }
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, String> quarantine = new LinkedHashMap<>();
+        return new StageRetrier(policy, inv, new StageRetrier.Listener() {
+            @Override
+            public void onRetry(String playbook, int attempt, String errorCode, Collection<String> hosts, long backoffMillis) {
+                Map<String, Object> retry = new LinkedHashMap<>();
+                retry.put("attempt", attempt);
+                retry.put("errorCode", errorCode);
+                retry.put("hosts", hosts);
+                retry.put("backoffMs", backoffMillis);
+                retry.put("budgetLeft", policy.remainingBudget());
+                sendStatusUpdate("retry:" + playbook, toJson(mapper, retry));
+            }
+
+            @Override
+            public void onQuarantine(String playbook, Map<String, String> hosts) {
+                sendAlert(Alert.Severity.WARNING, playbook, StageRetrier.QUARANTINED, hosts.keySet(),
+                    "quarantined after repeated failures, deployment continues without them");
+                String json;
+                synchronized (quarantine) {
+                    quarantine.putAll(hosts);
+                    json = toJson(mapper, quarantine);
+                }
+                sendStatusUpdate("quarantinedHosts", json);
+            }
+        });
+    }
+
+    private static String toJson(ObjectMapper mapper, Object value) {
+        try {
+            return mapper.writeValueAsString(value);
+        } catch (Exception e) {
+            logger.warn("Failed to serialize {}: {}", value, e.getMessage());
+            return "{}";
+        }
+    }
+
+    /** Прогресс плейбука в реальном времени: заголовки PLAY/TASK и итоговый PLAY RECAP. */
+    private void onPlaybookOutput(String playbook, String line) {
+        if (line.startsWith("PLAY [") || line.startsWith("TASK [") || line.startsWith("PLAY RECAP")) {
+            logger.info("[{}] {}", playbook, line.replaceAll("\\s*\\*+$", ""));
+        } else if (line.startsWith("fatal:") || line.contains("UNREACHABLE!")) {
+            logger.warn("[{}] {}", playbook, line);
+        }
+    }
+
+    private int intProperty(Environment env, String key, int defaultValue) {
+        try {
+            String value = env.getProperty(key);
+            if (value != null && !value.isBlank()) return Integer.parseInt(value.trim());
+        } catch (Exception ignored) {}
+        return defaultValue;
+    }
+
+    private void publishStageStates(Map<String, StageScheduler.StageState> snapshot) {
+        try {
+            sendStatusUpdate("ansibleStage", new ObjectMapper().writeValueAsString(snapshot));
+        } catch (Exception e) {
+            logger.warn("Failed to publish stage states: {}", e.getMessage());
+        }
+    }
+
     private List<String> parseCsv(String value) {
         return Arrays.stream(value.split(","))
             .map(String::trim)
             .filter(v -> !v.isEmpty())
             .collect(Collectors.toList());
     }
-    private void handlePlaybookFailure(String playbook, AnsibleRunner.AnsibleResult result) {
+    /** Алерт и failedHosts упавшей стадии; возвращает хосты, с которых собрать диагностику. */
+    private List<String> handlePlaybookFailure(String playbook, AnsibleRunner.AnsibleResult result) {
         String alert = "Playbook " + playbook + " failed: " + result.errorCode;
         logger.error(alert + " | Details: " + result.details);
 
+        PlaybookReport report = result.report;
+        List<String> unreachable = report.getUnreachableHosts();
+        List<String> failed = report.getFailedHosts();
+        report.getFailureMessages().forEach((host, message) -> logger.error("[{}] {}: {}", playbook, host, message));
+
+        // Один алерт на стадию: все упавшие хосты в одном событии, группировка — в AlertService.
         switch (result.errorCode) {
             case "TIMEOUT":
-                sendAlert("ALERT: TIMEOUT in " + playbook + ". Check network or increase timeout.");
+                sendAlert(Alert.Severity.ERROR, playbook, result.errorCode, List.of(),
+                    "Check network or increase timeout.");
                 break;
             case "CONNECTION_FAILURE":
-                sendAlert("ALERT: UNREACHABLE NODE during " + playbook + ". Verify inventory and SSH keys.");
+                sendAlert(Alert.Severity.ERROR, playbook, result.errorCode, unreachable,
+                    "Unreachable nodes. Verify inventory and SSH keys.");
                 break;
             default:
-                sendAlert("ALERT: Execution failed in " + playbook + ": " + result.errorCode);
+                List<String> hosts = new ArrayList<>(failed);
+                hosts.addAll(unreachable);
+                sendAlert(Alert.Severity.ERROR, playbook, result.errorCode, hosts, "Execution failed.");
         }
 
-        collectDiagnosticLogs();
+        if (!failed.isEmpty() || !unreachable.isEmpty()) {
+            Map<String, PlaybookReport.HostOutcome> outcomes = new LinkedHashMap<>();
+            report.getHostOutcomes().forEach((host, outcome) -> {
+                if (outcome == PlaybookReport.HostOutcome.FAILED || outcome == PlaybookReport.HostOutcome.UNREACHABLE) {
+                    outcomes.put(host, outcome);
+                }
+            });
+            try {
+                sendStatusUpdate("failedHosts:" + playbook, new ObjectMapper().writeValueAsString(outcomes));
+            } catch (Exception e) {
+                logger.warn("Failed to publish failed hosts for {}: {}", playbook, e.getMessage());
+            }
+        }
+
+        List<String> hosts = new ArrayList<>(failed);
+        hosts.addAll(unreachable);
+        return hosts;
     }
 
+    /**
+     * Сборщик диагностики на это развёртывание: архив mas.diagnostics.dir/&lt;имя координатора&gt;.zip,
+     * настройки mas.diagnostics.*; null, если mas.diagnostics.enabled = false.
+     */
+    private DiagnosticsCollector createDiagnostics(Environment env) {
+        if ("false".equalsIgnoreCase(env.getProperty("mas.diagnostics.enabled", "true").trim())) {
+            return null;
+        }
+        DiagnosticsCollector.Settings settings = new DiagnosticsCollector.Settings()
+            .parallelism(intProperty(env, "mas.diagnostics.parallelism", 8))
+            .maxBytesPerHost(intProperty(env, "mas.diagnostics.max-kb-per-host", 1024) * 1024)
+            .connectTimeoutMillis(intProperty(env, "mas.diagnostics.connect-timeout-seconds", 10) * 1000)
+            .execTimeoutMillis(intProperty(env, "mas.diagnostics.exec-timeout-seconds", 60) * 1000)
+            .command(env.getProperty("mas.diagnostics.command"))
+            .user(env.getProperty("mas.diagnostics.user"))
+            .privateKey(env.getProperty("mas.diagnostics.private-key", "~/.ssh/id_ed25519"));
+        Path dir = Paths.get(env.getProperty("mas.diagnostics.dir", "logs/diagnostics")).toAbsolutePath();
+        return new DiagnosticsCollector(dir.resolve(getLocalName() + ".zip"), settings);
+    }
+
+    /**
+     * Диагностика с упавших и недоступных хостов стадии. Если отчёт хостов не знает (TIMEOUT, EXCEPTION),
+     * опрашивается control-plane (central_manager). Итог по хостам — в статусе под diagnostics:&lt;плейбук&gt;.
+     */
+    private void collectDiagnostics(DiagnosticsCollector diagnostics, String playbook, List<String> hosts) {
+        if (diagnostics == null) return;
+        InventoryParser.Inventory inv = null;
+        try {
+            inv = InventoryParser.parse(inventory);
+            if (hosts.isEmpty()) {
+                inv.getGroup("central_manager").forEach(h -> hosts.add(h.name));
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to read inventory for diagnostics: {}", e.getMessage());
+        }
+        if (hosts.isEmpty()) return;
+
+        long start = System.nanoTime();
+        logger.info("Collecting diagnostics of {} from {} hosts", playbook, hosts.size());
+        List<DiagnosticsCollector.HostResult> results = diagnostics.collect(playbook, hosts, inv);
+        Map<String, String> errors = new LinkedHashMap<>();
+        long bytes = 0;
+        int truncated = 0;
+        for (DiagnosticsCollector.HostResult r : results) {
+            bytes += r.bytes;
+            if (r.truncated) truncated++;
+            if (r.error != null) errors.put(r.host, r.error);
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("hosts", hosts.size());
+        summary.put("collected", results.size() - errors.size());
+        summary.put("bytes", bytes);
+        summary.put("truncated", truncated);
+        summary.put("errors", errors);
+        summary.put("archive", diagnostics.getArchive().toString());
+        summary.put("durationMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        sendStatusUpdate("diagnostics:" + playbook, toJson(new ObjectMapper(), summary));
+    }
+
+    /** Закрывает архив развёртывания и публикует путь к нему под diagnosticLogs. */
+    private void closeDiagnostics(DiagnosticsCollector diagnostics) {
+        if (diagnostics == null || !diagnostics.hasEntries()) return;
+        try {
+            diagnostics.close();
+            logger.info("Diagnostics saved to {}", diagnostics.getArchive());
+            sendStatusUpdate("diagnosticLogs", diagnostics.getArchive().toString());
+        } catch (Exception e) {
+            logger.error("Failed to finish diagnostics archive {}", diagnostics.getArchive(), e);
+            sendStatusUpdate("diagnosticLogs", "");
+        }
+    }
+
+    /**
+     * Агенты узлов central_manager и execute_nodes (без отправленных в карантин). При mas.agents.group-size = 0 —
+     * MasterAgent/WorkerAgent на каждый хост; при &gt; 0 — {@link NodeGroupAgent} на каждые group-size узлов.
+     * Агенты создаются параллельно, не больше mas.agents.create-parallelism одновременно.
+     */
     private void createNodeAgents() {
         logger.info("Creating node agents...");
-        List<String> nodeList = new ArrayList<>();
+        Environment env = SpringContextHelper.getBean(Environment.class);
+        int groupSize = intProperty(env, "mas.agents.group-size", 0);
+        int parallelism = Math.max(1, intProperty(env, "mas.agents.create-parallelism", 8));
+        List<String> masters = new ArrayList<>();
+        List<String> workers = new ArrayList<>();
         try {
             InventoryParser.Inventory inv = InventoryParser.parse(this.inventory);
 
             for (InventoryParser.Host master : inv.getGroup("central_manager")) {
-                nodeList.add(master.name);
-                createNodeAgent(master.name, true);
+                masters.add(master.name);
             }
 
             for (InventoryParser.Host worker : inv.getGroup("execute_nodes")) {
-                nodeList.add(worker.name);
-                createNodeAgent(worker.name, false);
+                if (quarantinedHosts.contains(worker.name)) {
+                    logger.warn("Skipping agent for quarantined worker {}", worker.name);
+                    continue;
+                }
+                if (!masters.contains(worker.name)) workers.add(worker.name);
             }
+        } catch (Exception e) {
+            logger.error("Failed to create node agents from inventory", e);
+            return;
+        }
 
-            ObjectMapper mapper = new ObjectMapper();
-            String nodeListJson = mapper.writeValueAsString(nodeList);
-            sendStatusUpdate("activeNodes", nodeListJson);
-
+        long started = System.nanoTime();
+        List<Runnable> tasks = new ArrayList<>();
+        if (groupSize <= 0) {
+            masters.forEach(name -> tasks.add(() -> createNodeAgent(name, true)));
+            workers.forEach(name -> tasks.add(() -> createNodeAgent(name, false)));
+        } else {
+            List<String> all = new ArrayList<>(masters);
+            all.addAll(workers);
+            for (int from = 0, group = 1; from < all.size(); from += groupSize, group++) {
+                List<String> shard = all.subList(from, Math.min(all.size(), from + groupSize));
+                String name = agentName("nodes-" + group);
+                List<String> shardMasters = new ArrayList<>();
+                List<String> shardWorkers = new ArrayList<>();
+                shard.forEach(node -> (masters.contains(node) ? shardMasters : shardWorkers).add(node));
+                tasks.add(() -> createNodeGroupAgent(name, shardMasters, shardWorkers));
+            }
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, tasks.size())));
+        try {
+            CompletableFuture.allOf(tasks.stream()
+                .map(task -> CompletableFuture.runAsync(task, pool))
+                .toArray(CompletableFuture[]::new)).join();
+        } finally {
+            pool.shutdown();
+        }
+        logger.info("Created {} agents for {} nodes in {} ms", tasks.size(), masters.size() + workers.size(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
 
+        List<String> nodeList = new ArrayList<>(masters);
+        nodeList.addAll(workers);
+        try {
+            sendStatusUpdate("activeNodes", new ObjectMapper().writeValueAsString(nodeList));
         } catch (Exception e) {
-            logger.error("Failed to create node agents from inventory", e);
+            logger.warn("Failed to publish active nodes: {}", e.getMessage());
         }
     }
 
@@ -209,17 +830,20 @@ public class CoordinatorAgent extends BaseAgent {
             Object[] agentArgs = new Object[]{
                     nodeName,
                     this.inventory,
-                    this.playbooksDir
+                    this.playbooksDir,
+                    deploymentId()
             };
 
+            String localName = agentName(nodeName);
             AgentController ac = getContainerController().createNewAgent(
-                    nodeName,
+                    localName,
                     agentType,
                     agentArgs
             );
             ac.start();
+            track(ac);
 
-            AID agentAID = new AID(nodeName, AID.ISLOCALNAME);
+            AID agentAID = new AID(localName, AID.ISLOCALNAME);
             nodeAgents.put(nodeName, agentAID);
 
             logger.info("Created {} agent: {}", isMaster ? "master" : "worker", nodeName);
@@ -228,44 +852,91 @@ public class CoordinatorAgent extends BaseAgent {
         }
     }
 
-    private void sendAlert(String message) {
-        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
-        msg.addReceiver(new AID("coordinator", AID.ISLOCALNAME));
-        msg.setContent(message);
-        send(msg);
+    /** Запросы к узлу шарда отправляются агенту группы с параметром node (см. NodeRequestHandler). */
+    private void createNodeGroupAgent(String groupName, List<String> masters, List<String> workers) {
+        try {
+            AgentController ac = getContainerController().createNewAgent(
+                    groupName,
+                    NodeGroupAgent.class.getName(),
+                    new Object[]{groupName, this.inventory, this.playbooksDir, masters, workers, deploymentId()}
+            );
+            ac.start();
+            track(ac);
+
+            AID agentAID = new AID(groupName, AID.ISLOCALNAME);
+            masters.forEach(node -> nodeAgents.put(node, agentAID));
+            workers.forEach(node -> nodeAgents.put(node, agentAID));
+
+            logger.info("Created node group agent {}: {} masters, {} workers", groupName, masters.size(), workers.size());
+        } catch (Exception e) {
+            logger.error("Failed to create node group agent: " + groupName, e);
+        }
+    }
+
+    private void track(AgentController controller) {
+        synchronized (nodeControllers) {
+            if (!stopping) {
+                nodeControllers.add(controller);
+                return;
+            }
+        }
+        killQuietly(controller);
     }
-    private void collectDiagnosticLogs() {
-    try {
-        Path logPath = Paths.get(System.getProperty("user.dir"), "diagnostic-logs.txt");
-        logger.info("Saving diagnostic logs to: {}", logPath.toAbsolutePath());
 
-        String kubeletLog = executeCommand("journalctl", "-u", "kubelet", "--since=-1h", "-n", "50");
-        String containerdLog = executeCommand("systemctl", "status", "containerd");
+    private void killQuietly(AgentController controller) {
+        try {
+            controller.kill();
+        } catch (Exception e) {
+            logger.warn("Failed to stop node agent: {}", e.getMessage());
+        }
+    }
 
-        String fullLog = "=== KUBELET ===\n" + (kubeletLog != null ? kubeletLog : "N/A") +
-                        "\n\n=== CONTAINERD ===\n" + (containerdLog != null ? containerdLog : "N/A");
+    /**
+     * После cancel(true) итог приходит в поток агента сразу, а deploy() ещё прерывает плейбуки: о завершении
+     * сообщаем, только когда произошло и то и другое.
+     */
+    private void finishSignal() {
+        if (finishSignals.decrementAndGet() == 0) notifyFinished();
+    }
 
-        Files.write(logPath, fullLog.getBytes(StandardCharsets.UTF_8));
-        logger.info("Diagnostic logs saved successfully");
+    /** Развёртывание закончено: DeploymentService снова принимает запуск с этим id (журнал по-прежнему решает, возобновлять ли). */
+    private void notifyFinished() {
+        try {
+            SpringContextHelper.getBean(DeploymentService.class).coordinatorFinished(deploymentId(), getLocalName());
+        } catch (Exception e) {
+            logger.warn("Failed to report finished deployment {}: {}", deploymentId(), e.getMessage());
+        }
+    }
 
-        sendStatusUpdate("diagnosticLogs", logPath.toAbsolutePath().toString());
-        logger.info("Diagnostic logs saved to: {}", logPath);
+    /**
+     * Остановка агента (отмена развёртывания или новый запуск через DeploymentService) прерывает идущие плейбуки
+     * как cancel и останавливает агенты узлов этого запуска.
+     */
+    @Override
+    protected void takeDown() {
+        Future<Boolean> running = deployment;
+        if (running != null && !running.isDone()) phase = "CANCELLING";
+        List<AgentController> created;
+        synchronized (nodeControllers) {
+            stopping = true;
+            created = new ArrayList<>(nodeControllers);
+            nodeControllers.clear();
+        }
+        created.forEach(this::killQuietly);
+        if (!created.isEmpty()) logger.info("Stopped {} node agents of {}", created.size(), getLocalName());
+        super.takeDown();
+    }
 
-    } catch (Exception e) {
-        logger.error("Failed to collect diagnostic logs", e);
-        sendStatusUpdate("diagnosticLogs", "");
+    private String deploymentId() {
+        return getDeployment() != null ? getDeployment().getId() : Deployment.DEFAULT_ID;
     }
-}
 
-    private String executeCommand(String... args) {
+    private void sendAlert(Alert.Severity severity, String stage, String errorClass, Collection<String> hosts,
+                           String message) {
         try {
-            Process p = new ProcessBuilder(args).start();
-            try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
-                return r.lines().collect(Collectors.joining("\n"));
-            }
+            SpringContextHelper.getBean(AlertService.class).raise(severity, qualify(stage), errorClass, hosts, message);
         } catch (Exception e) {
-            logger.warn("Command failed: {}", String.join(" ", args), e);
-            return null;
+            logger.error("Failed to raise alert {} {}: {}", stage, errorClass, message, e);
         }
     }
 
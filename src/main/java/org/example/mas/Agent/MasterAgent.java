@@ -1,15 +1,42 @@
 package org.example.mas.Agent;
 
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import org.example.mas.SpringContextHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
 
 public class MasterAgent extends BaseAgent {
     private static final Logger logger = LoggerFactory.getLogger(MasterAgent.class);
+    private static final MessageTemplate REQUESTS = MessageTemplate.MatchPerformative(ACLMessage.REQUEST);
+    static final String DEFAULT_CHECK = "systemctl is-active --quiet kubelet && systemctl is-active --quiet containerd"
+            + " && curl -skf -o /dev/null https://127.0.0.1:6443/readyz";
 
     @Override
     protected void setup() {
+        super.setup();
         Object[] args = getArguments();
         String nodeName = args != null && args.length > 0 ? (String) args[0] : "unknown";
         logger.info("MasterAgent {} initialized for node: {}", getLocalName(), nodeName);
+
+        String inventory = args != null && args.length > 1 ? (String) args[1] : null;
+        if (args != null && args.length > 3) bindDeployment((String) args[3]);
+        Environment env = SpringContextHelper.getBean(Environment.class);
+        monitorNode(nodeName, inventory, env.getProperty("mas.health.master-command", DEFAULT_CHECK));
+
+        NodeRequestHandler handler = new NodeRequestHandler(nodeName, qualify(nodeName));
+        addBehaviour(new CyclicBehaviour(this) {
+            @Override
+            public void action() {
+                ACLMessage request = receive(REQUESTS);
+                if (request == null) {
+                    block();
+                    return;
+                }
+                send(handler.handle(request));
+            }
+        });
     }
 }
@@ -0,0 +1,97 @@
+package org.example.mas.Agent;
+
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import org.example.mas.SpringContextHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Один агент на шард узлов вместо MasterAgent/WorkerAgent на каждый хост: один поток JADE и одна очередь
+ * сообщений на шард. Состояние узла компактное — имя в отсортированном массиве и бит роли; обработчик запросов
+ * узла ({@link NodeRequestHandler}) создаётся, только когда узлу приходит первый запрос, и тогда же узел
+ * регистрируется в общем NodeHealthService. Узел запроса — параметр {@link NodeRequestHandler#NODE_PARAM}.
+ *
+ * <p>Аргументы: имя группы, inventory, playbooksDir, список мастеров, список воркеров, id развёртывания (необязательно).
+ */
+public class NodeGroupAgent extends BaseAgent {
+    private static final Logger logger = LoggerFactory.getLogger(NodeGroupAgent.class);
+    private static final MessageTemplate REQUESTS = MessageTemplate.MatchPerformative(ACLMessage.REQUEST);
+
+    /** Имена узлов шарда, отсортированы для двоичного поиска. */
+    private String[] nodes;
+    /** master[i] — узел nodes[i] из central_manager. */
+    private boolean[] master;
+    /** Обработчики узлов, которым уже приходили запросы. */
+    private final Map<Integer, NodeRequestHandler> active = new HashMap<>();
+    private String inventory;
+    private String masterCheck;
+    private String workerCheck;
+
+    @Override
+    protected void setup() {
+        super.setup();
+        Object[] args = getArguments();
+        if (args == null || args.length < 5) {
+            logger.error("NodeGroupAgent requires: group, inventoryPath, playbooksDir, masters, workers");
+            doDelete();
+            return;
+        }
+        inventory = (String) args[1];
+        @SuppressWarnings("unchecked")
+        List<String> masters = (List<String>) args[3];
+        @SuppressWarnings("unchecked")
+        List<String> workers = (List<String>) args[4];
+        if (args.length > 5) bindDeployment((String) args[5]);
+
+        nodes = new String[masters.size() + workers.size()];
+        int i = 0;
+        for (String name : masters) nodes[i++] = name;
+        for (String name : workers) nodes[i++] = name;
+        Arrays.sort(nodes);
+        master = new boolean[nodes.length];
+        for (String name : masters) master[Arrays.binarySearch(nodes, name)] = true;
+
+        Environment env = SpringContextHelper.getBean(Environment.class);
+        masterCheck = env.getProperty("mas.health.master-command", MasterAgent.DEFAULT_CHECK);
+        workerCheck = env.getProperty("mas.health.worker-command", WorkerAgent.DEFAULT_CHECK);
+        logger.info("NodeGroupAgent {} initialized for {} nodes ({} masters)", getLocalName(), nodes.length, masters.size());
+
+        addBehaviour(new CyclicBehaviour(this) {
+            @Override
+            public void action() {
+                ACLMessage request = receive(REQUESTS);
+                if (request == null) {
+                    block();
+                    return;
+                }
+                send(dispatch(request));
+            }
+        });
+    }
+
+    private ACLMessage dispatch(ACLMessage request) {
+        String node = request.getUserDefinedParameter(NodeRequestHandler.NODE_PARAM);
+        int index = node == null ? -1 : Arrays.binarySearch(nodes, node);
+        if (index < 0) {
+            ACLMessage reply = request.createReply();
+            reply.setPerformative(ACLMessage.REFUSE);
+            reply.setContent("Node " + node + " is not managed by " + getLocalName());
+            return reply;
+        }
+        return active.computeIfAbsent(index, this::activate).handle(request);
+    }
+
+    /** Первый запрос к узлу: проверка здоровья и обработчик. */
+    private NodeRequestHandler activate(int index) {
+        monitorNode(nodes[index], inventory, master[index] ? masterCheck : workerCheck);
+        return new NodeRequestHandler(nodes[index], qualify(nodes[index]));
+    }
+}
@@ -0,0 +1,45 @@
+package org.example.mas.Agent;
+
+import jade.lang.acl.ACLMessage;
+import org.example.mas.Service.NodeHealthService;
+import org.example.mas.SpringContextHelper;
+
+/**
+ * Запросы к узлу (REQUEST с content): health — текущее состояние из {@link NodeHealthService},
+ * probe — внеочередная проверка. Узел в NodeGroupAgent указывается параметром {@link #NODE_PARAM}.
+ */
+final class NodeRequestHandler {
+    /** Пользовательский параметр ACL-сообщения с именем узла (для NodeGroupAgent). */
+    static final String NODE_PARAM = "node";
+
+    final String node;
+    /** Имя узла в NodeHealthService: у развёртываний кроме default — с префиксом id/. */
+    final String healthKey;
+
+    NodeRequestHandler(String node, String healthKey) {
+        this.node = node;
+        this.healthKey = healthKey;
+    }
+
+    ACLMessage handle(ACLMessage request) {
+        ACLMessage reply = request.createReply();
+        NodeHealthService health = SpringContextHelper.getBean(NodeHealthService.class);
+        String command = request.getContent() == null ? "" : request.getContent().trim();
+        switch (command) {
+            case "health": {
+                NodeHealthService.Health state = health.getHealth(healthKey);
+                reply.setPerformative(ACLMessage.INFORM);
+                reply.setContent(node + "=" + (state != null ? state.name() : "UNMONITORED"));
+                break;
+            }
+            case "probe":
+                reply.setPerformative(health.probeNow(healthKey) ? ACLMessage.AGREE : ACLMessage.REFUSE);
+                reply.setContent(node);
+                break;
+            default:
+                reply.setPerformative(ACLMessage.NOT_UNDERSTOOD);
+                reply.setContent("Unknown request for " + node + ": " + command);
+        }
+        return reply;
+    }
+}
@@ -0,0 +1,103 @@
+package org.example.mas.DTO;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Сгруппированный алерт: все события одной стадии с одним классом ошибки. id постоянен для группы,
+ * revision растёт при каждой публикации (новой или обновлённой группы) и служит id SSE-события.
+ * hosts — не больше заданного числа хостов, hostCount — сколько их всего.
+ */
+@JsonPropertyOrder({"id", "revision", "severity", "stage", "errorClass", "message", "hostCount", "hosts",
+        "occurrences", "firstSeen", "lastSeen"})
+public class Alert {
+    public enum Severity { INFO, WARNING, ERROR, CRITICAL }
+
+    private final long id;
+    private final long revision;
+    private final Severity severity;
+    private final String stage;
+    private final String errorClass;
+    private final String message;
+    private final int hostCount;
+    private final List<String> hosts;
+    private final long occurrences;
+    private final long firstSeen;
+    private final long lastSeen;
+
+    public Alert(long id, long revision, Severity severity, String stage, String errorClass, String message,
+                 int hostCount, List<String> hosts, long occurrences, long firstSeen, long lastSeen) {
+        this.id = id;
+        this.revision = revision;
+        this.severity = severity;
+        this.stage = stage;
+        this.errorClass = errorClass;
+        this.message = message;
+        this.hostCount = hostCount;
+        this.hosts = Collections.unmodifiableList(hosts);
+        this.occurrences = occurrences;
+        this.firstSeen = firstSeen;
+        this.lastSeen = lastSeen;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public Severity getSeverity() {
+        return severity;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public String getErrorClass() {
+        return errorClass;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public int getHostCount() {
+        return hostCount;
+    }
+
+    public List<String> getHosts() {
+        return hosts;
+    }
+
+    public long getOccurrences() {
+        return occurrences;
+    }
+
+    public long getFirstSeen() {
+        return firstSeen;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    /** Строка для списка alerts в /api/status. */
+    public String summary() {
+        StringBuilder sb = new StringBuilder()
+                .append('[').append(severity).append("] ")
+                .append(stage).append(' ').append(errorClass);
+        if (hostCount > 0) {
+            sb.append(" on ").append(hostCount).append(hostCount == 1 ? " host " : " hosts ")
+                    .append(String.join(", ", hosts));
+            if (hostCount > hosts.size()) sb.append(", …");
+        }
+        if (occurrences > 1) sb.append(" x").append(occurrences);
+        if (message != null && !message.isBlank()) sb.append(": ").append(message);
+        return sb.toString();
+    }
+}
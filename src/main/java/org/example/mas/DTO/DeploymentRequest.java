@@ -6,5 +6,11 @@ import lombok.Data;
 public class DeploymentRequest {
     private boolean skipBootstrap;
     private BootstrapRequest bootstrap;
+    /** Выполнить все стадии, даже если их входные данные не менялись с последнего успешного запуска. */
+    private boolean force;
+    /** Только для POST /api/deployments: id развёртывания и его inventory и плейбуки (по умолчанию — mas.paths.*). */
+    private String id;
+    private String inventoryPath;
+    private String playbooksDir;
 }
 
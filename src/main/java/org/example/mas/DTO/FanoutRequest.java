@@ -0,0 +1,23 @@
+package org.example.mas.DTO;
+
+import lombok.Data;
+import org.example.mas.models.FanoutNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class FanoutRequest {
+    /** Имя артефакта в кэше MAS, например images/quay.io_calico_node_v3.32.0.tar. */
+    private String artifact;
+    /** Узлы дерева; пусто — группа mas.artifacts.fanout.group из inventory развёртывания deploymentId. */
+    private List<FanoutNode> nodes = new ArrayList<>();
+    private String deploymentId;
+    /** Степень ветвления; null — mas.artifacts.fanout.degree. */
+    private Integer degree;
+    /**
+     * URL, откуда берут артефакт узлы первого уровня: под public-url или под одним из mas.artifacts.fanout.sources;
+     * null — кэш MAS по mas.artifacts.public-url.
+     */
+    private String source;
+}
@@ -0,0 +1,12 @@
+package org.example.mas.DTO;
+
+import lombok.Data;
+
+/** Одно изменение статуса; version растёт монотонно и служит id SSE-события. */
+@Data
+public class StatusDelta {
+    private final long version;
+    private final String key;
+    private final Object value;
+    private final long timestamp;
+}
@@ -0,0 +1,104 @@
+package org.example.mas.DTO;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.mas.utils.PersistentMap;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Неизменяемый снимок статуса на момент version. Известные ключи типизированы, остальные
+ * (bootstrap:&lt;ip&gt;, failedHosts:&lt;playbook&gt; и т.п.) лежат в extra и сериализуются на верхнем уровне.
+ * JSON строится один раз на снимок и переиспользуется всеми читателями.
+ */
+@JsonPropertyOrder({"version", "clusterStatus", "ansibleStage", "activeNodes", "bootstrapStatus",
+        "alerts", "diagnosticLogs", "lastUpdate"})
+public class StatusSnapshot {
+    /** Версии начинаются заново после рестарта JVM; эпоха в ETag не даёт спутать их со старыми. */
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36);
+
+    private final long version;
+    private final String clusterStatus;
+    private final Map<String, String> ansibleStage;
+    private final List<String> activeNodes;
+    private final String bootstrapStatus;
+    private final List<String> alerts;
+    private final String diagnosticLogs;
+    private final long lastUpdate;
+    private final PersistentMap<String, Object> extra;
+
+    @JsonIgnore
+    private volatile byte[] json;
+
+    public StatusSnapshot(long version, String clusterStatus, Map<String, String> ansibleStage,
+                          List<String> activeNodes, String bootstrapStatus, List<String> alerts,
+                          String diagnosticLogs, long lastUpdate, PersistentMap<String, Object> extra) {
+        this.version = version;
+        this.clusterStatus = clusterStatus;
+        this.ansibleStage = Collections.unmodifiableMap(ansibleStage);
+        this.activeNodes = Collections.unmodifiableList(activeNodes);
+        this.bootstrapStatus = bootstrapStatus;
+        this.alerts = Collections.unmodifiableList(alerts);
+        this.diagnosticLogs = diagnosticLogs;
+        this.lastUpdate = lastUpdate;
+        this.extra = extra;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getClusterStatus() {
+        return clusterStatus;
+    }
+
+    public Map<String, String> getAnsibleStage() {
+        return ansibleStage;
+    }
+
+    public List<String> getActiveNodes() {
+        return activeNodes;
+    }
+
+    public String getBootstrapStatus() {
+        return bootstrapStatus;
+    }
+
+    public List<String> getAlerts() {
+        return alerts;
+    }
+
+    public String getDiagnosticLogs() {
+        return diagnosticLogs;
+    }
+
+    public long getLastUpdate() {
+        return lastUpdate;
+    }
+
+    /** Неизменяема: следующие снимки делят с ней структуру, а не копируют её. */
+    @JsonAnyGetter
+    public PersistentMap<String, Object> getExtra() {
+        return extra;
+    }
+
+    @JsonIgnore
+    public String getETag() {
+        return "\"" + EPOCH + "-" + version + "\"";
+    }
+
+    /** JSON снимка; сериализуется при первом обращении, дальше отдаётся готовый массив. */
+    public byte[] toJson(ObjectMapper mapper) throws JsonProcessingException {
+        byte[] result = json;
+        if (result == null) {
+            result = mapper.writeValueAsBytes(this);
+            json = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,235 @@
+package org.example.mas.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.example.mas.DTO.Alert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Алерты развёртывания и проверок узлов. События группируются по (стадия, класс ошибки): хост
+ * учитывается в группе один раз, повтор события в пределах dedup-seconds только обновляет группу.
+ * Изменённые группы публикуются раз в window-seconds, поэтому 500 отдельных событий одной стадии
+ * дают один алерт на 500 хостов. Новых алертов — не больше rate-per-minute (token bucket): остальные
+ * ждут токена и продолжают собирать события. Последние retention алертов хранятся в памяти,
+ * их сводка — в alerts статуса, сами алерты — в {@link #alertsAfter} для /api/alerts.
+ */
+@Service
+public class AlertService {
+    private static final Logger logger = LoggerFactory.getLogger(AlertService.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final class Group {
+        final String stage;
+        final String errorClass;
+        final Set<String> hosts = new TreeSet<>();
+        final long firstSeen;
+        Alert.Severity severity;
+        String message;
+        long id;
+        long occurrences;
+        long lastSeen;
+        boolean dirty;
+
+        Group(String stage, String errorClass, Alert.Severity severity, long now) {
+            this.stage = stage;
+            this.errorClass = errorClass;
+            this.severity = severity;
+            this.firstSeen = now;
+        }
+    }
+
+    private final StatusEventBus statusBus;
+    private final long windowMillis;
+    private final long dedupMillis;
+    private final int ratePerMinute;
+    private final int retention;
+    private final int statusSize;
+    private final int maxHostsListed;
+
+    private final Object lock = new Object();
+    /** Открытые группы по ключу стадия|класс; закрываются через dedup-seconds без событий. */
+    private final Map<String, Group> groups = new LinkedHashMap<>();
+    /** Опубликованные алерты по id в порядке последней публикации, не больше retention: вытесняются давно не обновлявшиеся. */
+    private final LinkedHashMap<Long, Alert> ring = new LinkedHashMap<>();
+    private final Sinks.Many<Alert> published;
+    private final ScheduledExecutorService flusher;
+    private long nextId = 1;
+    private long revision;
+    private double tokens;
+    private long refilledAt = System.currentTimeMillis();
+    private long delayed;
+
+    public AlertService(StatusEventBus statusBus,
+                        @Value("${mas.alerts.window-seconds:5}") int windowSeconds,
+                        @Value("${mas.alerts.dedup-seconds:600}") int dedupSeconds,
+                        @Value("${mas.alerts.rate-per-minute:20}") int ratePerMinute,
+                        @Value("${mas.alerts.retention:200}") int retention,
+                        @Value("${mas.alerts.status-size:20}") int statusSize,
+                        @Value("${mas.alerts.max-hosts-listed:50}") int maxHostsListed) {
+        this.statusBus = statusBus;
+        this.windowMillis = TimeUnit.SECONDS.toMillis(Math.max(1, windowSeconds));
+        this.dedupMillis = TimeUnit.SECONDS.toMillis(Math.max(0, dedupSeconds));
+        this.ratePerMinute = Math.max(1, ratePerMinute);
+        this.retention = Math.max(1, retention);
+        this.statusSize = Math.max(0, statusSize);
+        this.maxHostsListed = Math.max(0, maxHostsListed);
+        this.tokens = this.ratePerMinute;
+        this.published = Sinks.many().replay().limit(this.retention);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "alert-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Событие алерта; hosts — затронутые хосты (может быть пусто). Публикуется не сразу,
+     * а в конце окна вместе с остальными событиями той же стадии и класса.
+     */
+    public void raise(Alert.Severity severity, String stage, String errorClass, Collection<String> hosts, String message) {
+        long now = System.currentTimeMillis();
+        String key = stage + "|" + errorClass;
+        synchronized (lock) {
+            Group group = groups.get(key);
+            if (group == null || now - group.lastSeen > dedupMillis) {
+                group = new Group(stage, errorClass, severity, now);
+                groups.remove(key);
+                groups.put(key, group);
+            }
+            if (hosts != null) group.hosts.addAll(hosts);
+            if (severity.compareTo(group.severity) > 0) group.severity = severity;
+            group.message = message;
+            group.occurrences++;
+            group.lastSeen = now;
+            group.dirty = true;
+        }
+        logger.debug("Alert event {} {} on {}: {}", stage, errorClass, hosts, message);
+    }
+
+    /** Опубликованные алерты с revision больше afterRevision, по возрастанию revision. */
+    public List<Alert> getAlerts(long afterRevision) {
+        synchronized (lock) {
+            List<Alert> result = new ArrayList<>();
+            for (Alert alert : ring.values()) {
+                if (alert.getRevision() > afterRevision) result.add(alert);
+            }
+            return result;
+        }
+    }
+
+    /** Публикации с revision больше afterRevision (последние retention — из истории), затем новые. */
+    public Flux<Alert> alertsAfter(long afterRevision) {
+        return published.asFlux().filter(a -> a.getRevision() > afterRevision);
+    }
+
+    /** Сколько раз публикация новой группы откладывалась до следующего окна ограничителем. */
+    public long getDelayed() {
+        synchronized (lock) {
+            return delayed;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.warn("Failed to publish alerts: {}", e.getMessage());
+        }
+    }
+
+    /** Публикует изменённые группы и закрывает устаревшие; вызывается раз в окно. */
+    void flush() {
+        long now = System.currentTimeMillis();
+        List<Alert> emitted = new ArrayList<>();
+        List<String> summary = null;
+        synchronized (lock) {
+            refill(now);
+            for (Iterator<Group> it = groups.values().iterator(); it.hasNext(); ) {
+                Group group = it.next();
+                if (group.dirty) {
+                    if (group.id == 0) {
+                        if (tokens < 1) {
+                            delayed++;
+                            continue;
+                        }
+                        tokens--;
+                        group.id = nextId++;
+                    }
+                    group.dirty = false;
+                    Alert alert = toAlert(group, ++revision);
+                    // Перемещаем в конец: обновлённый алерт не должен вытесняться раньше тех, что давно не менялись.
+                    ring.remove(alert.getId());
+                    ring.put(alert.getId(), alert);
+                    emitted.add(alert);
+                } else if (now - group.lastSeen > dedupMillis) {
+                    it.remove();
+                }
+            }
+            while (ring.size() > retention) {
+                Iterator<Long> eldest = ring.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+            if (!emitted.isEmpty()) {
+                List<Alert> alerts = new ArrayList<>(ring.values());
+                summary = new ArrayList<>();
+                for (Alert alert : alerts.subList(Math.max(0, alerts.size() - statusSize), alerts.size())) {
+                    summary.add(alert.summary());
+                }
+            }
+        }
+        for (Alert alert : emitted) {
+            logger.warn("ALERT #{} {}", alert.getId(), alert.summary());
+            published.tryEmitNext(alert);
+        }
+        if (summary != null) {
+            statusBus.publish("alerts", toJson(summary));
+        }
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(ratePerMinute, tokens + (now - refilledAt) * ratePerMinute / 60_000.0);
+        refilledAt = now;
+    }
+
+    private Alert toAlert(Group group, long revision) {
+        List<String> listed = new ArrayList<>(Math.min(group.hosts.size(), maxHostsListed));
+        for (String host : group.hosts) {
+            if (listed.size() >= maxHostsListed) break;
+            listed.add(host);
+        }
+        return new Alert(group.id, revision, group.severity, group.stage, group.errorClass, group.message,
+                group.hosts.size(), listed, group.occurrences, group.firstSeen, group.lastSeen);
+    }
+
+    private static String toJson(List<String> summary) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(summary);
+        } catch (Exception e) {
+            return "[]";
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
+    }
+}
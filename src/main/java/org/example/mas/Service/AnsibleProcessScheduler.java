@@ -0,0 +1,111 @@
+package org.example.mas.Service;
+
+import org.example.mas.utils.PlaybookExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Общий для всех развёртываний лимит одновременных процессов ansible-playbook (включая шарды и повторы).
+ * Процесс сверх лимита ждёт слота в очереди (FIFO по всем развёртываниям); слот освобождается, когда процесс
+ * завершается. Таймаут плейбука отсчитывается с запуска процесса, поэтому ожидание в очереди его не тратит.
+ * max-ansible-processes = 0 — без лимита.
+ */
+@Service
+public class AnsibleProcessScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(AnsibleProcessScheduler.class);
+
+    /** Процессы одного развёртывания: запущенные и ждущие слота. */
+    public static class Usage {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger waiting = new AtomicInteger();
+
+        public int getRunning() {
+            return running.get();
+        }
+
+        public int getWaiting() {
+            return waiting.get();
+        }
+    }
+
+    private final int limit;
+    private final Semaphore slots;
+    private final Map<String, Usage> usage = new ConcurrentHashMap<>();
+
+    public AnsibleProcessScheduler(@Value("${mas.deployments.max-ansible-processes:16}") int limit) {
+        this.limit = Math.max(0, limit);
+        this.slots = new Semaphore(Math.max(1, this.limit), true);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /** Executor развёртывания deploymentId, который запускает процесс только при свободном слоте. */
+    public PlaybookExecutor admit(String deploymentId, PlaybookExecutor executor) {
+        Usage counters = usage(deploymentId);
+        return command -> {
+            acquire(deploymentId, counters);
+            Process process;
+            try {
+                process = executor.start(command);
+            } catch (IOException | RuntimeException e) {
+                release(counters);
+                throw e;
+            }
+            process.onExit().whenComplete((p, error) -> release(counters));
+            return process;
+        };
+    }
+
+    private void acquire(String deploymentId, Usage counters) throws InterruptedIOException {
+        if (limit > 0 && !slots.tryAcquire()) {
+            counters.waiting.incrementAndGet();
+            logger.info("Deployment {} waits for an ansible slot ({} running, {} queued)", deploymentId,
+                    limit - slots.availablePermits(), slots.getQueueLength() + 1);
+            try {
+                slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for an ansible slot");
+            } finally {
+                counters.waiting.decrementAndGet();
+            }
+        }
+        counters.running.incrementAndGet();
+    }
+
+    private void release(Usage counters) {
+        counters.running.decrementAndGet();
+        if (limit > 0) slots.release();
+    }
+
+    public Usage usage(String deploymentId) {
+        return usage.computeIfAbsent(deploymentId, id -> new Usage());
+    }
+
+    /** Запущено и ждёт по всем развёртываниям. */
+    public Map<String, Integer> totals() {
+        int running = 0;
+        int waiting = 0;
+        for (Usage u : usage.values()) {
+            running += u.getRunning();
+            waiting += u.getWaiting();
+        }
+        Map<String, Integer> totals = new LinkedHashMap<>();
+        totals.put("limit", limit);
+        totals.put("running", running);
+        totals.put("waiting", waiting);
+        return totals;
+    }
+}
@@ -0,0 +1,232 @@
+package org.example.mas.Service;
+
+import org.example.mas.utils.ArtifactStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Кэш артефактов для узлов ({@link ArtifactStore}): пакеты Kubernetes, манифест Calico, tar-архивы образов.
+ * Имя mirror/&lt;источник&gt;/&lt;путь&gt; при первом запросе скачивается из mas.artifacts.upstreams (источник=URL)
+ * и дальше отдаётся из кэша; одновременные запросы одного имени ждут одну загрузку. Остальные имена
+ * наполняются загрузкой (PUT /artifacts/...), например образами, экспортированными с central_manager.
+ * Загрузку и удаление принимает только с токеном MAS (mas.artifacts.token): координатор передаёт его плейбукам.
+ */
+@Service
+public class ArtifactService {
+    private static final Logger logger = LoggerFactory.getLogger(ArtifactService.class);
+    private static final String MIRROR_PREFIX = "mirror/";
+    private static final String DIGEST_PREFIX = "sha256/";
+    private static final String TOKEN_FILE = "token";
+    static final String DEFAULT_UPSTREAMS = "k8s-pkgs=https://mirror.yandex.ru/mirrors/pkgs.k8s.io/,"
+            + "calico=https://raw.githubusercontent.com/projectcalico/calico/";
+
+    private final boolean enabled;
+    private final boolean uploadEnabled;
+    private final String token;
+    private final Duration fetchTimeout;
+    private final Map<String, String> upstreams;
+    private final ArtifactStore store;
+    private final MetricsService metrics;
+    private final HttpClient http;
+    private final Map<String, CompletableFuture<ArtifactStore.Entry>> inflight = new ConcurrentHashMap<>();
+
+    public ArtifactService(MetricsService metrics,
+                           @Value("${mas.artifacts.enabled:true}") boolean enabled,
+                           @Value("${mas.artifacts.dir:state/artifacts}") String dir,
+                           @Value("${mas.artifacts.upstreams:" + DEFAULT_UPSTREAMS + "}") String upstreams,
+                           @Value("${mas.artifacts.upload-enabled:true}") boolean uploadEnabled,
+                           @Value("${mas.artifacts.token:}") String token,
+                           @Value("${mas.artifacts.fetch-timeout-minutes:30}") int fetchTimeoutMinutes) throws IOException {
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.uploadEnabled = uploadEnabled;
+        this.fetchTimeout = Duration.ofMinutes(Math.max(1, fetchTimeoutMinutes));
+        this.upstreams = parseUpstreams(upstreams);
+        this.store = enabled ? new ArtifactStore(Paths.get(dir).toAbsolutePath()) : null;
+        this.token = token.isBlank() ? storedToken(Paths.get(dir).toAbsolutePath(), enabled) : token.trim();
+        this.http = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+        if (enabled) {
+            logger.info("Artifact cache at {}, upstreams {}", Paths.get(dir).toAbsolutePath(), this.upstreams.keySet());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isUploadEnabled() {
+        return enabled && uploadEnabled;
+    }
+
+    /** Токен MAS для PUT/DELETE /artifacts; плейбуки получают его как mas_artifact_token. */
+    public String getToken() {
+        return token;
+    }
+
+    public boolean isAuthorized(String presented) {
+        return presented != null
+                && MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), presented.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Map<String, ArtifactStore.Entry> list() {
+        return store.getEntries();
+    }
+
+    public Path blob(ArtifactStore.Entry entry) {
+        return store.blob(entry.sha256);
+    }
+
+    /**
+     * Артефакт по имени: из кэша, а для mirror/... — при промахе из источника; sha256/&lt;hex&gt; — по содержимому.
+     * null — артефакта нет (не загружен или источник ответил 404). IOException — источник недоступен или ответил ошибкой.
+     */
+    public ArtifactStore.Entry resolve(String name) throws IOException {
+        if (name.startsWith(DIGEST_PREFIX)) return store.getByDigest(name.substring(DIGEST_PREFIX.length()));
+        ArtifactStore.Entry cached = store.get(name);
+        if (cached != null || upstreamUrl(name) == null) return cached;
+
+        CompletableFuture<ArtifactStore.Entry> mine = new CompletableFuture<>();
+        CompletableFuture<ArtifactStore.Entry> running = inflight.putIfAbsent(name, mine);
+        if (running != null) return await(running);
+        try {
+            ArtifactStore.Entry entry = store.get(name);
+            if (entry == null) entry = fetch(name, upstreamUrl(name));
+            mine.complete(entry);
+            return entry;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(name, mine);
+        }
+    }
+
+    public ArtifactStore.Entry upload(String name, InputStream body, String expectedSha256) throws IOException {
+        if (name.startsWith(DIGEST_PREFIX) || name.startsWith(MIRROR_PREFIX)) {
+            throw new IllegalArgumentException("Names under " + DIGEST_PREFIX + " and " + MIRROR_PREFIX + " are reserved");
+        }
+        ArtifactStore.Entry entry = store.put(name, body, expectedSha256, "upload");
+        logger.info("Artifact {} uploaded: {} bytes, sha256 {}", name, entry.size, entry.sha256);
+        return entry;
+    }
+
+    public boolean remove(String name) throws IOException {
+        return store.remove(name);
+    }
+
+    /** Учёт отданных узлам байт (метрика mas.artifacts.bytes{source=cache}). */
+    public void served(long bytes) {
+        metrics.recordArtifactBytes("cache", bytes);
+    }
+
+    /**
+     * Токен, если mas.artifacts.token не задан: случайный, сохраняется в каталоге кэша (только для владельца),
+     * чтобы после перезапуска MAS совпадать с тем, что уже получили узлы.
+     */
+    private static String storedToken(Path dir, boolean persist) throws IOException {
+        Path file = dir.resolve(TOKEN_FILE);
+        if (persist && Files.isRegularFile(file)) {
+            String stored = Files.readString(file, StandardCharsets.UTF_8).trim();
+            if (!stored.isEmpty()) return stored;
+        }
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        String generated = HexFormat.of().formatHex(random);
+        if (persist) {
+            Files.writeString(file, generated, StandardCharsets.UTF_8);
+            try {
+                Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException ignored) {
+            }
+        }
+        return generated;
+    }
+
+    private ArtifactStore.Entry fetch(String name, String url) throws IOException {
+        long started = System.nanoTime();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url)).timeout(fetchTimeout).GET().build();
+        HttpResponse<InputStream> response;
+        try {
+            response = http.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + url);
+        }
+        try (InputStream body = response.body()) {
+            if (response.statusCode() == 404 || response.statusCode() == 410) {
+                logger.debug("Upstream has no {}", url);
+                return null;
+            }
+            if (response.statusCode() != 200) {
+                throw new IOException("Upstream " + url + " returned " + response.statusCode());
+            }
+            ArtifactStore.Entry entry = store.put(name, body, null, url);
+            metrics.recordArtifactBytes("upstream", entry.size);
+            long millis = Duration.ofNanos(System.nanoTime() - started).toMillis();
+            logger.info("Artifact {} fetched from {}: {} bytes in {} ms ({} MB/s)", name, url, entry.size, millis,
+                    String.format("%.1f", entry.size / 1048576.0 / Math.max(0.001, millis / 1000.0)));
+            return entry;
+        }
+    }
+
+    private String upstreamUrl(String name) {
+        if (!name.startsWith(MIRROR_PREFIX)) return null;
+        String rest = name.substring(MIRROR_PREFIX.length());
+        int slash = rest.indexOf('/');
+        if (slash <= 0) return null;
+        String base = upstreams.get(rest.substring(0, slash));
+        return base == null ? null : base + rest.substring(slash + 1);
+    }
+
+    private static ArtifactStore.Entry await(CompletableFuture<ArtifactStore.Entry> running) throws IOException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an artifact download");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /** "k8s-pkgs=https://...,calico=https://..." → источник → базовый URL, оканчивающийся на '/'. */
+    private static Map<String, String> parseUpstreams(String value) {
+        Map<String, String> result = new LinkedHashMap<>();
+        if (value == null) return result;
+        for (String item : value.split(",")) {
+            String[] kv = item.trim().split("=", 2);
+            if (kv.length != 2 || kv[0].isBlank() || kv[1].isBlank()) continue;
+            String base = kv[1].trim();
+            result.put(kv[0].trim(), base.endsWith("/") ? base : base + "/");
+        }
+        return result;
+    }
+}
@@ -1,31 +1,110 @@
 package org.example.mas.Service;
 
-import jade.wrapper.AgentContainer;
-import jade.wrapper.AgentController;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.example.mas.Agent.BootstrapAgent;
+import org.example.mas.models.BootstrapNode;
+import org.example.mas.utils.IoThreads;
+import org.example.mas.utils.SshBootstrapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Первичная настройка узлов (SSH-ключ + passwordless sudo) пулом фиксированного размера.
+ * Раньше на каждый узел создавался BootstrapAgent со своим потоком JADE; на сотнях узлов
+ * это давало сотни одновременных подключений и повторное чтение ключа с диска.
+ */
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class BootstrapService {
 
-    private final AgentContainer agentContainer;
+    /** Вызывается из потоков пула после каждого узла. */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onResult(SshBootstrapper.BootstrapResult result, int completed, int total);
+    }
+
+    private final StatusService statusService;
+    private final MetricsService metrics;
+
+    @Value("${mas.bootstrap.parallelism:32}")
+    private int parallelism;
+
+    @Value("${mas.bootstrap.connect-timeout-seconds:30}")
+    private int connectTimeoutSeconds;
+
+    @Value("${mas.bootstrap.exec-timeout-seconds:60}")
+    private int execTimeoutSeconds;
+
+    private volatile ExecutorService pool;
+
+    public void bootstrapNodes(List<BootstrapNode> nodes, String publicKeyPath, ProgressListener listener) {
+        bootstrapNodes(nodes, publicKeyPath, statusService, listener);
+    }
 
-    public void bootstrapNode(String ip, String username, String password, String publicKeyPath) {
+    /** status — статус развёртывания, куда пишутся bootstrap:&lt;ip&gt;. */
+    public void bootstrapNodes(List<BootstrapNode> nodes, String publicKeyPath, StatusService status,
+                               ProgressListener listener) {
         String resolvedKeyPath = resolvePath(publicKeyPath);
+        String publicKey;
         try {
-            AgentController controller = agentContainer.createNewAgent(
-                "bootstrap-" + ip.replace(".", "-"),
-                BootstrapAgent.class.getName(),
-                new Object[]{ip, username, password, resolvedKeyPath}
-            );
-            controller.start();
-            log.info("Started BootstrapAgent for {}", ip);
-        } catch (Exception e) {
-            log.error("Failed to start BootstrapAgent for {}: {}", ip, e.getMessage(), e);
+            publicKey = new String(Files.readAllBytes(Paths.get(resolvedKeyPath)), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось прочитать публичный ключ: " + resolvedKeyPath, e);
+        }
+
+        SshBootstrapper bootstrapper = new SshBootstrapper(connectTimeoutSeconds * 1000, execTimeoutSeconds * 1000);
+        int total = nodes.size();
+        AtomicInteger completed = new AtomicInteger();
+        log.info("Bootstrapping {} nodes with parallelism {}", total, parallelism);
+
+        for (BootstrapNode node : nodes) {
+            pool().execute(() -> {
+                SshBootstrapper.BootstrapResult result =
+                    bootstrapper.bootstrap(node.getIp(), node.getUsername(), node.getPassword(), publicKey);
+                metrics.recordBootstrap(result);
+                if (result.success) {
+                    log.info("Bootstrap completed for {} (connect {} ms, exec {} ms)",
+                        result.ip, result.connectMillis, result.execMillis);
+                    status.update("bootstrap:" + result.ip, "SUCCESS");
+                } else {
+                    log.error("Bootstrap failed for {} (connect {} ms, exec {} ms): {}",
+                        result.ip, result.connectMillis, result.execMillis, result.error);
+                    status.update("bootstrap:" + result.ip, "FAILED:" + result.error);
+                }
+                try {
+                    listener.onResult(result, completed.incrementAndGet(), total);
+                } catch (Exception e) {
+                    log.warn("Bootstrap listener failed for {}: {}", result.ip, e.getMessage(), e);
+                }
+            });
+        }
+    }
+
+    private ExecutorService pool() {
+        if (pool == null) {
+            synchronized (this) {
+                if (pool == null) {
+                    pool = IoThreads.newPool("bootstrap", parallelism);
+                }
+            }
+        }
+        return pool;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
         }
     }
 
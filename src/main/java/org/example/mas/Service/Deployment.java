@@ -0,0 +1,106 @@
+package org.example.mas.Service;
+
+import jade.wrapper.AgentController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Развёртывание одного кластера: свой inventory и каталог плейбуков, свой статус ({@link StatusService} и
+ * {@link StatusEventBus}), журнал и координатор. Развёртывание {@link #DEFAULT_ID} — кластер из mas.paths.*
+ * с глобальным статусом /api/status; остальные создаются через POST /api/deployments и видны в
+ * /api/deployments/{id}/status. Изменяемые поля меняет только {@link DeploymentService} под монитором развёртывания.
+ */
+public class Deployment {
+    public static final String DEFAULT_ID = "default";
+    /** id попадает в имена агентов JADE, файлов и ключей статуса. */
+    static final Pattern ID_PATTERN = Pattern.compile("[A-Za-z0-9][A-Za-z0-9_-]{0,39}");
+
+    private final String id;
+    private final String inventoryPath;
+    private final String playbooksDir;
+    private final StatusService status;
+    private final StatusEventBus statusBus;
+    private final JournalService journal;
+    private final long createdAt = System.currentTimeMillis();
+
+    final Set<String> pendingBootstrap = ConcurrentHashMap.newKeySet();
+    volatile boolean coordinatorStarted;
+    volatile boolean autoStartAfterBootstrap;
+    volatile boolean bootstrapFailed;
+    volatile boolean forceStages;
+    volatile String coordinatorName;
+    volatile AgentController coordinator;
+
+    Deployment(String id, String inventoryPath, String playbooksDir, StatusService status, StatusEventBus statusBus,
+               JournalService journal) {
+        this.id = id;
+        this.inventoryPath = inventoryPath;
+        this.playbooksDir = playbooksDir;
+        this.status = status;
+        this.statusBus = statusBus;
+        this.journal = journal;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public boolean isDefault() {
+        return DEFAULT_ID.equals(id);
+    }
+
+    public String getInventoryPath() {
+        return inventoryPath;
+    }
+
+    public String getPlaybooksDir() {
+        return playbooksDir;
+    }
+
+    public StatusService getStatus() {
+        return status;
+    }
+
+    public StatusEventBus getStatusBus() {
+        return statusBus;
+    }
+
+    public JournalService getJournal() {
+        return journal;
+    }
+
+    public String getCoordinatorName() {
+        return coordinatorName;
+    }
+
+    /**
+     * Имя узла, стадии или агента в общих для всех развёртываний местах (проверки узлов, алерты, профиль):
+     * у default — как есть, у остальных — с префиксом id/.
+     */
+    public String qualify(String name) {
+        return isDefault() ? name : id + "/" + name;
+    }
+
+    /** Имя агента JADE: имена агентов уникальны на всю платформу. */
+    public String agentName(String name) {
+        return isDefault() ? name : id + "-" + name;
+    }
+
+    /** Сводка для /api/deployments. */
+    public Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("id", id);
+        summary.put("inventory", inventoryPath);
+        summary.put("playbooks", playbooksDir);
+        summary.put("createdAt", createdAt);
+        summary.put("coordinator", coordinatorName);
+        summary.put("clusterStatus", status.snapshot().getClusterStatus());
+        summary.put("bootstrapStatus", status.snapshot().getBootstrapStatus());
+        summary.put("statusVersion", status.getVersion());
+        return summary;
+    }
+}
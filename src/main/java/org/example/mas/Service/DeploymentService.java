@@ -8,6 +8,7 @@ import org.example.mas.Agent.CoordinatorAgent;
 import org.example.mas.DTO.BootstrapRequest;
 import org.example.mas.DTO.DeploymentRequest;
 import org.example.mas.models.BootstrapNode;
+import org.example.mas.utils.DeploymentJournal;
 import org.example.mas.utils.InventoryParser;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -18,10 +19,17 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Развёртывания кластеров ({@link Deployment}): bootstrap, затем координатор со своим inventory, плейбуками,
+ * статусом и журналом. Методы без развёртывания в параметрах работают с {@link Deployment#DEFAULT_ID}
+ * (mas.paths.*, глобальный статус); другие развёртывания создаются {@link #createDeployment} и идут
+ * параллельно, процессы ansible всех развёртываний ограничивает {@link AnsibleProcessScheduler}.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
@@ -30,6 +38,8 @@ public class DeploymentService {
     private final AgentContainer agentContainer;
     private final BootstrapService bootstrapService;
     private final StatusService statusService;
+    private final StatusEventBus statusBus;
+    private final JournalService journalService;
 
     @Value("${mas.paths.inventory:inventory.ini}")
     private String inventoryPath;
@@ -43,72 +53,239 @@ public class DeploymentService {
     @Value("${mas.bootstrap.public-key:~/.ssh/id_ed25519.pub}")
     private String defaultPublicKeyPath;
 
-    private final Set<String> pendingBootstrap = ConcurrentHashMap.newKeySet();
-    private volatile boolean coordinatorStarted = false;
-    private volatile boolean autoStartAfterBootstrap = false;
+    /** Журналы и отпечатки стадий развёртываний, кроме default: &lt;state-dir&gt;/&lt;id&gt;/. */
+    @Value("${mas.deployments.state-dir:state/deployments}")
+    private String stateDir;
+
+    @Value("${mas.journal.resume:true}")
+    private boolean resumeEnabled;
+
+    @Value("${mas.status.bus-capacity:4096}")
+    private int busCapacity;
+
+    /** Развёртывания по id в порядке создания. */
+    private final Map<String, Deployment> deployments = new LinkedHashMap<>();
+
+    public Deployment getDefaultDeployment() {
+        synchronized (deployments) {
+            return deployments.computeIfAbsent(Deployment.DEFAULT_ID, id ->
+                new Deployment(id, inventoryPath, playbooksDir, statusService, statusBus, journalService));
+        }
+    }
+
+    /** Развёртывание по id или null. */
+    public Deployment getDeployment(String id) {
+        if (Deployment.DEFAULT_ID.equals(id)) {
+            return getDefaultDeployment();
+        }
+        synchronized (deployments) {
+            return deployments.get(id);
+        }
+    }
 
-    public synchronized String startDeployment(DeploymentRequest request) {
-        if (coordinatorStarted) {
-            return "Coordinator уже запущен.";
+    public List<Deployment> getDeployments() {
+        getDefaultDeployment();
+        synchronized (deployments) {
+            return new ArrayList<>(deployments.values());
         }
+    }
+
+    public String startDeployment(DeploymentRequest request) {
+        return startDeployment(getDefaultDeployment(), request);
+    }
 
-        if (!request.isSkipBootstrap()) {
-            BootstrapRequest bootstrap = request.getBootstrap();
-            if (bootstrap == null || CollectionUtils.isEmpty(bootstrap.getNodes())) {
-                throw new IllegalArgumentException("Для первичной настройки нужны узлы с логином/паролем.");
+    /** Запуск по inventory без запроса: force прежнего запроса не переносится, неизменённые стадии пропускаются. */
+    public String startDeploymentFromInventory() {
+        return startDeploymentFromInventory(getDefaultDeployment(), false);
+    }
+
+    public String startBootstrapOnly(BootstrapRequest request) {
+        Deployment deployment = getDefaultDeployment();
+        synchronized (deployment) {
+            if (CollectionUtils.isEmpty(request.getNodes())) {
+                throw new IllegalArgumentException("Добавьте хотя бы один узел для Bootstrap.");
             }
-            startBootstrapPhase(bootstrap, true);
-            return "Bootstrap-agent запущен. Координатор стартует автоматически после завершения.";
+            startBootstrapPhase(deployment, request, false);
+            return "Bootstrap-agent запущен.";
         }
+    }
 
-        statusService.update("bootstrapStatus", "SKIPPED");
-        startCoordinatorInternal();
-        return "Координатор запущен без Bootstrap.";
+    /**
+     * Новое развёртывание со своим inventory и плейбуками (request.inventoryPath / playbooksDir, по умолчанию —
+     * mas.paths.*). Без узлов bootstrap в запросе и без skipBootstrap узлы берутся из группы bootstrap inventory,
+     * а прерванное развёртывание с тем же id возобновляется по журналу.
+     */
+    public Deployment createDeployment(DeploymentRequest request) {
+        String id = request.getId();
+        if (id == null || !Deployment.ID_PATTERN.matcher(id).matches() || Deployment.DEFAULT_ID.equals(id)) {
+            throw new IllegalArgumentException("id развёртывания: латиница, цифры, '-' и '_', до 40 символов, не 'default'.");
+        }
+        String inventory = request.getInventoryPath() != null ? request.getInventoryPath() : inventoryPath;
+        String playbooks = request.getPlaybooksDir() != null ? request.getPlaybooksDir() : playbooksDir;
+        if (!Files.isRegularFile(Paths.get(inventory)) || !Files.isDirectory(Paths.get(playbooks))) {
+            throw new IllegalArgumentException("Inventory " + inventory + " или каталог playbooks " + playbooks + " не найден.");
+        }
+        Deployment deployment;
+        Deployment existing;
+        synchronized (deployments) {
+            existing = deployments.get(id);
+            if (existing != null && existing.coordinatorStarted) {
+                throw new IllegalStateException("Развёртывание " + id + " уже запущено.");
+            }
+            if (existing != null && !existing.pendingBootstrap.isEmpty()) {
+                throw new IllegalStateException("Развёртывание " + id + " уже выполняет bootstrap.");
+            }
+            StatusService status = new StatusService();
+            Path state = Paths.get(stateDir, id).toAbsolutePath();
+            JournalService journal = new JournalService(state.resolve("deployment.journal").toString(), resumeEnabled,
+                state.resolve("stage-fingerprints.json").toString());
+            deployment = new Deployment(id, inventory, playbooks, status, new StatusEventBus(status, busCapacity), journal);
+            if (existing != null) {
+                existing.getStatusBus().shutdown();
+            }
+            deployments.put(id, deployment);
+        }
+        if (existing != null) {
+            synchronized (existing) {
+                stopFinishedCoordinator(existing);
+            }
+        }
+        log.info("Развёртывание {}: inventory {}, playbooks {}", id, inventory, playbooks);
+
+        BootstrapRequest bootstrap = request.getBootstrap();
+        if (!request.isSkipBootstrap() && (bootstrap == null || CollectionUtils.isEmpty(bootstrap.getNodes()))) {
+            startDeploymentFromInventory(deployment, request.isForce());
+        } else {
+            startDeployment(deployment, request);
+        }
+        return deployment;
     }
 
-    public synchronized String startDeploymentFromInventory() {
-        if (coordinatorStarted) {
-            return "Coordinator уже запущен.";
+    /** Отменяет развёртывание: координатор останавливается, его плейбуки прерываются. */
+    public boolean cancel(String id) {
+        Deployment deployment = getDeployment(id);
+        if (deployment == null) return false;
+        synchronized (deployment) {
+            AgentController coordinator = deployment.coordinator;
+            if (coordinator == null) return false;
+            try {
+                coordinator.kill();
+            } catch (Exception e) {
+                log.warn("Не удалось остановить координатор {}: {}", deployment.coordinatorName, e.getMessage());
+                return false;
+            }
+            deployment.coordinator = null;
+            deployment.coordinatorStarted = false;
+            log.info("Развёртывание {} отменено.", id);
+            return true;
         }
+    }
 
-        BootstrapRequest bootstrapRequest = buildBootstrapRequestFromInventory();
-        if (CollectionUtils.isEmpty(bootstrapRequest.getNodes())) {
-            statusService.update("bootstrapStatus", "SKIPPED");
-            startCoordinatorInternal();
-            return "Координатор запущен (Bootstrap пропущен).";
+    /**
+     * Координатор закончил развёртывание, успешно или с ошибкой: развёртывание можно запустить или создать заново.
+     * Агент координатора продолжает обслуживать агентов узлов, пока его не сменит новый координатор или cancel.
+     */
+    public void coordinatorFinished(String id, String coordinatorName) {
+        Deployment deployment = getDeployment(id);
+        if (deployment == null) return;
+        synchronized (deployment) {
+            // Отменённый координатор мог уже смениться новым запуском.
+            if (coordinatorName.equals(deployment.coordinatorName)) {
+                deployment.coordinatorStarted = false;
+            }
         }
+    }
 
-        startBootstrapPhase(bootstrapRequest, true);
-        return "Bootstrap-agent запущен из inventory. Координатор стартует автоматически после завершения.";
+    /** Вызывается под блокировкой deployment. */
+    private void stopFinishedCoordinator(Deployment deployment) {
+        AgentController coordinator = deployment.coordinator;
+        if (coordinator == null || deployment.coordinatorStarted) return;
+        try {
+            coordinator.kill();
+        } catch (Exception e) {
+            log.warn("Не удалось остановить завершённый координатор {}: {}", deployment.coordinatorName, e.getMessage());
+        }
+        deployment.coordinator = null;
     }
 
-    public synchronized String startBootstrapOnly(BootstrapRequest request) {
-        if (CollectionUtils.isEmpty(request.getNodes())) {
-            throw new IllegalArgumentException("Добавьте хотя бы один узел для Bootstrap.");
+    private String startDeployment(Deployment deployment, DeploymentRequest request) {
+        synchronized (deployment) {
+            if (deployment.coordinatorStarted) {
+                return "Coordinator уже запущен.";
+            }
+            deployment.forceStages = request.isForce();
+
+            if (!request.isSkipBootstrap()) {
+                BootstrapRequest bootstrap = request.getBootstrap();
+                if (bootstrap == null || CollectionUtils.isEmpty(bootstrap.getNodes())) {
+                    throw new IllegalArgumentException("Для первичной настройки нужны узлы с логином/паролем.");
+                }
+                startBootstrapPhase(deployment, bootstrap, true);
+                return "Bootstrap-agent запущен. Координатор стартует автоматически после завершения.";
+            }
+
+            deployment.getStatus().update("bootstrapStatus", "SKIPPED");
+            startCoordinatorInternal(deployment, null);
+            return "Координатор запущен без Bootstrap.";
         }
-        startBootstrapPhase(request, false);
-        return "Bootstrap-agent запущен.";
     }
 
-    private void startBootstrapPhase(BootstrapRequest request, boolean autoStartCoordinator) {
-        pendingBootstrap.clear();
+    private String startDeploymentFromInventory(Deployment deployment, boolean force) {
+        synchronized (deployment) {
+            if (deployment.coordinatorStarted) {
+                return "Coordinator уже запущен.";
+            }
+            deployment.forceStages = force;
+
+            DeploymentJournal.State journal = deployment.getJournal().replay();
+            if (deployment.getJournal().isResumeEnabled() && journal.isInProgress()) {
+                // Bootstrap уже прошёл в прерванном развёртывании; стадии с теми же входными данными пропускаются.
+                log.info("Возобновление развёртывания {}: завершены {}", journal.getDeploymentId(),
+                    journal.getCompletedStages().keySet());
+                deployment.getStatus().update("bootstrapStatus", "SKIPPED");
+                startCoordinatorInternal(deployment, journal);
+                return "Координатор возобновляет развёртывание " + journal.getDeploymentId() + ".";
+            }
+
+            BootstrapRequest bootstrapRequest = buildBootstrapRequestFromInventory(deployment);
+            if (CollectionUtils.isEmpty(bootstrapRequest.getNodes())) {
+                deployment.getStatus().update("bootstrapStatus", "SKIPPED");
+                startCoordinatorInternal(deployment, null);
+                return "Координатор запущен (Bootstrap пропущен).";
+            }
+
+            startBootstrapPhase(deployment, bootstrapRequest, true);
+            return "Bootstrap-agent запущен из inventory. Координатор стартует автоматически после завершения.";
+        }
+    }
+
+    private void startBootstrapPhase(Deployment deployment, BootstrapRequest request, boolean autoStartCoordinator) {
+        StatusService status = deployment.getStatus();
+        deployment.pendingBootstrap.clear();
         request.getNodes().stream()
             .filter(this::isNodeValid)
-            .forEach(node -> pendingBootstrap.add(node.getIp()));
-        if (pendingBootstrap.isEmpty()) {
+            .forEach(node -> deployment.pendingBootstrap.add(node.getIp()));
+        if (deployment.pendingBootstrap.isEmpty()) {
             throw new IllegalArgumentException("Некорректные параметры узлов для Bootstrap.");
         }
-        autoStartAfterBootstrap = autoStartCoordinator;
-        statusService.update("bootstrapStatus", "IN_PROGRESS");
-        for (BootstrapNode node : request.getNodes()) {
-            if (isNodeValid(node)) {
-                bootstrapService.bootstrapNode(node.getIp(), node.getUsername(), node.getPassword(), request.getPublicKeyPath());
-            }
+        deployment.autoStartAfterBootstrap = autoStartCoordinator;
+        deployment.bootstrapFailed = false;
+        status.update("bootstrapStatus", "IN_PROGRESS");
+        List<BootstrapNode> nodes = request.getNodes().stream()
+            .filter(this::isNodeValid)
+            .collect(Collectors.toList());
+        status.update("bootstrapProgress", "0/" + nodes.size());
+        try {
+            bootstrapService.bootstrapNodes(nodes, request.getPublicKeyPath(), status,
+                (result, completed, total) -> notifyBootstrapResult(deployment, result.ip, result.success, completed, total));
+        } catch (IllegalStateException e) {
+            status.update("bootstrapStatus", "FAILED:" + e.getMessage());
+            throw e;
         }
     }
 
-    private BootstrapRequest buildBootstrapRequestFromInventory() {
-        Path inventory = Paths.get(inventoryPath).toAbsolutePath();
+    private BootstrapRequest buildBootstrapRequestFromInventory(Deployment deployment) {
+        Path inventory = Paths.get(deployment.getInventoryPath()).toAbsolutePath();
         if (!Files.exists(inventory)) {
             throw new IllegalStateException("Inventory не найден: " + inventory);
         }
@@ -175,46 +352,77 @@ public class DeploymentService {
         return null;
     }
 
+    public void notifyBootstrapResult(String ip, boolean success, int completed, int total) {
+        notifyBootstrapResult(getDefaultDeployment(), ip, success, completed, total);
+    }
+
     public void notifyBootstrapResult(String ip, boolean success) {
+        notifyBootstrapResult(getDefaultDeployment(), ip, success);
+    }
+
+    private void notifyBootstrapResult(Deployment deployment, String ip, boolean success, int completed, int total) {
+        deployment.getStatus().update("bootstrapProgress", completed + "/" + total);
+        notifyBootstrapResult(deployment, ip, success);
+    }
+
+    private void notifyBootstrapResult(Deployment deployment, String ip, boolean success) {
+        StatusService status = deployment.getStatus();
         if (success) {
-            pendingBootstrap.remove(ip);
-            statusService.update("bootstrapStatus", pendingBootstrap.isEmpty() ? "COMPLETED" : "IN_PROGRESS");
-            if (autoStartAfterBootstrap && pendingBootstrap.isEmpty()) {
-                startCoordinatorInternal();
+            deployment.pendingBootstrap.remove(ip);
+            if (deployment.bootstrapFailed) {
+                return;
+            }
+            status.update("bootstrapStatus", deployment.pendingBootstrap.isEmpty() ? "COMPLETED" : "IN_PROGRESS");
+            if (deployment.autoStartAfterBootstrap && deployment.pendingBootstrap.isEmpty()) {
+                startCoordinatorInternal(deployment, null);
             }
         } else {
-            pendingBootstrap.clear();
-            statusService.update("bootstrapStatus", "FAILED:" + ip);
+            deployment.bootstrapFailed = true;
+            deployment.pendingBootstrap.clear();
+            status.update("bootstrapStatus", "FAILED:" + ip);
         }
     }
 
-    private synchronized void startCoordinatorInternal() {
-        if (coordinatorStarted) {
-            log.info("Coordinator уже активен.");
-            return;
-        }
-        Path inventory = Paths.get(inventoryPath).toAbsolutePath();
-        Path scripts = Paths.get(playbooksDir).toAbsolutePath();
-        if (!Files.exists(inventory)) {
-            throw new IllegalStateException("Inventory не найден: " + inventory);
-        }
-        if (!Files.exists(scripts)) {
-            throw new IllegalStateException("Каталог playbooks не найден: " + scripts);
-        }
+    /** resume — состояние прерванного развёртывания из журнала или null для нового развёртывания. */
+    private void startCoordinatorInternal(Deployment deployment, DeploymentJournal.State resume) {
+        synchronized (deployment) {
+            if (deployment.coordinatorStarted) {
+                log.info("Coordinator уже активен.");
+                return;
+            }
+            stopFinishedCoordinator(deployment);
+            Path inventory = Paths.get(deployment.getInventoryPath()).toAbsolutePath();
+            Path scripts = Paths.get(deployment.getPlaybooksDir()).toAbsolutePath();
+            if (!Files.exists(inventory)) {
+                throw new IllegalStateException("Inventory не найден: " + inventory);
+            }
+            if (!Files.exists(scripts)) {
+                throw new IllegalStateException("Каталог playbooks не найден: " + scripts);
+            }
 
-        try {
-            String agentName = "coordinator-" + System.currentTimeMillis();
-            AgentController controller = agentContainer.createNewAgent(
-                agentName,
-                CoordinatorAgent.class.getName(),
-                new Object[]{inventory.toString(), scripts.toString()}
-            );
-            controller.start();
-            coordinatorStarted = true;
-            statusService.update("clusterStatus", "DEPLOYING");
-            log.info("CoordinatorAgent {} запущен.", agentName);
-        } catch (Exception e) {
-            throw new IllegalStateException("Не удалось запустить CoordinatorAgent", e);
+            try {
+                String agentName = deployment.agentName("coordinator-" + System.currentTimeMillis());
+                if (resume != null) {
+                    deployment.getJournal().deploymentResumed(resume.getDeploymentId());
+                } else {
+                    deployment.getJournal().deploymentStarted(agentName);
+                }
+                AgentController controller = agentContainer.createNewAgent(
+                    agentName,
+                    CoordinatorAgent.class.getName(),
+                    new Object[]{inventory.toString(), scripts.toString(),
+                        resume != null ? new LinkedHashMap<>(resume.getCompletedStages()) : new LinkedHashMap<String, String>(),
+                        deployment.forceStages, deployment.getId()}
+                );
+                controller.start();
+                deployment.coordinatorStarted = true;
+                deployment.coordinatorName = agentName;
+                deployment.coordinator = controller;
+                deployment.getStatus().update("clusterStatus", "DEPLOYING");
+                log.info("CoordinatorAgent {} запущен.", agentName);
+            } catch (Exception e) {
+                throw new IllegalStateException("Не удалось запустить CoordinatorAgent", e);
+            }
         }
     }
 
@@ -225,4 +433,3 @@ public class DeploymentService {
             && node.getPassword() != null;
     }
 }
-
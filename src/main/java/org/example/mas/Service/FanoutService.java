@@ -0,0 +1,335 @@
+package org.example.mas.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.example.mas.DTO.FanoutRequest;
+import org.example.mas.models.FanoutNode;
+import org.example.mas.utils.ArtifactStore;
+import org.example.mas.utils.FanoutDistributor;
+import org.example.mas.utils.InventoryParser;
+import org.example.mas.utils.IoThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Раздача больших артефактов (tar-архивов образов) воркерам деревом вместо звезды: контроллер отдаёт артефакт
+ * degree узлам, дальше его раздают сами узлы через relay (scripts/files/mas_relay.py), см. {@link FanoutDistributor}.
+ * Каждый переход проверяет sha256 и докачивается по Range. Готовность по узлам публикуется в статус
+ * под ключом fanout:&lt;id&gt; и доступна через /api/artifacts/distributions. Relay принимает команды только
+ * с токеном MAS, а источник первого уровня — только кэш MAS (public-url) или mas.artifacts.fanout.sources.
+ */
+@Service
+public class FanoutService {
+    private static final Logger logger = LoggerFactory.getLogger(FanoutService.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    static final String STATUS_PREFIX = "fanout:";
+    private static final String RELAY_TOKEN_HEADER = "X-MAS-Token";
+
+    /**
+     * Одна раздача: дерево, состояние узлов и итог. Счётчики по состояниям и список неудачных узлов ведутся
+     * по событиям узлов, чтобы публикация статуса на каждое событие не обходила всё дерево.
+     */
+    public static class Distribution {
+        private final String id;
+        private final String artifact;
+        private final ArtifactStore.Entry entry;
+        private final Deployment deployment;
+        private final int total;
+        private final long startedAt = System.currentTimeMillis();
+        private final int[] counts = new int[FanoutDistributor.NodeState.values().length];
+        private final Map<String, FanoutDistributor.NodeState> states = new HashMap<>();
+        private final Map<String, String> failed = new LinkedHashMap<>();
+        private volatile long finishedAt;
+        private volatile FanoutDistributor distributor;
+
+        Distribution(String id, String artifact, ArtifactStore.Entry entry, Deployment deployment, int total) {
+            this.id = id;
+            this.artifact = artifact;
+            this.entry = entry;
+            this.deployment = deployment;
+            this.total = total;
+            counts[FanoutDistributor.NodeState.PENDING.ordinal()] = total;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public boolean isFinished() {
+            return finishedAt > 0;
+        }
+
+        /** RUNNING, DONE — артефакт на всех узлах, FAILED — хотя бы один узел его не получил. */
+        public synchronized String getState() {
+            if (!isFinished()) return "RUNNING";
+            return counts[FanoutDistributor.NodeState.DONE.ordinal()] == total ? "DONE" : "FAILED";
+        }
+
+        synchronized void onChange(FanoutDistributor.NodeStatus node) {
+            FanoutDistributor.NodeState state = node.state;
+            FanoutDistributor.NodeState previous = states.put(node.name, state);
+            counts[(previous == null ? FanoutDistributor.NodeState.PENDING : previous).ordinal()]--;
+            counts[state.ordinal()]++;
+            if (state == FanoutDistributor.NodeState.FAILED) {
+                failed.put(node.name, node.error);
+            } else {
+                failed.remove(node.name);
+            }
+        }
+
+        public Map<String, Object> summary(boolean withNodes) {
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            Map<String, Object> nodes = new LinkedHashMap<>();
+            synchronized (this) {
+                for (FanoutDistributor.NodeState state : FanoutDistributor.NodeState.values()) {
+                    counts.put(state.name().toLowerCase(), this.counts[state.ordinal()]);
+                }
+                if (!withNodes) nodes.putAll(failed);
+            }
+            if (withNodes) {
+                for (FanoutDistributor.NodeStatus node : distributor.getStatuses().values()) {
+                    Map<String, Object> item = new LinkedHashMap<>();
+                    item.put("state", node.state.name());
+                    item.put("parent", node.parent);
+                    item.put("attempts", node.attempts);
+                    item.put("completedAtMs", node.completedAtMillis);
+                    item.put("transferMs", node.transferMillis);
+                    if (node.error != null) item.put("error", node.error);
+                    nodes.put(node.name, item);
+                }
+            }
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("id", id);
+            summary.put("deploymentId", deployment.getId());
+            summary.put("artifact", artifact);
+            summary.put("sha256", entry.sha256);
+            summary.put("size", entry.size);
+            summary.put("degree", distributor.getDegree());
+            summary.put("state", getState());
+            summary.put("total", total);
+            summary.putAll(counts);
+            summary.put("startedAt", startedAt);
+            summary.put("durationMs", (isFinished() ? finishedAt : System.currentTimeMillis()) - startedAt);
+            summary.put(withNodes ? "nodes" : "failedNodes", nodes);
+            return summary;
+        }
+    }
+
+    private final ArtifactService artifacts;
+    private final DeploymentService deployments;
+    private final int degree;
+    private final int retries;
+    private final long backoffMillis;
+    private final int relayPort;
+    private final String group;
+    private final int retention;
+    private final Duration fetchTimeout;
+    private final String publicUrl;
+    private final List<String> sources;
+    private final ExecutorService pool;
+    private final HttpClient http;
+    private final AtomicLong sequence = new AtomicLong();
+    /** Раздачи по id в порядке запуска, не больше retention. */
+    private final LinkedHashMap<String, Distribution> distributions = new LinkedHashMap<>();
+
+    public FanoutService(ArtifactService artifacts,
+                         DeploymentService deployments,
+                         @Value("${mas.artifacts.public-url:}") String publicUrl,
+                         @Value("${mas.artifacts.fanout.degree:4}") int degree,
+                         @Value("${mas.artifacts.fanout.retries:3}") int retries,
+                         @Value("${mas.artifacts.fanout.backoff-seconds:2}") int backoffSeconds,
+                         @Value("${mas.artifacts.fanout.relay-port:8765}") int relayPort,
+                         @Value("${mas.artifacts.fanout.group:execute_nodes}") String group,
+                         @Value("${mas.artifacts.fanout.max-concurrent:256}") int maxConcurrent,
+                         @Value("${mas.artifacts.fanout.retention:50}") int retention,
+                         @Value("${mas.artifacts.fanout.sources:}") String sources,
+                         @Value("${mas.artifacts.fetch-timeout-minutes:30}") int fetchTimeoutMinutes) {
+        this.artifacts = artifacts;
+        this.deployments = deployments;
+        this.publicUrl = publicUrl == null ? "" : publicUrl.trim().replaceAll("/+$", "");
+        this.sources = new ArrayList<>();
+        if (!this.publicUrl.isEmpty()) this.sources.add(this.publicUrl + "/");
+        for (String source : (sources == null ? "" : sources).split(",")) {
+            if (!source.isBlank()) this.sources.add(source.trim());
+        }
+        this.degree = Math.max(1, degree);
+        this.retries = Math.max(0, retries);
+        this.backoffMillis = Math.max(0, backoffSeconds) * 1000L;
+        this.relayPort = relayPort;
+        this.group = group;
+        this.retention = Math.max(1, retention);
+        this.fetchTimeout = Duration.ofMinutes(Math.max(1, fetchTimeoutMinutes));
+        // Задача узла держит поток на всё время его загрузки; одновременно грузится только «фронт» дерева.
+        this.pool = IoThreads.newPool("fanout", maxConcurrent);
+        this.http = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    /**
+     * Строит дерево и запускает раздачу; возвращается сразу. IllegalArgumentException — артефакта нет, узлов нет,
+     * узлы повторяются, не задан источник (mas.artifacts.public-url пуст и source не передан) или source не из
+     * кэша MAS и не из mas.artifacts.fanout.sources.
+     */
+    public Distribution start(FanoutRequest request) throws IOException {
+        if (!artifacts.isEnabled()) {
+            throw new IllegalArgumentException("Artifact cache is disabled (mas.artifacts.enabled=false)");
+        }
+        String artifact = request.getArtifact();
+        if (!ArtifactStore.isValidName(artifact)) {
+            throw new IllegalArgumentException("Invalid artifact name: " + artifact);
+        }
+        ArtifactStore.Entry entry = artifacts.resolve(artifact);
+        if (entry == null) {
+            throw new IllegalArgumentException("Unknown artifact: " + artifact);
+        }
+        String source = request.getSource() != null && !request.getSource().isBlank()
+                ? request.getSource().trim()
+                : publicUrl.isEmpty() ? null : publicUrl + "/sha256/" + entry.sha256;
+        if (source == null) {
+            throw new IllegalArgumentException("mas.artifacts.public-url is not set: nodes cannot reach the cache");
+        }
+        if (sources.stream().noneMatch(source::startsWith)) {
+            throw new IllegalArgumentException("Source is neither the MAS cache nor in mas.artifacts.fanout.sources: "
+                    + source);
+        }
+        Deployment deployment = request.getDeploymentId() == null
+                ? deployments.getDefaultDeployment()
+                : deployments.getDeployment(request.getDeploymentId());
+        if (deployment == null) {
+            throw new IllegalArgumentException("Unknown deployment: " + request.getDeploymentId());
+        }
+        List<FanoutDistributor.Node> nodes = resolveNodes(request.getNodes(), deployment);
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("No nodes to distribute to");
+        }
+
+        String id = deployment.agentName(artifact.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + sequence.incrementAndGet());
+        Distribution distribution = new Distribution(id, artifact, entry, deployment, nodes.size());
+        FanoutDistributor.Settings settings = new FanoutDistributor.Settings()
+                .degree(request.getDegree() != null ? request.getDegree() : degree)
+                .retries(retries)
+                .backoffMillis(backoffMillis);
+        distribution.distributor = new FanoutDistributor(nodes, source, entry.sha256, entry.size, settings,
+                this::fetch, pool, node -> {
+                    distribution.onChange(node);
+                    publish(distribution);
+                });
+        synchronized (distributions) {
+            distributions.put(id, distribution);
+            // Незавершённые раздачи остаются, сколько бы их ни было; вытесняются самые старые завершённые.
+            Iterator<Distribution> oldest = distributions.values().iterator();
+            while (distributions.size() > retention && oldest.hasNext()) {
+                if (oldest.next().isFinished()) oldest.remove();
+            }
+        }
+        logger.info("Distributing {} ({} bytes) to {} nodes, degree {}, from {}", artifact, entry.size, nodes.size(),
+                settings.getDegree(), source);
+        publish(distribution);
+        distribution.distributor.start().whenComplete((ignored, error) -> {
+            distribution.finishedAt = System.currentTimeMillis();
+            publish(distribution);
+            Map<String, Object> summary = distribution.summary(false);
+            logger.info("Distribution {} {}: {} done, {} failed in {} ms", id, summary.get("state"), summary.get("done"),
+                    summary.get("failed"), summary.get("durationMs"));
+        });
+        return distribution;
+    }
+
+    public Distribution get(String id) {
+        synchronized (distributions) {
+            return distributions.get(id);
+        }
+    }
+
+    public List<Distribution> list() {
+        synchronized (distributions) {
+            return new ArrayList<>(distributions.values());
+        }
+    }
+
+    private List<FanoutDistributor.Node> resolveNodes(List<FanoutNode> requested, Deployment deployment)
+            throws IOException {
+        List<FanoutDistributor.Node> nodes = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        if (requested == null || requested.isEmpty()) {
+            InventoryParser.Inventory inventory = InventoryParser.parse(deployment.getInventoryPath());
+            for (InventoryParser.Host host : inventory.getGroup(group)) {
+                if (seen.add(host.name)) {
+                    nodes.add(new FanoutDistributor.Node(host.name, relayUrl(host.getHost())));
+                }
+            }
+            return nodes;
+        }
+        for (FanoutNode node : requested) {
+            if (node.getName() == null || node.getName().isBlank()) {
+                throw new IllegalArgumentException("Node without a name");
+            }
+            if (!seen.add(node.getName())) {
+                throw new IllegalArgumentException("Duplicate node: " + node.getName());
+            }
+            String url = node.getUrl() == null || node.getUrl().isBlank() ? relayUrl(node.getName()) : node.getUrl().trim();
+            if (!url.startsWith("http://") && !url.startsWith("https://")) {
+                throw new IllegalArgumentException("Invalid relay URL for " + node.getName() + ": " + url);
+            }
+            nodes.add(new FanoutDistributor.Node(node.getName(), url));
+        }
+        return nodes;
+    }
+
+    private String relayUrl(String host) {
+        return "http://" + host + ":" + relayPort;
+    }
+
+    /** POST /fetch в relay узла; ответ приходит, когда узел скачал и проверил артефакт. */
+    private void fetch(String nodeUrl, String sourceUrl, String sha256, long size) throws IOException, InterruptedException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("url", sourceUrl);
+        body.put("sha256", sha256);
+        body.put("size", size);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(nodeUrl + "/fetch"))
+                .timeout(fetchTimeout)
+                .header("Content-Type", "application/json")
+                .header(RELAY_TOKEN_HEADER, artifacts.getToken())
+                .POST(HttpRequest.BodyPublishers.ofByteArray(OBJECT_MAPPER.writeValueAsBytes(body)))
+                .build();
+        HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("Relay " + nodeUrl + " returned " + response.statusCode() + ": " + response.body());
+        }
+    }
+
+    private void publish(Distribution distribution) {
+        try {
+            distribution.deployment.getStatusBus().publish(STATUS_PREFIX + distribution.getId(),
+                    OBJECT_MAPPER.writeValueAsString(distribution.summary(false)));
+        } catch (JsonProcessingException e) {
+            logger.warn("Cannot serialize distribution {}: {}", distribution.getId(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,121 @@
+package org.example.mas.Service;
+
+import jakarta.annotation.PreDestroy;
+import org.example.mas.utils.DeploymentJournal;
+import org.example.mas.utils.StageFingerprintStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Журнал текущего развёртывания ({@link DeploymentJournal}) и отпечатки последних успешных запусков
+ * стадий ({@link StageFingerprintStore}). Ошибки записи логируются и не прерывают развёртывание:
+ * в худшем случае стадии будут выполнены повторно.
+ */
+@Service
+public class JournalService {
+    private static final Logger logger = LoggerFactory.getLogger(JournalService.class);
+
+    private final DeploymentJournal journal;
+    private final boolean resumeEnabled;
+    private final StageFingerprintStore fingerprints;
+
+    public JournalService(@Value("${mas.journal.path:state/deployment.journal}") String path,
+                          @Value("${mas.journal.resume:true}") boolean resumeEnabled,
+                          @Value("${mas.journal.fingerprints-path:state/stage-fingerprints.json}") String fingerprintsPath) {
+        this.journal = new DeploymentJournal(Paths.get(path).toAbsolutePath());
+        this.resumeEnabled = resumeEnabled;
+        this.fingerprints = openFingerprints(fingerprintsPath);
+    }
+
+    private static StageFingerprintStore openFingerprints(String path) {
+        try {
+            return new StageFingerprintStore(Paths.get(path).toAbsolutePath());
+        } catch (Exception e) {
+            logger.warn("Ignoring unreadable stage fingerprints {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    /** Отпечаток последнего успешного запуска стадии. */
+    public Optional<StageFingerprintStore.Entry> lastSuccess(String stage) {
+        return fingerprints == null ? Optional.empty() : Optional.ofNullable(fingerprints.getEntries().get(stage));
+    }
+
+    public boolean isResumeEnabled() {
+        return resumeEnabled;
+    }
+
+    /** Состояние последнего развёртывания; пустое, если журнал не читается. */
+    public DeploymentJournal.State replay() {
+        try {
+            return journal.replay();
+        } catch (Exception e) {
+            logger.warn("Failed to replay deployment journal: {}", e.getMessage());
+            return new DeploymentJournal.State();
+        }
+    }
+
+    public void deploymentStarted(String deploymentId) {
+        try {
+            journal.deploymentStarted(deploymentId);
+        } catch (Exception e) {
+            logger.warn("Failed to journal deployment start: {}", e.getMessage());
+        }
+    }
+
+    public void deploymentResumed(String deploymentId) {
+        try {
+            journal.deploymentResumed(deploymentId);
+        } catch (Exception e) {
+            logger.warn("Failed to journal deployment resume: {}", e.getMessage());
+        }
+    }
+
+    public void stageStarted(String stage, String fingerprint) {
+        try {
+            // Пока стадия идёт, прежний успешный запуск не считается актуальным (и после падения JVM тоже).
+            if (fingerprints != null) fingerprints.invalidate(stage);
+        } catch (Exception e) {
+            logger.warn("Failed to invalidate fingerprint of {}: {}", stage, e.getMessage());
+        }
+        try {
+            journal.stageStarted(stage, fingerprint);
+        } catch (Exception e) {
+            logger.warn("Failed to journal start of {}: {}", stage, e.getMessage());
+        }
+    }
+
+    public void stageFinished(String stage, String state, String fingerprint, Map<String, String> hostOutcomes) {
+        try {
+            journal.stageFinished(stage, state, fingerprint, hostOutcomes);
+        } catch (Exception e) {
+            logger.warn("Failed to journal end of {}: {}", stage, e.getMessage());
+        }
+        try {
+            if (fingerprints != null && "SUCCESS".equals(state) && fingerprint != null) {
+                fingerprints.recordSuccess(stage, fingerprint);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to record fingerprint of {}: {}", stage, e.getMessage());
+        }
+    }
+
+    public void deploymentFinished(String result) {
+        try {
+            journal.deploymentFinished(result);
+        } catch (Exception e) {
+            logger.warn("Failed to journal deployment end: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        journal.close();
+    }
+}
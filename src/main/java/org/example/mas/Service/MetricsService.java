@@ -0,0 +1,151 @@
+package org.example.mas.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.example.mas.utils.AnsibleRunner;
+import org.example.mas.utils.PlaybookExecutor;
+import org.example.mas.utils.PlaybookReport;
+import org.example.mas.utils.SshBootstrapper;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Метрики развёртывания в {@link MeterRegistry} (actuator, /actuator/prometheus): длительность и исход стадий,
+ * исходы хостов, задержки bootstrap, жизнь процессов ansible-playbook, поток обновлений статуса, число агентов,
+ * трафик кэша артефактов.
+ * Теги — только с ограниченным числом значений (стадия, исход, тип агента): хост в теге дал бы по серии
+ * на узел, поэтому задержки bootstrap собираются в гистограмму по всем узлам.
+ */
+@Service
+public class MetricsService {
+
+    private final MeterRegistry registry;
+    private final Map<String, AtomicInteger> agents = new ConcurrentHashMap<>();
+    private final AtomicInteger activeProcesses = new AtomicInteger();
+
+    public MetricsService(MeterRegistry registry, StatusService statusService, StatusEventBus statusBus) {
+        this.registry = registry;
+        // Версия снимка растёт на каждое обновление: счётчик без затрат на горячем пути, rate() — обновлений в секунду.
+        FunctionCounter.builder("mas.status.updates", statusService, StatusService::getVersion)
+                .description("Applied status updates")
+                .register(registry);
+        FunctionCounter.builder("mas.status.bus.published", statusBus, StatusEventBus::getPublished)
+                .description("Status updates published by agents")
+                .register(registry);
+        FunctionCounter.builder("mas.status.bus.coalesced", statusBus, StatusEventBus::getCoalesced)
+                .description("Status updates replaced by a newer value of the same key before being applied")
+                .register(registry);
+        FunctionCounter.builder("mas.status.bus.overflowed", statusBus, StatusEventBus::getOverflowed)
+                .description("Status updates queued while more than mas.status.bus-capacity distinct keys were pending; the queue is not bounded, growth means the consumer is behind")
+                .register(registry);
+        Gauge.builder("mas.ansible.processes.active", activeProcesses, AtomicInteger::get)
+                .description("Running ansible-playbook processes")
+                .register(registry);
+    }
+
+    /** Стадия целиком, с повторами и шардами; outcome — SUCCESS, QUARANTINED или класс ошибки. */
+    public void recordStage(String stage, AnsibleRunner.AnsibleResult result, long durationNanos) {
+        Timer.builder("mas.stage.duration")
+                .description("Playbook stage duration including retries")
+                .tag("stage", stage)
+                .tag("outcome", result.errorCode != null ? result.errorCode : (result.success ? "SUCCESS" : "UNKNOWN"))
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+        PlaybookReport report = result.report;
+        if (report == null || !report.hasEvents()) return;
+        int failed = report.getFailedHosts().size();
+        int unreachable = report.getUnreachableHosts().size();
+        hosts(stage, "ok", report.getHostOutcomes().size() - failed - unreachable);
+        hosts(stage, "failed", failed);
+        hosts(stage, "unreachable", unreachable);
+    }
+
+    private void hosts(String stage, String outcome, int count) {
+        if (count <= 0) return;
+        Counter.builder("mas.stage.hosts")
+                .description("Hosts by final outcome of a stage")
+                .tag("stage", stage)
+                .tag("outcome", outcome)
+                .register(registry)
+                .increment(count);
+    }
+
+    public void recordBootstrap(SshBootstrapper.BootstrapResult result) {
+        String outcome = result.success ? "success" : "failure";
+        Timer.builder("mas.bootstrap.connect")
+                .description("SSH connect latency of node bootstrap")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(result.connectMillis, TimeUnit.MILLISECONDS);
+        Timer.builder("mas.bootstrap.exec")
+                .description("Bootstrap script latency")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(result.execMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Executor, который засекает жизнь каждого процесса ansible-playbook (от запуска до выхода) под
+     * mas.ansible.process с тегами playbook и outcome (success / failure по коду выхода).
+     */
+    public PlaybookExecutor instrument(PlaybookExecutor executor) {
+        return command -> {
+            long start = System.nanoTime();
+            Process process = executor.start(command);
+            List<String> args = command.command();
+            String playbook = args.isEmpty() ? "unknown" : args.get(args.size() - 1);
+            activeProcesses.incrementAndGet();
+            process.onExit().whenComplete((p, error) -> {
+                activeProcesses.decrementAndGet();
+                String outcome = error == null && p.exitValue() == 0 ? "success" : "failure";
+                Timer.builder("mas.ansible.process")
+                        .description("ansible-playbook process lifetime")
+                        .tag("playbook", playbook)
+                        .tag("outcome", outcome)
+                        .register(registry)
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            });
+            return process;
+        };
+    }
+
+    /**
+     * Отдано узлам из кэша артефактов (source=cache) и скачано в него из внешних источников (source=upstream):
+     * разница — трафик, который не пошёл через внешний канал.
+     */
+    public void recordArtifactBytes(String source, long bytes) {
+        Counter.builder("mas.artifacts.bytes")
+                .description("Artifact bytes served to nodes or fetched from upstream mirrors")
+                .baseUnit("bytes")
+                .tag("source", source)
+                .register(registry)
+                .increment(bytes);
+    }
+
+    /** Агент JADE запущен (type — простое имя класса). */
+    public void agentStarted(String type) {
+        agents.computeIfAbsent(type, t -> {
+            AtomicInteger count = new AtomicInteger();
+            Gauge.builder("mas.agents", count, AtomicInteger::get)
+                    .description("Running JADE agents")
+                    .tag("type", t)
+                    .register(registry);
+            return count;
+        }).incrementAndGet();
+    }
+
+    public void agentStopped(String type) {
+        AtomicInteger count = agents.get(type);
+        if (count != null) count.decrementAndGet();
+    }
+}
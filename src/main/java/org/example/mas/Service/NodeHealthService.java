@@ -0,0 +1,299 @@
+package org.example.mas.Service;
+
+import jakarta.annotation.PreDestroy;
+import org.example.mas.DTO.Alert;
+import org.example.mas.utils.HealthProbe;
+import org.example.mas.utils.IoThreads;
+import org.example.mas.utils.TimingWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Периодические проверки узлов, за которыми следят MasterAgent/WorkerAgent. Все проверки планируются одним
+ * {@link TimingWheel} (а не таймером на агента) с разбросом ±jitter от интервала, выполняются пулом из
+ * max-concurrent потоков; у узла в очереди не больше одной проверки. Здоровье узлов публикуется в статус
+ * одним ключом nodeHealth не чаще publish-interval-seconds и только если оно изменилось.
+ *
+ * <p>Бюджет на 2000 узлов при интервале 30 с: ~67 проверок в секунду. Режим tcp — доли миллисекунды CPU
+ * на проверку, режим ssh — обмен ключами и exec, порядка 5–15 мс CPU, то есть до ~1 ядра в пике; при
+ * задержке ~300 мс одновременно идёт ~20 проверок, поэтому max-concurrent 32 хватает с запасом. Недоступные
+ * узлы занимают поток на timeout-seconds: если их больше max-concurrent * interval / timeout, интервал
+ * для всех растягивается, а не растёт число потоков. Память — сотни байт на узел, плюс один поток колеса.
+ */
+@Service
+public class NodeHealthService {
+    private static final Logger log = LoggerFactory.getLogger(NodeHealthService.class);
+
+    public enum Health { UNKNOWN, UP, DEGRADED, DOWN }
+
+    private static final class Node {
+        final String name;
+        final String host;
+        final int port;
+        final String user;
+        final String privateKey;
+        final String command;
+        volatile boolean removed;
+        volatile TimingWheel.Timeout next;
+        /** Номер цепочки проверок: внеочередная проверка начинает новую, запланированные задачи старой — no-op. */
+        final AtomicLong chain = new AtomicLong();
+        Health health = Health.UNKNOWN;
+        long since = System.currentTimeMillis();
+        int unreachableInRow;
+        String message;
+
+        Node(String name, String host, int port, String user, String privateKey, String command) {
+            this.name = name;
+            this.host = host;
+            this.port = port;
+            this.user = user;
+            this.privateKey = privateKey;
+            this.command = command;
+        }
+    }
+
+    private final StatusService statusService;
+    private final AlertService alertService;
+
+    @Value("${mas.health.enabled:true}")
+    private boolean enabled;
+
+    /** tcp — только порт SSH; ssh — вход по ключу и команда проверки. */
+    @Value("${mas.health.probe:ssh}")
+    private String probeMode;
+
+    @Value("${mas.health.interval-seconds:30}")
+    private int intervalSeconds;
+
+    @Value("${mas.health.jitter:0.2}")
+    private double jitter;
+
+    @Value("${mas.health.max-concurrent:32}")
+    private int maxConcurrent;
+
+    @Value("${mas.health.timeout-seconds:10}")
+    private int timeoutSeconds;
+
+    /** Сколько недоступностей подряд переводят узел в DOWN; до этого он сохраняет прежнее состояние. */
+    @Value("${mas.health.failure-threshold:3}")
+    private int failureThreshold;
+
+    @Value("${mas.health.publish-interval-seconds:5}")
+    private int publishIntervalSeconds;
+
+    @Value("${mas.health.user:root}")
+    private String defaultUser;
+
+    @Value("${mas.health.private-key:~/.ssh/id_ed25519}")
+    private String defaultPrivateKey;
+
+    private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicLong probes = new AtomicLong();
+    private final AtomicLong probeMillis = new AtomicLong();
+    private volatile ThreadPoolExecutor pool;
+    private volatile TimingWheel wheel;
+    private volatile HealthProbe probe;
+
+    public NodeHealthService(StatusService statusService, AlertService alertService) {
+        this.statusService = statusService;
+        this.alertService = alertService;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Ставит узел под наблюдение; первая проверка — в случайный момент первого интервала, чтобы проверки
+     * узлов, созданных одновременно, не шли пачкой. user и privateKey — null, если в inventory их нет.
+     */
+    public void register(String name, String host, int port, String user, String privateKey, String command) {
+        if (!enabled) return;
+        start();
+        Node node = new Node(name, host, port, user != null ? user : defaultUser,
+                resolvePath(privateKey != null ? privateKey : defaultPrivateKey), command);
+        Node previous = nodes.put(name, node);
+        if (previous != null) {
+            cancel(previous);
+        }
+        schedule(node, 0, (long) (ThreadLocalRandom.current().nextDouble() * TimeUnit.SECONDS.toMillis(intervalSeconds)));
+        dirty.set(true);
+        log.debug("Health probe registered for {} ({}:{}, {})", name, host, port, probe.getMode());
+    }
+
+    public void unregister(String name) {
+        Node node = nodes.remove(name);
+        if (node != null) {
+            cancel(node);
+            dirty.set(true);
+        }
+    }
+
+    /** Состояние одного узла; null, если узел не под наблюдением. */
+    public Health getHealth(String name) {
+        Node node = nodes.get(name);
+        if (node == null) return null;
+        synchronized (node) {
+            return node.health;
+        }
+    }
+
+    /** Внеочередная проверка узла; false, если узел не под наблюдением. */
+    public boolean probeNow(String name) {
+        Node node = nodes.get(name);
+        if (node == null) return false;
+        TimingWheel.Timeout next = node.next;
+        if (next != null) next.cancel();
+        schedule(node, node.chain.incrementAndGet(), 0);
+        return true;
+    }
+
+    public Map<String, Health> getHealth() {
+        Map<String, Health> result = new TreeMap<>();
+        nodes.values().forEach(n -> {
+            synchronized (n) {
+                result.put(n.name, n.health);
+            }
+        });
+        return result;
+    }
+
+    private synchronized void start() {
+        if (wheel != null) return;
+        probe = new HealthProbe("tcp".equalsIgnoreCase(probeMode.trim()) ? HealthProbe.Mode.TCP : HealthProbe.Mode.SSH,
+                timeoutSeconds * 1000);
+        pool = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                IoThreads.factory("health-probe"));
+        pool.allowCoreThreadTimeOut(true);
+        wheel = new TimingWheel("health-wheel", 100, 512, pool);
+        wheel.schedule(this::publish, publishIntervalSeconds, TimeUnit.SECONDS);
+        log.info("Node health monitoring: {} probes every {}s ±{}%, up to {} concurrent", probe.getMode(),
+                intervalSeconds, Math.round(jitter * 100), maxConcurrent);
+    }
+
+    private void schedule(Node node, long chain, long delayMillis) {
+        if (node.removed) return;
+        node.next = wheel.schedule(() -> probe(node, chain), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void probe(Node node, long chain) {
+        if (node.removed || node.chain.get() != chain) return;
+        HealthProbe.Result result = probe.probe(node.host, node.port, node.user, node.privateKey, node.command);
+        probes.incrementAndGet();
+        probeMillis.addAndGet(result.latencyMillis);
+        record(node, result);
+        if (node.chain.get() != chain) return;
+        double spread = 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        schedule(node, chain, (long) (TimeUnit.SECONDS.toMillis(intervalSeconds) * spread));
+    }
+
+    private void record(Node node, HealthProbe.Result result) {
+        Health health;
+        synchronized (node) {
+            health = node.health;
+            switch (result.outcome) {
+                case OK:
+                    node.unreachableInRow = 0;
+                    health = Health.UP;
+                    break;
+                case CHECK_FAILED:
+                    node.unreachableInRow = 0;
+                    health = Health.DEGRADED;
+                    break;
+                default:
+                    if (++node.unreachableInRow >= failureThreshold) health = Health.DOWN;
+            }
+            if (health == node.health) return;
+            node.health = health;
+            node.since = System.currentTimeMillis();
+            node.message = result.message;
+        }
+        dirty.set(true);
+        if (health == Health.UP) {
+            log.info("Node {} is UP ({} ms)", node.name, result.latencyMillis);
+        } else {
+            log.warn("Node {} is {}: {}", node.name, health, result.message);
+            // Узлы, упавшие в одном окне, собираются AlertService в один алерт.
+            alertService.raise(Alert.Severity.WARNING, "health", "NODE_" + health.name(), List.of(node.name),
+                    result.message);
+        }
+    }
+
+    /** Сводка и состояние каждого узла под ключом nodeHealth, если что-то изменилось. */
+    private void publish() {
+        try {
+            if (dirty.getAndSet(false)) {
+                Map<String, Integer> counts = new LinkedHashMap<>();
+                for (Health h : Health.values()) counts.put(h.name(), 0);
+                Map<String, Object> perNode = new TreeMap<>();
+                for (Node node : nodes.values()) {
+                    Map<String, Object> state = new LinkedHashMap<>();
+                    synchronized (node) {
+                        counts.merge(node.health.name(), 1, Integer::sum);
+                        state.put("health", node.health.name());
+                        state.put("since", node.since);
+                        if (node.message != null) state.put("message", node.message);
+                    }
+                    perNode.put(node.name, state);
+                }
+                long count = probes.get();
+                Map<String, Object> summary = new LinkedHashMap<>();
+                summary.put("total", perNode.size());
+                summary.putAll(counts);
+                summary.put("probes", count);
+                summary.put("avgProbeMs", count == 0 ? 0 : probeMillis.get() / count);
+                summary.put("queued", pool.getQueue().size());
+                Map<String, Object> value = new LinkedHashMap<>();
+                value.put("summary", summary);
+                value.put("nodes", perNode);
+                statusService.update("nodeHealth", statusService.getObjectMapper().writeValueAsString(value));
+            }
+        } catch (Exception e) {
+            log.warn("Failed to publish node health: {}", e.getMessage());
+        } finally {
+            TimingWheel current = wheel;
+            if (current != null) {
+                try {
+                    current.schedule(this::publish, publishIntervalSeconds, TimeUnit.SECONDS);
+                } catch (IllegalStateException closed) {
+                    // остановлено
+                }
+            }
+        }
+    }
+
+    private static void cancel(Node node) {
+        node.removed = true;
+        TimingWheel.Timeout next = node.next;
+        if (next != null) next.cancel();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        nodes.values().forEach(NodeHealthService::cancel);
+        if (wheel != null) wheel.close();
+        if (pool != null) pool.shutdownNow();
+    }
+
+    private static String resolvePath(String path) {
+        if (path.startsWith("~")) {
+            return System.getProperty("user.home") + path.substring(1);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,93 @@
+package org.example.mas.Service;
+
+import org.example.mas.utils.PlaybookReport;
+import org.example.mas.utils.TaskProfile;
+import org.example.mas.utils.TaskTimingStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * История длительностей задач по хостам ({@link TaskTimingStore}) и её анализ ({@link TaskProfile}):
+ * самые медленные задачи стадии, хосты-выбросы и регрессии между запусками. Ошибки записи логируются
+ * и не прерывают развёртывание.
+ */
+@Service
+public class ProfilingService {
+    private static final Logger logger = LoggerFactory.getLogger(ProfilingService.class);
+
+    private final boolean enabled;
+    private final TaskTimingStore store;
+
+    public ProfilingService(@Value("${mas.profiling.enabled:true}") boolean enabled,
+                            @Value("${mas.profiling.dir:state/profiling}") String dir,
+                            @Value("${mas.profiling.retention-runs:20}") int retentionRuns) {
+        this.enabled = enabled;
+        this.store = new TaskTimingStore(Paths.get(dir).toAbsolutePath(), retentionRuns);
+    }
+
+    /** Сохраняет запуск стадии; timings — из {@link PlaybookReport#getTaskTimings()}. */
+    public void record(String stage, String runId, long startedAt, long durationMillis, boolean success,
+                       List<PlaybookReport.TaskTiming> timings) {
+        if (!enabled || timings == null || timings.isEmpty()) return;
+        try {
+            store.append(stage, runId, startedAt, durationMillis, success, timings);
+        } catch (Exception e) {
+            logger.warn("Failed to record task timings of {}: {}", stage, e.getMessage());
+        }
+    }
+
+    public List<String> stages() throws IOException {
+        return store.stages();
+    }
+
+    /** Сохранённые запуски стадии, старые первыми. */
+    public List<Map<String, Object>> runs(String stage) throws IOException {
+        List<Map<String, Object>> runs = new ArrayList<>();
+        store.forEachRun(stage, run -> {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("runId", run.runId);
+            entry.put("startedAt", run.startedAt);
+            entry.put("durationMillis", run.durationMillis);
+            entry.put("success", run.success);
+            entry.put("hosts", run.getHostCount());
+            entry.put("samples", run.getSampleCount());
+            runs.add(entry);
+        });
+        return runs;
+    }
+
+    /** Самые медленные задачи запуска runId (null — последнего); null, если запуска нет. */
+    public List<TaskProfile.TaskStats> slowestTasks(String stage, String runId, int limit) throws IOException {
+        TaskTimingStore.Run run = store.run(stage, runId);
+        return run == null ? null : TaskProfile.slowestTasks(run, limit);
+    }
+
+    public List<TaskProfile.HostOutlier> outliers(String stage, String runId, double factor, long minExcessMillis,
+                                                  int limit) throws IOException {
+        TaskTimingStore.Run run = store.run(stage, runId);
+        return run == null ? null : TaskProfile.outliers(run, factor, minExcessMillis, limit);
+    }
+
+    /** Регрессии последнего запуска относительно медианы baselineRuns предыдущих. */
+    public List<TaskProfile.Regression> regressions(String stage, int baselineRuns, String metric, double threshold,
+                                                    long minDeltaMillis) throws IOException {
+        List<Map<String, TaskProfile.TaskStats>> runs = new ArrayList<>();
+        List<Long> durations = new ArrayList<>();
+        store.forEachRun(stage, run -> {
+            runs.add(TaskProfile.taskStats(run));
+            durations.add(run.durationMillis);
+        });
+        int from = Math.max(0, runs.size() - Math.max(1, baselineRuns) - 1);
+        return TaskProfile.regressions(runs.subList(from, runs.size()), durations.subList(from, durations.size()),
+                metric, threshold, minDeltaMillis);
+    }
+}
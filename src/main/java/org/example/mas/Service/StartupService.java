@@ -2,6 +2,7 @@ package org.example.mas.Service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.ApplicationListener;
 import org.springframework.stereotype.Component;
@@ -13,8 +14,16 @@ public class StartupService implements ApplicationListener<ApplicationReadyEvent
 
     private final DeploymentService deploymentService;
 
+    /** false — startDeploymentFromInventory вызывает сам владелец контекста (нагрузочный стенд ScaleHarness). */
+    @Value("${mas.autostart:true}")
+    private boolean autostart;
+
     @Override
     public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (!autostart) {
+            log.info("Авто-старт отключён (mas.autostart=false).");
+            return;
+        }
         try {
             String result = deploymentService.startDeploymentFromInventory();
             log.info("Авто-старт: {}", result);
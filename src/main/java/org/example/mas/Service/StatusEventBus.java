@@ -0,0 +1,106 @@
+package org.example.mas.Service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Внутрипроцессная доставка обновлений статуса от агентов в {@link StatusService}.
+ * publish не блокируется: обновление кладётся в очередь, один поток-потребитель
+ * применяет их по порядку. Если ключ уже ждёт в очереди, значение заменяется (coalescing) —
+ * промежуточные значения одного ключа читателям всё равно не видны. Очередь ничем не ограничена, кроме
+ * числа разных ключей: capacity — только порог, сверх которого новый ключ всё равно ставится в очередь,
+ * чтобы ничего не терять, и учитывается в overflowed как признак того, что потребитель не успевает.
+ */
+@Service
+public class StatusEventBus {
+    private static final Logger logger = LoggerFactory.getLogger(StatusEventBus.class);
+
+    private final StatusService statusService;
+    private final int capacity;
+    private final LinkedHashMap<String, String> pending = new LinkedHashMap<>();
+    private final Thread consumer;
+    private volatile boolean running = true;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+
+    public StatusEventBus(StatusService statusService,
+                          @Value("${mas.status.bus-capacity:4096}") int capacity) {
+        this.statusService = statusService;
+        this.capacity = Math.max(1, capacity);
+        this.consumer = new Thread(this::consume, "status-bus");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    public void publish(String key, String value) {
+        published.incrementAndGet();
+        synchronized (pending) {
+            if (pending.containsKey(key)) {
+                pending.put(key, value);
+                coalesced.incrementAndGet();
+                return;
+            }
+            if (pending.size() >= capacity) {
+                overflowed.incrementAndGet();
+            }
+            pending.put(key, value);
+            pending.notify();
+        }
+    }
+
+    private void consume() {
+        while (running) {
+            synchronized (pending) {
+                while (pending.isEmpty() && running) {
+                    try {
+                        pending.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+            // Батч применяет только этот поток: более новое значение ключа попадёт в следующий батч
+            // и не обгонит старое.
+            Map<String, String> batch;
+            synchronized (pending) {
+                batch = new LinkedHashMap<>(pending);
+                pending.clear();
+            }
+            for (Map.Entry<String, String> e : batch.entrySet()) {
+                try {
+                    statusService.update(e.getKey(), e.getValue());
+                } catch (Exception ex) {
+                    logger.warn("Failed to apply status update {}: {}", e.getKey(), ex.getMessage());
+                }
+            }
+        }
+    }
+
+    public long getPublished() {
+        return published.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getOverflowed() {
+        return overflowed.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        consumer.interrupt();
+    }
+}
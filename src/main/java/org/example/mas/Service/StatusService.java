@@ -1,55 +1,142 @@
 package org.example.mas.Service;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.mas.DTO.StatusDelta;
+import org.example.mas.DTO.StatusSnapshot;
+import org.example.mas.utils.PersistentMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Статус развёртывания. Каждое обновление создаёт новый неизменяемый {@link StatusSnapshot}
+ * со следующей версией; читатели получают текущий снимок без копирования и блокировок.
+ * Ключи вне известных полей (по одному на узел, стадию, раздачу) хранятся в {@link PersistentMap}:
+ * новая версия не копирует остальные ключи.
+ */
 @Service
 public class StatusService {
     private static final Logger logger = LoggerFactory.getLogger(StatusService.class);
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TypeReference<LinkedHashMap<String, String>> STAGE_MAP = new TypeReference<>() {};
+    private static final TypeReference<List<String>> STRING_LIST = new TypeReference<>() {};
+    /** Сколько последних изменений хранится для возобновления SSE-подписки по Last-Event-ID. */
+    static final int DELTA_HISTORY = 1024;
 
-    private final Map<String, Object> status = new ConcurrentHashMap<>();
+    private final Object versionLock = new Object();
+    private final Sinks.Many<StatusDelta> deltas = Sinks.many().replay().limit(DELTA_HISTORY);
+    private volatile StatusSnapshot current;
 
     public StatusService() {
-        status.put("ansibleStage", "WAITING_FOR_DEPLOYMENT_START");
-        status.put("clusterStatus", "NOT_DEPLOYED");
-        status.put("alerts", new String[0]);
-        status.put("diagnosticLogs", "");
-        status.put("lastUpdate", System.currentTimeMillis());
-        status.put("activeNodes", new ArrayList<String>());
-        status.put("bootstrapStatus", "PENDING");
+        current = new StatusSnapshot(0, "NOT_DEPLOYED", new LinkedHashMap<>(), new ArrayList<>(), "PENDING",
+                new ArrayList<>(), "", System.currentTimeMillis(), PersistentMap.empty());
     }
 
-    public Map<String, Object> getStatus() {
-        return new HashMap<>(status);
+    /** Текущий снимок: все изменения до его version включительно и ни одного после. */
+    public StatusSnapshot snapshot() {
+        return current;
     }
 
-    public Object get(String key) {
-        return status.get(key);
+    public long getVersion() {
+        return current.getVersion();
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return OBJECT_MAPPER;
     }
 
     public void update(String key, String jsonString) {
-        logger.info("### StatusService updated: {} = {}", key, jsonString);
-        try {
-            if (jsonString != null && jsonString.trim().startsWith("{") && jsonString.endsWith("}")) {
-                Map<String, Object> obj = OBJECT_MAPPER.readValue(jsonString, Map.class);
-                status.put(key, obj);
-            } else {
-                status.put(key, jsonString);
+        logger.debug("### StatusService updated: {} = {}", key, jsonString);
+        long now = System.currentTimeMillis();
+        synchronized (versionLock) {
+            StatusSnapshot prev = current;
+            String clusterStatus = prev.getClusterStatus();
+            Map<String, String> ansibleStage = prev.getAnsibleStage();
+            List<String> activeNodes = prev.getActiveNodes();
+            String bootstrapStatus = prev.getBootstrapStatus();
+            List<String> alerts = prev.getAlerts();
+            String diagnosticLogs = prev.getDiagnosticLogs();
+            PersistentMap<String, Object> extra = prev.getExtra();
+            Object value;
+
+            switch (key) {
+                case "clusterStatus":
+                    value = clusterStatus = jsonString;
+                    break;
+                case "bootstrapStatus":
+                    value = bootstrapStatus = jsonString;
+                    break;
+                case "diagnosticLogs":
+                    value = diagnosticLogs = jsonString;
+                    break;
+                case "ansibleStage": {
+                    Map<String, String> parsed = parse(jsonString, STAGE_MAP);
+                    if (parsed == null) {
+                        logger.warn("Ignoring non-map ansibleStage update: {}", jsonString);
+                        return;
+                    }
+                    value = ansibleStage = parsed;
+                    break;
+                }
+                case "activeNodes": {
+                    List<String> parsed = parse(jsonString, STRING_LIST);
+                    value = activeNodes = parsed != null ? parsed : List.of(jsonString);
+                    break;
+                }
+                case "alerts": {
+                    List<String> parsed = parse(jsonString, STRING_LIST);
+                    if (parsed == null) {
+                        parsed = new ArrayList<>(alerts);
+                        parsed.add(jsonString);
+                    }
+                    value = alerts = parsed;
+                    break;
+                }
+                default: {
+                    value = jsonString;
+                    if (jsonString != null && jsonString.trim().startsWith("{") && jsonString.endsWith("}")) {
+                        Map<String, Object> parsed = parse(jsonString, new TypeReference<LinkedHashMap<String, Object>>() {});
+                        if (parsed != null) value = parsed;
+                    }
+                    extra = extra.with(key, value);
+                }
             }
-        } catch (Exception e) {
-            status.put(key, jsonString);
+
+            long version = prev.getVersion() + 1;
+            current = new StatusSnapshot(version, clusterStatus, ansibleStage, activeNodes, bootstrapStatus,
+                    alerts, diagnosticLogs, now, extra);
+            deltas.tryEmitNext(new StatusDelta(version, key, value, now));
         }
-        status.put("lastUpdate", System.currentTimeMillis());
     }
 
+    private static <T> T parse(String json, TypeReference<T> type) {
+        if (json == null || json.isBlank()) return null;
+        try {
+            return OBJECT_MAPPER.readValue(json, type);
+        } catch (Exception e) {
+            return null;
+        }
+    }
 
+    /**
+     * Изменения с версией больше afterVersion, затем новые по мере появления.
+     * Недавние изменения (до {@link #DELTA_HISTORY}) воспроизводятся из истории.
+     */
+    public Flux<StatusDelta> deltasAfter(long afterVersion) {
+        return deltas.asFlux().filter(d -> d.getVersion() > afterVersion);
+    }
 
+    /** Можно ли продолжить поток с afterVersion без пропусков, или нужен новый снимок. */
+    public boolean canResumeFrom(long afterVersion) {
+        long version = current.getVersion();
+        return afterVersion <= version && afterVersion >= version - DELTA_HISTORY;
+    }
 }
@@ -0,0 +1,87 @@
+package org.example.mas.config;
+
+import org.example.mas.utils.AnsibleSimulator;
+import org.example.mas.utils.PlaybookExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Чем координатор запускает плейбуки: mas.ansible.executor=ansible (по умолчанию) — настоящий ansible-playbook,
+ * simulator — {@link AnsibleSimulator} с параметрами mas.simulator.* для прогонов без узлов.
+ */
+@Configuration
+public class AnsibleExecutorConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnsibleExecutorConfig.class);
+
+    @Value("${mas.ansible.executor:ansible}")
+    private String executor;
+
+    @Value("${mas.simulator.forks:50}")
+    private int forks;
+
+    @Value("${mas.simulator.task-latency-ms:200}")
+    private long taskLatencyMs;
+
+    @Value("${mas.simulator.latency-sigma:0.5}")
+    private double latencySigma;
+
+    @Value("${mas.simulator.time-scale:1.0}")
+    private double timeScale;
+
+    @Value("${mas.simulator.changed-rate:0.3}")
+    private double changedRate;
+
+    @Value("${mas.simulator.skipped-rate:0.3}")
+    private double skippedRate;
+
+    @Value("${mas.simulator.failure-rate:0}")
+    private double failureRate;
+
+    @Value("${mas.simulator.unreachable-rate:0}")
+    private double unreachableRate;
+
+    @Value("${mas.simulator.failed-hosts:}")
+    private String failedHosts;
+
+    @Value("${mas.simulator.unreachable-hosts:}")
+    private String unreachableHosts;
+
+    @Value("${mas.simulator.seed:#{null}}")
+    private Long seed;
+
+    @Bean
+    public PlaybookExecutor playbookExecutor() {
+        if (!"simulator".equalsIgnoreCase(executor.trim())) {
+            return PlaybookExecutor.LOCAL;
+        }
+        logger.warn("Playbooks run in SIMULATOR mode: no hosts are touched (forks={}, latency={}ms, time-scale={})",
+                forks, taskLatencyMs, timeScale);
+        return new AnsibleSimulator(new AnsibleSimulator.Settings()
+                .forks(forks)
+                .taskLatencyMs(taskLatencyMs)
+                .latencySigma(latencySigma)
+                .timeScale(timeScale)
+                .changedRate(changedRate)
+                .skippedRate(skippedRate)
+                .failureRate(failureRate)
+                .unreachableRate(unreachableRate)
+                .failedHosts(csv(failedHosts))
+                .unreachableHosts(csv(unreachableHosts))
+                .seed(seed));
+    }
+
+    private static Set<String> csv(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toSet());
+    }
+}
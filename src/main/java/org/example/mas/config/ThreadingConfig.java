@@ -0,0 +1,17 @@
+package org.example.mas.config;
+
+import org.example.mas.utils.IoThreads;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Тот же переключатель, что и у Spring Boot (Tomcat, @Async): spring.threads.virtual.enabled=true
+ * на Java 21+ переводит на виртуальные потоки и блокирующий ввод-вывод MAS ({@link IoThreads}).
+ */
+@Configuration
+public class ThreadingConfig {
+
+    public ThreadingConfig(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        IoThreads.configure(virtualThreads);
+    }
+}
@@ -0,0 +1,192 @@
+package org.example.mas.internal;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.example.mas.Service.ArtifactService;
+import org.example.mas.utils.ArtifactStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * Раздача кэша артефактов узлам: GET/HEAD /artifacts/&lt;имя&gt; (или /artifacts/sha256/&lt;hex&gt;) с ETag = sha256
+ * и докачкой по Range. Файл отдаётся без копирования через heap: Tomcat (NIO-коннектор) отправляет его сам через
+ * sendfile, иначе — FileChannel.transferTo в поток ответа. PUT кладёт артефакт (заголовок X-Checksum-Sha256
+ * сверяется с содержимым), DELETE убирает его из кэша; оба — только с токеном MAS в заголовке X-MAS-Token.
+ */
+@RestController
+@RequiredArgsConstructor
+public class ArtifactController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArtifactController.class);
+
+    static final String CHECKSUM_HEADER = "X-Checksum-Sha256";
+    static final String TOKEN_HEADER = "X-MAS-Token";
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final ArtifactService artifacts;
+
+    @GetMapping("/api/artifacts")
+    public ResponseEntity<Map<String, ArtifactStore.Entry>> list() {
+        return artifacts.isEnabled() ? ResponseEntity.ok(artifacts.list()) : ResponseEntity.notFound().build();
+    }
+
+    @GetMapping("/artifacts/{*name}")
+    public void get(@PathVariable String name, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        name = strip(name);
+        if (!artifacts.isEnabled() || !ArtifactStore.isValidName(name)) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        ArtifactStore.Entry entry;
+        try {
+            entry = artifacts.resolve(name);
+        } catch (IOException e) {
+            logger.warn("Artifact {} unavailable: {}", name, e.getMessage());
+            response.sendError(HttpStatus.BAD_GATEWAY.value(), e.getMessage());
+            return;
+        }
+        if (entry == null) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        serve(entry, artifacts.blob(entry), request, response);
+    }
+
+    @PutMapping("/artifacts/{*name}")
+    public ResponseEntity<Object> upload(@PathVariable String name,
+                                         @RequestHeader(value = CHECKSUM_HEADER, required = false) String sha256,
+                                         @RequestHeader(value = TOKEN_HEADER, required = false) String token,
+                                         HttpServletRequest request) throws IOException {
+        name = strip(name);
+        if (!artifacts.isUploadEnabled()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (!artifacts.isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(artifacts.upload(name, request.getInputStream(), sha256));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/artifacts/{*name}")
+    public ResponseEntity<Void> delete(@PathVariable String name,
+                                       @RequestHeader(value = TOKEN_HEADER, required = false) String token) throws IOException {
+        name = strip(name);
+        if (!artifacts.isUploadEnabled() || !ArtifactStore.isValidName(name)) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!artifacts.isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return artifacts.remove(name) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    private void serve(ArtifactStore.Entry entry, Path file, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        String etag = "\"" + entry.sha256 + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(CHECKSUM_HEADER, entry.sha256);
+        // Содержимое под ETag не меняется: узел может держать его сколько угодно.
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable");
+        if (InternalAgentController.matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        long start = 0;
+        long end = entry.size;
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        long[] range = ifRange == null || ifRange.equals(etag)
+                ? parseRange(request.getHeader(HttpHeaders.RANGE), entry.size) : null;
+        if (range != null && range.length == 0) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + entry.size);
+            response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+            return;
+        }
+        if (range != null) {
+            start = range[0];
+            end = range[1];
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + entry.size);
+        }
+        response.setContentType("application/octet-stream");
+        response.setContentLengthLong(end - start);
+        if ("HEAD".equals(request.getMethod()) || end == start) return;
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+        } else {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+                for (long position = start; position < end; ) {
+                    long sent = channel.transferTo(position, end - position, out);
+                    if (sent <= 0) break;
+                    position += sent;
+                }
+            }
+        }
+        artifacts.served(end - start);
+    }
+
+    /**
+     * Один диапазон bytes=a-b, bytes=a- или bytes=-n: {начало, конец не включительно}; пустой массив —
+     * диапазон за пределами файла (416); null — заголовка нет, он некорректен или диапазонов несколько (отдаётся всё).
+     */
+    static long[] parseRange(String header, long size) {
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) return null;
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+        try {
+            String from = spec.substring(0, dash).trim();
+            String to = spec.substring(dash + 1).trim();
+            if (from.isEmpty()) {
+                if (to.isEmpty()) return null;
+                long suffix = Long.parseLong(to);
+                if (suffix <= 0 || size == 0) return new long[0];
+                return new long[]{Math.max(0, size - suffix), size};
+            }
+            long start = Long.parseLong(from);
+            if (start < 0) return null;
+            if (start >= size) return new long[0];
+            long end = to.isEmpty() ? size - 1 : Long.parseLong(to);
+            if (end < start) return null;
+            return new long[]{start, Math.min(end, size - 1) + 1};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** {*name} отдаёт путь с ведущим '/'. */
+    private static String strip(String name) {
+        return name.startsWith("/") ? name.substring(1) : name;
+    }
+}
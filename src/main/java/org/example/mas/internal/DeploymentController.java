@@ -0,0 +1,103 @@
+package org.example.mas.internal;
+
+import lombok.RequiredArgsConstructor;
+import org.example.mas.DTO.DeploymentRequest;
+import org.example.mas.DTO.StatusSnapshot;
+import org.example.mas.Service.AnsibleProcessScheduler;
+import org.example.mas.Service.Deployment;
+import org.example.mas.Service.DeploymentService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Параллельные развёртывания разных кластеров: у каждого свой inventory, плейбуки, статус и журнал,
+ * процессы ansible всех развёртываний делят лимит mas.deployments.max-ansible-processes.
+ */
+@RestController
+@RequestMapping("/api/deployments")
+@RequiredArgsConstructor
+public class DeploymentController {
+
+    private final DeploymentService deploymentService;
+    private final AnsibleProcessScheduler scheduler;
+
+    @GetMapping
+    public Map<String, Object> list() {
+        List<Map<String, Object>> deployments = deploymentService.getDeployments().stream()
+                .map(this::describe)
+                .collect(Collectors.toList());
+        return Map.of("ansibleProcesses", scheduler.totals(), "deployments", deployments);
+    }
+
+    /** 202 — развёртывание создано и запущено; 400 — неверный id; 409 — развёртывание с этим id ещё идёт. */
+    @PostMapping
+    public ResponseEntity<Object> create(@RequestBody DeploymentRequest request) {
+        try {
+            Deployment deployment = deploymentService.createDeployment(request);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(describe(deployment));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> get(@PathVariable String id) {
+        Deployment deployment = deploymentService.getDeployment(id);
+        return deployment == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(describe(deployment));
+    }
+
+    /** Статус развёртывания в формате /api/status, с ETag и 304. */
+    @GetMapping("/{id}/status")
+    public ResponseEntity<byte[]> status(
+            @PathVariable String id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) throws IOException {
+        Deployment deployment = deploymentService.getDeployment(id);
+        if (deployment == null) {
+            return ResponseEntity.notFound().build();
+        }
+        StatusSnapshot snapshot = deployment.getStatus().snapshot();
+        String etag = snapshot.getETag();
+        if (InternalAgentController.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(snapshot.toJson(deployment.getStatus().getObjectMapper()));
+    }
+
+    /** Останавливает координатор развёртывания; журнал остаётся незавершённым, повторный POST возобновит его. */
+    @PostMapping("/{id}/cancel")
+    public ResponseEntity<Void> cancel(@PathVariable String id) {
+        if (deploymentService.getDeployment(id) == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return deploymentService.cancel(id)
+                ? ResponseEntity.accepted().build()
+                : ResponseEntity.status(HttpStatus.CONFLICT).build();
+    }
+
+    private Map<String, Object> describe(Deployment deployment) {
+        Map<String, Object> summary = deployment.summary();
+        AnsibleProcessScheduler.Usage usage = scheduler.usage(deployment.getId());
+        summary.put("ansibleRunning", usage.getRunning());
+        summary.put("ansibleWaiting", usage.getWaiting());
+        return summary;
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.mas.internal;
+
+import lombok.RequiredArgsConstructor;
+import org.example.mas.DTO.FanoutRequest;
+import org.example.mas.Service.ArtifactService;
+import org.example.mas.Service.FanoutService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Раздача артефакта из кэша воркерам деревом relay (степень ветвления mas.artifacts.fanout.degree):
+ * POST запускает раздачу (только с токеном MAS в X-MAS-Token), GET /{id} — готовность по каждому узлу.
+ */
+@RestController
+@RequestMapping("/api/artifacts/distributions")
+@RequiredArgsConstructor
+public class FanoutController {
+
+    private final FanoutService fanoutService;
+    private final ArtifactService artifacts;
+
+    @GetMapping
+    public List<Map<String, Object>> list() {
+        return fanoutService.list().stream()
+                .map(distribution -> distribution.summary(false))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 202 — раздача запущена; 400 — нет артефакта, узлов или адреса кэша для узлов; 401 — нет токена;
+     * 502 — кэш не получил артефакт.
+     */
+    @PostMapping
+    public ResponseEntity<Object> start(@RequestBody FanoutRequest request,
+                                        @RequestHeader(value = ArtifactController.TOKEN_HEADER, required = false) String token) {
+        if (!artifacts.isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(fanoutService.start(request).summary(true));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> get(@PathVariable String id) {
+        FanoutService.Distribution distribution = fanoutService.get(id);
+        return distribution == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(distribution.summary(true));
+    }
+}
@@ -1,18 +1,31 @@
 package org.example.mas.internal;
 
 import lombok.RequiredArgsConstructor;
+import org.example.mas.DTO.Alert;
+import org.example.mas.DTO.StatusDelta;
+import org.example.mas.DTO.StatusSnapshot;
 import org.example.mas.DTO.StatusUpdateDTO;
+import org.example.mas.Service.AlertService;
 import org.example.mas.Service.StatusService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 
-import java.util.Map;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api")
@@ -21,17 +34,112 @@ public class InternalAgentController {
 
     private static final Logger logger = LoggerFactory.getLogger(InternalAgentController.class);
 
+    private static final Duration KEEP_ALIVE = Duration.ofSeconds(15);
+
     private final StatusService statusService;
+    private final AlertService alertService;
 
-    /** Для CI/CD: опрос статуса кластера (clusterStatus = "DEPLOY CLUSTER" означает READY). */
+    /**
+     * Для CI/CD: опрос статуса кластера (clusterStatus = "DEPLOY CLUSTER" означает READY).
+     * Отдаёт заранее сериализованный снимок с ETag = версия; при совпадении If-None-Match — 304 без тела.
+     */
     @GetMapping("/status")
-    public ResponseEntity<Map<String, Object>> getStatus() {
-        return ResponseEntity.ok(statusService.getStatus());
+    public ResponseEntity<byte[]> getStatus(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) throws IOException {
+        StatusSnapshot snapshot = statusService.snapshot();
+        String etag = snapshot.getETag();
+        if (matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(snapshot.toJson(statusService.getObjectMapper()));
+    }
+
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * SSE-поток изменений статуса вместо опроса GET /status.
+     * Первое событие — снимок (event: snapshot), далее изменения (event: delta), id события = версия.
+     * При переподключении с Last-Event-ID (или ?since=) поток продолжается с этой версии,
+     * если она ещё в истории; иначе снова приходит снимок.
+     */
+    @GetMapping(value = "/status/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamStatus(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            @RequestParam(value = "since", required = false) Long since) {
+        Long resumeFrom = since != null ? since : parseVersion(lastEventId);
+
+        Flux<ServerSentEvent<Object>> events = Flux.defer(() -> {
+            if (resumeFrom != null && statusService.canResumeFrom(resumeFrom)) {
+                return statusService.deltasAfter(resumeFrom).map(this::toEvent);
+            }
+            StatusSnapshot snapshot = statusService.snapshot();
+            ServerSentEvent<Object> first = ServerSentEvent.<Object>builder(snapshot)
+                    .id(String.valueOf(snapshot.getVersion()))
+                    .event("snapshot")
+                    .build();
+            return Flux.concat(Flux.just(first), statusService.deltasAfter(snapshot.getVersion()).map(this::toEvent));
+        });
+
+        Flux<ServerSentEvent<Object>> keepAlive = Flux.interval(KEEP_ALIVE)
+                .map(i -> ServerSentEvent.<Object>builder().comment("keep-alive").build());
+        return Flux.merge(events, keepAlive);
+    }
+
+    private ServerSentEvent<Object> toEvent(StatusDelta delta) {
+        return ServerSentEvent.<Object>builder(delta)
+                .id(String.valueOf(delta.getVersion()))
+                .event("delta")
+                .build();
+    }
+
+    private Long parseVersion(String value) {
+        if (value == null || value.isBlank()) return null;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Сгруппированные алерты из памяти (последние mas.alerts.retention); ?since= — только изменённые после revision. */
+    @GetMapping("/alerts")
+    public List<Alert> getAlerts(@RequestParam(value = "since", defaultValue = "0") long since) {
+        return alertService.getAlerts(since);
+    }
+
+    /**
+     * SSE-поток алертов (event: alert, id = revision). Обновлённая группа приходит снова с тем же id алерта
+     * и новой revision. Last-Event-ID (или ?since=) продолжает поток после этой revision.
+     */
+    @GetMapping(value = "/alerts/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamAlerts(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            @RequestParam(value = "since", required = false) Long since) {
+        Long resumeFrom = since != null ? since : parseVersion(lastEventId);
+        Flux<ServerSentEvent<Object>> events = alertService.alertsAfter(resumeFrom != null ? resumeFrom : 0)
+                .map(alert -> ServerSentEvent.<Object>builder(alert)
+                        .id(String.valueOf(alert.getRevision()))
+                        .event("alert")
+                        .build());
+        Flux<ServerSentEvent<Object>> keepAlive = Flux.interval(KEEP_ALIVE)
+                .map(i -> ServerSentEvent.<Object>builder().comment("keep-alive").build());
+        return Flux.merge(events, keepAlive);
     }
 
     @PostMapping("/internal/status")
     public ResponseEntity<Void> updateStatus(@RequestBody StatusUpdateDTO update) {
-        // POST /api/internal/status — приём обновлений от агентов
+        // POST /api/internal/status — приём обновлений от агентов вне JVM; локальные агенты публикуют в StatusEventBus
         logger.info("Received status update: {} = {}", update.getKey(), update.getValue());
         if (update.getKey() == null || update.getValue() == null) {
             return ResponseEntity.badRequest().build();
@@ -0,0 +1,70 @@
+package org.example.mas.internal;
+
+import lombok.RequiredArgsConstructor;
+import org.example.mas.Service.ProfilingService;
+import org.example.mas.utils.TaskProfile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Профиль стадий по истории запусков: какие задачи и хосты делают стадию медленной и что
+ * замедлилось по сравнению с предыдущими запусками. stage — имя плейбука, с .yml или без.
+ */
+@RestController
+@RequestMapping("/api/profiling")
+@RequiredArgsConstructor
+public class ProfilingController {
+
+    private final ProfilingService profilingService;
+
+    @GetMapping("/stages")
+    public List<String> stages() throws IOException {
+        return profilingService.stages();
+    }
+
+    @GetMapping("/{stage}/runs")
+    public List<Map<String, Object>> runs(@PathVariable String stage) throws IOException {
+        return profilingService.runs(stage);
+    }
+
+    /** Самые медленные задачи (по самому медленному хосту) последнего запуска или запуска run. */
+    @GetMapping("/{stage}/tasks")
+    public ResponseEntity<List<TaskProfile.TaskStats>> tasks(
+            @PathVariable String stage,
+            @RequestParam(value = "run", required = false) String run,
+            @RequestParam(value = "limit", defaultValue = "20") int limit) throws IOException {
+        List<TaskProfile.TaskStats> tasks = profilingService.slowestTasks(stage, run, limit);
+        return tasks == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(tasks);
+    }
+
+    /** Хосты, на которых задачи идут дольше factor медиан по хостам. */
+    @GetMapping("/{stage}/outliers")
+    public ResponseEntity<List<TaskProfile.HostOutlier>> outliers(
+            @PathVariable String stage,
+            @RequestParam(value = "run", required = false) String run,
+            @RequestParam(value = "factor", defaultValue = "3") double factor,
+            @RequestParam(value = "minExcessMs", defaultValue = "1000") long minExcessMillis,
+            @RequestParam(value = "limit", defaultValue = "50") int limit) throws IOException {
+        List<TaskProfile.HostOutlier> outliers = profilingService.outliers(stage, run, factor, minExcessMillis, limit);
+        return outliers == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(outliers);
+    }
+
+    /** Что в последнем запуске стало медленнее медианы baselineRuns предыдущих больше чем на threshold. */
+    @GetMapping("/{stage}/regressions")
+    public List<TaskProfile.Regression> regressions(
+            @PathVariable String stage,
+            @RequestParam(value = "baselineRuns", defaultValue = "5") int baselineRuns,
+            @RequestParam(value = "metric", defaultValue = "p50") String metric,
+            @RequestParam(value = "threshold", defaultValue = "0.2") double threshold,
+            @RequestParam(value = "minDeltaMs", defaultValue = "1000") long minDeltaMillis) throws IOException {
+        return profilingService.regressions(stage, baselineRuns, metric, threshold, minDeltaMillis);
+    }
+}
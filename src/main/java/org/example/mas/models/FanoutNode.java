@@ -0,0 +1,10 @@
+package org.example.mas.models;
+
+import lombok.Data;
+
+@Data
+public class FanoutNode {
+    private String name;
+    /** Адрес relay узла, например http://10.0.0.11:8765; пусто — ansible_host узла и mas.artifacts.fanout.relay-port. */
+    private String url;
+}
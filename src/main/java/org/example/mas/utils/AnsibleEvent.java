@@ -0,0 +1,44 @@
+package org.example.mas.utils;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Событие плейбука из callback-плагина mas_jsonl (scripts/callback_plugins/mas_jsonl.py).
+ */
+public class AnsibleEvent {
+    public enum Type {
+        PLAY_START, TASK_START, HOST_OK, HOST_CHANGED, HOST_FAILED, HOST_UNREACHABLE, HOST_SKIPPED, STATS
+    }
+
+    public final Type type;
+    public final long timestampMillis;
+    public final String play;
+    public final String task;
+    public final String host;
+    public final long durationMillis;
+    public final String message;
+    /** Для HOST_FAILED: ошибка проигнорирована (ignore_errors), на исход хоста не влияет. */
+    public final boolean ignored;
+    /** Для STATS: host → счётчики (ok, changed, failures, unreachable, skipped, rescued, ignored). */
+    public final Map<String, Map<String, Integer>> stats;
+
+    public AnsibleEvent(Type type, long timestampMillis, String play, String task, String host,
+                        long durationMillis, String message, boolean ignored,
+                        Map<String, Map<String, Integer>> stats) {
+        this.type = type;
+        this.timestampMillis = timestampMillis;
+        this.play = play;
+        this.task = task;
+        this.host = host;
+        this.durationMillis = durationMillis;
+        this.message = message;
+        this.ignored = ignored;
+        this.stats = stats != null ? stats : Collections.emptyMap();
+    }
+
+    @Override
+    public String toString() {
+        return type + (host != null ? " " + host : "") + (task != null ? " [" + task + "]" : "");
+    }
+}
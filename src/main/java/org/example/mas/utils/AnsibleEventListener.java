@@ -0,0 +1,9 @@
+package org.example.mas.utils;
+
+/**
+ * Получает разобранные события плейбука по мере их появления (из потока чтения вывода).
+ */
+@FunctionalInterface
+public interface AnsibleEventListener {
+    void onEvent(String playbook, AnsibleEvent event);
+}
@@ -0,0 +1,114 @@
+package org.example.mas.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Потоковый разбор строк "MASJSON\t{...}" от callback-плагина mas_jsonl.
+ * Каждая строка разбирается отдельно через JsonParser, без построения дерева и без накопления вывода.
+ */
+public class AnsibleEventParser {
+    public static final String PREFIX = "MASJSON\t";
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    public static boolean isEvent(String line) {
+        return line.startsWith(PREFIX);
+    }
+
+    /**
+     * @return событие или null, если строка не является событием MAS либо не разбирается
+     */
+    public static AnsibleEvent parse(String line) {
+        if (!isEvent(line)) {
+            return null;
+        }
+        try (JsonParser p = JSON.createParser(line.substring(PREFIX.length()))) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            String event = null;
+            double ts = 0;
+            String play = null;
+            String task = null;
+            String host = null;
+            long duration = 0;
+            String msg = null;
+            boolean ignored = false;
+            Map<String, Map<String, Integer>> stats = null;
+
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                switch (field) {
+                    case "event": event = p.getValueAsString(); break;
+                    case "ts": ts = p.getValueAsDouble(); break;
+                    case "play": play = p.getValueAsString(); break;
+                    case "task": task = p.getValueAsString(); break;
+                    case "host": host = p.getValueAsString(); break;
+                    case "duration_ms": duration = p.getValueAsLong(); break;
+                    case "msg": msg = p.getValueAsString(); break;
+                    case "ignored": ignored = p.getValueAsBoolean(); break;
+                    case "hosts": stats = readStats(p); break;
+                    default:
+                        if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                            p.skipChildren();
+                        }
+                }
+            }
+
+            AnsibleEvent.Type type = toType(event);
+            if (type == null) {
+                return null;
+            }
+            return new AnsibleEvent(type, (long) (ts * 1000), play, task, host, duration, msg, ignored, stats);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, Map<String, Integer>> readStats(JsonParser p) throws IOException {
+        Map<String, Map<String, Integer>> stats = new LinkedHashMap<>();
+        if (p.currentToken() != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return stats;
+        }
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String host = p.currentName();
+            p.nextToken();
+            Map<String, Integer> counters = new HashMap<>();
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String counter = p.currentName();
+                JsonToken value = p.nextToken();
+                if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                    p.skipChildren();
+                    continue;
+                }
+                counters.put(counter, p.getValueAsInt());
+            }
+            stats.put(host, counters);
+        }
+        return stats;
+    }
+
+    private static AnsibleEvent.Type toType(String event) {
+        if (event == null) return null;
+        switch (event) {
+            case "play_start": return AnsibleEvent.Type.PLAY_START;
+            case "task_start": return AnsibleEvent.Type.TASK_START;
+            case "host_ok": return AnsibleEvent.Type.HOST_OK;
+            case "host_changed": return AnsibleEvent.Type.HOST_CHANGED;
+            case "host_failed": return AnsibleEvent.Type.HOST_FAILED;
+            case "host_unreachable": return AnsibleEvent.Type.HOST_UNREACHABLE;
+            case "host_skipped": return AnsibleEvent.Type.HOST_SKIPPED;
+            case "stats": return AnsibleEvent.Type.STATS;
+            default: return null;
+        }
+    }
+}
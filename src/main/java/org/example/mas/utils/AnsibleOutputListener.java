@@ -0,0 +1,10 @@
+package org.example.mas.utils;
+
+/**
+ * Получает строки вывода ansible-playbook по мере их появления.
+ * Вызывается из потока чтения вывода, поэтому не должен надолго блокироваться.
+ */
+@FunctionalInterface
+public interface AnsibleOutputListener {
+    void onLine(String playbook, String line);
+}
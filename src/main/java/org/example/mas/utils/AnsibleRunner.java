@@ -1,17 +1,50 @@
 package org.example.mas.utils;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 public class AnsibleRunner {
     private static final Logger logger = LoggerFactory.getLogger(AnsibleRunner.class);
+    private static final DateTimeFormatter LOG_STAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    private static final int MAX_LINE_LENGTH = 8192;
+    private static final int DRAIN_GRACE_SECONDS = 10;
+    /** Переменная со списком исключённых хостов, см. {@link Options#exclude(Collection)}. */
+    public static final String EXCLUDED_HOSTS_VAR = "mas_excluded_hosts";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ansible-watchdog");
+        t.setDaemon(true);
+        return t;
+    });
 
     /**
      * Запускает Ansible-плейбук и ждёт завершения.
@@ -32,64 +65,396 @@ public class AnsibleRunner {
      */
     public static AnsibleResult run(String playbook, String inventoryPath, String workingDir, int timeoutMinutes,
                                     Map<String, String> extraEnv) {
+        return run(new Options(playbook, inventoryPath, workingDir)
+                .timeoutMinutes(timeoutMinutes)
+                .extraEnv(extraEnv));
+    }
+
+    /** Синхронный запуск: то же, что {@code start(options).await()}. */
+    public static AnsibleResult run(Options options) {
+        return start(options).await();
+    }
+
+    /**
+     * Запускает плейбук асинхронно. Вывод читается в отдельном потоке: последние
+     * {@link Options#tailLines} строк остаются в памяти, полный вывод пишется в файл в logDir.
+     * По истечении таймаута watchdog убивает ansible-playbook вместе с дочерними процессами.
+     */
+    public static Execution start(Options options) {
+        String playbook = options.playbook;
         try {
-            File workDir = new File(workingDir);
+            File workDir = new File(options.workingDir);
             String varsPath = new File(workDir, "vars.yml").getAbsolutePath();
-            ProcessBuilder pb = new ProcessBuilder("ansible-playbook", "-i", inventoryPath,
-                    "--extra-vars", "@" + varsPath, playbook);
+            Path logDir = logDir(options);
+            Files.createDirectories(logDir);
+            String label = options.logLabel != null ? "-" + options.logLabel : "";
+            String logName = playbook.replaceFirst("\\.ya?ml$", "") + "-" + LocalDateTime.now().format(LOG_STAMP) + label;
+            Path logFile = logDir.resolve(logName + ".log");
+
+            List<String> command = new ArrayList<>(List.of(options.executable, "-i", options.inventoryPath,
+                    "--extra-vars", "@" + varsPath));
+            String limit = options.limit;
+            if (!options.excluded.isEmpty()) {
+                command.add("--extra-vars");
+                command.add(MAPPER.writeValueAsString(Map.of(EXCLUDED_HOSTS_VAR, options.excluded)));
+                limit = "@" + writeExcludingLimit(limit, options.excluded, logDir.resolve(logName + ".limit"));
+            }
+            if (limit != null) {
+                command.add("--limit");
+                command.add(limit);
+            }
+            command.add(playbook);
+            ProcessBuilder pb = new ProcessBuilder(command);
             pb.directory(workDir);
             pb.environment().put("ANSIBLE_HOST_KEY_CHECKING", "False");
-            if (extraEnv != null && !extraEnv.isEmpty()) {
-                pb.environment().putAll(extraEnv);
+            enableEventCallback(pb.environment(), workDir);
+            if (options.extraEnv != null && !options.extraEnv.isEmpty()) {
+                pb.environment().putAll(options.extraEnv);
             }
             pb.redirectErrorStream(true);
 
-            Process process = pb.start();
-            StringBuilder output = new StringBuilder();
+            BufferedWriter spool = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8);
+            Process process;
+            try {
+                process = options.executor.start(pb);
+            } catch (IOException e) {
+                spool.close();
+                throw e;
+            }
+            Execution execution = new Execution(options, process, logFile);
+            execution.begin(spool);
+            return execution;
+        } catch (InterruptedIOException e) {
+            // Прерван в ожидании слота процесса (отмена развёртывания): процесс не запускался.
+            logger.warn("Playbook {} cancelled before start: {}", playbook, e.getMessage());
+            return Execution.failed(options, new AnsibleResult(false, "CANCELLED", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Exception running playbook: " + playbook, e);
+            return Execution.failed(options, new AnsibleResult(false, "EXCEPTION", e.getMessage()));
+        }
+    }
+
+    /**
+     * Файл для --limit: исходный шаблон (или строки исходного @файла, или all) и по строке "!хост"
+     * на каждый исключённый хост. Лежит рядом с лог-файлом запуска.
+     */
+    private static Path writeExcludingLimit(String limit, Collection<String> excluded, Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        if (limit == null) {
+            lines.add("all");
+        } else if (limit.startsWith("@")) {
+            lines.addAll(Files.readAllLines(Paths.get(limit.substring(1)), StandardCharsets.UTF_8));
+        } else {
+            lines.add(limit);
+        }
+        excluded.forEach(host -> lines.add("!" + host));
+        return Files.write(file, lines, StandardCharsets.UTF_8).toAbsolutePath();
+    }
+
+    static Path logDir(Options options) {
+        return options.logDir != null ? options.logDir : Paths.get(System.getProperty("user.dir"), "logs", "ansible");
+    }
+
+    /**
+     * Подключает callback mas_jsonl из scripts/callback_plugins: помимо обычного вывода
+     * ansible-playbook печатает события в виде JSON-строк, которые разбирает {@link AnsibleEventParser}.
+     */
+    private static void enableEventCallback(Map<String, String> env, File workDir) {
+        String pluginDir = new File(workDir, "callback_plugins").getAbsolutePath();
+        env.merge("ANSIBLE_CALLBACK_PLUGINS", pluginDir, (old, dir) -> old + ":" + dir);
+        env.merge("ANSIBLE_CALLBACKS_ENABLED", "mas_jsonl", (old, name) -> old + "," + name);
+        // ansible < 2.11
+        env.merge("ANSIBLE_CALLBACK_WHITELIST", "mas_jsonl", (old, name) -> old + "," + name);
+    }
+
+    /** Убивает процесс и всех его потомков (ansible-playbook форкает воркеры и ssh). */
+    static void killProcessTree(Process process) {
+        List<ProcessHandle> descendants = process.descendants().collect(Collectors.toList());
+        process.destroyForcibly();
+        descendants.forEach(ProcessHandle::destroyForcibly);
+    }
+
+    /** Параметры запуска плейбука. */
+    public static class Options {
+        final String playbook;
+        final String inventoryPath;
+        final String workingDir;
+        String executable = "ansible-playbook";
+        PlaybookExecutor executor = PlaybookExecutor.LOCAL;
+        String limit;
+        Set<String> excluded = Set.of();
+        String logLabel;
+        int timeoutMinutes = 15;
+        Map<String, String> extraEnv;
+        int tailLines = 200;
+        Path logDir;
+        AnsibleOutputListener listener;
+        AnsibleEventListener eventListener;
+
+        public Options(String playbook, String inventoryPath, String workingDir) {
+            this.playbook = playbook;
+            this.inventoryPath = inventoryPath;
+            this.workingDir = workingDir;
+        }
+
+        /** Команда вместо ansible-playbook из PATH (полный путь к ansible-playbook из venv, симулятор). */
+        public Options executable(String executable) {
+            this.executable = executable;
+            return this;
+        }
+
+        /** Чем запускать команду: настоящий процесс или симулятор. */
+        public Options executor(PlaybookExecutor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /** --limit: шаблон хостов или @файл со списком. */
+        public Options limit(String limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        /**
+         * Хосты, которые не трогаются: исключаются из --limit и передаются списком в переменной
+         * mas_excluded_hosts (её учитывают циклы delegate_to по группам в плейбуках).
+         */
+        public Options exclude(Collection<String> hosts) {
+            this.excluded = hosts == null || hosts.isEmpty() ? Set.of() : new LinkedHashSet<>(hosts);
+            return this;
+        }
+
+        /** Суффикс имени лог-файла, чтобы параллельные запуски одного плейбука не писали в один файл. */
+        public Options logLabel(String logLabel) {
+            this.logLabel = logLabel;
+            return this;
+        }
+
+        public Options timeoutMinutes(int timeoutMinutes) {
+            this.timeoutMinutes = timeoutMinutes;
+            return this;
+        }
+
+        public Options extraEnv(Map<String, String> extraEnv) {
+            this.extraEnv = extraEnv;
+            return this;
+        }
+
+        public Options tailLines(int tailLines) {
+            this.tailLines = tailLines;
+            return this;
+        }
+
+        public Options logDir(Path logDir) {
+            this.logDir = logDir;
+            return this;
+        }
+
+        public Options listener(AnsibleOutputListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public Options eventListener(AnsibleEventListener eventListener) {
+            this.eventListener = eventListener;
+            return this;
+        }
+
+        Options copy() {
+            Options copy = new Options(playbook, inventoryPath, workingDir);
+            copy.executable = executable;
+            copy.executor = executor;
+            copy.limit = limit;
+            copy.excluded = excluded;
+            copy.logLabel = logLabel;
+            copy.timeoutMinutes = timeoutMinutes;
+            copy.extraEnv = extraEnv;
+            copy.tailLines = tailLines;
+            copy.logDir = logDir;
+            copy.listener = listener;
+            copy.eventListener = eventListener;
+            return copy;
+        }
+    }
+
+    /** Запущенный плейбук. Результат доступен через {@link #result()} или {@link #await()}. */
+    public static class Execution {
+        private final Options options;
+        private final Process process;
+        private final Path logFile;
+        private final OutputRingBuffer tail;
+        private final PlaybookReport report = new PlaybookReport();
+        private final CompletableFuture<AnsibleResult> result = new CompletableFuture<>();
+        private final AtomicBoolean timedOut = new AtomicBoolean();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private volatile boolean connectionFailure;
+        private ScheduledFuture<?> watchdog;
 
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+        private Execution(Options options, Process process, Path logFile) {
+            this.options = options;
+            this.process = process;
+            this.logFile = logFile;
+            this.tail = new OutputRingBuffer(options.tailLines, MAX_LINE_LENGTH);
+        }
+
+        private static Execution failed(Options options, AnsibleResult failure) {
+            Execution execution = new Execution(options, null, null);
+            execution.result.complete(failure);
+            return execution;
+        }
+
+        private void begin(BufferedWriter spool) {
+            watchdog = WATCHDOG.schedule(() -> {
+                if (process.isAlive()) {
+                    logger.error("Playbook {} exceeded {} min, killing process tree", options.playbook, options.timeoutMinutes);
+                    timedOut.set(true);
+                    killProcessTree(process);
+                }
+            }, options.timeoutMinutes, TimeUnit.MINUTES);
+
+            // Осиротевшие потомки могут держать pipe открытым: не ждём EOF дольше DRAIN_GRACE_SECONDS после выхода.
+            process.onExit().thenRun(() -> WATCHDOG.schedule(this::finish, DRAIN_GRACE_SECONDS, TimeUnit.SECONDS));
+
+            IoThreads.start("ansible-output-" + options.playbook, () -> pump(spool));
+        }
+
+        private void pump(BufferedWriter spool) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+                 spool) {
                 String line;
                 while ((line = reader.readLine()) != null) {
-                    logger.info("ANSIBLE | {}", line);
-                    output.append(line).append("\n");
+                    spool.write(line);
+                    spool.newLine();
+                    if (AnsibleEventParser.isEvent(line)) {
+                        AnsibleEvent event = AnsibleEventParser.parse(line);
+                        if (event != null) {
+                            report.accept(event);
+                            notifyEventListener(event);
+                        }
+                        continue;
+                    }
+                    logger.debug("ANSIBLE | {}", line);
+                    tail.add(line);
+                    if (!connectionFailure && (line.contains("UNREACHABLE!") || line.contains("Failed to connect"))) {
+                        connectionFailure = true;
+                    }
+                    notifyListener(line);
                 }
+            } catch (IOException e) {
+                logger.warn("Output of {} interrupted: {}", options.playbook, e.getMessage());
             }
 
-            boolean finished = process.waitFor(timeoutMinutes, TimeUnit.MINUTES);
-            if (!finished) {
-                process.destroyForcibly();
-                return new AnsibleResult(false, "TIMEOUT", "Playbook timed out after " + timeoutMinutes + " min");
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                killProcessTree(process);
             }
+            finish();
+        }
 
-            int exitCode = process.exitValue();
-            boolean success = exitCode == 0;
+        private synchronized void finish() {
+            if (result.isDone()) return;
+            watchdog.cancel(false);
+            result.complete(buildResult());
+        }
 
-            String outputStr = output.toString();
-            if (!success) {
-                if (outputStr.contains("UNREACHABLE!") || outputStr.contains("Failed to connect")) {
-                    return new AnsibleResult(false, "CONNECTION_FAILURE", outputStr);
-                }
-                return new AnsibleResult(false, "EXECUTION_ERROR", outputStr);
+        private void notifyListener(String line) {
+            if (options.listener == null) return;
+            try {
+                options.listener.onLine(options.playbook, line);
+            } catch (Exception e) {
+                logger.warn("Output listener failed for {}: {}", options.playbook, e.getMessage());
             }
+        }
 
-            return new AnsibleResult(true, "SUCCESS", outputStr);
+        private void notifyEventListener(AnsibleEvent event) {
+            if (options.eventListener == null) return;
+            try {
+                options.eventListener.onEvent(options.playbook, event);
+            } catch (Exception e) {
+                logger.warn("Event listener failed for {}: {}", options.playbook, e.getMessage());
+            }
+        }
 
-        } catch (Exception e) {
-            logger.error("Exception running playbook: " + playbook, e);
-            return new AnsibleResult(false, "EXCEPTION", e.getMessage());
+        private AnsibleResult buildResult() {
+            String details = tail + "\n[full output: " + logFile + "]";
+            String output = logFile.toString();
+            if (cancelled.get()) {
+                return new AnsibleResult(false, "CANCELLED", details, output, report);
+            }
+            if (timedOut.get()) {
+                return new AnsibleResult(false, "TIMEOUT",
+                        "Playbook timed out after " + options.timeoutMinutes + " min\n" + details, output, report);
+            }
+            if (process.exitValue() != 0) {
+                // Без событий callback (плагин не загрузился) остаётся поиск по тексту вывода.
+                boolean unreachable = report.hasEvents()
+                        ? !report.getUnreachableHosts().isEmpty()
+                        : connectionFailure;
+                return new AnsibleResult(false, unreachable ? "CONNECTION_FAILURE" : "EXECUTION_ERROR",
+                        details, output, report);
+            }
+            return new AnsibleResult(true, "SUCCESS", details, output, report);
+        }
+
+        /** Прерывает плейбук; результат завершится с кодом CANCELLED. */
+        public void cancel() {
+            if (process != null && process.isAlive()) {
+                cancelled.set(true);
+                killProcessTree(process);
+            }
+        }
 
+        public CompletableFuture<AnsibleResult> result() {
+            return result;
+        }
+
+        /** Блокируется до завершения. При прерывании потока плейбук отменяется. */
+        public AnsibleResult await() {
+            try {
+                return result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                return new AnsibleResult(false, "CANCELLED", "Interrupted while waiting for " + options.playbook);
+            } catch (Exception e) {
+                return new AnsibleResult(false, "EXCEPTION", e.getMessage());
+            }
+        }
+
+        /** Последние строки вывода на текущий момент. */
+        public OutputRingBuffer getTail() {
+            return tail;
+        }
+
+        public Path getLogFile() {
+            return logFile;
+        }
+
+        /** Результаты по хостам на текущий момент. */
+        public PlaybookReport getReport() {
+            return report;
         }
     }
 
     public static class AnsibleResult {
         public final boolean success;
-        public final String errorCode; // TIMEOUT, CONNECTION_FAILURE, EXECUTION_ERROR, EXCEPTION
+        public final String errorCode; // TIMEOUT, CONNECTION_FAILURE, EXECUTION_ERROR, EXCEPTION, CANCELLED
         public final String details;
+        public final String outputFile;
+        public final PlaybookReport report;
 
         public AnsibleResult(boolean success, String errorCode, String details) {
+            this(success, errorCode, details, null, new PlaybookReport());
+        }
+
+        public AnsibleResult(boolean success, String errorCode, String details, String outputFile, PlaybookReport report) {
             this.success = success;
             this.errorCode = errorCode;
             this.details = details;
+            this.outputFile = outputFile;
+            this.report = report;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,762 @@
+package org.example.mas.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Симулятор ansible-playbook для прогонов на сотнях и тысячах виртуальных хостов без самих хостов.
+ * Берёт inventory, --limit и плейбук из команды, выполняет задачи каждого play пулом из forks слотов
+ * с логнормальной задержкой и печатает то же, что ansible-playbook с callback mas_jsonl:
+ * PLAY/TASK, ok/changed/skipping/fatal по хостам, события MASJSON, PLAY RECAP и код выхода 0/2/4.
+ * Из условий when разбираются только членство в группе и обращение к .rc зарегистрированного результата
+ * (как у ansible, пропущенная задача не даёт rc, в том числе для всех хостов при run_once); прочие условия
+ * пропускают задачу с вероятностью skippedRate.
+ * "Процесс" живёт в потоке текущей JVM; его процессорное время считается отдельно ({@link #getCpuNanos()}).
+ */
+public class AnsibleSimulator implements PlaybookExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(AnsibleSimulator.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private static final int EXIT_ERROR = 1;
+    private static final int EXIT_FAILED_HOSTS = 2;
+    private static final int EXIT_UNREACHABLE = 4;
+    private static final int EXIT_TERMINATED = 143;
+    private static final int PIPE_BUFFER = 64 * 1024;
+    private static final int MAX_INCLUDE_DEPTH = 5;
+
+    /** Ключи задачи, которые не являются модулем (имя задачи без name — первый ключ-модуль). */
+    private static final Set<String> TASK_KEYWORDS = Set.of("name", "when", "register", "become", "become_user",
+            "tags", "loop", "loop_control", "with_items", "with_dict", "vars", "notify", "ignore_errors",
+            "delegate_to", "changed_when", "failed_when", "run_once", "environment", "retries", "delay", "until",
+            "no_log", "args", "check_mode", "any_errors_fatal", "block", "rescue", "always");
+
+    private static final Pattern GROUP_CONDITION = Pattern.compile("['\"]([^'\"]+)['\"]\\s+(not\\s+)?in\\s+group_names");
+    private static final Pattern RC_REFERENCE = Pattern.compile("\\b(\\w+)\\.rc\\b");
+
+    private final Settings settings;
+    private final LongAdder cpuNanos = new LongAdder();
+    private final LongAdder linesWritten = new LongAdder();
+
+    public AnsibleSimulator(Settings settings) {
+        this.settings = settings;
+    }
+
+    /** Процессорное время всех завершённых запусков симулятора, нс. */
+    public long getCpuNanos() {
+        return cpuNanos.sum();
+    }
+
+    /** Сколько строк вывода напечатали все запуски. */
+    public long getLinesWritten() {
+        return linesWritten.sum();
+    }
+
+    @Override
+    public Process start(ProcessBuilder command) throws IOException {
+        Invocation invocation = Invocation.parse(command.command(), command.directory());
+        SimulatedProcess process = new SimulatedProcess();
+        Thread thread = new Thread(() -> process.run(invocation), "ansible-sim-" + invocation.playbook.getFileName());
+        thread.setDaemon(true);
+        process.thread = thread;
+        thread.start();
+        return process;
+    }
+
+    /** Параметры симуляции: задержки задач, доля изменений и пропусков, отказы хостов. */
+    public static class Settings {
+        int forks = 50;
+        long taskLatencyMs = 200;
+        double latencySigma = 0.5;
+        double timeScale = 1.0;
+        double changedRate = 0.3;
+        double skippedRate = 0.3;
+        double failureRate;
+        double unreachableRate;
+        Set<String> failedHosts = Collections.emptySet();
+        Set<String> unreachableHosts = Collections.emptySet();
+        Long seed;
+
+        /** Сколько хостов задача обрабатывает одновременно (ansible --forks). */
+        public Settings forks(int forks) {
+            this.forks = Math.max(1, forks);
+            return this;
+        }
+
+        /** Медиана длительности задачи на одном хосте, мс. */
+        public Settings taskLatencyMs(long taskLatencyMs) {
+            this.taskLatencyMs = Math.max(0, taskLatencyMs);
+            return this;
+        }
+
+        /** Разброс логнормального распределения задержки (0 — все задачи ровно taskLatencyMs). */
+        public Settings latencySigma(double latencySigma) {
+            this.latencySigma = Math.max(0, latencySigma);
+            return this;
+        }
+
+        /** Множитель реального времени: 0.01 — прогон в 100 раз быстрее, длительности в событиях не меняются. */
+        public Settings timeScale(double timeScale) {
+            this.timeScale = Math.max(0, timeScale);
+            return this;
+        }
+
+        public Settings changedRate(double changedRate) {
+            this.changedRate = changedRate;
+            return this;
+        }
+
+        /** Доля хостов, на которых задача с when пропускается. */
+        public Settings skippedRate(double skippedRate) {
+            this.skippedRate = skippedRate;
+            return this;
+        }
+
+        /** Вероятность падения задачи на хосте. */
+        public Settings failureRate(double failureRate) {
+            this.failureRate = failureRate;
+            return this;
+        }
+
+        /** Вероятность, что хост недоступен (решается один раз на запуск плейбука). */
+        public Settings unreachableRate(double unreachableRate) {
+            this.unreachableRate = unreachableRate;
+            return this;
+        }
+
+        /** Хосты, на которых всегда падает первая задача. */
+        public Settings failedHosts(Set<String> failedHosts) {
+            this.failedHosts = failedHosts;
+            return this;
+        }
+
+        /** Хосты, которые всегда UNREACHABLE. */
+        public Settings unreachableHosts(Set<String> unreachableHosts) {
+            this.unreachableHosts = unreachableHosts;
+            return this;
+        }
+
+        /** Зерно для воспроизводимых прогонов; null — случайное. */
+        public Settings seed(Long seed) {
+            this.seed = seed;
+            return this;
+        }
+    }
+
+    /** Разобранная команда ansible-playbook. */
+    static class Invocation {
+        final Path inventory;
+        final Path playbook;
+        final String limit;
+
+        private Invocation(Path inventory, Path playbook, String limit) {
+            this.inventory = inventory;
+            this.playbook = playbook;
+            this.limit = limit;
+        }
+
+        static Invocation parse(List<String> command, File directory) throws IOException {
+            Path workDir = directory != null ? directory.toPath() : Paths.get("").toAbsolutePath();
+            String inventory = null;
+            String playbook = null;
+            String limit = null;
+            for (int i = 1; i < command.size(); i++) {
+                String arg = command.get(i);
+                switch (arg) {
+                    case "-i":
+                    case "--inventory":
+                        inventory = i + 1 < command.size() ? command.get(++i) : null;
+                        break;
+                    case "-l":
+                    case "--limit":
+                        limit = i + 1 < command.size() ? command.get(++i) : null;
+                        break;
+                    case "-e":
+                    case "--extra-vars":
+                    case "-f":
+                    case "--forks":
+                        i++;
+                        break;
+                    default:
+                        if (arg.startsWith("--limit=")) {
+                            limit = arg.substring("--limit=".length());
+                        } else if (!arg.startsWith("-")) {
+                            playbook = arg;
+                        }
+                }
+            }
+            if (inventory == null || playbook == null) {
+                throw new IOException("Simulator expects '-i <inventory> <playbook>': " + command);
+            }
+            return new Invocation(workDir.resolve(inventory), workDir.resolve(playbook), limit);
+        }
+    }
+
+    /** Play плейбука: шаблон хостов и имена задач в порядке выполнения. */
+    static class Play {
+        final String name;
+        final String hosts;
+        final boolean gatherFacts;
+        final List<Task> tasks;
+
+        Play(String name, String hosts, boolean gatherFacts, List<Task> tasks) {
+            this.name = name;
+            this.hosts = hosts;
+            this.gatherFacts = gatherFacts;
+            this.tasks = tasks;
+        }
+    }
+
+    static class Task {
+        final String name;
+        /** Условия when, включая унаследованные от block и include/import_tasks. */
+        final List<String> when;
+        final String register;
+        final boolean runOnce;
+
+        Task(String name, List<String> when, String register, boolean runOnce) {
+            this.name = name;
+            this.when = when;
+            this.register = register;
+            this.runOnce = runOnce;
+        }
+    }
+
+    private enum Outcome {
+        OK("host_ok"), CHANGED("host_changed"), SKIPPED("host_skipped"), FAILED("host_failed"), UNREACHABLE("host_unreachable");
+
+        final String event;
+
+        Outcome(String event) {
+            this.event = event;
+        }
+    }
+
+    /** Завершение задачи на хосте в симулированном времени. */
+    private static class Completion implements Comparable<Completion> {
+        final double atMs;
+        final String host;
+        final long durationMs;
+        final Outcome outcome;
+        final String error;
+
+        Completion(double atMs, String host, long durationMs, Outcome outcome, String error) {
+            this.atMs = atMs;
+            this.host = host;
+            this.durationMs = durationMs;
+            this.outcome = outcome;
+            this.error = error;
+        }
+
+        @Override
+        public int compareTo(Completion other) {
+            return Double.compare(atMs, other.atMs);
+        }
+    }
+
+    /** Итог хоста для PLAY RECAP и события stats. */
+    private static class HostStats {
+        int ok;
+        int changed;
+        int unreachable;
+        int failures;
+        int skipped;
+    }
+
+    /** Один запуск плейбука: симулированное время, состояние хостов, вывод. */
+    private class Run {
+        private final Invocation invocation;
+        private final BufferedWriter out;
+        private final Random random;
+        private final long startedNanos = System.nanoTime();
+        private final Map<String, HostStats> stats = new LinkedHashMap<>();
+        private final Set<String> contacted = new HashSet<>();
+        private final Set<String> down = new HashSet<>();
+        /** Итог задач с register: переменная → хост → исход. */
+        private final Map<String, Map<String, Outcome>> registered = new HashMap<>();
+        private InventoryParser.Inventory inventory;
+        private double nowMs;
+
+        Run(Invocation invocation, BufferedWriter out) {
+            this.invocation = invocation;
+            this.out = out;
+            this.random = settings.seed != null
+                    ? new Random(settings.seed ^ invocation.playbook.getFileName().toString().hashCode())
+                    : new Random();
+        }
+
+        int execute() throws IOException, InterruptedException {
+            inventory = InventoryParser.parse(invocation.inventory);
+            List<Play> plays;
+            try {
+                plays = loadPlays(invocation.playbook, 0);
+            } catch (IOException e) {
+                line("ERROR! " + e.getMessage());
+                return EXIT_ERROR;
+            }
+            Set<String> limit = invocation.limit != null ? resolveLimit(invocation.limit, inventory) : null;
+
+            for (int p = 0; p < plays.size(); p++) {
+                Play play = plays.get(p);
+                line("");
+                line(banner("PLAY [" + play.name + "]"));
+                event("play_start", fields("play", play.name));
+
+                Set<String> hosts = inventory.resolvePattern(play.hosts);
+                if (limit != null) hosts.retainAll(limit);
+                if (hosts.isEmpty()) {
+                    line("skipping: no hosts matched");
+                    continue;
+                }
+                for (String host : hosts) stats.computeIfAbsent(host, h -> new HostStats());
+
+                List<Task> tasks = new ArrayList<>();
+                if (play.gatherFacts) tasks.add(new Task("Gathering Facts", List.of(), null, false));
+                tasks.addAll(play.tasks);
+                for (int t = 0; t < tasks.size(); t++) {
+                    List<String> active = new ArrayList<>();
+                    for (String host : hosts) {
+                        if (!down.contains(host)) active.add(host);
+                    }
+                    if (active.isEmpty()) {
+                        line("");
+                        line(banner("NO MORE HOSTS LEFT"));
+                        break;
+                    }
+                    runTask(play, tasks.get(t), "sim-" + p + "-" + t, active);
+                }
+            }
+
+            line("");
+            line(banner("PLAY RECAP"));
+            Map<String, Object> summary = new LinkedHashMap<>();
+            boolean failed = false;
+            boolean unreachable = false;
+            for (Map.Entry<String, HostStats> e : stats.entrySet()) {
+                HostStats s = e.getValue();
+                line(String.format("%-26s : ok=%-4d changed=%-4d unreachable=%-4d failed=%-4d skipped=%-4d rescued=0    ignored=0",
+                        e.getKey(), s.ok, s.changed, s.unreachable, s.failures, s.skipped));
+                Map<String, Integer> counters = new LinkedHashMap<>();
+                counters.put("ok", s.ok);
+                counters.put("failures", s.failures);
+                counters.put("unreachable", s.unreachable);
+                counters.put("changed", s.changed);
+                counters.put("skipped", s.skipped);
+                counters.put("rescued", 0);
+                counters.put("ignored", 0);
+                summary.put(e.getKey(), counters);
+                failed |= s.failures > 0;
+                unreachable |= s.unreachable > 0;
+            }
+            event("stats", fields("hosts", summary));
+            return unreachable ? EXIT_UNREACHABLE : failed ? EXIT_FAILED_HOSTS : 0;
+        }
+
+        /** Хосты разбираются пулом из forks слотов; вывод идёт в порядке завершения, как у ansible. */
+        private void runTask(Play play, Task task, String taskId, List<String> hosts) throws IOException, InterruptedException {
+            line("");
+            line(banner("TASK [" + task.name + "]"));
+            event("task_start", fields("play", play.name, "task", task.name, "task_id", taskId));
+
+            List<String> playHosts = hosts;
+            if (task.runOnce) hosts = hosts.subList(0, 1);
+            PriorityQueue<Double> slots = new PriorityQueue<>();
+            for (int i = 0; i < Math.min(settings.forks, hosts.size()); i++) slots.add(nowMs);
+            PriorityQueue<Completion> completions = new PriorityQueue<>();
+            for (String host : hosts) {
+                double start = slots.poll();
+                long duration = sampleLatency();
+                String error = conditionError(host, task);
+                Outcome outcome = error != null ? Outcome.FAILED : decide(host, task);
+                completions.add(new Completion(start + duration, host, duration, outcome, error));
+                slots.add(start + duration);
+                if (task.register != null) {
+                    // Результат run_once ansible присваивает всем хостам play.
+                    Map<String, Outcome> results = registered.computeIfAbsent(task.register, name -> new HashMap<>());
+                    for (String target : task.runOnce ? playHosts : List.of(host)) results.put(target, outcome);
+                }
+            }
+
+            Completion c;
+            while ((c = completions.poll()) != null) {
+                sleepUntil(c.atMs);
+                nowMs = Math.max(nowMs, c.atMs);
+                HostStats s = stats.get(c.host);
+                String msg = "";
+                switch (c.outcome) {
+                    case OK:
+                        s.ok++;
+                        line("ok: [" + c.host + "]");
+                        break;
+                    case CHANGED:
+                        s.ok++;
+                        s.changed++;
+                        line("changed: [" + c.host + "]");
+                        break;
+                    case SKIPPED:
+                        s.skipped++;
+                        line("skipping: [" + c.host + "]");
+                        break;
+                    case FAILED:
+                        s.failures++;
+                        down.add(c.host);
+                        msg = c.error != null ? c.error : "Simulated failure of task '" + task.name + "'";
+                        line("fatal: [" + c.host + "]: FAILED! => {\"changed\": false, \"msg\": " + MAPPER.writeValueAsString(msg) + "}");
+                        break;
+                    case UNREACHABLE:
+                        s.unreachable++;
+                        down.add(c.host);
+                        msg = "Failed to connect to the host via ssh: ssh: connect to host " + c.host + " port 22: Connection timed out";
+                        line("fatal: [" + c.host + "]: UNREACHABLE! => {\"changed\": false, \"msg\": "
+                                + MAPPER.writeValueAsString(msg) + ", \"unreachable\": true}");
+                        break;
+                }
+                event(c.outcome.event, fields("play", play.name, "task", task.name, "task_id", taskId,
+                        "host", c.host, "duration_ms", c.durationMs, "msg", msg));
+            }
+        }
+
+        private Outcome decide(String host, Task task) {
+            if (contacted.add(host)
+                    && (settings.unreachableHosts.contains(host) || random.nextDouble() < settings.unreachableRate)) {
+                return Outcome.UNREACHABLE;
+            }
+            if (settings.failedHosts.contains(host) || random.nextDouble() < settings.failureRate) {
+                return Outcome.FAILED;
+            }
+            if (!task.when.isEmpty() && (!conditionsHold(host, task) || random.nextDouble() < settings.skippedRate)) {
+                return Outcome.SKIPPED;
+            }
+            return random.nextDouble() < settings.changedRate ? Outcome.CHANGED : Outcome.OK;
+        }
+
+        /** Ложно, если одно из условий точно ложно; нераспознанные условия считаются истинными. */
+        private boolean conditionsHold(String host, Task task) {
+            for (String condition : task.when) {
+                if (condition.contains(" or ")) continue;
+                Matcher group = GROUP_CONDITION.matcher(condition);
+                InventoryParser.Host entry = inventory.getHost(host);
+                while (group.find()) {
+                    boolean member = entry != null && entry.groups.contains(group.group(1));
+                    if (member == (group.group(2) != null)) return false;
+                }
+                Matcher rc = RC_REFERENCE.matcher(condition);
+                while (rc.find()) {
+                    String variable = rc.group(1);
+                    Outcome result = registered.getOrDefault(variable, Map.of()).get(host);
+                    if (result == null && condition.contains(variable + " is defined")) return false;
+                    if (result == Outcome.SKIPPED && condition.contains(variable + ".rc is defined")) return false;
+                }
+            }
+            return true;
+        }
+
+        /** Ошибка вычисления when: .rc у результата пропущенной задачи без проверки "rc is defined". */
+        private String conditionError(String host, Task task) {
+            if (!conditionsHold(host, task)) return null;
+            for (String condition : task.when) {
+                if (condition.contains(" or ")) continue;
+                Matcher rc = RC_REFERENCE.matcher(condition);
+                while (rc.find()) {
+                    String variable = rc.group(1);
+                    if (registered.getOrDefault(variable, Map.of()).get(host) == Outcome.SKIPPED
+                            && !condition.contains(variable + ".rc is defined")) {
+                        return "The conditional check '" + condition + "' failed. The error was: error while evaluating "
+                                + "conditional (" + condition + "): 'dict object' has no attribute 'rc'";
+                    }
+                }
+            }
+            return null;
+        }
+
+        private long sampleLatency() {
+            double factor = settings.latencySigma > 0 ? Math.exp(settings.latencySigma * random.nextGaussian()) : 1.0;
+            return Math.round(settings.taskLatencyMs * factor);
+        }
+
+        /** Перед сном отдаёт накопленный вывод читателю. */
+        private void sleepUntil(double simulatedMs) throws IOException, InterruptedException {
+            long targetNanos = (long) (simulatedMs * settings.timeScale * 1_000_000);
+            long waitNanos = targetNanos - (System.nanoTime() - startedNanos);
+            if (waitNanos > 1_000_000) {
+                out.flush();
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+
+        private void event(String event, Map<String, Object> fields) throws IOException {
+            fields.put("event", event);
+            fields.put("ts", System.currentTimeMillis() / 1000.0);
+            line(AnsibleEventParser.PREFIX + MAPPER.writeValueAsString(fields));
+        }
+
+        private void line(String text) throws IOException {
+            out.write(text);
+            out.newLine();
+            linesWritten.increment();
+        }
+    }
+
+    private static Map<String, Object> fields(Object... keyValues) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            map.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return map;
+    }
+
+    private static String banner(String title) {
+        return title + " " + "*".repeat(Math.max(3, 79 - title.length()));
+    }
+
+    /** --limit: шаблон или @файл со списком хостов (по одному в строке), как у ansible-playbook. */
+    private static Set<String> resolveLimit(String limit, InventoryParser.Inventory inventory) throws IOException {
+        if (!limit.startsWith("@")) {
+            return inventory.resolvePattern(limit);
+        }
+        // Строки файла — элементы одного шаблона, как у ansible: "!хост" исключает, "&группа" пересекает.
+        return inventory.resolvePattern(String.join(",",
+                Files.readAllLines(Paths.get(limit.substring(1)), StandardCharsets.UTF_8)));
+    }
+
+    /** Plays плейбука с задачами из tasks, pre_tasks, post_tasks, блоков и нешаблонных include/import_tasks. */
+    static List<Play> loadPlays(Path playbook, int depth) throws IOException {
+        Object root = loadYaml(playbook);
+        if (!(root instanceof List)) {
+            throw new IOException("Playbook must be a list of plays: " + playbook);
+        }
+        List<Play> plays = new ArrayList<>();
+        for (Object item : (List<?>) root) {
+            if (!(item instanceof Map)) continue;
+            Map<?, ?> play = (Map<?, ?>) item;
+            Object imported = firstOf(play, "import_playbook", "ansible.builtin.import_playbook");
+            if (imported != null) {
+                Path path = playbook.resolveSibling(String.valueOf(imported));
+                if (depth < MAX_INCLUDE_DEPTH && Files.isRegularFile(path)) plays.addAll(loadPlays(path, depth + 1));
+                continue;
+            }
+            String hosts = String.valueOf(play.get("hosts"));
+            String name = play.get("name") != null ? String.valueOf(play.get("name")) : hosts;
+            Object facts = play.get("gather_facts");
+            boolean gatherFacts = facts == null || !List.of("false", "no").contains(String.valueOf(facts).toLowerCase());
+            List<Task> tasks = new ArrayList<>();
+            Path baseDir = playbook.getParent();
+            for (String section : List.of("pre_tasks", "tasks", "post_tasks")) {
+                collectTasks(play.get(section), baseDir, 0, List.of(), false, tasks);
+            }
+            plays.add(new Play(name, hosts, gatherFacts, tasks));
+        }
+        return plays;
+    }
+
+    /** when и run_once блока или include/import_tasks переходят на вложенные задачи. */
+    private static void collectTasks(Object list, Path baseDir, int depth, List<String> parentWhen, boolean parentRunOnce,
+                                     List<Task> out) throws IOException {
+        if (!(list instanceof List)) return;
+        for (Object item : (List<?>) list) {
+            if (!(item instanceof Map)) continue;
+            Map<?, ?> task = (Map<?, ?>) item;
+            List<String> when = new ArrayList<>(parentWhen);
+            Object condition = task.get("when");
+            if (condition instanceof List) {
+                for (Object c : (List<?>) condition) when.add(String.valueOf(c));
+            } else if (condition != null) {
+                when.add(String.valueOf(condition));
+            }
+            boolean runOnce = parentRunOnce || isTrue(task.get("run_once"));
+            if (task.containsKey("block")) {
+                collectTasks(task.get("block"), baseDir, depth, when, runOnce, out);
+                continue;
+            }
+            Object include = firstOf(task, "include_tasks", "import_tasks",
+                    "ansible.builtin.include_tasks", "ansible.builtin.import_tasks");
+            if (include instanceof Map) include = ((Map<?, ?>) include).get("file");
+            if (include != null && depth < MAX_INCLUDE_DEPTH && !String.valueOf(include).contains("{{")) {
+                Path file = baseDir.resolve(String.valueOf(include)).normalize();
+                if (Files.isRegularFile(file)) {
+                    collectTasks(loadYaml(file), baseDir, depth + 1, when, runOnce, out);
+                    continue;
+                }
+            }
+            Object register = task.get("register");
+            out.add(new Task(taskName(task), when, register != null ? String.valueOf(register) : null, runOnce));
+        }
+    }
+
+    private static String taskName(Map<?, ?> task) {
+        if (task.get("name") != null) return String.valueOf(task.get("name"));
+        for (Object key : task.keySet()) {
+            if (!TASK_KEYWORDS.contains(String.valueOf(key))) return String.valueOf(key);
+        }
+        return "task";
+    }
+
+    private static boolean isTrue(Object value) {
+        return value != null && List.of("true", "yes").contains(String.valueOf(value).toLowerCase());
+    }
+
+    private static Object firstOf(Map<?, ?> map, String... keys) {
+        for (String key : keys) {
+            if (map.get(key) != null) return map.get(key);
+        }
+        return null;
+    }
+
+    private static Object loadYaml(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return new Yaml(new SafeConstructor(new LoaderOptions())).load(reader);
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid YAML " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /** Процесс, вывод которого пишет поток симулятора в pipe. */
+    private class SimulatedProcess extends Process {
+        private final PipedInputStream stdout = new PipedInputStream(PIPE_BUFFER);
+        // Подключается до старта потока: иначе читатель может успеть получить "Pipe not connected".
+        private final PipedOutputStream sink;
+        private final CompletableFuture<Integer> exit = new CompletableFuture<>();
+        private volatile Thread thread;
+
+        SimulatedProcess() throws IOException {
+            sink = new PipedOutputStream(stdout);
+        }
+
+        void run(Invocation invocation) {
+            int code = EXIT_ERROR;
+            try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(sink, StandardCharsets.UTF_8), 8192)) {
+                try {
+                    code = new Run(invocation, out).execute();
+                } catch (InterruptedException | InterruptedIOException e) {
+                    code = EXIT_TERMINATED;
+                } catch (IOException e) {
+                    // Читатель закрыл pipe — как SIGPIPE у настоящего процесса.
+                    logger.debug("Simulated {} stopped: {}", invocation.playbook, e.getMessage());
+                }
+            } catch (IOException e) {
+                logger.debug("Simulated {} output closed: {}", invocation.playbook, e.getMessage());
+            } catch (RuntimeException e) {
+                logger.warn("Simulated {} crashed", invocation.playbook, e);
+            } finally {
+                if (THREADS.isCurrentThreadCpuTimeSupported()) {
+                    cpuNanos.add(THREADS.getCurrentThreadCpuTime());
+                }
+                exit.complete(Thread.interrupted() ? EXIT_TERMINATED : code);
+            }
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return OutputStream.nullOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return stdout;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            try {
+                return exit.get();
+            } catch (ExecutionException e) {
+                return EXIT_ERROR;
+            }
+        }
+
+        @Override
+        public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+            try {
+                exit.get(timeout, unit);
+                return true;
+            } catch (TimeoutException e) {
+                return false;
+            } catch (ExecutionException e) {
+                return true;
+            }
+        }
+
+        @Override
+        public int exitValue() {
+            Integer code = exit.getNow(null);
+            if (code == null) throw new IllegalThreadStateException("Simulated process is still running");
+            return code;
+        }
+
+        @Override
+        public void destroy() {
+            Thread t = thread;
+            if (t != null) t.interrupt();
+        }
+
+        @Override
+        public Process destroyForcibly() {
+            destroy();
+            return this;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return !exit.isDone();
+        }
+
+        @Override
+        public CompletableFuture<Process> onExit() {
+            return exit.thenApply(code -> this);
+        }
+
+        @Override
+        public Stream<ProcessHandle> children() {
+            return Stream.empty();
+        }
+
+        @Override
+        public Stream<ProcessHandle> descendants() {
+            return Stream.empty();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.example.mas.utils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Локальный кэш артефактов (пакеты, манифесты, tar-архивы образов) с адресацией по содержимому.
+ * Содержимое лежит один раз в blobs/sha256/&lt;2 символа&gt;/&lt;sha256&gt;, имена (пути вида
+ * mirror/k8s-pkgs/core/stable/v1.35/deb/Packages) ссылаются на него через index.json, который перезаписывается
+ * атомарно. Одинаковые файлы под разными именами не дублируются; блоб удаляется, когда на него не ссылается ни одно имя.
+ */
+public class ArtifactStore {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Pattern SEGMENT = Pattern.compile("[A-Za-z0-9._~:+@=,-]+");
+    private static final Pattern SHA256 = Pattern.compile("[0-9a-f]{64}");
+
+    public static class Entry {
+        public String sha256;
+        public long size;
+        /** Откуда взят: URL источника или upload. */
+        public String source;
+        public long storedAt;
+
+        public Entry() {
+        }
+
+        public Entry(String sha256, long size, String source, long storedAt) {
+            this.sha256 = sha256;
+            this.size = size;
+            this.source = source;
+            this.storedAt = storedAt;
+        }
+    }
+
+    private final Path dir;
+    private final Path indexFile;
+    private final Map<String, Entry> index = new LinkedHashMap<>();
+
+    public ArtifactStore(Path dir) throws IOException {
+        this.dir = dir;
+        this.indexFile = dir.resolve("index.json");
+        Files.createDirectories(dir.resolve("tmp"));
+        if (Files.exists(indexFile)) {
+            index.putAll(MAPPER.readValue(indexFile.toFile(), new TypeReference<LinkedHashMap<String, Entry>>() {}));
+        }
+        index.values().removeIf(entry -> !Files.isRegularFile(blob(entry.sha256)));
+    }
+
+    /** Имя артефакта: сегменты через '/', без '.', '..' и пустых сегментов. */
+    public static boolean isValidName(String name) {
+        if (name == null || name.isEmpty() || name.length() > 1024) return false;
+        for (String segment : name.split("/", -1)) {
+            if (segment.equals(".") || segment.equals("..") || !SEGMENT.matcher(segment).matches()) return false;
+        }
+        return true;
+    }
+
+    public static boolean isValidDigest(String sha256) {
+        return sha256 != null && SHA256.matcher(sha256).matches();
+    }
+
+    public synchronized Entry get(String name) {
+        return index.get(name);
+    }
+
+    public synchronized Map<String, Entry> getEntries() {
+        return new LinkedHashMap<>(index);
+    }
+
+    /** Содержимое по sha256 (адрес sha256/&lt;hex&gt;), независимо от имени; null — такого нет. */
+    public Entry getByDigest(String sha256) throws IOException {
+        if (!isValidDigest(sha256)) return null;
+        Path blob = blob(sha256);
+        return Files.isRegularFile(blob) ? new Entry(sha256, Files.size(blob), null, 0) : null;
+    }
+
+    /** Файл содержимого; существует, пока на него ссылается хотя бы одно имя. */
+    public Path blob(String sha256) {
+        return dir.resolve("blobs").resolve("sha256").resolve(sha256.substring(0, 2)).resolve(sha256);
+    }
+
+    /**
+     * Сохраняет поток под именем name. expectedSha256 (если задан) сверяется с содержимым: при расхождении
+     * артефакт не сохраняется (IllegalArgumentException). Поток пишется во временный файл и переносится
+     * в блоб атомарно.
+     */
+    public Entry put(String name, InputStream in, String expectedSha256, String source) throws IOException {
+        if (!isValidName(name)) {
+            throw new IllegalArgumentException("Invalid artifact name: " + name);
+        }
+        Path tmp = Files.createTempFile(dir.resolve("tmp"), "upload-", ".part");
+        try {
+            MessageDigest digest = sha256();
+            long size;
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tmp), digest)) {
+                size = in.transferTo(out);
+            }
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(sha256)) {
+                throw new IllegalArgumentException("Checksum mismatch for " + name + ": expected " + expectedSha256
+                        + ", got " + sha256);
+            }
+            Path blob = blob(sha256);
+            Files.createDirectories(blob.getParent());
+            synchronized (this) {
+                if (!Files.exists(blob)) {
+                    Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE);
+                }
+                Entry entry = new Entry(sha256, size, source, System.currentTimeMillis());
+                Entry previous = index.put(name, entry);
+                save();
+                if (previous != null) deleteUnreferenced(previous.sha256);
+                return entry;
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Удаляет имя; следующий запрос к нему снова возьмёт артефакт из источника. */
+    public synchronized boolean remove(String name) throws IOException {
+        Entry removed = index.remove(name);
+        if (removed == null) return false;
+        save();
+        deleteUnreferenced(removed.sha256);
+        return true;
+    }
+
+    private void deleteUnreferenced(String sha256) throws IOException {
+        for (Entry entry : index.values()) {
+            if (entry.sha256.equals(sha256)) return;
+        }
+        Files.deleteIfExists(blob(sha256));
+    }
+
+    private void save() throws IOException {
+        Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        MAPPER.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), index);
+        Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package org.example.mas.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал развёртывания: append-only файл, одна запись на строку, каждая пачка записей — fsync.
+ * Формат строки: {@code <crc32 hex>\t<ts>\t<TYPE>\t<поля через \t>}. Строки с неверной CRC
+ * (оборванная запись при падении) при чтении пропускаются.
+ *
+ * <p>Записи: DEPLOY_START id, DEPLOY_RESUME id, STAGE_START stage fingerprint,
+ * HOST stage host outcome, STAGE_END stage state fingerprint, DEPLOY_END result.
+ * Журнал хранит только текущее развёртывание: DEPLOY_START переносит старый файл в .prev.
+ */
+public class DeploymentJournal {
+    private static final Logger logger = LoggerFactory.getLogger(DeploymentJournal.class);
+
+    private final Path path;
+    private FileChannel channel;
+
+    public DeploymentJournal(Path path) {
+        this.path = path;
+    }
+
+    public synchronized void deploymentStarted(String deploymentId) throws IOException {
+        close();
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        if (Files.exists(path)) {
+            Files.move(path, path.resolveSibling(path.getFileName() + ".prev"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        append(record("DEPLOY_START", deploymentId));
+    }
+
+    public synchronized void deploymentResumed(String deploymentId) throws IOException {
+        append(record("DEPLOY_RESUME", deploymentId));
+    }
+
+    public synchronized void stageStarted(String stage, String fingerprint) throws IOException {
+        append(record("STAGE_START", stage, fingerprint));
+    }
+
+    /** Исходы хостов и конец стадии пишутся одной пачкой с одним fsync. */
+    public synchronized void stageFinished(String stage, String state, String fingerprint,
+                                           Map<String, String> hostOutcomes) throws IOException {
+        String[] records = new String[hostOutcomes.size() + 1];
+        int i = 0;
+        for (Map.Entry<String, String> e : hostOutcomes.entrySet()) {
+            records[i++] = record("HOST", stage, e.getKey(), e.getValue());
+        }
+        records[i] = record("STAGE_END", stage, state, fingerprint);
+        append(records);
+    }
+
+    public synchronized void deploymentFinished(String result) throws IOException {
+        append(record("DEPLOY_END", result));
+        close();
+    }
+
+    private static String record(String type, String... fields) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(System.currentTimeMillis()).append('\t').append(type);
+        for (String field : fields) {
+            sb.append('\t').append(field == null ? "" : field.replace('\t', ' ').replace('\n', ' '));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue()) + "\t" + sb + "\n";
+    }
+
+    private void append(String... records) throws IOException {
+        if (channel == null) {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(String.join("", records).getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close journal {}: {}", path, e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    /** Восстанавливает состояние последнего развёртывания из файла. */
+    public synchronized State replay() throws IOException {
+        State state = new State();
+        if (!Files.exists(path)) {
+            return state;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                int tab = line.indexOf('\t');
+                if (tab < 0 || !checksumMatches(line.substring(0, tab), line.substring(tab + 1))) {
+                    logger.warn("Skipping corrupt journal record {}:{}", path, lineNo);
+                    continue;
+                }
+                state.apply(List.of(line.substring(tab + 1).split("\t", -1)));
+            }
+        }
+        return state;
+    }
+
+    private static boolean checksumMatches(String crcHex, String body) {
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue()).equals(crcHex);
+    }
+
+    public static class State {
+        private String deploymentId;
+        private boolean finished;
+        private String result;
+        private final Map<String, String> completedStages = new LinkedHashMap<>();
+        private final Map<String, String> failedStages = new LinkedHashMap<>();
+        private final Map<String, Map<String, String>> hostOutcomes = new LinkedHashMap<>();
+
+        private void apply(List<String> fields) {
+            // fields: ts, type, поля...; недостающие поля считаются пустыми
+            List<String> f = new ArrayList<>(fields);
+            while (f.size() < 5) f.add("");
+            String type = f.get(1);
+            switch (type) {
+                case "DEPLOY_START":
+                    deploymentId = f.get(2);
+                    finished = false;
+                    result = null;
+                    completedStages.clear();
+                    failedStages.clear();
+                    hostOutcomes.clear();
+                    break;
+                case "STAGE_START":
+                    completedStages.remove(f.get(2));
+                    failedStages.remove(f.get(2));
+                    break;
+                case "HOST":
+                    hostOutcomes.computeIfAbsent(f.get(2), k -> new LinkedHashMap<>()).put(f.get(3), f.get(4));
+                    break;
+                case "STAGE_END":
+                    if ("SUCCESS".equals(f.get(3)) || "SKIPPED".equals(f.get(3))) {
+                        completedStages.put(f.get(2), f.get(4));
+                    } else {
+                        failedStages.put(f.get(2), f.get(3));
+                    }
+                    break;
+                case "DEPLOY_END":
+                    finished = true;
+                    result = f.get(2);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        public boolean isEmpty() {
+            return deploymentId == null;
+        }
+
+        /** Развёртывание начато и не завершено (JVM упала или была остановлена посреди стадий). */
+        public boolean isInProgress() {
+            return deploymentId != null && !finished;
+        }
+
+        public String getDeploymentId() {
+            return deploymentId;
+        }
+
+        public String getResult() {
+            return result;
+        }
+
+        /** Успешно завершённые стадии → отпечаток входных данных, с которыми они выполнялись. */
+        public Map<String, String> getCompletedStages() {
+            return Collections.unmodifiableMap(completedStages);
+        }
+
+        public Map<String, String> getFailedStages() {
+            return Collections.unmodifiableMap(failedStages);
+        }
+
+        public Map<String, Map<String, String>> getHostOutcomes() {
+            return Collections.unmodifiableMap(hostOutcomes);
+        }
+    }
+}
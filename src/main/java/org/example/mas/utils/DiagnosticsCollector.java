@@ -0,0 +1,296 @@
+package org.example.mas.utils;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Сбор диагностики с упавших хостов: по SSH (ключ из inventory или настроек) выполняется команда
+ * диагностики, вывод каждого хоста — отдельная запись &lt;стадия&gt;/&lt;хост&gt;.log в zip-архиве развёртывания.
+ * Хосты опрашиваются параллельно, не больше parallelism одновременно; вывод хоста обрезается на maxBytesPerHost,
+ * после чего канал закрывается. Запись в архив идёт по мере готовности хостов, в памяти — не больше
+ * parallelism * maxBytesPerHost. Архив создаётся при первой записи и готов к чтению после close().
+ */
+public class DiagnosticsCollector implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(DiagnosticsCollector.class);
+
+    /** Сервисы кластера и состояние узла; sudo -n — если journalctl без прав ничего не покажет. */
+    public static final String DEFAULT_COMMAND = "for c in 'uname -a' 'uptime' 'df -h' 'free -m'; do echo \"=== $c ===\"; $c; done; "
+            + "for u in kubelet containerd condor; do "
+            + "echo \"=== systemctl status $u ===\"; systemctl status $u --no-pager -n 0; "
+            + "echo \"=== journalctl -u $u ===\"; sudo -n journalctl -u $u --since=-1h -n 300 --no-pager "
+            + "|| journalctl -u $u --since=-1h -n 300 --no-pager; done";
+
+    public static class Settings {
+        int parallelism = 8;
+        int maxBytesPerHost = 1024 * 1024;
+        int connectTimeoutMillis = 10_000;
+        int execTimeoutMillis = 60_000;
+        String command = DEFAULT_COMMAND;
+        String user = "root";
+        String privateKey;
+
+        public Settings parallelism(int parallelism) {
+            this.parallelism = Math.max(1, parallelism);
+            return this;
+        }
+
+        public Settings maxBytesPerHost(int maxBytesPerHost) {
+            this.maxBytesPerHost = Math.max(1024, maxBytesPerHost);
+            return this;
+        }
+
+        public Settings connectTimeoutMillis(int connectTimeoutMillis) {
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            return this;
+        }
+
+        public Settings execTimeoutMillis(int execTimeoutMillis) {
+            this.execTimeoutMillis = execTimeoutMillis;
+            return this;
+        }
+
+        public Settings command(String command) {
+            if (command != null && !command.isBlank()) this.command = command;
+            return this;
+        }
+
+        /** Пользователь и ключ для хостов без ansible_user / ansible_ssh_private_key_file. */
+        public Settings user(String user) {
+            if (user != null && !user.isBlank()) this.user = user;
+            return this;
+        }
+
+        public Settings privateKey(String privateKey) {
+            this.privateKey = privateKey;
+            return this;
+        }
+    }
+
+    /** Итог по одному хосту: error == null — команда выполнена (код возврата — в самой записи). */
+    public static class HostResult {
+        public final String host;
+        public final long bytes;
+        public final boolean truncated;
+        public final String error;
+
+        HostResult(String host, long bytes, boolean truncated, String error) {
+            this.host = host;
+            this.bytes = bytes;
+            this.truncated = truncated;
+            this.error = error;
+        }
+    }
+
+    private final Path archive;
+    private final Settings settings;
+    /** JSch с загруженным ключом, по пути к ключу. */
+    private final Map<String, JSch> identities = new ConcurrentHashMap<>();
+    private final Object archiveLock = new Object();
+    private ZipOutputStream zip;
+    private int entries;
+
+    public DiagnosticsCollector(Path archive, Settings settings) {
+        this.archive = archive;
+        this.settings = settings;
+    }
+
+    public Path getArchive() {
+        return archive;
+    }
+
+    /** Записан ли в архив хотя бы один хост. */
+    public boolean hasEntries() {
+        synchronized (archiveLock) {
+            return entries > 0;
+        }
+    }
+
+    /**
+     * Собирает диагностику стадии stage с hosts; возвращает, когда все хосты опрошены или прерван поток.
+     * Хосты, которых нет в inventory, опрашиваются по имени.
+     */
+    public List<HostResult> collect(String stage, Collection<String> hosts, InventoryParser.Inventory inventory) {
+        List<HostResult> results = new ArrayList<>();
+        if (hosts.isEmpty()) return results;
+        ExecutorService pool = IoThreads.newPool("diagnostics", Math.min(settings.parallelism, hosts.size()));
+        try {
+            List<Future<HostResult>> futures = new ArrayList<>();
+            for (String host : hosts) {
+                InventoryParser.Host entry = inventory != null ? inventory.getHost(host) : null;
+                futures.add(pool.submit(() -> collectHost(stage, host, entry)));
+            }
+            for (Future<HostResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    logger.warn("Diagnostics collection failed: {}", e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    private HostResult collectHost(String stage, String name, InventoryParser.Host host) {
+        long start = System.nanoTime();
+        CappedOutput output = new CappedOutput(settings.maxBytesPerHost);
+        String address = host != null ? host.getHost() : name;
+        String error = null;
+        Integer exitStatus = null;
+        Session session = null;
+        ChannelExec channel = null;
+        try {
+            int port = host != null ? Integer.parseInt(host.vars.getOrDefault("ansible_port", "22").trim()) : 22;
+            String user = host != null ? host.vars.getOrDefault("ansible_user", settings.user) : settings.user;
+            String key = host != null ? host.vars.getOrDefault("ansible_ssh_private_key_file", settings.privateKey) : settings.privateKey;
+            session = jsch(key).getSession(user, address, port);
+            Properties config = new Properties();
+            config.put("StrictHostKeyChecking", "no");
+            session.setConfig(config);
+            session.setThreadFactory(IoThreads.factory("ssh-diagnostics"));
+            session.connect(settings.connectTimeoutMillis);
+
+            channel = (ChannelExec) session.openChannel("exec");
+            channel.setCommand(settings.command);
+            channel.setOutputStream(output, true);
+            channel.setErrStream(output, true);
+            channel.connect(settings.connectTimeoutMillis);
+
+            long deadline = start + settings.execTimeoutMillis * 1_000_000L;
+            while (!channel.isClosed() && !output.truncated) {
+                if (System.nanoTime() > deadline) {
+                    error = "timed out after " + settings.execTimeoutMillis + " ms";
+                    break;
+                }
+                Thread.sleep(25);
+            }
+            if (channel.isClosed()) exitStatus = channel.getExitStatus();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = "interrupted";
+        } catch (Exception e) {
+            error = e.getMessage();
+        } finally {
+            if (channel != null && channel.isConnected()) channel.disconnect();
+            if (session != null && session.isConnected()) session.disconnect();
+        }
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        StringBuilder header = new StringBuilder()
+                .append("# host: ").append(name).append(" (").append(address).append(")\n")
+                .append("# stage: ").append(stage).append('\n')
+                .append("# duration: ").append(millis).append(" ms\n");
+        if (exitStatus != null) header.append("# exit code: ").append(exitStatus).append('\n');
+        if (output.truncated) header.append("# output truncated at ").append(settings.maxBytesPerHost).append(" bytes\n");
+        if (error != null) header.append("# error: ").append(error).append('\n');
+        header.append('\n');
+        try {
+            write(stage + "/" + name + ".log", header.toString().getBytes(StandardCharsets.UTF_8), output);
+        } catch (IOException e) {
+            logger.warn("Cannot write diagnostics of {} to {}: {}", name, archive, e.getMessage());
+            error = error != null ? error : "archive: " + e.getMessage();
+        }
+        if (error != null) {
+            logger.warn("Diagnostics from {} incomplete: {}", name, error);
+        }
+        return new HostResult(name, output.size(), output.truncated, error);
+    }
+
+    private void write(String entryName, byte[] header, CappedOutput body) throws IOException {
+        synchronized (archiveLock) {
+            if (zip == null) {
+                Files.createDirectories(archive.toAbsolutePath().getParent());
+                zip = new ZipOutputStream(Files.newOutputStream(archive));
+            }
+            zip.putNextEntry(new ZipEntry(entryName));
+            zip.write(header);
+            body.writeTo(zip);
+            zip.closeEntry();
+            zip.flush();
+            entries++;
+        }
+    }
+
+    private JSch jsch(String privateKey) throws JSchException {
+        String key = privateKey == null ? "" : resolvePath(privateKey);
+        JSch jsch = identities.get(key);
+        if (jsch == null) {
+            jsch = new JSch();
+            if (!key.isEmpty()) jsch.addIdentity(key);
+            JSch existing = identities.putIfAbsent(key, jsch);
+            if (existing != null) jsch = existing;
+        }
+        return jsch;
+    }
+
+    private static String resolvePath(String path) {
+        return path.startsWith("~") ? System.getProperty("user.home") + path.substring(1) : path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (archiveLock) {
+            if (zip != null) {
+                zip.close();
+                zip = null;
+            }
+        }
+    }
+
+    /** Буфер вывода хоста: после max байт остальное отбрасывается и выставляется truncated. */
+    private static final class CappedOutput extends OutputStream {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final int max;
+        private volatile boolean truncated;
+
+        CappedOutput(int max) {
+            this.max = max;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (buffer.size() < max) buffer.write(b);
+            else truncated = true;
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            int room = max - buffer.size();
+            if (len > room) truncated = true;
+            if (room > 0) buffer.write(b, off, Math.min(len, room));
+        }
+
+        synchronized int size() {
+            return buffer.size();
+        }
+
+        synchronized void writeTo(OutputStream out) throws IOException {
+            buffer.writeTo(out);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package org.example.mas.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Раздача одного артефакта по дереву узлов: источник (кэш MAS) отдаёт его только degree узлам первого уровня,
+ * каждый узел, получив и проверив файл, раздаёт его своим degree детям. Узлы нумеруются в порядке списка
+ * как k-арная куча: дети узла i — degree*(i+1) … degree*(i+1)+degree-1, глубина дерева — log_degree(N).
+ * Ребёнок стартует, как только готов его родитель, не дожидаясь остальных узлов уровня. Если узел не получил
+ * артефакт и после retries повторов, его дети переподключаются к его родителю (он уже готов).
+ */
+public class FanoutDistributor {
+
+    public enum NodeState { PENDING, TRANSFERRING, DONE, FAILED }
+
+    /** Узел дерева: имя (из inventory) и адрес его relay. */
+    public static class Node {
+        public final String name;
+        public final String url;
+
+        public Node(String name, String url) {
+            this.name = name;
+            this.url = url.replaceAll("/+$", "");
+        }
+    }
+
+    public static class NodeStatus {
+        public final String name;
+        /** Имя родителя в дереве; null — источник. Меняется при переподключении. */
+        public volatile String parent;
+        public volatile NodeState state = NodeState.PENDING;
+        public volatile int attempts;
+        /** Время от старта раздачи до готовности узла. */
+        public volatile long completedAtMillis;
+        public volatile long transferMillis;
+        public volatile String error;
+
+        NodeStatus(String name, String parent) {
+            this.name = name;
+            this.parent = parent;
+        }
+    }
+
+    /** Команда relay узла nodeUrl: скачать sourceUrl, проверить sha256 и размер; возвращается, когда файл готов. */
+    @FunctionalInterface
+    public interface Relay {
+        void fetch(String nodeUrl, String sourceUrl, String sha256, long size) throws IOException, InterruptedException;
+    }
+
+    @FunctionalInterface
+    public interface Listener {
+        void onChange(NodeStatus node);
+    }
+
+    public static class Settings {
+        private int degree = 4;
+        private int retries = 3;
+        private long backoffMillis = 2000;
+
+        public Settings degree(int degree) {
+            this.degree = Math.max(1, degree);
+            return this;
+        }
+
+        public Settings retries(int retries) {
+            this.retries = Math.max(0, retries);
+            return this;
+        }
+
+        public Settings backoffMillis(long backoffMillis) {
+            this.backoffMillis = Math.max(0, backoffMillis);
+            return this;
+        }
+
+        public int getDegree() {
+            return degree;
+        }
+    }
+
+    private final List<Node> nodes;
+    private final String sourceUrl;
+    private final String sha256;
+    private final long size;
+    private final Settings settings;
+    private final Relay relay;
+    private final Executor executor;
+    private final Listener listener;
+    private final Map<String, NodeStatus> statuses = new LinkedHashMap<>();
+    private final AtomicInteger remaining;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private volatile long startedAt;
+
+    public FanoutDistributor(List<Node> nodes, String sourceUrl, String sha256, long size, Settings settings,
+                             Relay relay, Executor executor, Listener listener) {
+        this.nodes = new ArrayList<>(nodes);
+        this.sourceUrl = sourceUrl;
+        this.sha256 = sha256;
+        this.size = size;
+        this.settings = settings;
+        this.relay = relay;
+        this.executor = executor;
+        this.listener = listener;
+        this.remaining = new AtomicInteger(this.nodes.size());
+        for (int i = 0; i < this.nodes.size(); i++) {
+            int parent = parentIndex(i, settings.degree);
+            statuses.put(this.nodes.get(i).name, new NodeStatus(this.nodes.get(i).name,
+                    parent < 0 ? null : this.nodes.get(parent).name));
+        }
+    }
+
+    /** Индекс родителя узла i; -1 — узел берёт артефакт у источника. */
+    public static int parentIndex(int index, int degree) {
+        return index < degree ? -1 : (index - degree) / degree;
+    }
+
+    /** Индексы детей узла index (-1 — источник) среди count узлов. */
+    public static List<Integer> childIndexes(int index, int count, int degree) {
+        List<Integer> children = new ArrayList<>();
+        int first = degree * (index + 1);
+        for (int i = first; i < first + degree && i < count; i++) {
+            children.add(i);
+        }
+        return children;
+    }
+
+    /** Запускает узлы первого уровня; future завершается, когда каждый узел готов или окончательно не смог. */
+    public CompletableFuture<Void> start() {
+        startedAt = System.nanoTime();
+        if (nodes.isEmpty()) {
+            completion.complete(null);
+        }
+        for (int child : childIndexes(-1, nodes.size(), settings.degree)) {
+            schedule(child, sourceUrl);
+        }
+        return completion;
+    }
+
+    public int getDegree() {
+        return settings.degree;
+    }
+
+    public Map<String, NodeStatus> getStatuses() {
+        return Collections.unmodifiableMap(statuses);
+    }
+
+    /** URL, по которому relay узла отдаёт артефакт детям. */
+    public String blobUrl(Node node) {
+        return node.url + "/blobs/" + sha256;
+    }
+
+    private void schedule(int index, String from) {
+        try {
+            executor.execute(() -> transfer(index, from));
+        } catch (RuntimeException e) {
+            fail(index, from, e.toString());
+        }
+    }
+
+    private void transfer(int index, String from) {
+        Node node = nodes.get(index);
+        NodeStatus status = statuses.get(node.name);
+        status.state = NodeState.TRANSFERRING;
+        listener.onChange(status);
+        long began = System.nanoTime();
+        String error = null;
+        for (int attempt = 1; attempt <= settings.retries + 1; attempt++) {
+            status.attempts = attempt;
+            try {
+                relay.fetch(node.url, from, sha256, size);
+                error = null;
+                break;
+            } catch (InterruptedException | InterruptedIOException e) {
+                Thread.currentThread().interrupt();
+                error = "interrupted";
+                break;
+            } catch (IOException | RuntimeException e) {
+                // relay сохранил полученную часть: следующая попытка продолжит её по Range.
+                error = e.getMessage() == null ? e.toString() : e.getMessage();
+                if (attempt <= settings.retries && !sleep(settings.backoffMillis * attempt)) {
+                    error = "interrupted";
+                    break;
+                }
+            }
+        }
+        status.transferMillis = (System.nanoTime() - began) / 1_000_000;
+        if (error != null) {
+            fail(index, from, error);
+            return;
+        }
+        status.error = null;
+        status.state = NodeState.DONE;
+        status.completedAtMillis = (System.nanoTime() - startedAt) / 1_000_000;
+        listener.onChange(status);
+        for (int child : childIndexes(index, nodes.size(), settings.degree)) {
+            schedule(child, blobUrl(node));
+        }
+        finished();
+    }
+
+    /** Узел не получил артефакт: его дети берут его у того же источника, что и он сам. */
+    private void fail(int index, String from, String error) {
+        NodeStatus status = statuses.get(nodes.get(index).name);
+        status.error = error;
+        status.state = NodeState.FAILED;
+        status.completedAtMillis = (System.nanoTime() - startedAt) / 1_000_000;
+        listener.onChange(status);
+        if (!Thread.currentThread().isInterrupted()) {
+            for (int child : childIndexes(index, nodes.size(), settings.degree)) {
+                statuses.get(nodes.get(child).name).parent = status.parent;
+                schedule(child, from);
+            }
+        } else {
+            for (int child : childIndexes(index, nodes.size(), settings.degree)) {
+                fail(child, from, "interrupted");
+            }
+        }
+        finished();
+    }
+
+    private void finished() {
+        if (remaining.decrementAndGet() == 0) {
+            completion.complete(null);
+        }
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.example.mas.utils;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Одна проверка узла: tcp — только подключение к порту SSH, ssh — вход по ключу и команда проверки
+ * (kubelet, condor), код возврата 0 — узел здоров. Для каждой проверки открывается и закрывается
+ * своя SSH-сессия: держать тысячи сессий (у JSch — поток на сессию) дороже, чем переподключаться.
+ */
+public class HealthProbe {
+    private static final int MAX_CAPTURE = 512;
+
+    public enum Mode { TCP, SSH }
+
+    public enum Outcome { OK, CHECK_FAILED, UNREACHABLE }
+
+    public static class Result {
+        public final Outcome outcome;
+        public final long latencyMillis;
+        public final String message;
+
+        Result(Outcome outcome, long latencyMillis, String message) {
+            this.outcome = outcome;
+            this.latencyMillis = latencyMillis;
+            this.message = message;
+        }
+    }
+
+    private final Mode mode;
+    private final int timeoutMillis;
+    /** JSch с загруженным ключом, по пути к ключу: ключ читается один раз, а не на каждую проверку. */
+    private final Map<String, JSch> identities = new ConcurrentHashMap<>();
+
+    public HealthProbe(Mode mode, int timeoutMillis) {
+        this.mode = mode;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /** privateKey и command нужны только для режима ssh. */
+    public Result probe(String host, int port, String user, String privateKey, String command) {
+        long start = System.nanoTime();
+        if (mode == Mode.TCP) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+                return new Result(Outcome.OK, elapsedMillis(start), null);
+            } catch (Exception e) {
+                return new Result(Outcome.UNREACHABLE, elapsedMillis(start), e.getMessage());
+            }
+        }
+
+        Session session = null;
+        ChannelExec channel = null;
+        try {
+            try {
+                session = jsch(privateKey).getSession(user, host, port);
+                Properties config = new Properties();
+                config.put("StrictHostKeyChecking", "no");
+                session.setConfig(config);
+                session.setThreadFactory(IoThreads.factory("ssh-health"));
+                session.connect(timeoutMillis);
+            } catch (JSchException e) {
+                return new Result(Outcome.UNREACHABLE, elapsedMillis(start), e.getMessage());
+            }
+
+            channel = (ChannelExec) session.openChannel("exec");
+            channel.setCommand(command);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            channel.setOutputStream(output);
+            channel.setErrStream(output);
+            channel.connect(timeoutMillis);
+
+            long deadline = start + timeoutMillis * 1_000_000L;
+            while (!channel.isClosed()) {
+                if (System.nanoTime() > deadline) {
+                    return new Result(Outcome.CHECK_FAILED, elapsedMillis(start),
+                            "check timed out after " + timeoutMillis + " ms");
+                }
+                Thread.sleep(10);
+            }
+            int exitStatus = channel.getExitStatus();
+            return exitStatus == 0
+                    ? new Result(Outcome.OK, elapsedMillis(start), null)
+                    : new Result(Outcome.CHECK_FAILED, elapsedMillis(start), "exit code " + exitStatus + ": " + capture(output));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result(Outcome.UNREACHABLE, elapsedMillis(start), "interrupted");
+        } catch (Exception e) {
+            return new Result(Outcome.CHECK_FAILED, elapsedMillis(start), e.getMessage());
+        } finally {
+            if (channel != null && channel.isConnected()) {
+                channel.disconnect();
+            }
+            if (session != null && session.isConnected()) {
+                session.disconnect();
+            }
+        }
+    }
+
+    private JSch jsch(String privateKey) throws JSchException {
+        JSch jsch = identities.get(privateKey);
+        if (jsch == null) {
+            jsch = new JSch();
+            jsch.addIdentity(privateKey);
+            JSch existing = identities.putIfAbsent(privateKey, jsch);
+            if (existing != null) jsch = existing;
+        }
+        return jsch;
+    }
+
+    private static String capture(ByteArrayOutputStream out) {
+        String s = out.toString(StandardCharsets.UTF_8).trim();
+        return s.length() > MAX_CAPTURE ? s.substring(0, MAX_CAPTURE) : s;
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+}
@@ -0,0 +1,112 @@
+package org.example.mas.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Потоковый разбор INI-inventory: строка за строкой, без regex и без чтения файла целиком.
+ */
+public class IniInventoryReader implements InventoryReader {
+
+    @Override
+    public InventoryParser.Inventory read(Reader reader) throws IOException {
+        InventoryParser.Builder builder = new InventoryParser.Builder();
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 64 * 1024);
+        String section = InventoryParser.UNGROUPED;
+        char kind = 'h'; // h — хосты, v — [group:vars], c — [group:children], ? — неизвестный суффикс
+        String rawLine;
+        while ((rawLine = in.readLine()) != null) {
+            int start = 0;
+            int end = rawLine.length();
+            while (start < end && rawLine.charAt(start) <= ' ') start++;
+            while (end > start && rawLine.charAt(end - 1) <= ' ') end--;
+            if (start == end) continue;
+            char first = rawLine.charAt(start);
+            if (first == '#' || first == ';') continue;
+
+            if (first == '[' && rawLine.charAt(end - 1) == ']') {
+                String header = rawLine.substring(start + 1, end - 1).trim();
+                int colon = header.indexOf(':');
+                if (colon < 0) {
+                    section = header;
+                    kind = 'h';
+                } else {
+                    section = header.substring(0, colon).trim();
+                    String suffix = header.substring(colon + 1).trim();
+                    kind = "vars".equalsIgnoreCase(suffix) ? 'v' : "children".equalsIgnoreCase(suffix) ? 'c' : '?';
+                }
+                builder.declareGroup(section);
+                continue;
+            }
+
+            switch (kind) {
+                case 'v': {
+                    int eq = rawLine.indexOf('=', start);
+                    if (eq > start && eq < end) {
+                        builder.groupVar(section, rawLine.substring(start, eq).trim(),
+                                unquote(rawLine.substring(eq + 1, end).trim()));
+                    }
+                    break;
+                }
+                case 'c':
+                    builder.child(section, rawLine.substring(start, tokenEnd(rawLine, start, end)));
+                    break;
+                case 'h':
+                    readHost(builder, section, rawLine, start, end);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return builder.build();
+    }
+
+    /** Строка хоста: имя и пары key=value через пробел; значения в кавычках могут содержать пробелы. */
+    private static void readHost(InventoryParser.Builder builder, String group, String line, int start, int end) {
+        int nameEnd = tokenEnd(line, start, end);
+        String name = line.substring(start, nameEnd);
+        Map<String, String> vars = null;
+        int pos = nameEnd;
+        while (pos < end) {
+            while (pos < end && line.charAt(pos) <= ' ') pos++;
+            if (pos >= end) break;
+            int tokenEnd = tokenEnd(line, pos, end);
+            int eq = line.indexOf('=', pos);
+            if (eq > pos && eq < tokenEnd) {
+                if (vars == null) vars = new LinkedHashMap<>();
+                vars.put(line.substring(pos, eq), unquote(line.substring(eq + 1, tokenEnd)));
+            }
+            pos = tokenEnd;
+        }
+        builder.host(group, name, vars);
+    }
+
+    /** Конец токена: первый пробел вне кавычек. */
+    static int tokenEnd(String line, int pos, int end) {
+        char quote = 0;
+        for (int i = pos; i < end; i++) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c <= ' ') {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    static String unquote(String value) {
+        if (value.length() >= 2) {
+            char first = value.charAt(0);
+            if ((first == '\'' || first == '"') && value.charAt(value.length() - 1) == first) {
+                return value.substring(1, value.length() - 1);
+            }
+        }
+        return value;
+    }
+}
@@ -1,91 +1,459 @@
 package org.example.mas.utils;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.*;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
+/**
+ * Inventory Ansible: INI ({@link IniInventoryReader}) или YAML ({@link YamlInventoryReader}, по расширению
+ * .yml/.yaml) — группы хостов, переменные групп, дочерние группы.
+ * Результат неизменяемый и кэшируется по пути файла: повторный parse перечитывает файл, только если
+ * изменились mtime/размер, и отдаёт прежнюю модель, если содержимое (SHA-256) не изменилось.
+ */
+public class InventoryParser {
+    public static final String ALL = "all";
+    public static final String UNGROUPED = "ungrouped";
 
+    private static final Map<Path, Cached> CACHE = new ConcurrentHashMap<>();
 
-public  class InventoryParser {
+    private static class Cached {
+        final FileTime modified;
+        final long size;
+        final byte[] digest;
+        final Inventory inventory;
+
+        Cached(FileTime modified, long size, byte[] digest, Inventory inventory) {
+            this.modified = modified;
+            this.size = size;
+            this.digest = digest;
+            this.inventory = inventory;
+        }
+    }
+
+    /**
+     * Неизменяемая модель inventory с индексами: группа → хосты (включая дочерние группы),
+     * хост → группы (включая родительские и all), эффективные переменные хоста.
+     * Безопасна для совместного использования из разных агентов и потоков.
+     */
     public static class Inventory {
-        private final Map<String, List<Host>> groups = new HashMap<>();
+        private final Map<String, Host> hosts;
+        private final List<Host> allHosts;
+        private final Map<String, List<Host>> groupHosts;
+        private final Map<String, Map<String, String>> groupVars;
+        private final Map<String, Set<String>> children;
 
-        public void addHost(String group, String hostname, Map<String, String> vars) {
-            groups.computeIfAbsent(group, k -> new ArrayList<>()).add(new Host(hostname, vars));
+        private Inventory(Map<String, Host> hosts, Map<String, List<Host>> groupHosts,
+                          Map<String, Map<String, String>> groupVars, Map<String, Set<String>> children) {
+            this.hosts = Collections.unmodifiableMap(hosts);
+            this.allHosts = Collections.unmodifiableList(new ArrayList<>(hosts.values()));
+            this.groupHosts = Collections.unmodifiableMap(groupHosts);
+            this.groupVars = Collections.unmodifiableMap(groupVars);
+            this.children = Collections.unmodifiableMap(children);
         }
 
+        /** Хосты группы и всех её дочерних групп, в порядке объявления, без повторов. */
         public List<Host> getGroup(String groupName) {
-            return groups.getOrDefault(groupName, Collections.emptyList());
-        }
-            public List<Host> getAllHosts() {
-            List<Host> hosts = new ArrayList<>();
-            Set<String> hostNames = new HashSet<>();
-
-            for(List<Host> hostsInGroup : this.groups.values()) {
-                for (Host host : hostsInGroup) {
-                    if(!hostNames.contains(host.name)){
-                        hosts.add(host);
-                        hostNames.add(host.name);
-                    }
+            return groupHosts.getOrDefault(groupName, Collections.emptyList());
+        }
+
+        public List<Host> getAllHosts() {
+            return allHosts;
+        }
+
+        public Host getHost(String name) {
+            return hosts.get(name);
+        }
+
+        public Set<String> getGroupNames() {
+            return groupHosts.keySet();
+        }
+
+        /** Переменные из секции [group:vars] (без наследования). */
+        public Map<String, String> getGroupVars(String groupName) {
+            return groupVars.getOrDefault(groupName, Collections.emptyMap());
+        }
+
+        public Set<String> getChildren(String groupName) {
+            return children.getOrDefault(groupName, Collections.emptySet());
+        }
+
+        /**
+         * Имена хостов по шаблону ansible (hosts: плейбука, --limit): группы и хосты через ',' или ':',
+         * исключения '!', пересечения '&', '*' в именах. Неизвестные имена ничего не добавляют.
+         */
+        public Set<String> resolvePattern(String pattern) {
+            Set<String> result = new LinkedHashSet<>();
+            List<Set<String>> intersections = new ArrayList<>();
+            Set<String> excluded = new HashSet<>();
+            for (String token : pattern.split("[,:]")) {
+                token = token.trim();
+                if (token.isEmpty()) continue;
+                if (token.startsWith("!")) {
+                    excluded.addAll(match(token.substring(1)));
+                } else if (token.startsWith("&")) {
+                    intersections.add(match(token.substring(1)));
+                } else {
+                    result.addAll(match(token));
                 }
             }
-            return hosts;
-    }
-    }
-    public static Inventory parse(String inventoryPath) throws IOException {
-        List<String> lines = Files.readAllLines(Paths.get(inventoryPath));
-        Inventory inv = new Inventory();
-
-        String currentGroup = null;
-        for (String line : lines) {
-            line = line.trim();
-            if (line.isEmpty() || line.startsWith("#")) continue;
-
-            if (line.startsWith("[") && line.endsWith("]")) {
-                String groupToken = line.substring(1, line.length() - 1).trim();
-                String[] groupParts = groupToken.split(":", 2);
-                if (groupParts.length > 1) {
-                    String suffix = groupParts[1].trim();
-                    if ("vars".equalsIgnoreCase(suffix) || "children".equalsIgnoreCase(suffix)) {
-                        currentGroup = null;
-                        continue;
-                    }
-                }
-                currentGroup = groupParts[0];
-            } else if (currentGroup != null) {
-                String[] parts = line.split("\\s+");
-                if (parts.length == 0) continue;
-
-                String host = parts[0];
-                Map<String, String> vars = new HashMap<>();
-                for (int i = 1; i < parts.length; i++) {
-                    String part = parts[i];
-                    if (part.contains("=")) {
-                        String[] kv = part.split("=", 2);
-                        vars.put(kv[0], kv[1]);
-                    }
-                }
-                inv.addHost(currentGroup, host, vars);
+            intersections.forEach(result::retainAll);
+            result.removeAll(excluded);
+            return result;
+        }
+
+        private Set<String> match(String token) {
+            Set<String> names = new LinkedHashSet<>();
+            if (token.equals(ALL) || token.equals("*")) {
+                names.addAll(hosts.keySet());
+            } else if (token.contains("*")) {
+                Pattern glob = Pattern.compile(Pattern.quote(token).replace("*", "\\E.*\\Q"));
+                groupHosts.forEach((group, members) -> {
+                    if (glob.matcher(group).matches()) members.forEach(h -> names.add(h.name));
+                });
+                hosts.keySet().stream().filter(name -> glob.matcher(name).matches()).forEach(names::add);
+            } else if (groupHosts.containsKey(token)) {
+                groupHosts.get(token).forEach(h -> names.add(h.name));
+            } else if (hosts.containsKey(token)) {
+                names.add(token);
             }
+            return names;
         }
-        return inv;
     }
 
-
-
-
     public static class Host {
         public final String name;
+        /** Эффективные переменные: all:vars, затем группы от родительских к дочерним, затем переменные хоста. */
         public final Map<String, String> vars;
+        /** Все группы хоста, включая родительские и all. */
+        public final Set<String> groups;
 
         public Host(String name, Map<String, String> vars) {
+            this(name, Collections.unmodifiableMap(vars), Set.of(ALL));
+        }
+
+        /** Для {@link Builder}: vars и groups уже неизменяемые и могут быть общими для нескольких хостов. */
+        private Host(String name, Map<String, String> vars, Set<String> groups) {
             this.name = name;
             this.vars = vars;
+            this.groups = groups;
         }
 
         public String getHost() {
             return vars.getOrDefault("ansible_host", name);
         }
     }
+
+    /** Разбор с кэшем; см. описание класса. */
+    public static Inventory parse(String inventoryPath) throws IOException {
+        return parse(Paths.get(inventoryPath));
+    }
+
+    public static Inventory parse(Path path) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        FileTime modified = Files.getLastModifiedTime(key);
+        long size = Files.size(key);
+        Cached cached = CACHE.get(key);
+        if (cached != null && cached.modified.equals(modified) && cached.size == size) {
+            return cached.inventory;
+        }
+
+        // Файл читается один раз потоком: SHA-256 считается по ходу разбора.
+        MessageDigest digest = sha256();
+        Inventory parsed;
+        try (Reader reader = new InputStreamReader(
+                new DigestInputStream(Files.newInputStream(key), digest), StandardCharsets.UTF_8)) {
+            parsed = readerFor(key).read(reader);
+            char[] rest = new char[8192];
+            while (reader.read(rest) != -1) {
+                // дочитываем до конца, чтобы хеш покрывал весь файл
+            }
+        }
+        byte[] hash = digest.digest();
+        Inventory inventory = cached != null && Arrays.equals(cached.digest, hash) ? cached.inventory : parsed;
+        CACHE.put(key, new Cached(modified, size, hash, inventory));
+        return inventory;
+    }
+
+    public static InventoryReader readerFor(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        return name.endsWith(".yml") || name.endsWith(".yaml") ? new YamlInventoryReader() : new IniInventoryReader();
+    }
+
+    /** Разбор текста INI-inventory без кэша. */
+    public static Inventory parseText(String text) {
+        try {
+            return new IniInventoryReader().read(new StringReader(text));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Накопление разобранных секций; build() строит индексы и эффективные переменные.
+     * Повторяющиеся строки (имена групп, ключи и значения переменных) хранятся в одном экземпляре,
+     * хосты с одинаковым набором групп делят одну карту унаследованных переменных и один набор групп.
+     */
+    static class Builder {
+        /** Хост в процессе разбора: собственные переменные и группы, в которых он объявлен. */
+        private static final class HostEntry {
+            Map<String, String> vars = Collections.emptyMap();
+            final String group;
+            List<String> moreGroups;
+
+            HostEntry(String group) {
+                this.group = group;
+            }
+        }
+
+        private final Map<String, HostEntry> hostEntries = new LinkedHashMap<>();
+        private final Set<String> groups = new LinkedHashSet<>();
+        private final Map<String, Map<String, String>> groupVars = new LinkedHashMap<>();
+        private final Map<String, Set<String>> children = new LinkedHashMap<>();
+        private final Map<String, String> strings = new HashMap<>();
+
+        Builder() {
+            declareGroup(ALL);
+            declareGroup(UNGROUPED);
+        }
+
+        private String intern(String value) {
+            String existing = strings.putIfAbsent(value, value);
+            return existing != null ? existing : value;
+        }
+
+        void declareGroup(String group) {
+            groups.add(intern(group));
+        }
+
+        /** vars может быть null, если у хоста в этой строке нет переменных. */
+        void host(String group, String name, Map<String, String> vars) {
+            group = intern(group);
+            groups.add(group);
+            HostEntry entry = hostEntries.get(name);
+            if (entry == null) {
+                entry = new HostEntry(group);
+                hostEntries.put(name, entry);
+            } else if (!entry.group.equals(group)) {
+                if (entry.moreGroups == null) entry.moreGroups = new ArrayList<>(2);
+                if (!entry.moreGroups.contains(group)) entry.moreGroups.add(group);
+            }
+            if (vars == null || vars.isEmpty()) {
+                return;
+            }
+            if (entry.vars.isEmpty()) {
+                entry.vars = new LinkedHashMap<>(vars.size() * 2);
+            }
+            for (Map.Entry<String, String> e : vars.entrySet()) {
+                entry.vars.put(intern(e.getKey()), intern(e.getValue()));
+            }
+        }
+
+        void groupVar(String group, String key, String value) {
+            groupVars.computeIfAbsent(intern(group), k -> new LinkedHashMap<>()).put(intern(key), intern(value));
+        }
+
+        void child(String parent, String child) {
+            declareGroup(parent);
+            declareGroup(child);
+            children.computeIfAbsent(intern(parent), k -> new LinkedHashSet<>()).add(intern(child));
+        }
+
+        Inventory build() {
+            Map<String, Set<String>> parents = new HashMap<>();
+            children.forEach((parent, kids) -> kids.forEach(kid ->
+                    parents.computeIfAbsent(kid, k -> new LinkedHashSet<>()).add(parent)));
+            Map<String, Integer> depth = new HashMap<>();
+            // Группа вместе со всеми предками и all — общий набор групп для хостов, объявленных только в ней.
+            Map<String, Set<String>> closures = new HashMap<>();
+            for (String group : groups) {
+                depth(group, parents, depth, new HashSet<>());
+                Set<String> closure = new LinkedHashSet<>();
+                closure.add(ALL);
+                addWithAncestors(closure, group, parents, new HashSet<>());
+                closures.put(group, Collections.unmodifiableSet(closure));
+            }
+            // Хост без группы (кроме all) попадает в ungrouped, как в Ansible.
+            closures.put(ALL, closures.get(UNGROUPED));
+
+            Map<Set<String>, Set<String>> unions = new HashMap<>();
+            Map<Set<String>, Map<String, String>> inheritedVars = new IdentityHashMap<>();
+            Map<String, Host> hosts = new LinkedHashMap<>(hostEntries.size() * 2);
+            for (Map.Entry<String, HostEntry> e : hostEntries.entrySet()) {
+                Set<String> hostGroups = hostGroups(e.getValue(), closures, unions);
+                Map<String, String> inherited = inheritedVars.computeIfAbsent(hostGroups, g -> inheritedVars(g, depth));
+                hosts.put(e.getKey(), new Host(e.getKey(), LayeredVars.of(e.getValue().vars, inherited), hostGroups));
+            }
+
+            Map<String, List<Host>> groupHosts = new LinkedHashMap<>();
+            for (String group : groups) {
+                groupHosts.put(group, new ArrayList<>());
+            }
+            for (Host host : hosts.values()) {
+                for (String group : host.groups) {
+                    groupHosts.get(group).add(host);
+                }
+            }
+            groupHosts.replaceAll((group, list) -> Collections.unmodifiableList(list));
+
+            Map<String, Map<String, String>> frozenVars = new LinkedHashMap<>();
+            groupVars.forEach((group, vars) -> frozenVars.put(group, Collections.unmodifiableMap(vars)));
+            Map<String, Set<String>> frozenChildren = new LinkedHashMap<>();
+            children.forEach((group, kids) -> frozenChildren.put(group, Collections.unmodifiableSet(kids)));
+            return new Inventory(hosts, groupHosts, frozenVars, frozenChildren);
+        }
+
+        private static Set<String> hostGroups(HostEntry entry, Map<String, Set<String>> closures,
+                                              Map<Set<String>, Set<String>> unions) {
+            if (entry.moreGroups == null) {
+                return closures.get(entry.group);
+            }
+            Set<String> union = new LinkedHashSet<>();
+            union.add(ALL);
+            for (String group : concat(entry.group, entry.moreGroups)) {
+                if (!ALL.equals(group) && !UNGROUPED.equals(group)) union.addAll(closures.get(group));
+            }
+            if (union.size() == 1) {
+                return closures.get(UNGROUPED);
+            }
+            return unions.computeIfAbsent(union, Collections::unmodifiableSet);
+        }
+
+        private static List<String> concat(String first, List<String> rest) {
+            List<String> all = new ArrayList<>(rest.size() + 1);
+            all.add(first);
+            all.addAll(rest);
+            return all;
+        }
+
+        /** Приоритет Ansible: более глубокая группа перекрывает родительскую, при равной глубине — по имени. */
+        private Map<String, String> inheritedVars(Set<String> groups, Map<String, Integer> depth) {
+            List<String> ordered = new ArrayList<>(groups);
+            ordered.sort(Comparator.<String>comparingInt(g -> depth.getOrDefault(g, 1)).thenComparing(g -> g));
+            Map<String, String> vars = new LinkedHashMap<>();
+            for (String group : ordered) {
+                vars.putAll(groupVars.getOrDefault(group, Collections.emptyMap()));
+            }
+            return Collections.unmodifiableMap(vars);
+        }
+
+        private static int depth(String group, Map<String, Set<String>> parents, Map<String, Integer> memo,
+                                 Set<String> visiting) {
+            if (ALL.equals(group)) return 0;
+            Integer known = memo.get(group);
+            if (known != null) return known;
+            int result = 1;
+            if (visiting.add(group)) {
+                for (String parent : parents.getOrDefault(group, Collections.emptySet())) {
+                    result = Math.max(result, depth(parent, parents, memo, visiting) + 1);
+                }
+                visiting.remove(group);
+            }
+            memo.put(group, result);
+            return result;
+        }
+
+        private static void addWithAncestors(Set<String> out, String group, Map<String, Set<String>> parents,
+                                             Set<String> visited) {
+            if (!visited.add(group)) return;
+            out.add(group);
+            for (String parent : parents.getOrDefault(group, Collections.emptySet())) {
+                addWithAncestors(out, parent, parents, visited);
+            }
+        }
+    }
+
+    /**
+     * Переменные хоста поверх общей карты переменных его групп. Собственные переменные хоста хранятся
+     * массивом пар ключ/значение: у хоста их обычно единицы, а хостов — десятки тысяч.
+     * Только для чтения; обход (entrySet) собирает объединённую карту заново.
+     */
+    static final class LayeredVars extends AbstractMap<String, String> {
+        private final String[] own;
+        private final Map<String, String> inherited;
+
+        private LayeredVars(String[] own, Map<String, String> inherited) {
+            this.own = own;
+            this.inherited = inherited;
+        }
+
+        static Map<String, String> of(Map<String, String> own, Map<String, String> inherited) {
+            if (own.isEmpty()) return inherited;
+            String[] pairs = new String[own.size() * 2];
+            int i = 0;
+            for (Map.Entry<String, String> e : own.entrySet()) {
+                pairs[i++] = e.getKey();
+                pairs[i++] = e.getValue();
+            }
+            return new LayeredVars(pairs, inherited);
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < own.length; i += 2) {
+                if (own[i].equals(key)) return i;
+            }
+            return -1;
+        }
+
+        @Override
+        public String get(Object key) {
+            int i = indexOf(key);
+            return i >= 0 ? own[i + 1] : inherited.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(key) >= 0 || inherited.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            int size = inherited.size();
+            for (int i = 0; i < own.length; i += 2) {
+                if (!inherited.containsKey(own[i])) size++;
+            }
+            return size;
+        }
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            Map<String, String> merged = new LinkedHashMap<>(inherited);
+            for (int i = 0; i < own.length; i += 2) {
+                merged.put(own[i], own[i + 1]);
+            }
+            return Collections.unmodifiableMap(merged).entrySet();
+        }
+    }
 }
@@ -0,0 +1,12 @@
+package org.example.mas.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Формат inventory (INI или YAML). Читает поток до конца и строит общую модель {@link InventoryParser.Inventory}.
+ */
+@FunctionalInterface
+public interface InventoryReader {
+    InventoryParser.Inventory read(Reader reader) throws IOException;
+}
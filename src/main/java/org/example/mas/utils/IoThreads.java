@@ -0,0 +1,64 @@
+package org.example.mas.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Потоки для блокирующего ввода-вывода: процессы ansible-playbook, SSH (bootstrap, проверки узлов, диагностика)
+ * и развёртывание координатора. В сборке с профилем java21 при spring.threads.virtual.enabled=true это виртуальные
+ * потоки: тысячи одновременных SSH-сессий не требуют тысяч потоков ОС, а parallelism пулов ограничивает только
+ * нагрузку на узлы. Иначе — именованные daemon-потоки платформы, как раньше. Thread.ofVirtual вызывается напрямую
+ * из {@link VirtualThreads}: src/main/java21 под профилем java21, заглушка src/main/java17 в обычной сборке.
+ */
+public final class IoThreads {
+    private static final Logger logger = LoggerFactory.getLogger(IoThreads.class);
+
+    private static volatile boolean virtual;
+
+    private IoThreads() {
+    }
+
+    /** Включает виртуальные потоки; в сборке без профиля java21 остаются потоки платформы. Вызывается при старте. */
+    public static void configure(boolean enabled) {
+        if (enabled && !VirtualThreads.available()) {
+            logger.warn("Virtual threads requested but this build targets Java 17 (build with -Pjava21), "
+                    + "blocking I/O stays on platform threads");
+        }
+        virtual = enabled && VirtualThreads.available();
+        logger.info("Blocking I/O runs on {} threads", virtual ? "virtual" : "platform");
+    }
+
+    public static boolean isVirtual() {
+        return virtual;
+    }
+
+    /** Фабрика потоков prefix-1, prefix-2, …; потоки платформы — daemon. */
+    public static ThreadFactory factory(String prefix) {
+        if (virtual) {
+            return VirtualThreads.factory(prefix);
+        }
+        AtomicInteger index = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + index.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /** Пул не больше parallelism одновременных задач. */
+    public static ExecutorService newPool(String prefix, int parallelism) {
+        return Executors.newFixedThreadPool(Math.max(1, parallelism), factory(prefix));
+    }
+
+    /** Запускает одну задачу в отдельном потоке name-1. */
+    public static Thread start(String name, Runnable task) {
+        Thread thread = factory(name).newThread(task);
+        thread.start();
+        return thread;
+    }
+}
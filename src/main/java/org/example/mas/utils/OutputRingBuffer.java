@@ -0,0 +1,50 @@
+package org.example.mas.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Кольцевой буфер последних N строк вывода. Память не растёт с длиной вывода.
+ */
+public class OutputRingBuffer {
+    private final String[] lines;
+    private final int maxLineLength;
+    private int next;
+    private int size;
+    private long total;
+
+    public OutputRingBuffer(int capacity, int maxLineLength) {
+        this.lines = new String[Math.max(1, capacity)];
+        this.maxLineLength = maxLineLength;
+    }
+
+    public synchronized void add(String line) {
+        if (line.length() > maxLineLength) {
+            line = line.substring(0, maxLineLength) + "...";
+        }
+        lines[next] = line;
+        next = (next + 1) % lines.length;
+        if (size < lines.length) size++;
+        total++;
+    }
+
+    /** Строки в порядке поступления, от самой старой к самой новой. */
+    public synchronized List<String> lines() {
+        List<String> result = new ArrayList<>(size);
+        int start = (next - size + lines.length) % lines.length;
+        for (int i = 0; i < size; i++) {
+            result.add(lines[(start + i) % lines.length]);
+        }
+        return result;
+    }
+
+    /** Сколько строк прошло через буфер за всё время. */
+    public synchronized long totalLines() {
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return String.join("\n", lines());
+    }
+}
@@ -0,0 +1,146 @@
+package org.example.mas.utils;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Неизменяемая хеш-карта с общей структурой между версиями: {@link #with} копирует только путь к ключу —
+ * три узла по 32 ссылки и корзину с ключами того же хеша, — а не всю карту, так что новая версия на
+ * тысячах ключей стоит столько же, сколько на десятке. Порядок обхода — по хешу ключей. Ключи не null.
+ */
+public final class PersistentMap<K, V> extends AbstractMap<K, V> {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final int LEVELS = 3;
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(null, 0);
+
+    /** Узлы уровней — Object[WIDTH]; под последним уровнем — корзины {k0, v0, k1, v1, ...}. */
+    private final Object[] root;
+    private final int size;
+
+    private PersistentMap(Object[] root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    public static <K, V> PersistentMap<K, V> copyOf(Map<? extends K, ? extends V> map) {
+        PersistentMap<K, V> result = empty();
+        for (Map.Entry<? extends K, ? extends V> e : map.entrySet()) {
+            result = result.with(e.getKey(), e.getValue());
+        }
+        return result;
+    }
+
+    /** Карта с key = value; эта карта не меняется. */
+    public PersistentMap<K, V> with(K key, V value) {
+        Objects.requireNonNull(key, "key");
+        boolean[] added = new boolean[1];
+        Object[] newRoot = put(root, 0, hash(key), key, value, added);
+        return new PersistentMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Object[] bucket = bucket(key);
+        int index = indexIn(bucket, key);
+        return index >= 0 ? (V) bucket[index + 1] : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexIn(bucket(key), key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                List<Map.Entry<K, V>> entries = new ArrayList<>(size);
+                collect(root, 0, entries);
+                return entries.iterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private Object[] bucket(Object key) {
+        if (key == null) return null;
+        int hash = hash(key);
+        Object[] node = root;
+        for (int level = 0; level < LEVELS && node != null; level++) {
+            node = (Object[]) node[(hash >>> (level * BITS)) & MASK];
+        }
+        return node;
+    }
+
+    private static int indexIn(Object[] bucket, Object key) {
+        if (bucket == null || key == null) return -1;
+        for (int i = 0; i < bucket.length; i += 2) {
+            if (bucket[i].equals(key)) return i;
+        }
+        return -1;
+    }
+
+    private static Object[] put(Object[] node, int level, int hash, Object key, Object value, boolean[] added) {
+        if (level == LEVELS) {
+            int index = indexIn(node, key);
+            if (index >= 0) {
+                Object[] copy = node.clone();
+                copy[index + 1] = value;
+                return copy;
+            }
+            added[0] = true;
+            Object[] copy = node == null ? new Object[2] : Arrays.copyOf(node, node.length + 2);
+            copy[copy.length - 2] = key;
+            copy[copy.length - 1] = value;
+            return copy;
+        }
+        Object[] copy = node == null ? new Object[WIDTH] : node.clone();
+        int slot = (hash >>> (level * BITS)) & MASK;
+        copy[slot] = put((Object[]) copy[slot], level + 1, hash, key, value, added);
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void collect(Object[] node, int level, List<Map.Entry<K, V>> out) {
+        if (node == null) return;
+        if (level == LEVELS) {
+            for (int i = 0; i < node.length; i += 2) {
+                out.add(new AbstractMap.SimpleImmutableEntry<>((K) node[i], (V) node[i + 1]));
+            }
+            return;
+        }
+        for (Object child : node) {
+            collect((Object[]) child, level + 1, out);
+        }
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
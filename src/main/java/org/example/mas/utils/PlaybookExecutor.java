@@ -0,0 +1,19 @@
+package org.example.mas.utils;
+
+import java.io.IOException;
+
+/**
+ * Запуск ansible-playbook для {@link AnsibleRunner}: по умолчанию настоящий процесс,
+ * для нагрузочных прогонов — {@link AnsibleSimulator}.
+ */
+@FunctionalInterface
+public interface PlaybookExecutor {
+
+    PlaybookExecutor LOCAL = ProcessBuilder::start;
+
+    /**
+     * @param command готовая команда ansible-playbook с рабочим каталогом и окружением
+     * @return процесс, stdout которого (вместе с stderr) читает AnsibleRunner
+     */
+    Process start(ProcessBuilder command) throws IOException;
+}
@@ -0,0 +1,181 @@
+package org.example.mas.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Итог плейбука по хостам и задачам, собранный из событий {@link AnsibleEvent}.
+ */
+public class PlaybookReport {
+    /** Исход хоста за весь плейбук; при нескольких событиях берётся самый тяжёлый. */
+    public enum HostOutcome { OK, CHANGED, FAILED, UNREACHABLE }
+
+    public static class TaskTiming {
+        public final String play;
+        public final String task;
+        public final String host;
+        public final long durationMillis;
+        public final AnsibleEvent.Type result;
+
+        public TaskTiming(String play, String task, String host, long durationMillis, AnsibleEvent.Type result) {
+            this.play = play;
+            this.task = task;
+            this.host = host;
+            this.durationMillis = durationMillis;
+            this.result = result;
+        }
+    }
+
+    private final Map<String, HostOutcome> hosts = new LinkedHashMap<>();
+    private final Map<String, String> failureMessages = new LinkedHashMap<>();
+    private final List<TaskTiming> timings = new ArrayList<>();
+    private Map<String, Map<String, Integer>> stats = Collections.emptyMap();
+    private boolean hasEvents;
+
+    public synchronized void accept(AnsibleEvent event) {
+        hasEvents = true;
+        switch (event.type) {
+            case HOST_OK:
+                mark(event.host, HostOutcome.OK);
+                break;
+            case HOST_CHANGED:
+                mark(event.host, HostOutcome.CHANGED);
+                break;
+            case HOST_FAILED:
+                if (event.ignored) {
+                    mark(event.host, HostOutcome.OK);
+                } else {
+                    mark(event.host, HostOutcome.FAILED);
+                    failureMessages.putIfAbsent(event.host, "[" + event.task + "] " + event.message);
+                }
+                break;
+            case HOST_UNREACHABLE:
+                mark(event.host, HostOutcome.UNREACHABLE);
+                failureMessages.putIfAbsent(event.host, "[" + event.task + "] " + event.message);
+                break;
+            case STATS:
+                stats = event.stats;
+                break;
+            default:
+                break;
+        }
+        if (event.host != null && event.type != AnsibleEvent.Type.HOST_SKIPPED) {
+            timings.add(new TaskTiming(event.play, event.task, event.host, event.durationMillis, event.type));
+        }
+    }
+
+    /** Добавляет итог другого шарда того же плейбука (запуск с --limit по другим хостам). */
+    public void merge(PlaybookReport other) {
+        if (other == this) return;
+        Map<String, HostOutcome> otherHosts;
+        Map<String, String> otherFailures;
+        List<TaskTiming> otherTimings;
+        Map<String, Map<String, Integer>> otherStats;
+        boolean otherHasEvents;
+        synchronized (other) {
+            otherHosts = new LinkedHashMap<>(other.hosts);
+            otherFailures = new LinkedHashMap<>(other.failureMessages);
+            otherTimings = new ArrayList<>(other.timings);
+            otherStats = other.stats;
+            otherHasEvents = other.hasEvents;
+        }
+        synchronized (this) {
+            hasEvents |= otherHasEvents;
+            otherHosts.forEach(this::mark);
+            otherFailures.forEach(failureMessages::putIfAbsent);
+            timings.addAll(otherTimings);
+            if (!otherStats.isEmpty()) {
+                Map<String, Map<String, Integer>> merged = new LinkedHashMap<>(stats);
+                merged.putAll(otherStats);
+                stats = merged;
+            }
+        }
+    }
+
+    /**
+     * Накладывает итог повторного запуска на части хостов (--limit по упавшим): исходы и ошибки
+     * хостов повтора заменяют прежние, остальные хосты остаются как были.
+     */
+    public void override(PlaybookReport retry) {
+        if (retry == this) return;
+        Map<String, HostOutcome> retryHosts;
+        Map<String, String> retryFailures;
+        List<TaskTiming> retryTimings;
+        Map<String, Map<String, Integer>> retryStats;
+        boolean retryHasEvents;
+        synchronized (retry) {
+            retryHosts = new LinkedHashMap<>(retry.hosts);
+            retryFailures = new LinkedHashMap<>(retry.failureMessages);
+            retryTimings = new ArrayList<>(retry.timings);
+            retryStats = retry.stats;
+            retryHasEvents = retry.hasEvents;
+        }
+        synchronized (this) {
+            hasEvents |= retryHasEvents;
+            hosts.putAll(retryHosts);
+            retryHosts.keySet().forEach(failureMessages::remove);
+            failureMessages.putAll(retryFailures);
+            timings.addAll(retryTimings);
+            if (!retryStats.isEmpty()) {
+                Map<String, Map<String, Integer>> merged = new LinkedHashMap<>(stats);
+                merged.putAll(retryStats);
+                stats = merged;
+            }
+        }
+    }
+
+    private void mark(String host, HostOutcome outcome) {
+        if (host == null) return;
+        hosts.merge(host, outcome, (a, b) -> a.ordinal() >= b.ordinal() ? a : b);
+    }
+
+    /** false, если callback mas_jsonl не сработал (например, плагин не найден) и событий не было. */
+    public synchronized boolean hasEvents() {
+        return hasEvents;
+    }
+
+    public synchronized Map<String, HostOutcome> getHostOutcomes() {
+        return new LinkedHashMap<>(hosts);
+    }
+
+    public synchronized List<String> getFailedHosts() {
+        return hostsWith(HostOutcome.FAILED);
+    }
+
+    public synchronized List<String> getUnreachableHosts() {
+        return hostsWith(HostOutcome.UNREACHABLE);
+    }
+
+    private List<String> hostsWith(HostOutcome outcome) {
+        return hosts.entrySet().stream()
+                .filter(e -> e.getValue() == outcome)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    /** Первая ошибка каждого упавшего или недоступного хоста. */
+    public synchronized Map<String, String> getFailureMessages() {
+        return new LinkedHashMap<>(failureMessages);
+    }
+
+    public synchronized List<TaskTiming> getTaskTimings() {
+        return new ArrayList<>(timings);
+    }
+
+    /** Длительность каждой задачи: максимум по хостам (задача ждёт самый медленный хост). */
+    public synchronized Map<String, Long> getTaskDurations() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (TaskTiming t : timings) {
+            result.merge(t.task, t.durationMillis, Math::max);
+        }
+        return result;
+    }
+
+    public synchronized Map<String, Map<String, Integer>> getStats() {
+        return stats;
+    }
+}
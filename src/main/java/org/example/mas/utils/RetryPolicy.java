@@ -0,0 +1,87 @@
+package org.example.mas.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Политика повторов стадии по классу ошибки {@link AnsibleRunner.AnsibleResult#errorCode}: сколько повторов,
+ * экспоненциальная пауза между ними и общий бюджет повторов на развёртывание. Класс без правила
+ * (CANCELLED, неизвестный код) не повторяется. Карантин упорно падающих воркеров — см. {@link StageRetrier}.
+ */
+public class RetryPolicy {
+
+    /** Повторы одного класса ошибок. */
+    public static class Rule {
+        public final int maxRetries;
+        public final long backoffMillis;
+        public final double multiplier;
+        public final long maxBackoffMillis;
+
+        public Rule(int maxRetries, long backoffMillis, double multiplier, long maxBackoffMillis) {
+            this.maxRetries = Math.max(0, maxRetries);
+            this.backoffMillis = Math.max(0, backoffMillis);
+            this.multiplier = Math.max(1.0, multiplier);
+            this.maxBackoffMillis = Math.max(this.backoffMillis, maxBackoffMillis);
+        }
+
+        /** Пауза перед повтором attempt (с 1): backoff * multiplier^(attempt-1), не больше maxBackoff. */
+        public long backoffMillis(int attempt) {
+            double delay = backoffMillis * Math.pow(multiplier, Math.max(0, attempt - 1));
+            return (long) Math.min(delay, maxBackoffMillis);
+        }
+    }
+
+    private static final Rule NEVER = new Rule(0, 0, 1.0, 0);
+
+    private final Map<String, Rule> rules = new HashMap<>();
+    private int budget = 10;
+    private final AtomicInteger used = new AtomicInteger();
+    String quarantineGroup = "execute_nodes";
+    int maxQuarantined;
+
+    /** Правила по умолчанию: недоступность повторяется чаще всего, EXCEPTION (не запустился процесс) — быстро. */
+    public static RetryPolicy defaults() {
+        return new RetryPolicy()
+                .rule("CONNECTION_FAILURE", new Rule(3, 15_000, 2.0, 120_000))
+                .rule("TIMEOUT", new Rule(1, 30_000, 2.0, 120_000))
+                .rule("EXECUTION_ERROR", new Rule(1, 10_000, 2.0, 60_000))
+                .rule("EXCEPTION", new Rule(1, 5_000, 2.0, 30_000));
+    }
+
+    public RetryPolicy rule(String errorCode, Rule rule) {
+        rules.put(errorCode, rule);
+        return this;
+    }
+
+    /** Сколько повторов всех стадий допускается за одно развёртывание. */
+    public RetryPolicy budget(int budget) {
+        this.budget = Math.max(0, budget);
+        return this;
+    }
+
+    /** Группа, хосты которой можно отправить в карантин (control-plane в неё не входит). */
+    public RetryPolicy quarantineGroup(String quarantineGroup) {
+        this.quarantineGroup = quarantineGroup;
+        return this;
+    }
+
+    /** Сколько хостов за развёртывание можно отправить в карантин; 0 — карантин выключен. */
+    public RetryPolicy maxQuarantined(int maxQuarantined) {
+        this.maxQuarantined = Math.max(0, maxQuarantined);
+        return this;
+    }
+
+    public Rule ruleFor(String errorCode) {
+        return errorCode == null ? NEVER : rules.getOrDefault(errorCode, NEVER);
+    }
+
+    /** Забирает один повтор из бюджета; false — бюджет исчерпан. */
+    public boolean tryAcquire() {
+        return used.getAndUpdate(n -> n < budget ? n + 1 : n) < budget;
+    }
+
+    public int remainingBudget() {
+        return Math.max(0, budget - used.get());
+    }
+}
@@ -0,0 +1,251 @@
+package org.example.mas.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Стадия на большом inventory: хосты плейбука делятся на шарды по shardSize, каждый шард — отдельный
+ * ansible-playbook с {@code --limit @файл}, одновременно не больше processes процессов. Медленный или
+ * недоступный хост задерживает только свой шард, а суммарный параллелизм не упирается в forks одного процесса.
+ * Шард с хостами leaderGroup (central_manager) выполняется первым и один: задачи run_once/delegate_to
+ * на control-plane успевают отработать до остальных шардов; если он упал, остальные шарды не запускаются
+ * и попадают в итог как NOT_RUN. Итоги шардов сводятся в один результат стадии.
+ * Таймаут options действует на каждый шард.
+ */
+public class ShardedPlaybookRunner {
+    private static final Logger logger = LoggerFactory.getLogger(ShardedPlaybookRunner.class);
+
+    /** При сведении шардов код ошибки берётся самый ранний по этому списку (как у одного процесса: недоступность важнее ошибки задачи). */
+    private static final List<String> SEVERITY = List.of("CANCELLED", "TIMEOUT", "EXCEPTION", "CONNECTION_FAILURE", "EXECUTION_ERROR", "NOT_RUN");
+
+    /** Параметры шардирования. */
+    public static class Settings {
+        int shardSize;
+        int processes = 4;
+        String leaderGroup = "central_manager";
+
+        /** Хостов в шарде; 0 — без шардирования. */
+        public Settings shardSize(int shardSize) {
+            this.shardSize = Math.max(0, shardSize);
+            return this;
+        }
+
+        /** Сколько процессов ansible-playbook одной стадии работают одновременно. */
+        public Settings processes(int processes) {
+            this.processes = Math.max(1, processes);
+            return this;
+        }
+
+        /** Группа, чей шард выполняется первым и один; пусто — все шарды сразу. */
+        public Settings leaderGroup(String leaderGroup) {
+            this.leaderGroup = leaderGroup;
+            return this;
+        }
+    }
+
+    private static class Shard {
+        final int index;
+        final List<String> hosts;
+        Path limitFile;
+        AnsibleRunner.Execution execution;
+        AnsibleRunner.AnsibleResult result;
+
+        Shard(int index, List<String> hosts) {
+            this.index = index;
+            this.hosts = hosts;
+        }
+    }
+
+    /**
+     * Запускает плейбук шардами. Если шардировать нечего (хостов не больше shardSize, шаблон hosts с
+     * переменными, в options уже задан --limit) — обычный {@link AnsibleRunner#run(AnsibleRunner.Options)}.
+     */
+    public static AnsibleRunner.AnsibleResult run(AnsibleRunner.Options options, Settings settings) {
+        List<List<String>> plan;
+        try {
+            plan = plan(options, settings);
+        } catch (IOException e) {
+            logger.warn("Cannot shard {}, running as one process: {}", options.playbook, e.getMessage());
+            return AnsibleRunner.run(options);
+        }
+        if (plan.size() <= 1) {
+            return AnsibleRunner.run(options);
+        }
+
+        List<Shard> shards = new ArrayList<>();
+        for (int i = 0; i < plan.size(); i++) {
+            shards.add(new Shard(i, plan.get(i)));
+        }
+        boolean leaderFirst = settings.leaderGroup != null && !settings.leaderGroup.isBlank()
+                && hasLeader(options, settings.leaderGroup, shards.get(0).hosts);
+        logger.info("{}: {} shards of up to {} hosts, {} processes{}", options.playbook, shards.size(),
+                settings.shardSize, settings.processes, leaderFirst ? ", " + settings.leaderGroup + " shard first" : "");
+
+        try {
+            Files.createDirectories(AnsibleRunner.logDir(options));
+            Deque<Shard> pending = new ArrayDeque<>(shards);
+            if (leaderFirst) {
+                Shard leader = start(options, pending.poll(), shards.size());
+                leader.result = leader.execution.await();
+                if (!leader.result.success) {
+                    // Без control-plane остальные шарды упадут на тех же run_once/delegate_to — не запускаем их.
+                    logger.warn("{}: {} shard failed ({}), skipping {} remaining shards", options.playbook,
+                            settings.leaderGroup, leader.result.errorCode, pending.size());
+                    for (Shard shard : pending) {
+                        shard.result = new AnsibleRunner.AnsibleResult(false, "NOT_RUN",
+                                "Not run: " + settings.leaderGroup + " shard failed");
+                    }
+                    pending.clear();
+                }
+            }
+            runRemaining(options, pending, settings.processes, shards.size());
+        } catch (IOException e) {
+            logger.error("Sharded run of {} failed to start", options.playbook, e);
+        } finally {
+            for (Shard shard : shards) {
+                deleteQuietly(shard.limitFile);
+            }
+        }
+        return merge(options.playbook, shards);
+    }
+
+    private static void runRemaining(AnsibleRunner.Options options, Deque<Shard> pending, int processes, int total)
+            throws IOException {
+        List<Shard> running = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted() && (!pending.isEmpty() || !running.isEmpty())) {
+            while (running.size() < processes && !pending.isEmpty()) {
+                running.add(start(options, pending.poll(), total));
+            }
+            try {
+                CompletableFuture.anyOf(running.stream().map(s -> s.execution.result()).toArray(CompletableFuture[]::new)).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running.forEach(s -> s.execution.cancel());
+            } catch (ExecutionException e) {
+                // результат каждого шарда заберём ниже через await
+            }
+            running.removeIf(s -> {
+                if (!s.execution.result().isDone()) return false;
+                s.result = s.execution.await();
+                return true;
+            });
+        }
+        // Прерваны: дожидаемся отменённых процессов, остальные шарды не запускались.
+        for (Shard shard : running) {
+            shard.result = shard.execution.result().join();
+        }
+    }
+
+    private static Shard start(AnsibleRunner.Options options, Shard shard, int total) throws IOException {
+        String label = "shard" + (shard.index + 1) + "of" + total;
+        shard.limitFile = Files.createTempFile(AnsibleRunner.logDir(options),
+                options.playbook.replaceFirst("\\.ya?ml$", "") + "-" + label + "-", ".limit");
+        Files.write(shard.limitFile, shard.hosts, StandardCharsets.UTF_8);
+        shard.execution = AnsibleRunner.start(options.copy()
+                .limit("@" + shard.limitFile.toAbsolutePath())
+                .logLabel(label));
+        return shard;
+    }
+
+    /**
+     * Хосты плейбука (по строкам hosts:, без исключённых) в порядке inventory: сначала leaderGroup,
+     * затем остальные, по shardSize.
+     */
+    static List<List<String>> plan(AnsibleRunner.Options options, Settings settings) throws IOException {
+        if (settings.shardSize <= 0 || options.limit != null) {
+            return List.of();
+        }
+        InventoryParser.Inventory inventory = InventoryParser.parse(options.inventoryPath);
+        Set<String> hosts = new LinkedHashSet<>();
+        for (String pattern : StageFingerprint.hostPatterns(Paths.get(options.workingDir).resolve(options.playbook))) {
+            if (pattern.contains("{{")) {
+                return List.of();
+            }
+            hosts.addAll(inventory.resolvePattern(pattern));
+        }
+        hosts.removeAll(options.excluded);
+        if (hosts.size() <= settings.shardSize) {
+            return List.of();
+        }
+
+        List<String> ordered = new ArrayList<>(hosts.size());
+        if (settings.leaderGroup != null && !settings.leaderGroup.isBlank()) {
+            for (String leader : inventory.resolvePattern(settings.leaderGroup)) {
+                if (hosts.remove(leader)) ordered.add(leader);
+            }
+        }
+        ordered.addAll(hosts);
+
+        List<List<String>> shards = new ArrayList<>();
+        for (int from = 0; from < ordered.size(); from += settings.shardSize) {
+            shards.add(new ArrayList<>(ordered.subList(from, Math.min(ordered.size(), from + settings.shardSize))));
+        }
+        return shards;
+    }
+
+    private static boolean hasLeader(AnsibleRunner.Options options, String leaderGroup, List<String> firstShard) {
+        try {
+            Set<String> leaders = InventoryParser.parse(options.inventoryPath).resolvePattern(leaderGroup);
+            return firstShard.stream().anyMatch(leaders::contains);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Итог стадии: успех, только если успешны все шарды; отчёт по хостам — объединение отчётов шардов. */
+    static AnsibleRunner.AnsibleResult merge(String playbook, List<Shard> shards) {
+        PlaybookReport report = new PlaybookReport();
+        StringBuilder details = new StringBuilder();
+        String errorCode = null;
+        String outputFile = null;
+        for (Shard shard : shards) {
+            AnsibleRunner.AnsibleResult result = shard.result != null ? shard.result
+                    : new AnsibleRunner.AnsibleResult(false, "CANCELLED", "Shard was not started");
+            report.merge(result.report);
+            if (outputFile == null) outputFile = result.outputFile;
+            if (result.success) continue;
+
+            if (errorCode == null || severity(result.errorCode) < severity(errorCode)) {
+                errorCode = result.errorCode;
+                outputFile = result.outputFile;
+            }
+            details.append("=== ").append(playbook).append(" shard ").append(shard.index + 1).append('/').append(shards.size())
+                    .append(" (").append(shard.hosts.size()).append(" hosts: ").append(shard.hosts.get(0))
+                    .append(" .. ").append(shard.hosts.get(shard.hosts.size() - 1)).append("): ")
+                    .append(result.errorCode).append(" ===\n").append(result.details).append('\n');
+        }
+        if (errorCode == null) {
+            return new AnsibleRunner.AnsibleResult(true, "SUCCESS",
+                    "All " + shards.size() + " shards of " + playbook + " succeeded", outputFile, report);
+        }
+        return new AnsibleRunner.AnsibleResult(false, errorCode, details.toString(), outputFile, report);
+    }
+
+    private static int severity(String errorCode) {
+        int index = SEVERITY.indexOf(errorCode);
+        return index >= 0 ? index : SEVERITY.size();
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.debug("Cannot delete {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.example.mas.utils;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * Первичная настройка узла по паролю: одна SSH-сессия и один exec-канал на хост.
+ * Ключ добавляется в authorized_keys только если его там ещё нет, sudoers перезаписывается
+ * тем же содержимым, поэтому повторный запуск безопасен.
+ */
+public class SshBootstrapper {
+    private static final Logger logger = LoggerFactory.getLogger(SshBootstrapper.class);
+    private static final JSch JSCH = new JSch();
+    private static final int MAX_CAPTURE = 16 * 1024;
+
+    private final int connectTimeoutMillis;
+    private final int execTimeoutMillis;
+
+    public SshBootstrapper(int connectTimeoutMillis, int execTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.execTimeoutMillis = execTimeoutMillis;
+    }
+
+    public BootstrapResult bootstrap(String ip, String user, String password, String publicKey) {
+        long start = System.nanoTime();
+        long connectMillis = 0;
+        Session session = null;
+        ChannelExec channel = null;
+        try {
+            session = JSCH.getSession(user, ip, 22);
+            session.setPassword(password);
+            Properties config = new Properties();
+            config.put("StrictHostKeyChecking", "no");
+            session.setConfig(config);
+            // Поток чтения сессии JSch берётся из IoThreads: с виртуальными потоками сессия не занимает поток ОС.
+            session.setThreadFactory(IoThreads.factory("ssh-bootstrap"));
+            session.connect(connectTimeoutMillis);
+            connectMillis = elapsedMillis(start);
+
+            long execStart = System.nanoTime();
+            channel = (ChannelExec) session.openChannel("exec");
+            channel.setCommand(buildScript(user, publicKey));
+            // sudo -S читает пароль из первой строки stdin; если пароль не нужен, строка просто не читается.
+            channel.setInputStream(new ByteArrayInputStream((password + "\n").getBytes(StandardCharsets.UTF_8)));
+            ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+            ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+            channel.setOutputStream(stdout);
+            channel.setErrStream(stderr);
+            channel.connect(connectTimeoutMillis);
+
+            long deadline = System.nanoTime() + execTimeoutMillis * 1_000_000L;
+            while (!channel.isClosed()) {
+                if (System.nanoTime() > deadline) {
+                    return BootstrapResult.failure(ip, connectMillis, elapsedMillis(execStart),
+                            "Bootstrap script timed out after " + execTimeoutMillis + " ms");
+                }
+                Thread.sleep(25);
+            }
+            long execMillis = elapsedMillis(execStart);
+
+            int exitStatus = channel.getExitStatus();
+            if (exitStatus != 0) {
+                logger.error("Bootstrap script failed on {} (exit code {}): {}", ip, exitStatus, capture(stderr));
+                logger.debug("STDOUT: {}", capture(stdout));
+                return BootstrapResult.failure(ip, connectMillis, execMillis,
+                        "exit code " + exitStatus + ": " + capture(stderr));
+            }
+            return BootstrapResult.success(ip, connectMillis, execMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return BootstrapResult.failure(ip, connectMillis, 0, "interrupted");
+        } catch (Exception e) {
+            return BootstrapResult.failure(ip, connectMillis == 0 ? elapsedMillis(start) : connectMillis, 0,
+                    e.getMessage());
+        } finally {
+            if (channel != null && channel.isConnected()) {
+                channel.disconnect();
+            }
+            if (session != null && session.isConnected()) {
+                session.disconnect();
+            }
+        }
+    }
+
+    static String buildScript(String user, String publicKey) {
+        String key = shellQuote(publicKey.trim());
+        String sudoLine = shellQuote(user + " ALL=(ALL) NOPASSWD: ALL");
+        String sudoFile = shellQuote("/etc/sudoers.d/" + user);
+        return "set -e; umask 077; " +
+                "mkdir -p ~/.ssh && touch ~/.ssh/authorized_keys && " +
+                "(grep -qxF " + key + " ~/.ssh/authorized_keys || echo " + key + " >> ~/.ssh/authorized_keys) && " +
+                "chmod 700 ~/.ssh && chmod 600 ~/.ssh/authorized_keys && " +
+                "sudo -S -p '' sh -c " + shellQuote(
+                        "echo " + sudoLine + " > " + sudoFile + " && chmod 440 " + sudoFile);
+    }
+
+    private static String shellQuote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+    private static String capture(ByteArrayOutputStream out) {
+        String s = out.toString(StandardCharsets.UTF_8).trim();
+        return s.length() > MAX_CAPTURE ? s.substring(0, MAX_CAPTURE) : s;
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    public static class BootstrapResult {
+        public final String ip;
+        public final boolean success;
+        public final long connectMillis;
+        public final long execMillis;
+        public final String error;
+
+        private BootstrapResult(String ip, boolean success, long connectMillis, long execMillis, String error) {
+            this.ip = ip;
+            this.success = success;
+            this.connectMillis = connectMillis;
+            this.execMillis = execMillis;
+            this.error = error;
+        }
+
+        static BootstrapResult success(String ip, long connectMillis, long execMillis) {
+            return new BootstrapResult(ip, true, connectMillis, execMillis, null);
+        }
+
+        static BootstrapResult failure(String ip, long connectMillis, long execMillis, String error) {
+            return new BootstrapResult(ip, false, connectMillis, execMillis, error);
+        }
+    }
+}
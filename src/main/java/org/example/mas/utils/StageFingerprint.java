@@ -0,0 +1,224 @@
+package org.example.mas.utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Отпечаток входных данных стадии: {@code <inputs>:<hosts>}.
+ * inputs — SHA-256 от плейбука, файлов, на которые он ссылается (include_tasks, template src, include_vars,
+ * рекурсивно), vars.yml, group_vars/ и host_vars/. hosts — SHA-256 от имён и эффективных переменных хостов
+ * из inventory (с учётом [group:vars]), на которые нацелены plays плейбука.
+ * Совпадение отпечатка означает, что стадия запускалась бы с теми же файлами на том же наборе хостов.
+ * Состояние самих хостов (изменения вне MAS) отпечаток не отражает.
+ */
+public class StageFingerprint {
+    private static final Pattern FILE_REF = Pattern.compile(
+            "([A-Za-z0-9_./-]*(?:\\{\\{[^}]*}}[A-Za-z0-9_./-]*)*\\.(?:ya?ml|j2|sh|json|cfg|conf))(?![A-Za-z0-9_])");
+    private static final Pattern HOSTS_LINE = Pattern.compile("^\\s*(?:-\\s+)?hosts:\\s*['\"]?([^'\"#]+)");
+    /** Каталоги, которые ansible ищет для относительных путей template/copy/include. */
+    private static final List<String> SEARCH_DIRS = List.of("", "templates", "files", "tasks");
+
+    public final String value;
+    public final String inputsDigest;
+    public final String hostsDigest;
+    /** Учтённые файлы относительно каталога плейбуков. */
+    public final List<String> files;
+    public final List<String> hosts;
+
+    private StageFingerprint(String inputsDigest, String hostsDigest, List<String> files, List<String> hosts) {
+        this.inputsDigest = inputsDigest;
+        this.hostsDigest = hostsDigest;
+        this.value = inputsDigest + ":" + hostsDigest;
+        this.files = Collections.unmodifiableList(files);
+        this.hosts = Collections.unmodifiableList(hosts);
+    }
+
+    public static StageFingerprint compute(Path playbooksDir, String playbook, InventoryParser.Inventory inventory)
+            throws IOException {
+        Path root = playbooksDir.toAbsolutePath().normalize();
+        Set<String> files = collectFiles(root, playbook);
+
+        MessageDigest inputs = sha256();
+        for (String file : files) {
+            include(inputs, file, Files.readAllBytes(root.resolve(file)));
+        }
+
+        Map<String, InventoryParser.Host> targets = new TreeMap<>();
+        for (String pattern : hostPatterns(root.resolve(playbook))) {
+            for (InventoryParser.Host host : resolveHosts(pattern, inventory)) {
+                targets.putIfAbsent(host.name, host);
+            }
+        }
+        MessageDigest hosts = sha256();
+        for (InventoryParser.Host host : targets.values()) {
+            String vars = new TreeMap<>(host.vars).entrySet().stream()
+                    .map(e -> e.getKey() + "=" + e.getValue())
+                    .collect(Collectors.joining("\n"));
+            include(hosts, host.name, vars.getBytes(StandardCharsets.UTF_8));
+        }
+
+        return new StageFingerprint(toHex(inputs.digest()).substring(0, 32), toHex(hosts.digest()).substring(0, 16),
+                new ArrayList<>(files), new ArrayList<>(targets.keySet()));
+    }
+
+    /**
+     * Почему отпечаток стадии отличается от предыдущего успешного запуска.
+     *
+     * @return null, если отпечатки совпадают
+     */
+    public static String describeChange(String previous, String current) {
+        if (previous == null) return "no previous successful run";
+        if (current == null) return "fingerprint unavailable";
+        if (previous.equals(current)) return null;
+        String[] prev = previous.split(":", 2);
+        String[] cur = current.split(":", 2);
+        if (prev.length < 2 || cur.length < 2) return "fingerprint format changed";
+        if (!prev[0].equals(cur[0]) && !prev[1].equals(cur[1])) return "playbook inputs and host set changed";
+        if (!prev[0].equals(cur[0])) return "playbook inputs changed";
+        return "host set or host vars changed";
+    }
+
+    /** Плейбук, всё, на что он ссылается (рекурсивно), vars.yml, group_vars и host_vars — в порядке пути. */
+    static Set<String> collectFiles(Path root, String playbook) throws IOException {
+        Set<String> files = new TreeSet<>();
+        Deque<Path> queue = new ArrayDeque<>();
+        queue.add(root.resolve(playbook).normalize());
+        queue.add(root.resolve("vars.yml"));
+        queue.addAll(listFiles(root.resolve("group_vars"), null));
+        queue.addAll(listFiles(root.resolve("host_vars"), null));
+
+        while (!queue.isEmpty()) {
+            Path file = queue.poll();
+            if (!file.startsWith(root) || !Files.isRegularFile(file) || !files.add(root.relativize(file).toString())) {
+                continue;
+            }
+            // files/ — данные (манифесты, пакеты), ссылок на другие входные файлы в них нет
+            if (!isYaml(file.getFileName().toString()) || root.relativize(file).startsWith("files")) {
+                continue;
+            }
+            Matcher m = FILE_REF.matcher(Files.readString(file, StandardCharsets.UTF_8));
+            while (m.find()) {
+                queue.addAll(resolveReference(root, file.getParent(), m.group(1)));
+            }
+        }
+        return files;
+    }
+
+    /** Путь с шаблоном ({@code os/{{ family }}.yml}) разворачивается во все файлы каталога с тем же расширением. */
+    private static List<Path> resolveReference(Path root, Path baseDir, String ref) throws IOException {
+        List<Path> result = new ArrayList<>();
+        if (ref.startsWith("/")) {
+            return result; // пути на целевых хостах (/etc/..., /tmp/...)
+        }
+        int template = ref.indexOf("{{");
+        for (Path base : new LinkedHashSet<>(List.of(baseDir, root))) {
+            for (String dir : SEARCH_DIRS) {
+                Path searchDir = dir.isEmpty() ? base : base.resolve(dir);
+                if (template < 0) {
+                    Path candidate = searchDir.resolve(ref).normalize();
+                    if (Files.isRegularFile(candidate)) {
+                        result.add(candidate);
+                        return result;
+                    }
+                } else {
+                    String prefix = ref.substring(0, template);
+                    int slash = prefix.lastIndexOf('/');
+                    if (slash < 0) continue;
+                    Path dirPath = searchDir.resolve(prefix.substring(0, slash)).normalize();
+                    if (dirPath.startsWith(root)) {
+                        result.addAll(listFiles(dirPath, ref.substring(ref.lastIndexOf('.'))));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static List<Path> listFiles(Path dir, String extension) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> walk = Files.walk(dir)) {
+            return walk.filter(Files::isRegularFile)
+                    .filter(p -> extension == null || p.getFileName().toString().endsWith(extension))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isYaml(String name) {
+        return name.endsWith(".yml") || name.endsWith(".yaml");
+    }
+
+    /** Шаблоны хостов из строк {@code hosts:} плейбука ("all", группы, хосты; ":" и "," — разделители). */
+    static List<String> hostPatterns(Path playbook) throws IOException {
+        List<String> patterns = new ArrayList<>();
+        if (!Files.exists(playbook)) {
+            return patterns;
+        }
+        for (String line : Files.readAllLines(playbook, StandardCharsets.UTF_8)) {
+            Matcher m = HOSTS_LINE.matcher(line);
+            if (m.find()) {
+                for (String p : m.group(1).trim().split("[:,]")) {
+                    String pattern = p.trim().replaceFirst("^[!&]", "");
+                    if (!pattern.isEmpty()) patterns.add(pattern);
+                }
+            }
+        }
+        return patterns;
+    }
+
+    /** Неизвестная группа или шаблон с переменными считаются как "all": лишний хост в отпечатке безопаснее пропущенного. */
+    private static List<InventoryParser.Host> resolveHosts(String pattern, InventoryParser.Inventory inventory) {
+        if (pattern.contains("{{") || pattern.contains("*")) {
+            return inventory.getAllHosts();
+        }
+        if (inventory.getGroupNames().contains(pattern)) {
+            return inventory.getGroup(pattern);
+        }
+        InventoryParser.Host host = inventory.getHost(pattern);
+        return host != null ? List.of(host) : inventory.getAllHosts();
+    }
+
+    private static void include(MessageDigest digest, String name, byte[] content) {
+        digest.update(name.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(Integer.toString(content.length).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(content);
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
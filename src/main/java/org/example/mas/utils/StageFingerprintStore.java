@@ -0,0 +1,66 @@
+package org.example.mas.utils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Отпечатки последнего успешного выполнения каждой стадии, между развёртываниями.
+ * Файл — JSON {@code {"stage": {"fingerprint": "...", "succeededAt": millis}}}, перезаписывается атомарно.
+ */
+public class StageFingerprintStore {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static class Entry {
+        public String fingerprint;
+        public long succeededAt;
+
+        public Entry() {
+        }
+
+        public Entry(String fingerprint, long succeededAt) {
+            this.fingerprint = fingerprint;
+            this.succeededAt = succeededAt;
+        }
+    }
+
+    private final Path path;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    public StageFingerprintStore(Path path) throws IOException {
+        this.path = path;
+        if (Files.exists(path)) {
+            entries.putAll(MAPPER.readValue(path.toFile(), new TypeReference<LinkedHashMap<String, Entry>>() {}));
+        }
+    }
+
+    public synchronized Map<String, Entry> getEntries() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(entries));
+    }
+
+    public synchronized void recordSuccess(String stage, String fingerprint) throws IOException {
+        entries.put(stage, new Entry(fingerprint, System.currentTimeMillis()));
+        save();
+    }
+
+    /** Стадия начата или упала: состояние хостов больше не соответствует последнему успешному запуску. */
+    public synchronized void invalidate(String stage) throws IOException {
+        if (entries.remove(stage) != null) {
+            save();
+        }
+    }
+
+    private void save() throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        MAPPER.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), entries);
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
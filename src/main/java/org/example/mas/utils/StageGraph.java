@@ -0,0 +1,142 @@
+package org.example.mas.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Граф зависимостей между плейбуками (стадиями) развёртывания.
+ * Стадия может стартовать, когда все её зависимости завершились успешно.
+ */
+public class StageGraph {
+    private final List<String> stages;
+    private final Map<String, Set<String>> dependencies;
+    private final Map<String, Set<String>> dependents;
+
+    private StageGraph(List<String> stages, Map<String, Set<String>> dependencies) {
+        this.stages = Collections.unmodifiableList(stages);
+        this.dependencies = dependencies;
+        this.dependents = new HashMap<>();
+        for (String stage : stages) {
+            dependents.put(stage, new LinkedHashSet<>());
+        }
+        for (Map.Entry<String, Set<String>> e : dependencies.entrySet()) {
+            for (String dep : e.getValue()) {
+                dependents.get(dep).add(e.getKey());
+            }
+        }
+    }
+
+    /**
+     * Строит граф для итоговой последовательности стадий.
+     * Стадия без объявленных зависимостей зависит от предыдущей в sequence (как при последовательном запуске).
+     * Зависимость от стадии, исключённой из sequence (skip, existing-cluster), заменяется на её собственные зависимости.
+     *
+     * @param sequence стадии, которые нужно выполнить
+     * @param declared объявленные зависимости (может содержать и стадии вне sequence)
+     */
+    public static StageGraph build(List<String> sequence, Map<String, List<String>> declared) {
+        Set<String> included = new LinkedHashSet<>(sequence);
+        Map<String, Set<String>> deps = new LinkedHashMap<>();
+
+        String previous = null;
+        for (String stage : included) {
+            List<String> raw;
+            if (declared.containsKey(stage)) {
+                raw = declared.get(stage);
+            } else {
+                raw = previous == null ? List.of() : List.of(previous);
+            }
+            Set<String> effective = new LinkedHashSet<>();
+            for (String dep : raw) {
+                expand(dep, included, declared, effective, new HashSet<>());
+            }
+            effective.remove(stage);
+            deps.put(stage, effective);
+            previous = stage;
+        }
+
+        StageGraph graph = new StageGraph(new ArrayList<>(included), deps);
+        graph.checkAcyclic();
+        return graph;
+    }
+
+    private static void expand(String dep, Set<String> included, Map<String, List<String>> declared,
+                               Set<String> out, Set<String> visited) {
+        if (included.contains(dep)) {
+            out.add(dep);
+            return;
+        }
+        if (!declared.containsKey(dep)) {
+            throw new IllegalArgumentException("Unknown stage dependency: " + dep);
+        }
+        if (!visited.add(dep)) {
+            return;
+        }
+        for (String transitive : declared.get(dep)) {
+            expand(transitive, included, declared, out, visited);
+        }
+    }
+
+    private void checkAcyclic() {
+        Map<String, Integer> inDegree = new HashMap<>();
+        for (String stage : stages) {
+            inDegree.put(stage, dependencies.get(stage).size());
+        }
+        Deque<String> ready = new ArrayDeque<>();
+        for (String stage : stages) {
+            if (inDegree.get(stage) == 0) ready.add(stage);
+        }
+        int visited = 0;
+        while (!ready.isEmpty()) {
+            String stage = ready.poll();
+            visited++;
+            for (String next : dependents.get(stage)) {
+                if (inDegree.merge(next, -1, Integer::sum) == 0) {
+                    ready.add(next);
+                }
+            }
+        }
+        if (visited != stages.size()) {
+            throw new IllegalArgumentException("Stage dependencies contain a cycle: " + dependencies);
+        }
+    }
+
+    public List<String> getStages() {
+        return stages;
+    }
+
+    public Set<String> getDependencies(String stage) {
+        return Collections.unmodifiableSet(dependencies.getOrDefault(stage, Collections.emptySet()));
+    }
+
+    public Set<String> getDependents(String stage) {
+        return Collections.unmodifiableSet(dependents.getOrDefault(stage, Collections.emptySet()));
+    }
+
+    /** Все стадии, которые прямо или косвенно зависят от stage. */
+    public Set<String> getTransitiveDependents(String stage) {
+        Set<String> result = new LinkedHashSet<>();
+        Deque<String> queue = new ArrayDeque<>(getDependents(stage));
+        while (!queue.isEmpty()) {
+            String next = queue.poll();
+            if (result.add(next)) {
+                queue.addAll(getDependents(next));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return dependencies.toString();
+    }
+}
@@ -0,0 +1,198 @@
+package org.example.mas.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Повторы упавшей стадии по {@link RetryPolicy}. После CONNECTION_FAILURE и EXECUTION_ERROR плейбук
+ * повторяется только на упавших и недоступных хостах ({@code --limit @файл}), их новые исходы накладываются
+ * на отчёт первого запуска; после TIMEOUT и EXCEPTION неизвестно, какие хосты успели, и стадия повторяется целиком.
+ * Целиком повторяется и стадия, упавшая на хостах вне её plays (воркеры в задачах central_manager с delegate_to):
+ * --limit по ним не выполнил бы ни одной задачи.
+ * Если повторы исчерпаны и упорно падают только хосты группы карантина, они отправляются в карантин:
+ * стадия считается выполненной, а следующие стадии этого развёртывания их не трогают
+ * ({@link AnsibleRunner.Options#exclude}). Один экземпляр на развёртывание: бюджет и карантин общие для всех стадий.
+ */
+public class StageRetrier {
+    private static final Logger logger = LoggerFactory.getLogger(StageRetrier.class);
+
+    /** Код результата стадии, выполненной без хостов, отправленных в карантин. */
+    public static final String QUARANTINED = "QUARANTINED";
+
+    /** Классы ошибок, после которых известны упавшие хосты: процесс дошёл до PLAY RECAP. */
+    private static final Set<String> HOST_LEVEL = Set.of("CONNECTION_FAILURE", "EXECUTION_ERROR");
+
+    public interface Listener {
+        void onRetry(String playbook, int attempt, String errorCode, Collection<String> hosts, long backoffMillis);
+
+        /** hosts — хосты, только что отправленные в карантин, с причиной. */
+        void onQuarantine(String playbook, Map<String, String> hosts);
+    }
+
+    private final RetryPolicy policy;
+    private final InventoryParser.Inventory inventory;
+    private final Set<String> quarantinable;
+    private final Listener listener;
+    private final Map<String, String> quarantined = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    public StageRetrier(RetryPolicy policy, InventoryParser.Inventory inventory, Listener listener) {
+        this.policy = policy;
+        this.inventory = inventory;
+        this.quarantinable = inventory == null || policy.quarantineGroup == null || policy.quarantineGroup.isBlank()
+                ? Set.of()
+                : inventory.resolvePattern(policy.quarantineGroup);
+        this.listener = listener;
+    }
+
+    /** Хосты в карантине с причиной: стадия и первая ошибка. */
+    public Map<String, String> getQuarantined() {
+        synchronized (quarantined) {
+            return new LinkedHashMap<>(quarantined);
+        }
+    }
+
+    /**
+     * Выполняет стадию через runner (обычный или шардированный запуск) с повторами. Хосты в карантине
+     * исключаются из каждого запуска.
+     */
+    public AnsibleRunner.AnsibleResult run(AnsibleRunner.Options options,
+                                           Function<AnsibleRunner.Options, AnsibleRunner.AnsibleResult> runner) {
+        AnsibleRunner.Options base = options.copy().exclude(getQuarantined().keySet());
+        AnsibleRunner.AnsibleResult result = runner.apply(base);
+        int attempt = 0;
+        while (!result.success && !Thread.currentThread().isInterrupted()) {
+            RetryPolicy.Rule rule = policy.ruleFor(result.errorCode);
+            if (attempt >= rule.maxRetries) {
+                break;
+            }
+            if (!policy.tryAcquire()) {
+                logger.warn("Retry budget exhausted, {} ({}) is not retried", options.playbook, result.errorCode);
+                break;
+            }
+            attempt++;
+            Set<String> hosts = failingHosts(result);
+            Set<String> targets = playHosts(options);
+            if (targets != null && !targets.containsAll(hosts)) {
+                hosts = Set.of();
+            }
+            long backoff = rule.backoffMillis(attempt);
+            logger.warn("Retrying {} after {} in {} ms (attempt {}/{}) on {}", options.playbook, result.errorCode,
+                    backoff, attempt, rule.maxRetries, hosts.isEmpty() ? "all hosts" : hosts);
+            listener.onRetry(options.playbook, attempt, result.errorCode, hosts, backoff);
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            result = retry(base, result, hosts, attempt, runner);
+        }
+        return result.success || Thread.currentThread().isInterrupted() ? result : quarantine(options.playbook, result);
+    }
+
+    private AnsibleRunner.AnsibleResult retry(AnsibleRunner.Options base, AnsibleRunner.AnsibleResult previous,
+                                              Set<String> hosts, int attempt,
+                                              Function<AnsibleRunner.Options, AnsibleRunner.AnsibleResult> runner) {
+        String label = (base.logLabel != null ? base.logLabel + "-" : "") + "retry" + attempt;
+        AnsibleRunner.Options options = base.copy().logLabel(label);
+        if (hosts.isEmpty()) {
+            return runner.apply(options);
+        }
+
+        Path limitFile = null;
+        try {
+            Path logDir = AnsibleRunner.logDir(base);
+            Files.createDirectories(logDir);
+            limitFile = Files.createTempFile(logDir, base.playbook.replaceFirst("\\.ya?ml$", "") + "-" + label + "-", ".limit");
+            Files.write(limitFile, hosts, StandardCharsets.UTF_8);
+            options.limit("@" + limitFile.toAbsolutePath());
+        } catch (IOException e) {
+            logger.warn("Cannot limit retry of {} to failed hosts, retrying all: {}", base.playbook, e.getMessage());
+            return runner.apply(options);
+        }
+        try {
+            AnsibleRunner.AnsibleResult retry = runner.apply(options);
+            PlaybookReport report = new PlaybookReport();
+            report.merge(previous.report);
+            report.override(retry.report);
+            return new AnsibleRunner.AnsibleResult(retry.success, retry.errorCode, retry.details, retry.outputFile, report);
+        } finally {
+            try {
+                Files.deleteIfExists(limitFile);
+            } catch (IOException e) {
+                logger.debug("Cannot delete {}: {}", limitFile, e.getMessage());
+            }
+        }
+    }
+
+    private AnsibleRunner.AnsibleResult quarantine(String playbook, AnsibleRunner.AnsibleResult result) {
+        Set<String> failing = failingHosts(result);
+        if (policy.maxQuarantined == 0 || failing.isEmpty() || !quarantinable.containsAll(failing)) {
+            return result;
+        }
+        Map<String, String> messages = result.report.getFailureMessages();
+        Map<String, String> added = new LinkedHashMap<>();
+        synchronized (quarantined) {
+            if (quarantined.size() + failing.size() > policy.maxQuarantined) {
+                logger.warn("Not quarantining {} hosts of {}: limit {} reached ({} already quarantined)",
+                        failing.size(), playbook, policy.maxQuarantined, quarantined.size());
+                return result;
+            }
+            for (String host : failing) {
+                String reason = playbook + ": " + messages.getOrDefault(host, result.errorCode);
+                quarantined.put(host, reason);
+                added.put(host, reason);
+            }
+        }
+        logger.warn("Quarantined {} after {} in {}, deployment continues without them", added.keySet(),
+                result.errorCode, playbook);
+        listener.onQuarantine(playbook, added);
+        return new AnsibleRunner.AnsibleResult(true, QUARANTINED,
+                playbook + " succeeded except quarantined hosts " + added.keySet() + "\n" + result.details,
+                result.outputFile, result.report);
+    }
+
+    /** Хосты plays стадии по inventory; null — не определить (нет inventory, шаблон с переменными). */
+    private Set<String> playHosts(AnsibleRunner.Options options) {
+        if (inventory == null) {
+            return null;
+        }
+        Set<String> hosts = new LinkedHashSet<>();
+        try {
+            for (String pattern : StageFingerprint.hostPatterns(Paths.get(options.workingDir).resolve(options.playbook))) {
+                if (pattern.contains("{{")) {
+                    return null;
+                }
+                hosts.addAll(inventory.resolvePattern(pattern));
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return hosts.isEmpty() ? null : hosts;
+    }
+
+    /** Упавшие и недоступные хосты, если их знает отчёт; пусто — повторять стадию целиком. */
+    private static Set<String> failingHosts(AnsibleRunner.AnsibleResult result) {
+        if (!HOST_LEVEL.contains(result.errorCode) || !result.report.hasEvents()) {
+            return Set.of();
+        }
+        List<String> hosts = new ArrayList<>(result.report.getFailedHosts());
+        hosts.addAll(result.report.getUnreachableHosts());
+        return new LinkedHashSet<>(hosts);
+    }
+}
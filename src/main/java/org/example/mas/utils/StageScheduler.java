@@ -0,0 +1,159 @@
+package org.example.mas.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Запускает стадии {@link StageGraph} параллельно, не более maxParallel одновременно.
+ * Падение стадии отменяет только зависящие от неё стадии, независимые ветки продолжают работу.
+ */
+public class StageScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(StageScheduler.class);
+
+    public enum StageState { PENDING, RUNNING, SUCCESS, SKIPPED, FAILED, CANCELLED }
+
+    @FunctionalInterface
+    public interface StageExecutor {
+        AnsibleRunner.AnsibleResult execute(String stage) throws Exception;
+    }
+
+    /** Вызывается в потоке, вызвавшем {@link #run}, при каждой смене состояния стадии. */
+    @FunctionalInterface
+    public interface StageListener {
+        void onStateChange(String stage, StageState state, Map<String, StageState> snapshot);
+    }
+
+    private final StageGraph graph;
+    private final int maxParallel;
+    private final Map<String, StageState> states = new LinkedHashMap<>();
+    private final Map<String, AnsibleRunner.AnsibleResult> results = new ConcurrentHashMap<>();
+    private StageListener listener = (stage, state, snapshot) -> { };
+
+    public StageScheduler(StageGraph graph, int maxParallel) {
+        this.graph = graph;
+        this.maxParallel = Math.max(1, maxParallel);
+        for (String stage : graph.getStages()) {
+            states.put(stage, StageState.PENDING);
+        }
+    }
+
+    public void setListener(StageListener listener) {
+        this.listener = listener;
+    }
+
+    /** Стадия не выполняется и считается успешной для зависящих от неё стадий. Вызывать до {@link #run}. */
+    public void markSkipped(String stage) {
+        if (states.get(stage) == StageState.PENDING) {
+            setState(stage, StageState.SKIPPED);
+        }
+    }
+
+    /**
+     * Выполняет все стадии и блокируется до завершения.
+     *
+     * @return итоговое состояние каждой стадии в порядке объявления
+     */
+    public Map<String, StageState> run(StageExecutor executor) throws InterruptedException {
+        ExecutorService pool = IoThreads.newPool("stage-runner", maxParallel);
+        CompletionService<String> completion = new ExecutorCompletionService<>(pool);
+        Map<Future<String>, String> running = new LinkedHashMap<>();
+
+        try {
+            submitReady(executor, completion, running);
+            while (!running.isEmpty()) {
+                Future<String> done = completion.take();
+                String stage = running.remove(done);
+                AnsibleRunner.AnsibleResult result;
+                try {
+                    done.get();
+                    result = results.get(stage);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    logger.error("Stage {} threw an exception", stage, cause);
+                    result = new AnsibleRunner.AnsibleResult(false, "EXCEPTION", String.valueOf(cause.getMessage()));
+                    results.put(stage, result);
+                }
+
+                if (result != null && result.success) {
+                    setState(stage, StageState.SUCCESS);
+                } else {
+                    setState(stage, StageState.FAILED);
+                    cancelDependents(stage);
+                }
+                submitReady(executor, completion, running);
+            }
+        } finally {
+            for (Future<String> f : running.keySet()) {
+                f.cancel(true);
+            }
+            pool.shutdownNow();
+        }
+
+        for (Map.Entry<String, StageState> e : snapshot().entrySet()) {
+            if (e.getValue() == StageState.PENDING) {
+                setState(e.getKey(), StageState.CANCELLED);
+            }
+        }
+        return snapshot();
+    }
+
+    private void submitReady(StageExecutor executor, CompletionService<String> completion,
+                             Map<Future<String>, String> running) {
+        for (String stage : graph.getStages()) {
+            if (running.size() >= maxParallel) {
+                return;
+            }
+            if (states.get(stage) != StageState.PENDING || !dependenciesSucceeded(stage)) {
+                continue;
+            }
+            setState(stage, StageState.RUNNING);
+            Future<String> future = completion.submit(() -> {
+                results.put(stage, executor.execute(stage));
+                return stage;
+            });
+            running.put(future, stage);
+        }
+    }
+
+    private boolean dependenciesSucceeded(String stage) {
+        for (String dep : graph.getDependencies(stage)) {
+            StageState depState = states.get(dep);
+            if (depState != StageState.SUCCESS && depState != StageState.SKIPPED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void cancelDependents(String failed) {
+        for (String dependent : graph.getTransitiveDependents(failed)) {
+            if (states.get(dependent) == StageState.PENDING) {
+                logger.warn("Stage {} cancelled because {} failed", dependent, failed);
+                setState(dependent, StageState.CANCELLED);
+            }
+        }
+    }
+
+    private void setState(String stage, StageState state) {
+        states.put(stage, state);
+        listener.onStateChange(stage, state, snapshot());
+    }
+
+    public Map<String, StageState> snapshot() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(states));
+    }
+
+    public AnsibleRunner.AnsibleResult getResult(String stage) {
+        return results.get(stage);
+    }
+}
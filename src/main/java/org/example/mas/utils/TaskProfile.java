@@ -0,0 +1,240 @@
+package org.example.mas.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Анализ запусков из {@link TaskTimingStore}: самые медленные задачи стадии, хосты-выбросы и регрессии
+ * относительно предыдущих запусков. Длительность задачи для стадии — максимум по хостам (задача ждёт
+ * самый медленный хост), типичная — медиана по хостам.
+ */
+public final class TaskProfile {
+
+    private TaskProfile() {
+    }
+
+    /** Задача в одном запуске; задачи различаются по play и имени. */
+    public static class TaskStats {
+        public final String play;
+        public final String task;
+        public final int hosts;
+        public final long totalMillis;
+        public final long p50Millis;
+        public final long p95Millis;
+        public final long maxMillis;
+        public final String slowestHost;
+        public final int failed;
+
+        TaskStats(String play, String task, int hosts, long totalMillis, long p50Millis, long p95Millis, long maxMillis,
+                  String slowestHost, int failed) {
+            this.play = play;
+            this.task = task;
+            this.hosts = hosts;
+            this.totalMillis = totalMillis;
+            this.p50Millis = p50Millis;
+            this.p95Millis = p95Millis;
+            this.maxMillis = maxMillis;
+            this.slowestHost = slowestHost;
+            this.failed = failed;
+        }
+    }
+
+    /** Хост, на котором задачи идут заметно дольше медианы по хостам. */
+    public static class HostOutlier {
+        public final String host;
+        public final int tasks;
+        public final long excessMillis;
+        public final String worstPlay;
+        public final String worstTask;
+        public final long worstMillis;
+        public final long worstMedianMillis;
+
+        HostOutlier(String host, int tasks, long excessMillis, String worstPlay, String worstTask, long worstMillis,
+                    long worstMedianMillis) {
+            this.host = host;
+            this.tasks = tasks;
+            this.excessMillis = excessMillis;
+            this.worstPlay = worstPlay;
+            this.worstTask = worstTask;
+            this.worstMillis = worstMillis;
+            this.worstMedianMillis = worstMedianMillis;
+        }
+    }
+
+    /** Задача, ставшая медленнее медианы предыдущих запусков; task == null — стадия целиком. */
+    public static class Regression {
+        public final String play;
+        public final String task;
+        public final String metric;
+        public final long baselineMillis;
+        public final long currentMillis;
+        public final double ratio;
+        public final int baselineRuns;
+
+        Regression(String play, String task, String metric, long baselineMillis, long currentMillis, int baselineRuns) {
+            this.play = play;
+            this.task = task;
+            this.metric = metric;
+            this.baselineMillis = baselineMillis;
+            this.currentMillis = currentMillis;
+            this.ratio = (double) currentMillis / Math.max(1, baselineMillis);
+            this.baselineRuns = baselineRuns;
+        }
+    }
+
+    /** Статистика всех задач запуска в порядке их первого появления; ключ — {@link #key}. */
+    public static Map<String, TaskStats> taskStats(TaskTimingStore.Run run) {
+        int[][] byTask = samplesByTask(run);
+        Map<String, TaskStats> result = new LinkedHashMap<>();
+        for (int t = 0; t < byTask.length; t++) {
+            int[] samples = byTask[t];
+            if (samples.length == 0) continue;
+            long total = 0;
+            int max = -1;
+            int failed = 0;
+            int[] durations = new int[samples.length];
+            for (int i = 0; i < samples.length; i++) {
+                int s = samples[i];
+                durations[i] = run.duration[s];
+                total += run.duration[s];
+                if (max < 0 || run.duration[s] > run.duration[max]) max = s;
+                AnsibleEvent.Type type = run.result(s);
+                if (type == AnsibleEvent.Type.HOST_FAILED || type == AnsibleEvent.Type.HOST_UNREACHABLE) failed++;
+            }
+            Arrays.sort(durations);
+            String play = run.plays[run.taskPlay[t]];
+            result.put(key(play, run.tasks[t]), new TaskStats(play, run.tasks[t], samples.length, total,
+                    percentile(durations, 50), percentile(durations, 95), run.duration[max], run.hosts[run.host[max]], failed));
+        }
+        return result;
+    }
+
+    /** limit самых медленных задач запуска по длительности для стадии (максимуму по хостам). */
+    public static List<TaskStats> slowestTasks(TaskTimingStore.Run run, int limit) {
+        List<TaskStats> tasks = new ArrayList<>(taskStats(run).values());
+        tasks.sort(Comparator.comparingLong((TaskStats t) -> t.maxMillis).reversed());
+        return tasks.subList(0, Math.min(Math.max(0, limit), tasks.size()));
+    }
+
+    /**
+     * Хосты, у которых задача шла дольше factor * медианы по хостам и хотя бы на minExcessMillis дольше неё;
+     * по убыванию суммарного превышения. Задачи меньше чем на 3 хостах не сравниваются.
+     */
+    public static List<HostOutlier> outliers(TaskTimingStore.Run run, double factor, long minExcessMillis, int limit) {
+        int[][] byTask = samplesByTask(run);
+        int[] outlierTasks = new int[run.hosts.length];
+        long[] excess = new long[run.hosts.length];
+        long[] worstExcess = new long[run.hosts.length];
+        int[] worstSample = new int[run.hosts.length];
+        long[] worstMedian = new long[run.hosts.length];
+        Arrays.fill(worstSample, -1);
+        for (int[] samples : byTask) {
+            if (samples.length < 3) continue;
+            int[] durations = new int[samples.length];
+            for (int i = 0; i < samples.length; i++) durations[i] = run.duration[samples[i]];
+            Arrays.sort(durations);
+            long median = percentile(durations, 50);
+            for (int s : samples) {
+                long over = run.duration[s] - median;
+                if (run.duration[s] > factor * median && over >= minExcessMillis) {
+                    int h = run.host[s];
+                    outlierTasks[h]++;
+                    excess[h] += over;
+                    if (over > worstExcess[h]) {
+                        worstExcess[h] = over;
+                        worstSample[h] = s;
+                        worstMedian[h] = median;
+                    }
+                }
+            }
+        }
+        List<HostOutlier> result = new ArrayList<>();
+        for (int h = 0; h < run.hosts.length; h++) {
+            if (outlierTasks[h] == 0) continue;
+            int s = worstSample[h];
+            result.add(new HostOutlier(run.hosts[h], outlierTasks[h], excess[h], run.playName(s), run.taskName(s),
+                    run.duration[s], worstMedian[h]));
+        }
+        result.sort(Comparator.comparingLong((HostOutlier o) -> o.excessMillis).reversed());
+        return result.subList(0, Math.min(Math.max(0, limit), result.size()));
+    }
+
+    /**
+     * Регрессии последнего из runs (по порядку, старые первыми) относительно медианы остальных: метрика
+     * задачи (p50 — типичный хост, max — длительность для стадии) выросла больше чем в 1 + threshold раз
+     * и хотя бы на minDeltaMillis. Первая запись, если есть, — стадия целиком.
+     */
+    public static List<Regression> regressions(List<Map<String, TaskStats>> runs, List<Long> stageDurations,
+                                               String metric, double threshold, long minDeltaMillis) {
+        List<Regression> result = new ArrayList<>();
+        if (runs.size() < 2) return result;
+        boolean byMax = "max".equalsIgnoreCase(metric);
+        String name = byMax ? "max" : "p50";
+        int baselineRuns = runs.size() - 1;
+
+        long stageBaseline = median(stageDurations.subList(0, baselineRuns));
+        long stageCurrent = stageDurations.get(baselineRuns);
+        if (isRegression(stageBaseline, stageCurrent, threshold, minDeltaMillis)) {
+            result.add(new Regression(null, null, "duration", stageBaseline, stageCurrent, baselineRuns));
+        }
+
+        Map<String, List<Long>> history = new HashMap<>();
+        for (Map<String, TaskStats> run : runs.subList(0, baselineRuns)) {
+            run.forEach((key, stats) -> history.computeIfAbsent(key, k -> new ArrayList<>())
+                    .add(byMax ? stats.maxMillis : stats.p50Millis));
+        }
+        List<Regression> tasks = new ArrayList<>();
+        for (TaskStats stats : runs.get(baselineRuns).values()) {
+            List<Long> previous = history.get(key(stats.play, stats.task));
+            if (previous == null) continue;
+            long baseline = median(previous);
+            long current = byMax ? stats.maxMillis : stats.p50Millis;
+            if (isRegression(baseline, current, threshold, minDeltaMillis)) {
+                tasks.add(new Regression(stats.play, stats.task, name, baseline, current, previous.size()));
+            }
+        }
+        tasks.sort(Comparator.comparingLong((Regression r) -> r.currentMillis - r.baselineMillis).reversed());
+        result.addAll(tasks);
+        return result;
+    }
+
+    /** Ключ задачи в {@link #taskStats}: play и имя задачи. */
+    public static String key(String play, String task) {
+        return play + " / " + task;
+    }
+
+    private static boolean isRegression(long baseline, long current, double threshold, long minDeltaMillis) {
+        return current - baseline >= minDeltaMillis && current > baseline * (1 + threshold);
+    }
+
+    /** Индексы сэмплов запуска, сгруппированные по задаче. */
+    private static int[][] samplesByTask(TaskTimingStore.Run run) {
+        int[] counts = new int[run.tasks.length];
+        for (int t : run.task) counts[t]++;
+        int[][] byTask = new int[run.tasks.length][];
+        for (int t = 0; t < byTask.length; t++) byTask[t] = new int[counts[t]];
+        int[] fill = new int[run.tasks.length];
+        for (int s = 0; s < run.task.length; s++) {
+            int t = run.task[s];
+            byTask[t][fill[t]++] = s;
+        }
+        return byTask;
+    }
+
+    private static long percentile(int[] sorted, int percentile) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static long median(List<Long> values) {
+        List<Long> sorted = new ArrayList<>(values);
+        sorted.sort(null);
+        return sorted.isEmpty() ? 0 : sorted.get((sorted.size() - 1) / 2);
+    }
+}
@@ -0,0 +1,356 @@
+package org.example.mas.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Длительности задач по хостам для каждого запуска стадии, между развёртываниями. Файл на стадию
+ * (&lt;стадия&gt;.timings), append-only, запись на запуск: {@code <длина><crc32><тело>}, тело — id запуска, время,
+ * длительность и исход стадии, словари plays, задач (play и имя: одноимённые задачи разных plays различаются)
+ * и хостов запуска и сэмплы (индекс задачи, индекс хоста, мс, исход) в varint. 3000 хостов × 100 задач —
+ * порядка 1,5 МБ на запуск. Оборванная последняя запись при чтении отбрасывается. Хранятся последние
+ * retentionRuns запусков: файл переписывается, когда записей становится вдвое больше. Записи читаются из
+ * файла по одной, весь файл в память не загружается.
+ */
+public class TaskTimingStore {
+    private static final Logger logger = LoggerFactory.getLogger(TaskTimingStore.class);
+    private static final String SUFFIX = ".timings";
+    private static final AnsibleEvent.Type[] RESULTS = AnsibleEvent.Type.values();
+
+    /** Запуск стадии целиком: сэмплы лежат в параллельных массивах, имена — в словарях запуска. */
+    public static class Run {
+        public final String runId;
+        public final long startedAt;
+        public final long durationMillis;
+        public final boolean success;
+        final String[] plays;
+        /** taskPlay[t] — индекс play задачи t в plays. */
+        final int[] taskPlay;
+        final String[] tasks;
+        final String[] hosts;
+        final int[] task;
+        final int[] host;
+        final int[] duration;
+        final byte[] result;
+
+        Run(String runId, long startedAt, long durationMillis, boolean success, String[] plays, int[] taskPlay,
+            String[] tasks, String[] hosts, int[] task, int[] host, int[] duration, byte[] result) {
+            this.runId = runId;
+            this.startedAt = startedAt;
+            this.durationMillis = durationMillis;
+            this.success = success;
+            this.plays = plays;
+            this.taskPlay = taskPlay;
+            this.tasks = tasks;
+            this.hosts = hosts;
+            this.task = task;
+            this.host = host;
+            this.duration = duration;
+            this.result = result;
+        }
+
+        public int getHostCount() {
+            return hosts.length;
+        }
+
+        public int getSampleCount() {
+            return task.length;
+        }
+
+        public String playName(int sample) {
+            return plays[taskPlay[task[sample]]];
+        }
+
+        public String taskName(int sample) {
+            return tasks[task[sample]];
+        }
+
+        public String hostName(int sample) {
+            return hosts[host[sample]];
+        }
+
+        public int durationMillis(int sample) {
+            return duration[sample];
+        }
+
+        public AnsibleEvent.Type result(int sample) {
+            return RESULTS[result[sample]];
+        }
+    }
+
+    private final Path dir;
+    private final int retentionRuns;
+    /** Число записей в файле стадии; считается при первом обращении. */
+    private final Map<String, Integer> counts = new HashMap<>();
+
+    public TaskTimingStore(Path dir, int retentionRuns) {
+        this.dir = dir;
+        this.retentionRuns = Math.max(1, retentionRuns);
+    }
+
+    /** Сохраняет запуск стадии. Задачи без хоста (STATS и т.п.) не пишутся. */
+    public synchronized void append(String stage, String runId, long startedAt, long durationMillis, boolean success,
+                                    List<PlaybookReport.TaskTiming> timings) throws IOException {
+        Map<String, Integer> plays = new LinkedHashMap<>();
+        // Ключ задачи — индекс play и имя.
+        Map<Map.Entry<Integer, String>, Integer> tasks = new LinkedHashMap<>();
+        Map<String, Integer> hosts = new LinkedHashMap<>();
+        ByteArrayOutputStream samples = new ByteArrayOutputStream(timings.size() * 5);
+        int count = 0;
+        for (PlaybookReport.TaskTiming t : timings) {
+            if (t.task == null || t.host == null) continue;
+            int play = plays.computeIfAbsent(t.play != null ? t.play : "", k -> plays.size());
+            writeVarint(samples, tasks.computeIfAbsent(Map.entry(play, t.task), k -> tasks.size()));
+            writeVarint(samples, hosts.computeIfAbsent(t.host, k -> hosts.size()));
+            writeVarint(samples, (int) Math.min(Integer.MAX_VALUE, Math.max(0, t.durationMillis)));
+            samples.write(t.result != null ? t.result.ordinal() : 0);
+            count++;
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(samples.size() + 64 * (tasks.size() + hosts.size()));
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeUTF(runId);
+        out.writeLong(startedAt);
+        out.writeLong(durationMillis);
+        out.writeBoolean(success);
+        writeNames(out, plays.keySet());
+        writeVarint(out, tasks.size());
+        for (Map.Entry<Integer, String> task : tasks.keySet()) {
+            writeVarint(out, task.getKey());
+            writeName(out, task.getValue());
+        }
+        writeNames(out, hosts.keySet());
+        writeVarint(out, count);
+        samples.writeTo(out);
+        out.flush();
+
+        Files.createDirectories(dir);
+        Path file = file(stage);
+        int records = count(stage);
+        try (OutputStream file0 = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+             DataOutputStream record = new DataOutputStream(file0)) {
+            writeRecord(record, body.toByteArray());
+        }
+        counts.put(stage, ++records);
+        if (records >= 2 * retentionRuns) {
+            compact(stage);
+        }
+    }
+
+    /** Стадии, для которых есть запуски. */
+    public synchronized List<String> stages() throws IOException {
+        if (!Files.isDirectory(dir)) return List.of();
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .map(name -> name.substring(0, name.length() - SUFFIX.length()))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Последние retentionRuns запусков стадии по порядку; записи читаются из файла и декодируются по одной
+     * и передаются visitor, так что в памяти одновременно одна запись и один развёрнутый запуск.
+     */
+    public synchronized void forEachRun(String stage, Consumer<Run> visitor) throws IOException {
+        int first = count(stage) - retentionRuns;
+        forEachRecord(stage, (index, record) -> {
+            if (index >= first) visitor.accept(decode(record));
+        });
+    }
+
+    /** Последний запуск стадии или запуск runId; null, если такого нет. */
+    public synchronized Run run(String stage, String runId) throws IOException {
+        int first = count(stage) - retentionRuns;
+        byte[][] found = new byte[1][];
+        forEachRecord(stage, (index, record) -> {
+            if (index >= first && (runId == null || runId.equals(readRunId(record)))) found[0] = record;
+        });
+        return found[0] != null ? decode(found[0]) : null;
+    }
+
+    private Path file(String stage) {
+        return dir.resolve(stage.replaceFirst("\\.ya?ml$", "").replaceAll("[^A-Za-z0-9_.-]", "_") + SUFFIX);
+    }
+
+    private int count(String stage) throws IOException {
+        Integer count = counts.get(stage);
+        if (count == null) {
+            long[] valid = new long[1];
+            count = forEachRecord(stage, (index, record) -> valid[0] += 8 + record.length);
+            Path file = file(stage);
+            if (Files.exists(file) && Files.size(file) > valid[0]) {
+                // Оборванная запись в конце: после неё дописывать нельзя, файл переписывается без неё.
+                rewrite(stage, 0);
+            }
+        }
+        return count;
+    }
+
+    /** Оставляет последние retentionRuns записей. */
+    private void compact(String stage) throws IOException {
+        int before = count(stage);
+        rewrite(stage, before - retentionRuns);
+        logger.debug("Compacted task timings of {}: {} -> {} runs", stage, before, counts.get(stage));
+    }
+
+    /** Переписывает файл стадии без записей до first через временный файл и move. */
+    private void rewrite(String stage, int first) throws IOException {
+        Path file = file(stage);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int[] kept = new int[1];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            forEachRecord(stage, (index, record) -> {
+                if (index < first) return;
+                writeRecord(out, record);
+                kept[0]++;
+            });
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        counts.put(stage, kept[0]);
+    }
+
+    private interface RecordVisitor {
+        void accept(int index, byte[] record) throws IOException;
+    }
+
+    /** Читает записи файла стадии по одной до конца или первой повреждённой; возвращает число целых записей. */
+    private int forEachRecord(String stage, RecordVisitor visitor) throws IOException {
+        Path file = file(stage);
+        if (!Files.exists(file)) {
+            counts.put(stage, 0);
+            return 0;
+        }
+        int index = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int length;
+                long crc;
+                byte[] body;
+                try {
+                    length = in.readInt();
+                    crc = in.readInt() & 0xFFFFFFFFL;
+                    if (length < 0 || length > 256 * 1024 * 1024) break;
+                    body = new byte[length];
+                    in.readFully(body);
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32 check = new CRC32();
+                check.update(body);
+                if (check.getValue() != crc) {
+                    logger.warn("Skipping corrupt task timing record in {}", file);
+                    break;
+                }
+                visitor.accept(index++, body);
+            }
+        }
+        counts.put(stage, index);
+        return index;
+    }
+
+    private static void writeRecord(DataOutputStream out, byte[] body) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        out.writeInt(body.length);
+        out.writeInt((int) crc.getValue());
+        out.write(body);
+    }
+
+    private static Run decode(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        String runId = in.readUTF();
+        long startedAt = in.readLong();
+        long durationMillis = in.readLong();
+        boolean success = in.readBoolean();
+        String[] plays = readNames(in);
+        int[] taskPlay = new int[readVarint(in)];
+        String[] tasks = new String[taskPlay.length];
+        for (int t = 0; t < tasks.length; t++) {
+            taskPlay[t] = readVarint(in);
+            tasks[t] = in.readUTF();
+        }
+        String[] hosts = readNames(in);
+        int count = readVarint(in);
+        int[] task = new int[count];
+        int[] host = new int[count];
+        int[] duration = new int[count];
+        byte[] result = new byte[count];
+        for (int i = 0; i < count; i++) {
+            task[i] = readVarint(in);
+            host[i] = readVarint(in);
+            duration[i] = readVarint(in);
+            int r = in.readUnsignedByte();
+            result[i] = (byte) (r < RESULTS.length ? r : 0);
+        }
+        return new Run(runId, startedAt, durationMillis, success, plays, taskPlay, tasks, hosts, task, host,
+                duration, result);
+    }
+
+    private static String readRunId(byte[] record) throws IOException {
+        return new DataInputStream(new ByteArrayInputStream(record)).readUTF();
+    }
+
+    private static void writeNames(DataOutputStream out, Collection<String> names) throws IOException {
+        writeVarint(out, names.size());
+        for (String name : names) {
+            writeName(out, name);
+        }
+    }
+
+    private static void writeName(DataOutputStream out, String name) throws IOException {
+        out.writeUTF(name.length() > 10_000 ? name.substring(0, 10_000) : name);
+    }
+
+    private static String[] readNames(DataInputStream in) throws IOException {
+        String[] names = new String[readVarint(in)];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = in.readUTF();
+        }
+        return names;
+    }
+
+    private static void writeVarint(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) throw new EOFException();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+}
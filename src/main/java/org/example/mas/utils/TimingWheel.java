@@ -0,0 +1,149 @@
+package org.example.mas.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Хешированное колесо таймеров: один поток на все отложенные задачи вместо таймера на каждую.
+ * Время делится на тики по tickMillis, задача попадает в ячейку своего тика по модулю числа ячеек и
+ * ждёт нужное число оборотов. Постановка и отмена — O(1) без блокировок (новые задачи передаются потоку
+ * колеса через очередь), точность — один тик. Сработавшие задачи отдаются executor: поток колеса не должен
+ * выполнять ничего долгого.
+ */
+public class TimingWheel implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    /** Отложенная задача; cancel() до срабатывания снимает её. */
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadlineTick;
+        private long rounds;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final long tickNanos;
+    private final int mask;
+    private final List<List<Timeout>> buckets;
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Executor executor;
+    private final Thread worker;
+    private final long startNanos;
+    private volatile long tick;
+    private volatile boolean closed;
+
+    /** wheelSize округляется вверх до степени двойки. */
+    public TimingWheel(String name, long tickMillis, int wheelSize, Executor executor) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) * 2 - 1);
+        this.mask = size - 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        this.executor = executor;
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::loop, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /** Выполнить task через delay (не раньше; позже не больше чем на тик). */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (closed) {
+            throw new IllegalStateException("Timing wheel is closed");
+        }
+        long elapsed = System.nanoTime() - startNanos + unit.toNanos(Math.max(0, delay));
+        // Округление вверх: задача не срабатывает раньше срока.
+        Timeout timeout = new Timeout(task, Math.max(tick + 1, (elapsed + tickNanos - 1) / tickNanos));
+        pending.incrementAndGet();
+        incoming.add(timeout);
+        return timeout;
+    }
+
+    /** Задачи, ещё не сработавшие и не снятые потоком колеса (отменённые считаются до своего тика). */
+    public int pending() {
+        return pending.get();
+    }
+
+    private void loop() {
+        long current = 0;
+        while (!closed) {
+            long wait = startNanos + (current + 1) * tickNanos - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    if (closed) break;
+                    continue;
+                }
+            }
+            current++;
+            tick = current;
+            transferIncoming(current);
+            expire(buckets.get((int) (current & mask)));
+        }
+    }
+
+    private void transferIncoming(long current) {
+        Timeout timeout;
+        while ((timeout = incoming.poll()) != null) {
+            if (timeout.cancelled) {
+                pending.decrementAndGet();
+                continue;
+            }
+            long target = Math.max(timeout.deadlineTick, current);
+            timeout.rounds = (target - current) / buckets.size();
+            buckets.get((int) (target & mask)).add(timeout);
+        }
+    }
+
+    /** Порядок в ячейке не важен: удаление — перестановкой последнего элемента на место удалённого. */
+    private void expire(List<Timeout> bucket) {
+        int i = 0;
+        while (i < bucket.size()) {
+            Timeout timeout = bucket.get(i);
+            if (!timeout.cancelled && timeout.rounds > 0) {
+                timeout.rounds--;
+                i++;
+                continue;
+            }
+            Timeout last = bucket.remove(bucket.size() - 1);
+            if (i < bucket.size()) bucket.set(i, last);
+            pending.decrementAndGet();
+            if (timeout.cancelled) continue;
+            try {
+                executor.execute(timeout.task);
+            } catch (RuntimeException e) {
+                logger.warn("Timing wheel task rejected: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+    }
+}
@@ -0,0 +1,92 @@
+package org.example.mas.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * YAML-inventory Ansible: группы верхнего уровня (обычно all) с ключами hosts, vars, children.
+ * Скалярные значения переменных приводятся к строке, списки и словари — к JSON.
+ */
+public class YamlInventoryReader implements InventoryReader {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Override
+    public InventoryParser.Inventory read(Reader reader) throws IOException {
+        LoaderOptions options = new LoaderOptions();
+        // 50k хостов с переменными — это больше 3 МБ по умолчанию
+        options.setCodePointLimit(Integer.MAX_VALUE);
+        Object root;
+        try {
+            root = new Yaml(new SafeConstructor(options)).load(reader);
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid YAML inventory: " + e.getMessage(), e);
+        }
+
+        InventoryParser.Builder builder = new InventoryParser.Builder();
+        if (root instanceof Map) {
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) root).entrySet()) {
+                readGroup(builder, String.valueOf(e.getKey()), e.getValue(), new HashSet<>());
+            }
+        } else if (root != null) {
+            throw new IOException("YAML inventory must be a mapping of groups");
+        }
+        return builder.build();
+    }
+
+    /** path — группы на пути от корня, защита от циклов в children. */
+    private void readGroup(InventoryParser.Builder builder, String group, Object body, Set<String> path)
+            throws IOException {
+        builder.declareGroup(group);
+        if (!(body instanceof Map) || !path.add(group)) {
+            return;
+        }
+        Map<?, ?> section = (Map<?, ?>) body;
+
+        if (section.get("hosts") instanceof Map) {
+            for (Map.Entry<?, ?> host : ((Map<?, ?>) section.get("hosts")).entrySet()) {
+                builder.host(group, String.valueOf(host.getKey()), toVars(host.getValue()));
+            }
+        }
+        Map<String, String> vars = toVars(section.get("vars"));
+        if (vars != null) {
+            vars.forEach((key, value) -> builder.groupVar(group, key, value));
+        }
+        if (section.get("children") instanceof Map) {
+            for (Map.Entry<?, ?> child : ((Map<?, ?>) section.get("children")).entrySet()) {
+                String name = String.valueOf(child.getKey());
+                builder.child(group, name);
+                readGroup(builder, name, child.getValue(), path);
+            }
+        }
+        path.remove(group);
+    }
+
+    private Map<String, String> toVars(Object value) throws IOException {
+        if (!(value instanceof Map) || ((Map<?, ?>) value).isEmpty()) {
+            return null;
+        }
+        Map<String, String> vars = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+            Object v = e.getValue();
+            String text;
+            if (v == null) {
+                text = "";
+            } else if (v instanceof Map || v instanceof Iterable) {
+                text = MAPPER.writeValueAsString(v);
+            } else {
+                text = String.valueOf(v);
+            }
+            vars.put(String.valueOf(e.getKey()), text);
+        }
+        return vars;
+    }
+}
@@ -0,0 +1,21 @@
+package org.example.mas.utils;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Сборка под Java 17: виртуальных потоков нет, {@link IoThreads} остаётся на потоках платформы.
+ * Под профилем java21 вместо этого класса собирается src/main/java21.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    static boolean available() {
+        return false;
+    }
+
+    static ThreadFactory factory(String prefix) {
+        throw new UnsupportedOperationException("Virtual threads need the java21 build");
+    }
+}
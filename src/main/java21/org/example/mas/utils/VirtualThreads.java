@@ -0,0 +1,19 @@
+package org.example.mas.utils;
+
+import java.util.concurrent.ThreadFactory;
+
+/** Сборка под Java 21 (профиль java21): виртуальные потоки для {@link IoThreads}. */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    static boolean available() {
+        return true;
+    }
+
+    /** Потоки prefix-1, prefix-2, …; виртуальные потоки всегда daemon. */
+    static ThreadFactory factory(String prefix) {
+        return Thread.ofVirtual().name(prefix + "-", 1).factory();
+    }
+}
@@ -0,0 +1,144 @@
+package org.example.mas.Service;
+
+import org.example.mas.DTO.Alert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Окно публикации — час: алерты публикуются только явным flush() из теста. */
+class AlertServiceTest {
+    private final RecordingStatusBus statusBus = new RecordingStatusBus();
+    private AlertService alerts;
+
+    @AfterEach
+    void shutdown() {
+        if (alerts != null) alerts.shutdown();
+        statusBus.shutdown();
+    }
+
+    @Test
+    void eventsOfOneStageAndClassBecomeOneAlert() {
+        alerts = service(600, 20, 200, 3);
+        for (int i = 0; i < 500; i++) {
+            alerts.raise(i == 7 ? Alert.Severity.CRITICAL : Alert.Severity.ERROR, "stage1", "CONNECTION_FAILURE",
+                    List.of(String.format("w%03d", i)), "unreachable");
+        }
+        alerts.raise(Alert.Severity.ERROR, "stage1", "CONNECTION_FAILURE", List.of("w000"), "unreachable again");
+        alerts.flush();
+
+        List<Alert> published = alerts.getAlerts(0);
+        assertEquals(1, published.size());
+        Alert alert = published.get(0);
+        assertEquals(500, alert.getHostCount());
+        assertEquals(List.of("w000", "w001", "w002"), alert.getHosts());
+        assertEquals(501, alert.getOccurrences());
+        assertEquals(Alert.Severity.CRITICAL, alert.getSeverity());
+        assertEquals("unreachable again", alert.getMessage());
+        assertEquals(1, statusBus.published.size());
+    }
+
+    @Test
+    void differentErrorClassesAreSeparateAlerts() {
+        alerts = service(600, 20, 200, 50);
+        alerts.raise(Alert.Severity.ERROR, "stage1", "CONNECTION_FAILURE", List.of("w1"), "a");
+        alerts.raise(Alert.Severity.ERROR, "stage1", "EXECUTION_ERROR", List.of("w1"), "b");
+        alerts.raise(Alert.Severity.ERROR, "stage2", "EXECUTION_ERROR", List.of("w1"), "c");
+        alerts.flush();
+
+        assertEquals(3, alerts.getAlerts(0).size());
+    }
+
+    @Test
+    void newAlertsBeyondTheRateWaitForTheNextWindow() {
+        alerts = service(600, 2, 200, 50);
+        alerts.raise(Alert.Severity.ERROR, "s1", "E", List.of(), "a");
+        alerts.raise(Alert.Severity.ERROR, "s2", "E", List.of(), "b");
+        alerts.raise(Alert.Severity.ERROR, "s3", "E", List.of(), "c");
+        alerts.flush();
+
+        assertEquals(List.of("s1", "s2"), stages(alerts.getAlerts(0)));
+        assertEquals(1, alerts.getDelayed());
+
+        // обновление уже опубликованной группы токен не тратит
+        long revision = lastRevision();
+        alerts.raise(Alert.Severity.ERROR, "s1", "E", List.of("w9"), "a2");
+        alerts.flush();
+        assertEquals(List.of("s1"), stages(alerts.getAlerts(revision)));
+        assertEquals(2, alerts.getDelayed());
+    }
+
+    @Test
+    void updatedAlertIsNotEvictedBeforeStaleOnes() {
+        alerts = service(600, 20, 2, 50);
+        alerts.raise(Alert.Severity.ERROR, "a", "E", List.of(), "a");
+        alerts.raise(Alert.Severity.ERROR, "b", "E", List.of(), "b");
+        alerts.flush();
+        alerts.raise(Alert.Severity.ERROR, "a", "E", List.of("w1"), "a again");
+        alerts.flush();
+        alerts.raise(Alert.Severity.ERROR, "c", "E", List.of(), "c");
+        alerts.flush();
+
+        assertEquals(List.of("a", "c"), stages(alerts.getAlerts(0)));
+    }
+
+    @Test
+    void eventAfterDedupWindowOpensANewAlert() throws InterruptedException {
+        alerts = service(0, 20, 200, 50);
+        alerts.raise(Alert.Severity.ERROR, "a", "E", List.of("w1"), "first");
+        alerts.flush();
+        Thread.sleep(5);
+        alerts.raise(Alert.Severity.ERROR, "a", "E", List.of("w2"), "second");
+        alerts.flush();
+
+        List<Alert> published = alerts.getAlerts(0);
+        assertEquals(2, published.size());
+        assertNotEquals(published.get(0).getId(), published.get(1).getId());
+        assertEquals(List.of("w2"), published.get(1).getHosts());
+    }
+
+    @Test
+    void statusSummaryListsTheLatestAlerts() {
+        alerts = service(600, 20, 200, 50);
+        alerts.raise(Alert.Severity.WARNING, "a", "E", List.of("w1"), "a");
+        alerts.flush();
+        alerts.flush();
+
+        assertEquals(1, statusBus.published.size());
+        assertTrue(statusBus.published.get(0).startsWith("alerts=["));
+        assertEquals(Set.of("a"), alerts.getAlerts(0).stream().map(Alert::getStage).collect(Collectors.toSet()));
+    }
+
+    private AlertService service(int dedupSeconds, int ratePerMinute, int retention, int maxHostsListed) {
+        return new AlertService(statusBus, 3600, dedupSeconds, ratePerMinute, retention, 20, maxHostsListed);
+    }
+
+    private long lastRevision() {
+        List<Alert> all = alerts.getAlerts(0);
+        return all.get(all.size() - 1).getRevision();
+    }
+
+    private static List<String> stages(List<Alert> alerts) {
+        return alerts.stream().map(Alert::getStage).collect(Collectors.toList());
+    }
+
+    private static class RecordingStatusBus extends StatusEventBus {
+        final List<String> published = new ArrayList<>();
+
+        RecordingStatusBus() {
+            super(new StatusService(), 16);
+        }
+
+        @Override
+        public void publish(String key, String value) {
+            published.add(key + "=" + value);
+        }
+    }
+}
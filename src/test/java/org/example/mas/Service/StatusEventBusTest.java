@@ -0,0 +1,101 @@
+package org.example.mas.Service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatusEventBusTest {
+    private final BlockingStatusService status = new BlockingStatusService();
+    private StatusEventBus bus;
+
+    @AfterEach
+    void shutdown() {
+        status.release.countDown();
+        if (bus != null) bus.shutdown();
+    }
+
+    @Test
+    void pendingKeyKeepsOnlyTheLatestValue() throws InterruptedException {
+        bus = new StatusEventBus(status, 16);
+        bus.publish("first", "x");
+        assertTrue(status.blocked.await(5, TimeUnit.SECONDS));
+
+        bus.publish("node", "1");
+        bus.publish("node", "2");
+        bus.publish("node", "3");
+        status.release.countDown();
+
+        awaitVersion(2);
+        assertEquals(List.of("first=x", "node=3"), status.applied);
+        assertEquals(4, bus.getPublished());
+        assertEquals(2, bus.getCoalesced());
+    }
+
+    @Test
+    void keysAreAppliedInPublishOrder() throws InterruptedException {
+        bus = new StatusEventBus(status, 16);
+        bus.publish("first", "x");
+        assertTrue(status.blocked.await(5, TimeUnit.SECONDS));
+
+        bus.publish("b", "1");
+        bus.publish("a", "1");
+        bus.publish("b", "2");
+        status.release.countDown();
+
+        awaitVersion(3);
+        assertEquals(List.of("first=x", "b=2", "a=1"), status.applied);
+    }
+
+    @Test
+    void keysBeyondCapacityAreCountedButNotDropped() throws InterruptedException {
+        bus = new StatusEventBus(status, 1);
+        bus.publish("first", "x");
+        assertTrue(status.blocked.await(5, TimeUnit.SECONDS));
+
+        bus.publish("a", "1");
+        bus.publish("b", "1");
+        bus.publish("c", "1");
+        status.release.countDown();
+
+        awaitVersion(4);
+        assertEquals(2, bus.getOverflowed());
+        assertEquals(List.of("first=x", "a=1", "b=1", "c=1"), status.applied);
+    }
+
+    private void awaitVersion(long version) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (status.getVersion() < version && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(version, status.getVersion());
+    }
+
+    /** Первое обновление держит поток шины, пока тест не наполнит очередь. */
+    private static class BlockingStatusService extends StatusService {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> applied = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void update(String key, String jsonString) {
+            if (blocked.getCount() > 0) {
+                blocked.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            applied.add(key + "=" + jsonString);
+            super.update(key, jsonString);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.example.mas.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.example.mas.DTO.StatusSnapshot;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatusServiceTest {
+
+    @Test
+    void snapshotKeepsExtraKeysOfItsVersion() {
+        StatusService status = new StatusService();
+        status.update("bootstrap:10.0.0.1", "OK");
+        StatusSnapshot before = status.snapshot();
+
+        status.update("bootstrap:10.0.0.1", "FAILED");
+        status.update("bootstrap:10.0.0.2", "OK");
+
+        assertEquals("OK", before.getExtra().get("bootstrap:10.0.0.1"));
+        assertFalse(before.getExtra().containsKey("bootstrap:10.0.0.2"));
+        assertEquals("FAILED", status.snapshot().getExtra().get("bootstrap:10.0.0.1"));
+        assertEquals(3, status.getVersion());
+    }
+
+    @Test
+    void extraKeysAreSerializedAtTopLevel() throws Exception {
+        StatusService status = new StatusService();
+        status.update("clusterStatus", "DEPLOYING");
+        status.update("fanout:d1", "{\"done\":3}");
+
+        JsonNode json = status.getObjectMapper().readTree(status.snapshot().toJson(status.getObjectMapper()));
+
+        assertEquals("DEPLOYING", json.get("clusterStatus").asText());
+        assertEquals(3, json.get("fanout:d1").get("done").asInt());
+        assertTrue(json.has("version"));
+    }
+}
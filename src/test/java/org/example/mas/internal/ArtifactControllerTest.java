@@ -0,0 +1,51 @@
+package org.example.mas.internal;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ArtifactControllerTest {
+    private static final long SIZE = 1000;
+
+    @Test
+    void explicitRangeIsInclusiveAndClampedToSize() {
+        assertArrayEquals(new long[]{0, 1}, ArtifactController.parseRange("bytes=0-0", SIZE));
+        assertArrayEquals(new long[]{100, 200}, ArtifactController.parseRange("bytes=100-199", SIZE));
+        assertArrayEquals(new long[]{900, SIZE}, ArtifactController.parseRange("bytes=900-5000", SIZE));
+    }
+
+    @Test
+    void openEndedRangeRunsToTheEnd() {
+        assertArrayEquals(new long[]{500, SIZE}, ArtifactController.parseRange("bytes=500-", SIZE));
+        assertArrayEquals(new long[]{999, SIZE}, ArtifactController.parseRange("bytes=999-", SIZE));
+    }
+
+    @Test
+    void suffixRangeTakesTheLastBytes() {
+        assertArrayEquals(new long[]{900, SIZE}, ArtifactController.parseRange("bytes=-100", SIZE));
+        assertArrayEquals(new long[]{0, SIZE}, ArtifactController.parseRange("bytes=-5000", SIZE));
+    }
+
+    @Test
+    void rangesPastTheEndAreUnsatisfiable() {
+        assertEquals(0, ArtifactController.parseRange("bytes=1000-", SIZE).length);
+        assertEquals(0, ArtifactController.parseRange("bytes=2000-3000", SIZE).length);
+        assertEquals(0, ArtifactController.parseRange("bytes=-0", SIZE).length);
+        assertEquals(0, ArtifactController.parseRange("bytes=0-", 0).length);
+        assertEquals(0, ArtifactController.parseRange("bytes=-10", 0).length);
+    }
+
+    @Test
+    void malformedHeadersAreIgnored() {
+        assertNull(ArtifactController.parseRange(null, SIZE));
+        assertNull(ArtifactController.parseRange("items=0-10", SIZE));
+        assertNull(ArtifactController.parseRange("bytes=0-10,20-30", SIZE));
+        assertNull(ArtifactController.parseRange("bytes=10", SIZE));
+        assertNull(ArtifactController.parseRange("bytes=-", SIZE));
+        assertNull(ArtifactController.parseRange("bytes=a-", SIZE));
+        assertNull(ArtifactController.parseRange("bytes=0-b", SIZE));
+        assertNull(ArtifactController.parseRange("bytes=20-10", SIZE));
+    }
+}
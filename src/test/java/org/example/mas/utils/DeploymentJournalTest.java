@@ -0,0 +1,108 @@
+package org.example.mas.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeploymentJournalTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void interruptedDeploymentIsInProgressWithCompletedStages() throws IOException {
+        DeploymentJournal journal = new DeploymentJournal(dir.resolve("deployment.journal"));
+        journal.deploymentStarted("coordinator-1");
+        journal.stageStarted("01.yml", "fp1");
+        journal.stageFinished("01.yml", "SUCCESS", "fp1", Map.of("cm1", "OK"));
+        journal.stageStarted("02.yml", "fp2");
+        journal.stageFinished("02.yml", "FAILED", "fp2", Map.of("w1", "FAILED"));
+        journal.stageStarted("03.yml", "fp3");
+        journal.close();
+
+        DeploymentJournal.State state = new DeploymentJournal(dir.resolve("deployment.journal")).replay();
+
+        assertTrue(state.isInProgress());
+        assertEquals("coordinator-1", state.getDeploymentId());
+        assertEquals(Map.of("01.yml", "fp1"), state.getCompletedStages());
+        assertEquals(Map.of("02.yml", "FAILED"), state.getFailedStages());
+        assertEquals(Map.of("w1", "FAILED"), state.getHostOutcomes().get("02.yml"));
+    }
+
+    @Test
+    void restartedStageIsNoLongerCompleted() throws IOException {
+        DeploymentJournal journal = new DeploymentJournal(dir.resolve("deployment.journal"));
+        journal.deploymentStarted("coordinator-1");
+        journal.stageFinished("01.yml", "SUCCESS", "fp1", Map.of());
+        journal.deploymentResumed("coordinator-1");
+        journal.stageStarted("01.yml", "fp1b");
+
+        DeploymentJournal.State state = journal.replay();
+
+        assertFalse(state.getCompletedStages().containsKey("01.yml"));
+    }
+
+    @Test
+    void finishedDeploymentIsNotInProgress() throws IOException {
+        DeploymentJournal journal = new DeploymentJournal(dir.resolve("deployment.journal"));
+        journal.deploymentStarted("coordinator-1");
+        journal.stageFinished("01.yml", "SKIPPED", "fp1", Map.of());
+        journal.deploymentFinished("SUCCESS");
+
+        DeploymentJournal.State state = journal.replay();
+
+        assertFalse(state.isInProgress());
+        assertEquals("SUCCESS", state.getResult());
+        assertEquals(Map.of("01.yml", "fp1"), state.getCompletedStages());
+    }
+
+    @Test
+    void corruptAndTruncatedRecordsAreSkipped() throws IOException {
+        Path path = dir.resolve("deployment.journal");
+        DeploymentJournal journal = new DeploymentJournal(path);
+        journal.deploymentStarted("coordinator-1");
+        journal.stageFinished("01.yml", "SUCCESS", "fp1", Map.of());
+        journal.close();
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        // Запись с подменённым полем и оборванная при падении запись.
+        Files.writeString(path, lines.get(1).replace("01.yml", "02.yml") + "\n" + lines.get(1).substring(0, 20),
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        DeploymentJournal.State state = new DeploymentJournal(path).replay();
+
+        assertEquals(Map.of("01.yml", "fp1"), state.getCompletedStages());
+    }
+
+    @Test
+    void newDeploymentMovesPreviousJournalAside() throws IOException {
+        Path path = dir.resolve("deployment.journal");
+        DeploymentJournal journal = new DeploymentJournal(path);
+        journal.deploymentStarted("coordinator-1");
+        journal.stageFinished("01.yml", "SUCCESS", "fp1", Map.of());
+        journal.deploymentStarted("coordinator-2");
+
+        DeploymentJournal.State state = journal.replay();
+
+        assertEquals("coordinator-2", state.getDeploymentId());
+        assertTrue(state.getCompletedStages().isEmpty());
+        assertTrue(Files.exists(dir.resolve("deployment.journal.prev")));
+    }
+
+    @Test
+    void missingJournalIsEmpty() throws IOException {
+        DeploymentJournal.State state = new DeploymentJournal(dir.resolve("absent.journal")).replay();
+
+        assertTrue(state.isEmpty());
+        assertFalse(state.isInProgress());
+    }
+}
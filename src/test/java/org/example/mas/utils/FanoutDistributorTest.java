@@ -0,0 +1,170 @@
+package org.example.mas.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FanoutDistributorTest {
+    private static final String SOURCE = "http://mas/artifacts/sha256/abc";
+    private static final String SHA256 = "abc";
+
+    /** Relay, который запоминает, откуда качал каждый узел, и не может скачать на узлы из failing. */
+    private static final class RecordingRelay implements FanoutDistributor.Relay {
+        final Map<String, String> fetchedFrom = new ConcurrentHashMap<>();
+        final Map<String, Integer> calls = new ConcurrentHashMap<>();
+        final Set<String> failing;
+
+        RecordingRelay(String... failing) {
+            this.failing = Set.of(failing);
+        }
+
+        @Override
+        public void fetch(String nodeUrl, String sourceUrl, String sha256, long size) throws IOException {
+            calls.merge(nodeUrl, 1, Integer::sum);
+            if (failing.contains(nodeUrl)) throw new IOException("connection refused");
+            fetchedFrom.put(nodeUrl, sourceUrl);
+        }
+    }
+
+    private static List<FanoutDistributor.Node> nodes(int count) {
+        List<FanoutDistributor.Node> nodes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            nodes.add(new FanoutDistributor.Node("n" + i, "http://n" + i + ":8765/"));
+        }
+        return nodes;
+    }
+
+    private static FanoutDistributor distributor(int count, int degree, FanoutDistributor.Relay relay, Executor executor) {
+        FanoutDistributor.Settings settings = new FanoutDistributor.Settings().degree(degree).retries(2).backoffMillis(0);
+        return new FanoutDistributor(nodes(count), SOURCE, SHA256, 3, settings, relay, executor, node -> { });
+    }
+
+    @Test
+    void parentAndChildIndexesDescribeTheSameTree() {
+        for (int degree = 1; degree <= 5; degree++) {
+            int count = 40;
+            assertEquals(rangeList(0, Math.min(degree, count)), FanoutDistributor.childIndexes(-1, count, degree));
+            for (int parent = 0; parent < count; parent++) {
+                for (int child : FanoutDistributor.childIndexes(parent, count, degree)) {
+                    assertEquals(parent, FanoutDistributor.parentIndex(child, degree), "degree " + degree);
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                int parent = FanoutDistributor.parentIndex(i, degree);
+                assertTrue(FanoutDistributor.childIndexes(parent, count, degree).contains(i), "degree " + degree);
+            }
+        }
+    }
+
+    @Test
+    void childIndexesStopAtTheLastNode() {
+        assertEquals(List.of(8, 9), FanoutDistributor.childIndexes(1, 10, 4));
+        assertEquals(List.of(), FanoutDistributor.childIndexes(2, 10, 4));
+        assertEquals(List.of(), FanoutDistributor.childIndexes(-1, 0, 4));
+    }
+
+    @Test
+    void everyNodeFetchesFromItsParentRelay() throws Exception {
+        RecordingRelay relay = new RecordingRelay();
+        FanoutDistributor distributor = distributor(10, 3, relay, Runnable::run);
+        distributor.start().get(5, TimeUnit.SECONDS);
+
+        Map<String, FanoutDistributor.NodeStatus> statuses = distributor.getStatuses();
+        for (int i = 0; i < 10; i++) {
+            FanoutDistributor.NodeStatus status = statuses.get("n" + i);
+            assertEquals(FanoutDistributor.NodeState.DONE, status.state);
+            int parent = FanoutDistributor.parentIndex(i, 3);
+            String expected = parent < 0 ? SOURCE : "http://n" + parent + ":8765/blobs/" + SHA256;
+            assertEquals(expected, relay.fetchedFrom.get("http://n" + i + ":8765"));
+            assertEquals(parent < 0 ? null : "n" + parent, status.parent);
+        }
+    }
+
+    @Test
+    void childrenOfAFailedFirstLevelNodeFetchFromTheSource() throws Exception {
+        RecordingRelay relay = new RecordingRelay("http://n0:8765");
+        FanoutDistributor distributor = distributor(10, 2, relay, Runnable::run);
+        distributor.start().get(5, TimeUnit.SECONDS);
+
+        FanoutDistributor.NodeStatus failed = distributor.getStatuses().get("n0");
+        assertEquals(FanoutDistributor.NodeState.FAILED, failed.state);
+        assertEquals(3, failed.attempts);
+        assertEquals(3, relay.calls.get("http://n0:8765"));
+        assertEquals("connection refused", failed.error);
+        // Дети n0 — n2 и n3: теперь у них источник, а их собственные дети по-прежнему качают у них.
+        for (String child : List.of("n2", "n3")) {
+            assertNull(distributor.getStatuses().get(child).parent);
+            assertEquals(SOURCE, relay.fetchedFrom.get("http://" + child + ":8765"));
+            assertEquals(FanoutDistributor.NodeState.DONE, distributor.getStatuses().get(child).state);
+        }
+        assertEquals("http://n2:8765/blobs/" + SHA256, relay.fetchedFrom.get("http://n6:8765"));
+    }
+
+    @Test
+    void childrenOfAFailedInnerNodeMoveToItsParent() throws Exception {
+        // degree 2: n1 → n4, n5; n4 → n10, n11.
+        RecordingRelay relay = new RecordingRelay("http://n4:8765");
+        FanoutDistributor distributor = distributor(12, 2, relay, Runnable::run);
+        distributor.start().get(5, TimeUnit.SECONDS);
+
+        assertEquals(FanoutDistributor.NodeState.FAILED, distributor.getStatuses().get("n4").state);
+        for (String child : List.of("n10", "n11")) {
+            assertEquals("n1", distributor.getStatuses().get(child).parent);
+            assertEquals("http://n1:8765/blobs/" + SHA256, relay.fetchedFrom.get("http://" + child + ":8765"));
+            assertEquals(FanoutDistributor.NodeState.DONE, distributor.getStatuses().get(child).state);
+        }
+        long done = distributor.getStatuses().values().stream()
+                .filter(status -> status.state == FanoutDistributor.NodeState.DONE).count();
+        assertEquals(11, done);
+    }
+
+    @Test
+    void failuresAlongAChainReparentToTheNearestLiveAncestor() throws Exception {
+        // degree 1 — цепочка: n0 → n1 → n2 → n3; n1 и n2 недоступны, n3 качает у n0.
+        RecordingRelay relay = new RecordingRelay("http://n1:8765", "http://n2:8765");
+        FanoutDistributor distributor = distributor(4, 1, relay, Runnable::run);
+        distributor.start().get(5, TimeUnit.SECONDS);
+
+        assertEquals("n0", distributor.getStatuses().get("n3").parent);
+        assertEquals("http://n0:8765/blobs/" + SHA256, relay.fetchedFrom.get("http://n3:8765"));
+        assertEquals(FanoutDistributor.NodeState.DONE, distributor.getStatuses().get("n3").state);
+    }
+
+    @Test
+    void rejectedTasksFailTheNodeAndStillComplete() throws Exception {
+        RecordingRelay relay = new RecordingRelay();
+        Executor rejecting = task -> {
+            throw new RejectedExecutionException("pool is shut down");
+        };
+        FanoutDistributor distributor = distributor(5, 2, relay, rejecting);
+        distributor.start().get(5, TimeUnit.SECONDS);
+
+        assertTrue(relay.calls.isEmpty());
+        distributor.getStatuses().values()
+                .forEach(status -> assertEquals(FanoutDistributor.NodeState.FAILED, status.state));
+    }
+
+    @Test
+    void emptyTreeCompletesImmediately() throws Exception {
+        FanoutDistributor distributor = distributor(0, 4, new RecordingRelay(), Runnable::run);
+        assertTrue(distributor.start().isDone());
+    }
+
+    private static List<Integer> rangeList(int from, int to) {
+        List<Integer> list = new ArrayList<>();
+        for (int i = from; i < to; i++) list.add(i);
+        return list;
+    }
+}
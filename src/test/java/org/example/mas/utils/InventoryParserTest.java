@@ -0,0 +1,162 @@
+package org.example.mas.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InventoryParserTest {
+    private static final String INI = String.join("\n",
+            "bastion ansible_host=10.0.0.254",
+            "# comment",
+            "[central_manager]",
+            "cm1 ansible_host=10.0.0.1 role=manager",
+            "",
+            "[execute_nodes]",
+            "w1 ansible_host=10.0.0.11 ssh_args='-o A -o B'",
+            "w2 ansible_host=10.0.0.12",
+            "",
+            "[workers_b]",
+            "w3 ansible_host=10.0.0.13 role=special",
+            "",
+            "[condor:children]",
+            "central_manager",
+            "execute_nodes",
+            "",
+            "[condor:vars]",
+            "role = worker",
+            "pool = \"main pool\"",
+            "",
+            "[all:vars]",
+            "role=base",
+            "ansible_user=root",
+            "");
+
+    private static final String YAML = String.join("\n",
+            "ungrouped:",
+            "  hosts:",
+            "    bastion: {ansible_host: 10.0.0.254}",
+            "central_manager:",
+            "  hosts:",
+            "    cm1: {ansible_host: 10.0.0.1, role: manager}",
+            "workers_b:",
+            "  hosts:",
+            "    w3: {ansible_host: 10.0.0.13, role: special}",
+            "condor:",
+            "  vars:",
+            "    role: worker",
+            "    pool: main pool",
+            "  children:",
+            "    central_manager:",
+            "    execute_nodes:",
+            "      hosts:",
+            "        w1: {ansible_host: 10.0.0.11, ssh_args: -o A -o B}",
+            "        w2: {ansible_host: 10.0.0.12}",
+            "all:",
+            "  vars:",
+            "    role: base",
+            "    ansible_user: root",
+            "");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void iniReadsGroupsVarsAndChildren() throws IOException {
+        InventoryParser.Inventory inventory = new IniInventoryReader().read(new StringReader(INI));
+
+        assertEquals(List.of("cm1", "w1", "w2"), names(inventory.getGroup("condor")));
+        assertEquals(List.of("bastion"), names(inventory.getGroup(InventoryParser.UNGROUPED)));
+        assertEquals(Set.of("central_manager", "execute_nodes"), inventory.getChildren("condor"));
+        assertEquals(Map.of("role", "worker", "pool", "main pool"), inventory.getGroupVars("condor"));
+        assertEquals("-o A -o B", inventory.getHost("w1").vars.get("ssh_args"));
+        assertTrue(inventory.getHost("w1").groups.containsAll(Set.of("all", "condor", "execute_nodes")));
+    }
+
+    @Test
+    void hostVarsFollowAnsiblePrecedence() throws IOException {
+        InventoryParser.Inventory inventory = new IniInventoryReader().read(new StringReader(INI));
+
+        assertEquals("manager", inventory.getHost("cm1").vars.get("role"));
+        assertEquals("worker", inventory.getHost("w2").vars.get("role"));
+        assertEquals("special", inventory.getHost("w3").vars.get("role"));
+        assertEquals("base", inventory.getHost("bastion").vars.get("role"));
+        assertEquals("root", inventory.getHost("w1").vars.get("ansible_user"));
+        assertEquals("10.0.0.12", inventory.getHost("w2").getHost());
+    }
+
+    @Test
+    void yamlAndIniProduceTheSameModel() throws IOException {
+        InventoryParser.Inventory ini = new IniInventoryReader().read(new StringReader(INI));
+        InventoryParser.Inventory yaml = new YamlInventoryReader().read(new StringReader(YAML));
+
+        assertEquals(names(ini.getAllHosts()).stream().sorted().collect(Collectors.toList()),
+                names(yaml.getAllHosts()).stream().sorted().collect(Collectors.toList()));
+        for (InventoryParser.Host host : ini.getAllHosts()) {
+            InventoryParser.Host other = yaml.getHost(host.name);
+            assertEquals(host.vars, other.vars, host.name);
+            assertEquals(host.groups, other.groups, host.name);
+        }
+        assertEquals(ini.getChildren("condor"), yaml.getChildren("condor"));
+    }
+
+    @Test
+    void yamlRejectsNonMappingRoot() {
+        assertThrows(IOException.class, () -> new YamlInventoryReader().read(new StringReader("- a\n- b\n")));
+    }
+
+    @Test
+    void resolvePatternHandlesUnionExclusionIntersectionAndGlobs() {
+        InventoryParser.Inventory inventory = InventoryParser.parseText(INI);
+
+        assertEquals(Set.of("cm1", "w1", "w2", "w3"), inventory.resolvePattern("condor:workers_b"));
+        assertEquals(Set.of("w1", "w2"), inventory.resolvePattern("condor:!central_manager"));
+        assertEquals(Set.of("cm1"), inventory.resolvePattern("condor:&central_manager"));
+        assertEquals(Set.of("w1", "w2", "w3"), inventory.resolvePattern("w*"));
+        assertEquals(5, inventory.resolvePattern("all").size());
+        assertTrue(inventory.resolvePattern("missing").isEmpty());
+    }
+
+    @Test
+    void parseCachesUntilTheFileChanges() throws IOException {
+        Path file = dir.resolve("hosts.ini");
+        Files.writeString(file, INI);
+        InventoryParser.Inventory first = InventoryParser.parse(file);
+        assertSame(first, InventoryParser.parse(file));
+
+        // то же содержимое с новым mtime — прежняя модель
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+        assertSame(first, InventoryParser.parse(file));
+
+        Files.writeString(file, INI + "[extra]\nx1\n");
+        InventoryParser.Inventory changed = InventoryParser.parse(file);
+        assertNotSame(first, changed);
+        assertEquals(List.of("x1"), names(changed.getGroup("extra")));
+    }
+
+    @Test
+    void parsePicksTheReaderByExtension() throws IOException {
+        Path file = dir.resolve("hosts.yml");
+        Files.writeString(file, YAML);
+
+        assertEquals(List.of("w1", "w2"), names(InventoryParser.parse(file).getGroup("execute_nodes")));
+    }
+
+    private static List<String> names(List<InventoryParser.Host> hosts) {
+        return hosts.stream().map(h -> h.name).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,68 @@
+package org.example.mas.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PersistentMapTest {
+
+    @Test
+    void withLeavesPreviousVersionUnchanged() {
+        PersistentMap<String, Object> first = PersistentMap.<String, Object>empty().with("a", 1);
+        PersistentMap<String, Object> second = first.with("a", 2).with("b", 3);
+
+        assertEquals(Map.of("a", 1), first);
+        assertEquals(Map.of("a", 2, "b", 3), second);
+    }
+
+    @Test
+    void behavesLikeHashMapUnderRandomUpdates() {
+        Random random = new Random(7);
+        Map<String, Object> expected = new HashMap<>();
+        PersistentMap<String, Object> actual = PersistentMap.empty();
+        for (int i = 0; i < 20_000; i++) {
+            String key = "node-" + random.nextInt(5_000);
+            Object value = random.nextInt(10) == 0 ? null : i;
+            expected.put(key, value);
+            actual = actual.with(key, value);
+        }
+
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected, actual);
+        assertEquals(expected, new HashMap<>(actual));
+    }
+
+    @Test
+    void nullValueIsPresent() {
+        PersistentMap<String, Object> map = PersistentMap.<String, Object>empty().with("k", null);
+
+        assertTrue(map.containsKey("k"));
+        assertNull(map.get("k"));
+        assertFalse(map.containsKey("other"));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void collidingHashesShareABucket() {
+        // "Aa" и "BB" — классическая пара строк с одинаковым hashCode.
+        PersistentMap<String, Object> map = PersistentMap.<String, Object>empty().with("Aa", 1).with("BB", 2).with("Aa", 3);
+
+        assertEquals(2, map.size());
+        assertEquals(3, map.get("Aa"));
+        assertEquals(2, map.get("BB"));
+    }
+
+    @Test
+    void copyOfKeepsAllEntries() {
+        Map<String, Integer> source = Map.of("a", 1, "b", 2, "c", 3);
+
+        assertEquals(source, PersistentMap.copyOf(source));
+    }
+}
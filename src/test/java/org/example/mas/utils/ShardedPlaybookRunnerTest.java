@@ -0,0 +1,113 @@
+package org.example.mas.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Шардированная стадия с задачами run_once на симуляторе: central_manager и четыре воркера,
+ * шарды по два хоста, так что шарды из одних воркеров пропускают run_once с when по central_manager.
+ */
+class ShardedPlaybookRunnerTest {
+    private static final String INVENTORY = String.join("\n",
+            "[central_manager]",
+            "cm1 ansible_host=10.0.0.1",
+            "",
+            "[execute_nodes]",
+            "w1 ansible_host=10.0.0.11",
+            "w2 ansible_host=10.0.0.12",
+            "w3 ansible_host=10.0.0.13",
+            "w4 ansible_host=10.0.0.14",
+            "");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void skippedRunOnceResultWithoutRcGuardFailsWorkerShards() throws IOException {
+        writePlaybook("when: rollout is defined and rollout.rc != 0");
+
+        AnsibleRunner.AnsibleResult result = runSharded(dir.toString(), "stage.yml");
+
+        assertFalse(result.success);
+        assertEquals("EXECUTION_ERROR", result.errorCode);
+        assertEquals(Set.of("w2", "w4"), new HashSet<>(result.report.getFailedHosts()));
+    }
+
+    @Test
+    void skippedRunOnceResultWithRcGuardPasses() throws IOException {
+        writePlaybook("when: rollout is defined and rollout.rc is defined and rollout.rc != 0");
+
+        AnsibleRunner.AnsibleResult result = runSharded(dir.toString(), "stage.yml");
+
+        assertTrue(result.success, result.details);
+    }
+
+    @Test
+    void calicoStagePassesWhenSharded() throws IOException {
+        AnsibleRunner.AnsibleResult result = runSharded(Path.of("scripts").toAbsolutePath().toString(), "05_calico_cni.yml");
+
+        assertTrue(result.success, result.details);
+    }
+
+    @Test
+    void failedLeaderShardSkipsTheRest() throws IOException {
+        writePlaybook("when: rollout is defined and rollout.rc is defined and rollout.rc != 0");
+
+        AnsibleRunner.AnsibleResult result = runSharded(dir.toString(), "stage.yml", Set.of("cm1"));
+
+        assertFalse(result.success);
+        assertEquals("EXECUTION_ERROR", result.errorCode);
+        assertEquals(Set.of("cm1", "w1"), result.report.getHostOutcomes().keySet());
+        assertEquals(2, result.details.split("NOT_RUN", -1).length - 1, result.details);
+    }
+
+    private void writePlaybook(String diagnosticWhen) throws IOException {
+        Files.writeString(dir.resolve("stage.yml"), String.join("\n",
+                "- name: Stage",
+                "  hosts: all",
+                "  tasks:",
+                "    - name: Rollout on control-plane",
+                "      command: kubectl rollout status ds/calico-node",
+                "      register: rollout",
+                "      when: \"'central_manager' in group_names\"",
+                "      run_once: true",
+                "    - name: Diagnose failed rollout",
+                "      command: kubectl get pods",
+                "      " + diagnosticWhen,
+                "      run_once: true",
+                ""), StandardCharsets.UTF_8);
+    }
+
+    private AnsibleRunner.AnsibleResult runSharded(String workingDir, String playbook) throws IOException {
+        return runSharded(workingDir, playbook, Set.of());
+    }
+
+    private AnsibleRunner.AnsibleResult runSharded(String workingDir, String playbook, Set<String> failedHosts)
+            throws IOException {
+        Path inventory = dir.resolve("inventory.ini");
+        Files.writeString(inventory, INVENTORY, StandardCharsets.UTF_8);
+        AnsibleSimulator simulator = new AnsibleSimulator(new AnsibleSimulator.Settings()
+                .taskLatencyMs(0)
+                .timeScale(0)
+                .changedRate(0)
+                .skippedRate(0)
+                .failedHosts(failedHosts)
+                .seed(1L));
+        AnsibleRunner.Options options = new AnsibleRunner.Options(playbook, inventory.toString(), workingDir)
+                .executor(simulator)
+                .logDir(dir.resolve("logs"))
+                .timeoutMinutes(1);
+        return ShardedPlaybookRunner.run(options, new ShardedPlaybookRunner.Settings().shardSize(2).processes(2));
+    }
+}
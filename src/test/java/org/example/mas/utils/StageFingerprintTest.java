@@ -0,0 +1,107 @@
+package org.example.mas.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StageFingerprintTest {
+    private static final String INVENTORY = String.join("\n",
+            "[central_manager]",
+            "cm1 ansible_host=10.0.0.1",
+            "[execute_nodes]",
+            "w1 ansible_host=10.0.0.11",
+            "");
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void playbooks() throws IOException {
+        write("stage.yml", String.join("\n",
+                "- hosts: central_manager",
+                "  tasks:",
+                "    - include_tasks: tasks/setup.yml",
+                ""));
+        write("tasks/setup.yml", String.join("\n",
+                "- template:",
+                "    src: config.j2",
+                "    dest: /etc/config",
+                ""));
+        write("templates/config.j2", "port=1\n");
+        write("vars.yml", "version: 1\n");
+        write("group_vars/all.yml", "timezone: UTC\n");
+        write("unrelated.yml", "- hosts: all\n");
+    }
+
+    @Test
+    void collectsReferencedFilesRecursively() throws IOException {
+        StageFingerprint fingerprint = compute(INVENTORY);
+
+        assertEquals(List.of("group_vars/all.yml", "stage.yml", "tasks/setup.yml", "templates/config.j2", "vars.yml"),
+                fingerprint.files);
+        assertEquals(List.of("cm1"), fingerprint.hosts);
+    }
+
+    @Test
+    void unchangedInputsGiveTheSameValue() throws IOException {
+        assertEquals(compute(INVENTORY).value, compute(INVENTORY).value);
+    }
+
+    @Test
+    void changedTemplateChangesInputsOnly() throws IOException {
+        StageFingerprint before = compute(INVENTORY);
+        write("templates/config.j2", "port=2\n");
+        StageFingerprint after = compute(INVENTORY);
+
+        assertNotEquals(before.inputsDigest, after.inputsDigest);
+        assertEquals(before.hostsDigest, after.hostsDigest);
+        assertEquals("playbook inputs changed", StageFingerprint.describeChange(before.value, after.value));
+    }
+
+    @Test
+    void onlyTargetedHostsAffectTheHostsDigest() throws IOException {
+        StageFingerprint before = compute(INVENTORY);
+        StageFingerprint workerChanged = compute(INVENTORY.replace("10.0.0.11", "10.0.0.99"));
+        StageFingerprint managerChanged = compute(INVENTORY.replace("10.0.0.1\n", "10.0.0.2\n"));
+
+        assertEquals(before.value, workerChanged.value);
+        assertEquals("host set or host vars changed", StageFingerprint.describeChange(before.value, managerChanged.value));
+    }
+
+    @Test
+    void unrelatedPlaybookIsNotAnInput() throws IOException {
+        StageFingerprint before = compute(INVENTORY);
+        write("unrelated.yml", "- hosts: execute_nodes\n");
+
+        assertEquals(before.value, compute(INVENTORY).value);
+    }
+
+    @Test
+    void describeChangeHandlesMissingValues() {
+        assertEquals("no previous successful run", StageFingerprint.describeChange(null, "a:b"));
+        assertEquals("fingerprint unavailable", StageFingerprint.describeChange("a:b", null));
+        assertNull(StageFingerprint.describeChange("a:b", "a:b"));
+        assertTrue(StageFingerprint.describeChange("a:b", "c:d").contains("and"));
+    }
+
+    private StageFingerprint compute(String inventory) throws IOException {
+        return StageFingerprint.compute(dir, "stage.yml", InventoryParser.parseText(inventory));
+    }
+
+    private void write(String file, String content) throws IOException {
+        Path path = dir.resolve(file);
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, content, StandardCharsets.UTF_8);
+    }
+}
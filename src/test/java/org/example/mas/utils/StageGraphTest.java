@@ -0,0 +1,62 @@
+package org.example.mas.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StageGraphTest {
+
+    @Test
+    void undeclaredStageDependsOnPreviousOne() {
+        StageGraph graph = StageGraph.build(List.of("01.yml", "02.yml", "03.yml"), Map.of());
+
+        assertEquals(Set.of(), graph.getDependencies("01.yml"));
+        assertEquals(Set.of("01.yml"), graph.getDependencies("02.yml"));
+        assertEquals(Set.of("02.yml"), graph.getDependencies("03.yml"));
+    }
+
+    @Test
+    void dependencyOnExcludedStageIsReplacedByItsOwnDependencies() {
+        Map<String, List<String>> declared = Map.of(
+                "02.yml", List.of("01.yml"),
+                "03.yml", List.of("02.yml"));
+
+        StageGraph graph = StageGraph.build(List.of("01.yml", "03.yml"), declared);
+
+        assertEquals(Set.of("01.yml"), graph.getDependencies("03.yml"));
+    }
+
+    @Test
+    void transitiveDependentsFollowTheWholeChain() {
+        Map<String, List<String>> declared = Map.of(
+                "a.yml", List.of(),
+                "b.yml", List.of("a.yml"),
+                "c.yml", List.of("b.yml"),
+                "d.yml", List.of());
+
+        StageGraph graph = StageGraph.build(List.of("a.yml", "b.yml", "c.yml", "d.yml"), declared);
+
+        assertEquals(Set.of("b.yml", "c.yml"), graph.getTransitiveDependents("a.yml"));
+        assertEquals(Set.of(), graph.getTransitiveDependents("d.yml"));
+    }
+
+    @Test
+    void cycleIsRejected() {
+        Map<String, List<String>> declared = Map.of(
+                "a.yml", List.of("b.yml"),
+                "b.yml", List.of("a.yml"));
+
+        assertThrows(IllegalArgumentException.class, () -> StageGraph.build(List.of("a.yml", "b.yml"), declared));
+    }
+
+    @Test
+    void unknownDependencyIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> StageGraph.build(List.of("a.yml"), Map.of("a.yml", List.of("missing.yml"))));
+    }
+}
@@ -0,0 +1,183 @@
+package org.example.mas.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Повторы и карантин на симуляторе: central_manager и три воркера, упорно падающие хосты задаются в тесте. */
+class StageRetrierTest {
+    private static final String INVENTORY = String.join("\n",
+            "[central_manager]",
+            "cm1 ansible_host=10.0.0.1",
+            "",
+            "[execute_nodes]",
+            "w1 ansible_host=10.0.0.11",
+            "w2 ansible_host=10.0.0.12",
+            "w3 ansible_host=10.0.0.13",
+            "");
+
+    @TempDir
+    Path dir;
+
+    /** --limit каждого запуска: null — все хосты, иначе содержимое файла лимита. */
+    private final List<List<String>> limits = new ArrayList<>();
+    private final List<Set<String>> excluded = new ArrayList<>();
+    private final List<String> events = new ArrayList<>();
+
+    @BeforeEach
+    void playbook() throws IOException {
+        Files.writeString(dir.resolve("inventory.ini"), INVENTORY, StandardCharsets.UTF_8);
+        Files.writeString(dir.resolve("stage.yml"), String.join("\n",
+                "- name: Stage",
+                "  hosts: all",
+                "  tasks:",
+                "    - name: Configure",
+                "      command: /bin/true",
+                ""), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void ruleBackoffGrowsUpToTheCap() {
+        RetryPolicy.Rule rule = new RetryPolicy.Rule(3, 1000, 2.0, 3000);
+
+        assertEquals(1000, rule.backoffMillis(1));
+        assertEquals(2000, rule.backoffMillis(2));
+        assertEquals(3000, rule.backoffMillis(3));
+        assertEquals(0, RetryPolicy.defaults().ruleFor("CANCELLED").maxRetries);
+        assertEquals(0, RetryPolicy.defaults().ruleFor(null).maxRetries);
+    }
+
+    @Test
+    void budgetIsSharedAndNeverGoesNegative() {
+        RetryPolicy policy = new RetryPolicy().budget(2);
+
+        assertTrue(policy.tryAcquire());
+        assertTrue(policy.tryAcquire());
+        assertFalse(policy.tryAcquire());
+        assertEquals(0, policy.remainingBudget());
+    }
+
+    @Test
+    void retriesOnlyTheFailedHosts() {
+        StageRetrier retrier = retrier(policy(2).maxQuarantined(0));
+
+        AnsibleRunner.AnsibleResult result = retrier.run(options(), runner(Set.of("w2")));
+
+        assertFalse(result.success);
+        assertEquals(3, limits.size());
+        assertNull(limits.get(0));
+        assertEquals(List.of("w2"), limits.get(1));
+        assertEquals(List.of("w2"), limits.get(2));
+        assertEquals(List.of("retry:1:w2", "retry:2:w2"), events);
+        // отчёт повтора наложен на первый запуск: остальные хосты по-прежнему успешны
+        assertEquals(List.of("w2"), result.report.getFailedHosts());
+        assertEquals(4, result.report.getHostOutcomes().size());
+    }
+
+    @Test
+    void exhaustedBudgetStopsRetries() {
+        StageRetrier retrier = retrier(policy(3).budget(1));
+
+        AnsibleRunner.AnsibleResult result = retrier.run(options(), runner(Set.of("cm1")));
+
+        assertFalse(result.success);
+        assertEquals(2, limits.size());
+    }
+
+    @Test
+    void persistentlyFailingWorkerIsQuarantinedAndExcludedLater() {
+        StageRetrier retrier = retrier(policy(1).maxQuarantined(1));
+
+        AnsibleRunner.AnsibleResult result = retrier.run(options(), runner(Set.of("w3")));
+
+        assertTrue(result.success, result.details);
+        assertEquals(StageRetrier.QUARANTINED, result.errorCode);
+        assertEquals(Set.of("w3"), retrier.getQuarantined().keySet());
+        assertTrue(events.contains("quarantine:[w3]"));
+
+        retrier.run(options(), runner(Set.of()));
+        assertEquals(Set.of("w3"), excluded.get(excluded.size() - 1));
+    }
+
+    @Test
+    void controlPlaneIsNeverQuarantined() {
+        StageRetrier retrier = retrier(policy(1).maxQuarantined(5));
+
+        AnsibleRunner.AnsibleResult result = retrier.run(options(), runner(Set.of("cm1", "w1")));
+
+        assertFalse(result.success);
+        assertTrue(retrier.getQuarantined().isEmpty());
+    }
+
+    @Test
+    void quarantineLimitIsRespected() {
+        StageRetrier retrier = retrier(policy(0).maxQuarantined(1));
+
+        AnsibleRunner.AnsibleResult result = retrier.run(options(), runner(Set.of("w1", "w2")));
+
+        assertFalse(result.success);
+        assertTrue(retrier.getQuarantined().isEmpty());
+    }
+
+    private RetryPolicy policy(int retries) {
+        return new RetryPolicy().rule("EXECUTION_ERROR", new RetryPolicy.Rule(retries, 0, 1.0, 0));
+    }
+
+    private StageRetrier retrier(RetryPolicy policy) {
+        InventoryParser.Inventory inventory = InventoryParser.parseText(INVENTORY);
+        return new StageRetrier(policy, inventory, new StageRetrier.Listener() {
+            @Override
+            public void onRetry(String playbook, int attempt, String errorCode, Collection<String> hosts, long backoffMillis) {
+                events.add("retry:" + attempt + ":" + String.join(",", hosts));
+            }
+
+            @Override
+            public void onQuarantine(String playbook, Map<String, String> hosts) {
+                events.add("quarantine:" + hosts.keySet());
+            }
+        });
+    }
+
+    private AnsibleRunner.Options options() {
+        return new AnsibleRunner.Options("stage.yml", dir.resolve("inventory.ini").toString(), dir.toString())
+                .logDir(dir.resolve("logs"))
+                .timeoutMinutes(1);
+    }
+
+    private Function<AnsibleRunner.Options, AnsibleRunner.AnsibleResult> runner(Set<String> failedHosts) {
+        AnsibleSimulator simulator = new AnsibleSimulator(new AnsibleSimulator.Settings()
+                .taskLatencyMs(0)
+                .timeScale(0)
+                .changedRate(0)
+                .skippedRate(0)
+                .failedHosts(failedHosts)
+                .seed(1L));
+        return options -> {
+            try {
+                limits.add(options.limit == null ? null
+                        : Files.readAllLines(Path.of(options.limit.substring(1)), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            excluded.add(Set.copyOf(options.excluded));
+            return AnsibleRunner.run(options.copy().executor(simulator));
+        };
+    }
+}
@@ -0,0 +1,120 @@
+package org.example.mas.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StageSchedulerTest {
+    private static final AnsibleRunner.AnsibleResult OK = new AnsibleRunner.AnsibleResult(true, "SUCCESS", "");
+    private static final AnsibleRunner.AnsibleResult FAILED = new AnsibleRunner.AnsibleResult(false, "EXECUTION_ERROR", "");
+
+    /** a → b → c, d независима. */
+    private static StageGraph graph() {
+        return StageGraph.build(List.of("a.yml", "b.yml", "c.yml", "d.yml"), Map.of(
+                "a.yml", List.of(),
+                "b.yml", List.of("a.yml"),
+                "c.yml", List.of("b.yml"),
+                "d.yml", List.of()));
+    }
+
+    @Test
+    void stageStartsOnlyAfterItsDependencies() throws InterruptedException {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        StageScheduler scheduler = new StageScheduler(graph(), 4);
+
+        Map<String, StageScheduler.StageState> states = scheduler.run(stage -> {
+            order.add(stage);
+            return OK;
+        });
+
+        assertTrue(order.indexOf("a.yml") < order.indexOf("b.yml"));
+        assertTrue(order.indexOf("b.yml") < order.indexOf("c.yml"));
+        states.values().forEach(state -> assertEquals(StageScheduler.StageState.SUCCESS, state));
+    }
+
+    @Test
+    void failureCancelsOnlyDependentStages() throws InterruptedException {
+        StageScheduler scheduler = new StageScheduler(graph(), 4);
+
+        Map<String, StageScheduler.StageState> states = scheduler.run(stage -> "a.yml".equals(stage) ? FAILED : OK);
+
+        assertEquals(StageScheduler.StageState.FAILED, states.get("a.yml"));
+        assertEquals(StageScheduler.StageState.CANCELLED, states.get("b.yml"));
+        assertEquals(StageScheduler.StageState.CANCELLED, states.get("c.yml"));
+        assertEquals(StageScheduler.StageState.SUCCESS, states.get("d.yml"));
+        assertEquals("EXECUTION_ERROR", scheduler.getResult("a.yml").errorCode);
+    }
+
+    @Test
+    void exceptionCountsAsFailure() throws InterruptedException {
+        StageScheduler scheduler = new StageScheduler(graph(), 4);
+
+        Map<String, StageScheduler.StageState> states = scheduler.run(stage -> {
+            if ("b.yml".equals(stage)) throw new IllegalStateException("boom");
+            return OK;
+        });
+
+        assertEquals(StageScheduler.StageState.FAILED, states.get("b.yml"));
+        assertEquals(StageScheduler.StageState.CANCELLED, states.get("c.yml"));
+        assertEquals("EXCEPTION", scheduler.getResult("b.yml").errorCode);
+    }
+
+    @Test
+    void skippedStageSatisfiesDependents() throws InterruptedException {
+        List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        StageScheduler scheduler = new StageScheduler(graph(), 4);
+        scheduler.markSkipped("a.yml");
+
+        Map<String, StageScheduler.StageState> states = scheduler.run(stage -> {
+            executed.add(stage);
+            return OK;
+        });
+
+        assertEquals(StageScheduler.StageState.SKIPPED, states.get("a.yml"));
+        assertEquals(StageScheduler.StageState.SUCCESS, states.get("c.yml"));
+        assertFalse(executed.contains("a.yml"));
+    }
+
+    @Test
+    void independentStagesRunConcurrentlyUpToMaxParallel() throws InterruptedException {
+        StageGraph graph = StageGraph.build(List.of("a.yml", "b.yml", "c.yml"), Map.of(
+                "a.yml", List.of(), "b.yml", List.of(), "c.yml", List.of()));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        StageScheduler scheduler = new StageScheduler(graph, 2);
+
+        scheduler.run(stage -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            bothStarted.countDown();
+            bothStarted.await(5, TimeUnit.SECONDS);
+            running.decrementAndGet();
+            return OK;
+        });
+
+        assertEquals(2, peak.get());
+    }
+
+    @Test
+    void listenerSeesEveryTransition() throws InterruptedException {
+        List<String> transitions = Collections.synchronizedList(new ArrayList<>());
+        StageScheduler scheduler = new StageScheduler(graph(), 1);
+        scheduler.setListener((stage, state, snapshot) -> transitions.add(stage + ":" + state));
+
+        scheduler.run(stage -> "c.yml".equals(stage) ? FAILED : OK);
+
+        assertEquals(List.of("a.yml:RUNNING", "a.yml:SUCCESS"), transitions.subList(0, 2));
+        assertTrue(transitions.contains("c.yml:FAILED"));
+        assertTrue(transitions.contains("d.yml:SUCCESS"));
+    }
+}
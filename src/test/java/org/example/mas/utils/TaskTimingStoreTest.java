@@ -0,0 +1,112 @@
+package org.example.mas.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TaskTimingStoreTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void runRoundTripsSamplesInOrder() throws IOException {
+        TaskTimingStore store = new TaskTimingStore(dir, 5);
+        store.append("01_prep.yml", "run-1", 1000, 4200, false, List.of(
+                timing("Prepare", "Install packages", "w1", 1500, AnsibleEvent.Type.HOST_CHANGED),
+                timing("Prepare", "Install packages", "w2", 300_000, AnsibleEvent.Type.HOST_FAILED),
+                timing("Prepare", "Reboot", "w1", 20, AnsibleEvent.Type.HOST_OK),
+                timing("Prepare", null, "w1", 5, AnsibleEvent.Type.HOST_OK)));
+
+        TaskTimingStore.Run run = store.run("01_prep.yml", null);
+
+        assertEquals("run-1", run.runId);
+        assertEquals(1000, run.startedAt);
+        assertEquals(4200, run.durationMillis);
+        assertFalse(run.success);
+        assertEquals(3, run.getSampleCount());
+        assertEquals(2, run.getHostCount());
+        assertEquals("Install packages", run.taskName(1));
+        assertEquals("Prepare", run.playName(1));
+        assertEquals("w2", run.hostName(1));
+        assertEquals(300_000, run.durationMillis(1));
+        assertEquals(AnsibleEvent.Type.HOST_FAILED, run.result(1));
+        assertEquals(List.of("01_prep"), store.stages());
+    }
+
+    @Test
+    void sameTaskNameInDifferentPlaysIsKeptApart() throws IOException {
+        TaskTimingStore store = new TaskTimingStore(dir, 5);
+        store.append("stage", "run-1", 0, 100, true, List.of(
+                timing("Masters", "Restart kubelet", "cm1", 900, AnsibleEvent.Type.HOST_CHANGED),
+                timing("Workers", "Restart kubelet", "w1", 100, AnsibleEvent.Type.HOST_CHANGED),
+                timing(null, "Restart kubelet", "w2", 50, AnsibleEvent.Type.HOST_CHANGED)));
+
+        Map<String, TaskProfile.TaskStats> stats = TaskProfile.taskStats(store.run("stage", "run-1"));
+
+        assertEquals(3, stats.size());
+        assertEquals(900, stats.get(TaskProfile.key("Masters", "Restart kubelet")).maxMillis);
+        assertEquals(100, stats.get(TaskProfile.key("Workers", "Restart kubelet")).maxMillis);
+        assertEquals("", stats.get(TaskProfile.key("", "Restart kubelet")).play);
+    }
+
+    @Test
+    void onlyTheLastRetentionRunsAreVisited() throws IOException {
+        TaskTimingStore store = new TaskTimingStore(dir, 3);
+        for (int i = 1; i <= 7; i++) {
+            store.append("stage", "run-" + i, i, i, true, List.of(timing("p", "t", "h", i, AnsibleEvent.Type.HOST_OK)));
+        }
+
+        List<String> runs = new ArrayList<>();
+        store.forEachRun("stage", run -> runs.add(run.runId));
+
+        assertEquals(List.of("run-5", "run-6", "run-7"), runs);
+        assertNull(store.run("stage", "run-4"));
+        assertEquals("run-5", store.run("stage", "run-5").runId);
+        // на шестой записи файл сжат до трёх последних, седьмая дописана после
+        assertEquals(List.of("run-4", "run-5", "run-6", "run-7"), visit(new TaskTimingStore(dir, 10), "stage"));
+    }
+
+    @Test
+    void truncatedTailIsDroppedAndAppendsContinue() throws IOException {
+        TaskTimingStore store = new TaskTimingStore(dir, 5);
+        store.append("stage", "run-1", 0, 1, true, List.of(timing("p", "t", "h", 1, AnsibleEvent.Type.HOST_OK)));
+        Files.write(dir.resolve("stage.timings"), new byte[]{0, 0, 1, 0, 7}, StandardOpenOption.APPEND);
+
+        TaskTimingStore reopened = new TaskTimingStore(dir, 5);
+        reopened.append("stage", "run-2", 0, 1, true, List.of(timing("p", "t", "h", 1, AnsibleEvent.Type.HOST_OK)));
+
+        assertEquals(List.of("run-1", "run-2"), visit(new TaskTimingStore(dir, 5), "stage"));
+    }
+
+    @Test
+    void missingStageHasNoRuns() throws IOException {
+        TaskTimingStore store = new TaskTimingStore(dir.resolve("absent"), 5);
+
+        assertNull(store.run("stage", null));
+        assertTrue(visit(store, "stage").isEmpty());
+        assertTrue(store.stages().isEmpty());
+    }
+
+    private static List<String> visit(TaskTimingStore store, String stage) throws IOException {
+        List<String> runs = new ArrayList<>();
+        store.forEachRun(stage, run -> runs.add(run.runId));
+        return runs;
+    }
+
+    private static PlaybookReport.TaskTiming timing(String play, String task, String host, long millis,
+                                                    AnsibleEvent.Type result) {
+        return new PlaybookReport.TaskTiming(play, task, host, millis, result);
+    }
+}
@@ -0,0 +1,101 @@
+package org.example.mas.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+    /** Колесо на 8 ячеек по 5 мс: оборот — 40 мс. */
+    private final TimingWheel wheel = new TimingWheel("test-wheel", 5, 8, Runnable::run);
+
+    @AfterEach
+    void close() {
+        wheel.close();
+    }
+
+    @Test
+    void taskNeverFiresEarly() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        AtomicLong firedAt = new AtomicLong();
+        long start = System.nanoTime();
+
+        wheel.schedule(() -> {
+            firedAt.set(System.nanoTime());
+            fired.countDown();
+        }, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(firedAt.get() - start) >= 20);
+    }
+
+    @Test
+    void delayLongerThanOneTurnWaitsForItsRound() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        wheel.schedule(fired::countDown, 130, TimeUnit.MILLISECONDS);
+
+        assertFalse(fired.await(100, TimeUnit.MILLISECONDS));
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 130);
+    }
+
+    @Test
+    void cancelledTaskDoesNotRunAndLeavesPending() throws InterruptedException {
+        AtomicBoolean ran = new AtomicBoolean();
+        CountDownLatch later = new CountDownLatch(1);
+
+        TimingWheel.Timeout timeout = wheel.schedule(() -> ran.set(true), 30, TimeUnit.MILLISECONDS);
+        timeout.cancel();
+        wheel.schedule(later::countDown, 60, TimeUnit.MILLISECONDS);
+
+        assertTrue(timeout.isCancelled());
+        assertTrue(later.await(2, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    void manyTasksInTheSameSlotAllFire() throws InterruptedException {
+        int count = 1000;
+        CountDownLatch fired = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            // задержки 0..79 мс — два оборота колеса, в каждой ячейке задачи обоих оборотов
+            wheel.schedule(fired::countDown, i % 80, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    void rejectedTaskDoesNotStopTheWheel() throws InterruptedException {
+        AtomicBoolean rejectNext = new AtomicBoolean(true);
+        CountDownLatch fired = new CountDownLatch(1);
+        try (TimingWheel rejecting = new TimingWheel("rejecting", 5, 8, task -> {
+            if (rejectNext.getAndSet(false)) throw new IllegalStateException("queue full");
+            task.run();
+        })) {
+            rejecting.schedule(() -> { }, 5, TimeUnit.MILLISECONDS);
+            rejecting.schedule(fired::countDown, 30, TimeUnit.MILLISECONDS);
+
+            assertTrue(fired.await(2, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void scheduleAfterCloseFails() {
+        wheel.close();
+
+        assertThrows(IllegalStateException.class, () -> wheel.schedule(() -> { }, 1, TimeUnit.MILLISECONDS));
+    }
+}